@@ -0,0 +1,11 @@
+package com.edu.auth;
+
+/**
+ * The authenticated caller, taken from the verified claims of a bearer token.
+ */
+public record Principal(int userId, String username, String role, long expiresAt) {
+
+    public boolean isAdmin() {
+        return "admin".equals(role);
+    }
+}
@@ -0,0 +1,82 @@
+package com.edu.auth;
+
+import com.edu.util.AppConfig;
+import com.edu.util.JwtUtil;
+import io.jsonwebtoken.Claims;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Verifies bearer tokens and remembers the result, so a client sending the same token on every call
+ * pays for the HMAC check once rather than on each request.
+ * <p>
+ * Entries are keyed by the token's SHA-256 (raw tokens are not kept in memory), expire with the
+ * token itself and are evicted least-recently-used beyond {@code auth.tokenCacheSize}. Tokens that
+ * fail verification are not cached.
+ */
+public class TokenVerifier {
+    private static final TokenVerifier INSTANCE = new TokenVerifier(
+            Math.max(16, AppConfig.getInt("auth.tokenCacheSize", 10000)), System::currentTimeMillis);
+
+    private final Map<String, Principal> cache;
+    private final LongSupplier clock;
+
+    TokenVerifier(int maxEntries, LongSupplier clock) {
+        this.clock = clock;
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<String, Principal>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Principal> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    public static TokenVerifier get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the principal for a valid, unexpired token, or {@code null}.
+     */
+    public Principal verify(String token) {
+        if (token == null || token.isEmpty()) return null;
+        String key = sha256Hex(token);
+        long now = clock.getAsLong();
+        Principal p = cache.get(key);
+        if (p != null) {
+            if (p.expiresAt() > now) return p;
+            cache.remove(key);
+        }
+
+        Claims claims = JwtUtil.parseToken(token);
+        if (claims == null || claims.getExpiration() == null) return null;
+        try {
+            p = new Principal(Integer.parseInt(claims.getSubject()), claims.get("username", String.class),
+                    claims.get("role", String.class), claims.getExpiration().getTime());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (p.expiresAt() <= now) return null;
+        cache.put(key, p);
+        return p;
+    }
+
+    int size() {
+        return cache.size();
+    }
+
+    private static String sha256Hex(String s) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(s.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
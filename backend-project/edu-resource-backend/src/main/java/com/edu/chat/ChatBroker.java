@@ -0,0 +1,369 @@
+package com.edu.chat;
+
+import com.edu.util.AppConfig;
+import com.edu.util.DBUtil;
+import com.edu.util.JsonUtil;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process fan-out behind the {@code /ws/chat} socket.
+ * <p>
+ * {@code ChatServlet} still persists messages; after the insert commits it hands the message to
+ * {@link #messageCreated}, which pushes it to every open socket of both participants. Sockets also
+ * carry typing hints and online/offline presence between users who share a conversation.
+ * <p>
+ * Each socket has its own bounded outbound queue drained by a small dispatcher pool, so one slow
+ * client never blocks a publisher or another client. A socket whose queue fills up
+ * ({@code chat.outboundQueueSize}) is closed and the client reconnects and re-syncs.
+ */
+public class ChatBroker {
+
+    /**
+     * One open socket. {@link #send} may block for a slow client; it is only called from the
+     * dispatcher pool.
+     */
+    public interface Sink {
+        void send(String frame) throws IOException;
+
+        void close();
+    }
+
+    interface Directory {
+        /** The two participants of a conversation, or null if it doesn't exist. */
+        int[] participants(long conversationId) throws SQLException;
+
+        /** Users who share a conversation with {@code userId}. */
+        Set<Integer> partners(int userId) throws SQLException;
+    }
+
+    private static final int MAX_CACHED_CONVERSATIONS = 10_000;
+    private static final ChatBroker INSTANCE = new ChatBroker(new DatabaseDirectory(), null,
+            Math.max(4, AppConfig.getInt("chat.outboundQueueSize", 256)));
+
+    private final Map<Integer, List<Outbox>> sessions = new ConcurrentHashMap<>();
+    // partner sets of connected users, for presence fan-out
+    private final Map<Integer, Set<Integer>> partners = new ConcurrentHashMap<>();
+    // participants never change, so this only needs a size bound
+    private final Map<Long, int[]> conversations = new ConcurrentHashMap<>();
+    private final Directory directory;
+    private final int queueSize;
+    private volatile Executor dispatcher;
+    private ExecutorService pool;
+
+    ChatBroker(Directory directory, Executor dispatcher, int queueSize) {
+        this.directory = directory;
+        this.dispatcher = dispatcher;
+        this.queueSize = queueSize;
+    }
+
+    public static ChatBroker get() {
+        return INSTANCE;
+    }
+
+    public synchronized void start() {
+        if (pool != null) return;
+        int threads = Math.max(1, AppConfig.getInt("chat.dispatchThreads", 4));
+        AtomicInteger seq = new AtomicInteger();
+        pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "chat-dispatch-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        dispatcher = pool;
+    }
+
+    public synchronized void stop() {
+        if (pool == null) return;
+        pool.shutdownNow();
+        pool = null;
+        dispatcher = null;
+        for (List<Outbox> boxes : sessions.values()) {
+            for (Outbox box : boxes) {
+                box.sink.close();
+            }
+        }
+        sessions.clear();
+        partners.clear();
+    }
+
+    /**
+     * Registers an open socket. The socket gets the list of its user's partners that are online, and
+     * if this is the user's first socket, those partners are told the user came online.
+     */
+    public void register(int userId, Sink sink) {
+        Outbox box = new Outbox(userId, sink);
+        boolean[] first = new boolean[1];
+        sessions.compute(userId, (k, list) -> {
+            if (list == null) {
+                list = new CopyOnWriteArrayList<>();
+                first[0] = true;
+            }
+            list.add(box);
+            return list;
+        });
+
+        Set<Integer> mine = partners.get(userId);
+        if (mine == null) {
+            try {
+                mine = ConcurrentHashMap.newKeySet();
+                mine.addAll(directory.partners(userId));
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            Set<Integer> raced = partners.putIfAbsent(userId, mine);
+            if (raced != null) mine = raced;
+        }
+
+        List<Integer> online = new ArrayList<>();
+        for (Integer partner : mine) {
+            if (sessions.containsKey(partner)) online.add(partner);
+        }
+        Map<String, Object> snapshot = new HashMap<>();
+        snapshot.put("type", "presenceSnapshot");
+        snapshot.put("online", online);
+        box.offer(JsonUtil.toJson(snapshot));
+
+        if (first[0]) {
+            announce(userId, online, true);
+        }
+    }
+
+    public void unregister(int userId, Sink sink) {
+        boolean[] last = new boolean[1];
+        sessions.computeIfPresent(userId, (k, boxes) -> {
+            boxes.removeIf(b -> b.sink == sink);
+            if (boxes.isEmpty()) {
+                last[0] = true;
+                return null;
+            }
+            return boxes;
+        });
+        if (last[0]) {
+            Set<Integer> mine = partners.remove(userId);
+            if (mine != null) {
+                announce(userId, mine, false);
+            }
+        }
+    }
+
+    /**
+     * Pushes a message whose insert has committed to both participants' sockets.
+     */
+    public void messageCreated(long conversationId, int senderId, int recipientId, Object message) {
+        int a = Math.min(senderId, recipientId);
+        int b = Math.max(senderId, recipientId);
+        cacheConversation(conversationId, new int[]{a, b});
+        // a first message makes the two partners for presence
+        Set<Integer> s = partners.get(senderId);
+        if (s != null && s.add(recipientId) && sessions.containsKey(recipientId)) {
+            sendTo(senderId, presenceFrame(recipientId, true));
+        }
+        Set<Integer> r = partners.get(recipientId);
+        if (r != null && r.add(senderId) && sessions.containsKey(senderId)) {
+            sendTo(recipientId, presenceFrame(senderId, true));
+        }
+
+        Map<String, Object> frame = new HashMap<>();
+        frame.put("type", "message");
+        frame.put("data", message);
+        String json = JsonUtil.toJson(frame);
+        sendTo(senderId, json);
+        sendTo(recipientId, json);
+    }
+
+    /**
+     * Pushes a change to an existing message, such as an image that finished processing, to both
+     * participants.
+     */
+    public void messageUpdated(long conversationId, Map<String, Object> update) {
+        int[] pair = participants(conversationId);
+        if (pair == null) return;
+        Map<String, Object> frame = new HashMap<>();
+        frame.put("type", "messageUpdated");
+        frame.put("data", update);
+        String json = JsonUtil.toJson(frame);
+        sendTo(pair[0], json);
+        sendTo(pair[1], json);
+    }
+
+    /**
+     * Forwards a typing hint to the other participant. Ignored unless {@code userId} is in the
+     * conversation.
+     */
+    public void typing(int userId, long conversationId) {
+        int[] pair = participants(conversationId);
+        if (pair == null) return;
+        int other;
+        if (pair[0] == userId) other = pair[1];
+        else if (pair[1] == userId) other = pair[0];
+        else return;
+        if (!sessions.containsKey(other)) return;
+
+        Map<String, Object> frame = new HashMap<>();
+        frame.put("type", "typing");
+        frame.put("conversationId", conversationId);
+        frame.put("userId", userId);
+        sendTo(other, JsonUtil.toJson(frame));
+    }
+
+    public boolean isOnline(int userId) {
+        return sessions.containsKey(userId);
+    }
+
+    public int sessionCount() {
+        int n = 0;
+        for (List<Outbox> boxes : sessions.values()) {
+            n += boxes.size();
+        }
+        return n;
+    }
+
+    private void announce(int userId, Iterable<Integer> to, boolean online) {
+        String frame = presenceFrame(userId, online);
+        for (Integer partner : to) {
+            sendTo(partner, frame);
+        }
+    }
+
+    private void sendTo(int userId, String frame) {
+        List<Outbox> boxes = sessions.get(userId);
+        if (boxes == null) return;
+        for (Outbox box : boxes) {
+            box.offer(frame);
+        }
+    }
+
+    private int[] participants(long conversationId) {
+        int[] pair = conversations.get(conversationId);
+        if (pair == null) {
+            try {
+                pair = directory.participants(conversationId);
+            } catch (SQLException e) {
+                e.printStackTrace();
+                return null;
+            }
+            if (pair != null) cacheConversation(conversationId, pair);
+        }
+        return pair;
+    }
+
+    private void cacheConversation(long conversationId, int[] pair) {
+        if (conversations.size() >= MAX_CACHED_CONVERSATIONS) {
+            conversations.clear();
+        }
+        conversations.put(conversationId, pair);
+    }
+
+    private void drop(Outbox box) {
+        unregister(box.userId, box.sink);
+        box.sink.close();
+    }
+
+    private static String presenceFrame(int userId, boolean online) {
+        Map<String, Object> frame = new HashMap<>();
+        frame.put("type", "presence");
+        frame.put("userId", userId);
+        frame.put("online", online);
+        return JsonUtil.toJson(frame);
+    }
+
+    private final class Outbox {
+        final int userId;
+        final Sink sink;
+        final ArrayBlockingQueue<String> queue = new ArrayBlockingQueue<>(queueSize);
+        final AtomicBoolean draining = new AtomicBoolean();
+
+        Outbox(int userId, Sink sink) {
+            this.userId = userId;
+            this.sink = sink;
+        }
+
+        void offer(String frame) {
+            if (!queue.offer(frame)) {
+                // the client is too far behind; it resyncs after reconnecting
+                drop(this);
+                return;
+            }
+            schedule();
+        }
+
+        void schedule() {
+            if (!draining.compareAndSet(false, true)) return;
+            Executor d = dispatcher;
+            try {
+                if (d == null) throw new IllegalStateException("Broker stopped");
+                d.execute(this::drain);
+            } catch (RuntimeException e) {
+                draining.set(false);
+            }
+        }
+
+        void drain() {
+            try {
+                String frame;
+                while ((frame = queue.poll()) != null) {
+                    sink.send(frame);
+                }
+            } catch (IOException e) {
+                queue.clear();
+                drop(this);
+                return;
+            } finally {
+                draining.set(false);
+            }
+            // a frame offered after the last poll but before the flag was cleared
+            if (!queue.isEmpty()) schedule();
+        }
+    }
+
+    private static final class DatabaseDirectory implements Directory {
+        @Override
+        public int[] participants(long conversationId) throws SQLException {
+            try (Connection conn = DBUtil.getConnection();
+                 PreparedStatement ps = conn.prepareStatement("SELECT user1_id, user2_id FROM chat_conversation WHERE id = ?")) {
+                ps.setLong(1, conversationId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) return null;
+                    return new int[]{rs.getInt(1), rs.getInt(2)};
+                }
+            }
+        }
+
+        @Override
+        public Set<Integer> partners(int userId) throws SQLException {
+            Set<Integer> result = new HashSet<>();
+            String sql = "SELECT CASE WHEN user1_id = ? THEN user2_id ELSE user1_id END FROM chat_conversation WHERE user1_id = ? OR user2_id = ?";
+            try (Connection conn = DBUtil.getConnection();
+                 PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setInt(1, userId);
+                ps.setInt(2, userId);
+                ps.setInt(3, userId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        result.add(rs.getInt(1));
+                    }
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.edu.chat;
+
+import com.edu.auth.Principal;
+import com.edu.auth.TokenVerifier;
+import com.edu.util.AppConfig;
+import com.edu.util.JsonUtil;
+
+import jakarta.websocket.CloseReason;
+import jakarta.websocket.EndpointConfig;
+import jakarta.websocket.HandshakeResponse;
+import jakarta.websocket.OnClose;
+import jakarta.websocket.OnError;
+import jakarta.websocket.OnMessage;
+import jakarta.websocket.OnOpen;
+import jakarta.websocket.Session;
+import jakarta.websocket.server.HandshakeRequest;
+import jakarta.websocket.server.ServerEndpoint;
+import jakarta.websocket.server.ServerEndpointConfig;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Real-time chat socket. Authenticates with the same JWT as the REST API: an
+ * {@code Authorization: Bearer} header, or {@code ?token=} since browsers can't set headers on a
+ * WebSocket. Messages are still sent through {@code POST /api/chat/send}; this socket delivers them,
+ * plus typing and presence events. The only inbound frame is
+ * {@code {"type":"typing","conversationId":...}}.
+ */
+@ServerEndpoint(value = "/ws/chat", configurator = ChatEndpoint.AuthConfigurator.class)
+public class ChatEndpoint implements ChatBroker.Sink {
+    private static final String PRINCIPAL = "chat.principal";
+
+    private Session session;
+    private int userId;
+
+    public static class AuthConfigurator extends ServerEndpointConfig.Configurator {
+        @Override
+        public boolean checkOrigin(String originHeaderValue) {
+            // same origin the REST servlets allow through CORS; non-browser clients send none
+            return originHeaderValue == null || "http://localhost:8081".equals(originHeaderValue);
+        }
+
+        @Override
+        public void modifyHandshake(ServerEndpointConfig sec, HandshakeRequest request, HandshakeResponse response) {
+            String token = null;
+            List<String> auth = request.getHeaders().get("Authorization");
+            if (auth != null && !auth.isEmpty() && auth.get(0).startsWith("Bearer ")) {
+                token = auth.get(0).substring(7);
+            } else {
+                List<String> param = request.getParameterMap().get("token");
+                if (param != null && !param.isEmpty()) token = param.get(0);
+            }
+            Principal principal = TokenVerifier.get().verify(token);
+            // the container gives each handshake its own copy of the user properties
+            if (principal != null) {
+                sec.getUserProperties().put(PRINCIPAL, principal);
+            } else {
+                sec.getUserProperties().remove(PRINCIPAL);
+            }
+        }
+    }
+
+    @OnOpen
+    public void onOpen(Session session, EndpointConfig config) throws IOException {
+        Principal principal = (Principal) config.getUserProperties().get(PRINCIPAL);
+        if (principal == null) {
+            session.close(new CloseReason(CloseReason.CloseCodes.VIOLATED_POLICY, "Unauthorized"));
+            return;
+        }
+        this.session = session;
+        this.userId = principal.userId();
+        session.setMaxIdleTimeout(Math.max(1, AppConfig.getLong("chat.idleTimeoutMinutes", 30)) * 60_000L);
+        session.setMaxTextMessageBufferSize(4096);
+        ChatBroker.get().register(userId, this);
+    }
+
+    @OnMessage
+    public void onMessage(String text) {
+        if (session == null) return;
+        Map<?, ?> frame;
+        try {
+            frame = JsonUtil.fromJson(text, Map.class);
+        } catch (RuntimeException e) {
+            return;
+        }
+        if (frame == null || !"typing".equals(frame.get("type"))) return;
+        Object conv = frame.get("conversationId");
+        if (conv instanceof Number) {
+            ChatBroker.get().typing(userId, ((Number) conv).longValue());
+        }
+    }
+
+    @OnClose
+    public void onClose() {
+        if (session != null) {
+            ChatBroker.get().unregister(userId, this);
+        }
+    }
+
+    @OnError
+    public void onError(Throwable t) {
+        // the container closes the session after this; onClose unregisters it
+    }
+
+    @Override
+    public void send(String frame) throws IOException {
+        if (!session.isOpen()) throw new IOException("Socket closed");
+        session.getBasicRemote().sendText(frame);
+    }
+
+    @Override
+    public void close() {
+        try {
+            session.close(new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, "Reconnect"));
+        } catch (IOException | IllegalStateException ignored) {
+            // already closed
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.edu.comment;
+
+import com.edu.util.AppConfig;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Rendered first pages of the v2 comment list, per resource and page size. Every write to a
+ * resource's comments calls {@link #invalidate}, which bumps the resource's version; entries
+ * rendered under an older version are never served.
+ * <p>
+ * A reader takes {@link #version} before querying and passes it to {@link #put}, so a page that
+ * raced with a write is dropped instead of cached. Entries also expire after
+ * {@code comment.pageCacheSeconds}, which bounds how long a changed nickname or avatar stays in a
+ * cached page. Memory is capped at {@code comment.pageCacheMB}, least recently used first out.
+ */
+public class CommentPageCache {
+    // versions are kept per stripe rather than per resource so the table never grows
+    private static final int STRIPES = 4096;
+
+    private static final CommentPageCache INSTANCE = new CommentPageCache(
+            Math.max(1, AppConfig.getLong("comment.pageCacheMB", 32)) * 1024 * 1024,
+            Math.max(0, AppConfig.getLong("comment.pageCacheSeconds", 300)) * 1000);
+
+    private record Key(int resourceId, int pageSize) {}
+
+    private record Entry(long version, long expiresAt, String json) {
+        long bytes() {
+            return 64 + 2L * json.length();
+        }
+    }
+
+    private final long maxBytes;
+    private final long ttlMillis;
+    private final AtomicLongArray versions = new AtomicLongArray(STRIPES);
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long bytes;
+
+    CommentPageCache(long maxBytes, long ttlMillis) {
+        this.maxBytes = maxBytes;
+        this.ttlMillis = ttlMillis;
+    }
+
+    public static CommentPageCache get() {
+        return INSTANCE;
+    }
+
+    public long version(int resourceId) {
+        return versions.get(stripe(resourceId));
+    }
+
+    /**
+     * The cached page, or {@code null} if there is none or it is out of date.
+     */
+    public synchronized String get(int resourceId, int pageSize) {
+        Key key = new Key(resourceId, pageSize);
+        Entry entry = entries.get(key);
+        if (entry == null) return null;
+        if (entry.version() != version(resourceId) || System.currentTimeMillis() >= entry.expiresAt()) {
+            entries.remove(key);
+            bytes -= entry.bytes();
+            return null;
+        }
+        return entry.json();
+    }
+
+    /**
+     * Caches a page rendered from data read after {@link #version} returned {@code version}.
+     */
+    public synchronized void put(int resourceId, int pageSize, long version, String json) {
+        if (ttlMillis == 0 || version != version(resourceId)) return;
+        Entry entry = new Entry(version, System.currentTimeMillis() + ttlMillis, json);
+        if (entry.bytes() > maxBytes) return;
+        Entry old = entries.put(new Key(resourceId, pageSize), entry);
+        if (old != null) bytes -= old.bytes();
+        bytes += entry.bytes();
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            bytes -= it.next().getValue().bytes();
+            it.remove();
+        }
+    }
+
+    /**
+     * Call after a change to the resource's comments is committed.
+     */
+    public void invalidate(int resourceId) {
+        versions.incrementAndGet(stripe(resourceId));
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long bytes() {
+        return bytes;
+    }
+
+    private static int stripe(int resourceId) {
+        return Math.floorMod(resourceId, STRIPES);
+    }
+}
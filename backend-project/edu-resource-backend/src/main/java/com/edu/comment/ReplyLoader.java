@@ -0,0 +1,164 @@
+package com.edu.comment;
+
+import com.edu.util.CursorUtil;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads the replies of a page of comments in one query instead of one per comment. Each parent gets
+ * at most {@code perParent} replies, oldest first; when it has more, its {@link ReplyThread#nextCursor()}
+ * continues after the last one (see {@link #page}).
+ * <p>
+ * Rows carry {@link #COLUMNS}; callers map them to their own response shape.
+ */
+public class ReplyLoader {
+
+    public interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    /** The first replies of one parent; {@code nextCursor} is {@code null} when there are no more. */
+    public record ReplyThread<T>(List<T> replies, String nextCursor) {
+        public boolean hasMore() {
+            return nextCursor != null;
+        }
+    }
+
+    public static final String COLUMNS =
+            "c.id, c.resource_id, c.user_id, c.content, c.parent_id, c.reply_to_user_id, c.root_id, c.image_count, c.create_time, " +
+            "u.username, u.nickname, u.avatar, ru.nickname AS reply_to_nickname, ru.username AS reply_to_username";
+
+    private static final String FROM =
+            "FROM comment c " +
+            "LEFT JOIN user u ON c.user_id = u.id " +
+            "LEFT JOIN user ru ON c.reply_to_user_id = ru.id ";
+
+    /**
+     * The first {@code perParent} replies of each parent. Parents without replies are absent from
+     * the result.
+     */
+    public static <T> Map<Integer, ReplyThread<T>> load(Connection conn, List<Integer> parentIds, int perParent,
+                                                   RowMapper<T> mapper) throws SQLException {
+        if (parentIds.isEmpty()) return new HashMap<>();
+        String in = String.join(",", Collections.nCopies(parentIds.size(), "?"));
+        // one row past the cap tells whether the parent has more
+        String sql = "SELECT * FROM (" +
+                "SELECT " + COLUMNS + ", " +
+                "ROW_NUMBER() OVER (PARTITION BY c.parent_id ORDER BY c.create_time ASC, c.id ASC) AS rn " +
+                FROM +
+                "WHERE c.parent_id IN (" + in + ")" +
+                ") t WHERE t.rn <= ? ORDER BY t.parent_id ASC, t.rn ASC";
+        Grouper<T> grouper = new Grouper<>(perParent);
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            int idx = 1;
+            for (Integer id : parentIds) {
+                ps.setInt(idx++, id);
+            }
+            ps.setInt(idx, perParent + 1);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    int parentId = rs.getInt("parent_id");
+                    long time = rs.getTimestamp("create_time").getTime();
+                    long id = rs.getLong("id");
+                    grouper.add(parentId, time, id, grouper.full(parentId) ? null : mapper.map(rs));
+                }
+            }
+        }
+        return grouper.result();
+    }
+
+    /**
+     * Replies by id, e.g. the previews stored on root comments. Missing ids are absent from the result.
+     */
+    public static <T> Map<Integer, T> byIds(Connection conn, List<Integer> ids, RowMapper<T> mapper) throws SQLException {
+        Map<Integer, T> result = new HashMap<>();
+        if (ids.isEmpty()) return result;
+        String in = String.join(",", Collections.nCopies(ids.size(), "?"));
+        try (PreparedStatement ps = conn.prepareStatement("SELECT " + COLUMNS + " " + FROM + "WHERE c.id IN (" + in + ")")) {
+            int idx = 1;
+            for (Integer id : ids) {
+                ps.setInt(idx++, id);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    result.put(rs.getInt("id"), mapper.map(rs));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The next {@code limit} replies of one parent after {@code cursor} (from the start when
+     * {@code null}).
+     */
+    public static <T> ReplyThread<T> page(Connection conn, int parentId, CursorUtil.Cursor cursor, int limit,
+                                     RowMapper<T> mapper) throws SQLException {
+        String sql = "SELECT " + COLUMNS + " " + FROM +
+                "WHERE c.parent_id = ? " +
+                (cursor != null ? "AND " + CursorUtil.condition("c.create_time", "c.id", false) + " " : "") +
+                "ORDER BY c.create_time ASC, c.id ASC LIMIT ?";
+        Grouper<T> grouper = new Grouper<>(limit);
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            int idx = 1;
+            ps.setInt(idx++, parentId);
+            if (cursor != null) idx = CursorUtil.bind(ps, idx, cursor);
+            ps.setInt(idx, limit + 1);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    long time = rs.getTimestamp("create_time").getTime();
+                    long id = rs.getLong("id");
+                    grouper.add(parentId, time, id, grouper.full(parentId) ? null : mapper.map(rs));
+                }
+            }
+        }
+        ReplyThread<T> thread = grouper.result().get(parentId);
+        return thread != null ? thread : new ReplyThread<>(new ArrayList<>(), null);
+    }
+
+    /**
+     * Collects rows ordered by parent and then by (create_time, id), keeping {@code cap} per parent.
+     */
+    static final class Grouper<T> {
+        private final int cap;
+        private final Map<Integer, List<T>> replies = new HashMap<>();
+        private final Map<Integer, String> cursors = new HashMap<>();
+        private final Map<Integer, Boolean> more = new HashMap<>();
+
+        Grouper(int cap) {
+            this.cap = cap;
+        }
+
+        boolean full(int parentId) {
+            List<T> list = replies.get(parentId);
+            return list != null && list.size() >= cap;
+        }
+
+        void add(int parentId, long createTime, long id, T row) {
+            List<T> list = replies.computeIfAbsent(parentId, k -> new ArrayList<>());
+            if (list.size() >= cap) {
+                more.put(parentId, true);
+                return;
+            }
+            list.add(row);
+            cursors.put(parentId, CursorUtil.encode(createTime, id));
+        }
+
+        Map<Integer, ReplyThread<T>> result() {
+            Map<Integer, ReplyThread<T>> result = new HashMap<>();
+            for (Map.Entry<Integer, List<T>> e : replies.entrySet()) {
+                boolean hasMore = more.getOrDefault(e.getKey(), false);
+                result.put(e.getKey(), new ReplyThread<>(e.getValue(), hasMore ? cursors.get(e.getKey()) : null));
+            }
+            return result;
+        }
+    }
+}
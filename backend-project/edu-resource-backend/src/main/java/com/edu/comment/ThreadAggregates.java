@@ -0,0 +1,146 @@
+package com.edu.comment;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Maintains the per-thread columns on root comments so the comment list reads them instead of
+ * counting and windowing over replies:
+ * <ul>
+ *   <li>{@code reply_count}: comments in the thread other than the root</li>
+ *   <li>{@code last_reply_id} / {@code last_reply_time}: the newest of those (highest id)</li>
+ *   <li>{@code preview_reply_ids}: the first {@link #PREVIEW_REPLIES} direct replies, comma separated
+ *   in (create_time, id) order, or {@code NULL} when there are none</li>
+ * </ul>
+ * Writers call these inside the transaction that inserts or deletes the reply, the same way as
+ * {@link com.edu.counter.ResourceCounters}; {@link com.edu.counter.CounterReconciler} repairs drift.
+ */
+public class ThreadAggregates {
+    public static final int PREVIEW_REPLIES = 2;
+
+    /**
+     * Records a reply just inserted into the thread of {@code rootId}.
+     */
+    public static void replyAdded(Connection conn, int rootId, int parentId, int replyId) throws SQLException {
+        // the row lock orders concurrent replies to the same thread
+        List<Integer> previews;
+        Integer lastId;
+        try (PreparedStatement ps = conn.prepareStatement("SELECT preview_reply_ids, last_reply_id FROM comment WHERE id = ? FOR UPDATE")) {
+            ps.setInt(1, rootId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return;
+                previews = parseIds(rs.getString(1));
+                int last = rs.getInt(2);
+                lastId = rs.wasNull() ? null : last;
+            }
+        }
+        Timestamp createTime;
+        try (PreparedStatement ps = conn.prepareStatement("SELECT create_time FROM comment WHERE id = ?")) {
+            ps.setInt(1, replyId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return;
+                createTime = rs.getTimestamp(1);
+            }
+        }
+        if (parentId == rootId) {
+            previews = addPreview(previews, replyId);
+        }
+        // transactions may commit out of id order; keep the highest id either way
+        boolean newest = lastId == null || replyId > lastId;
+        String sql = "UPDATE comment SET reply_count = reply_count + 1, preview_reply_ids = ?" +
+                (newest ? ", last_reply_id = ?, last_reply_time = ?" : "") + " WHERE id = ?";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            int idx = 1;
+            setIds(ps, idx++, previews);
+            if (newest) {
+                ps.setInt(idx++, replyId);
+                ps.setTimestamp(idx++, createTime);
+            }
+            ps.setInt(idx, rootId);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Recomputes the columns of one root from its replies. Used after deletes, where the foreign
+     * key cascade removes an unknown number of nested replies.
+     */
+    public static void recount(Connection conn, int rootId) throws SQLException {
+        int count;
+        try (PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) FROM comment WHERE root_id = ? AND id <> ?")) {
+            ps.setInt(1, rootId);
+            ps.setInt(2, rootId);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                count = rs.getInt(1);
+            }
+        }
+        Integer lastId = null;
+        Timestamp lastTime = null;
+        try (PreparedStatement ps = conn.prepareStatement("SELECT id, create_time FROM comment WHERE root_id = ? AND id <> ? ORDER BY id DESC LIMIT 1")) {
+            ps.setInt(1, rootId);
+            ps.setInt(2, rootId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    lastId = rs.getInt(1);
+                    lastTime = rs.getTimestamp(2);
+                }
+            }
+        }
+        List<Integer> previews = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement("SELECT id FROM comment WHERE parent_id = ? ORDER BY create_time ASC, id ASC LIMIT ?")) {
+            ps.setInt(1, rootId);
+            ps.setInt(2, PREVIEW_REPLIES);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    previews.add(rs.getInt(1));
+                }
+            }
+        }
+        try (PreparedStatement ps = conn.prepareStatement(
+                "UPDATE comment SET reply_count = ?, last_reply_id = ?, last_reply_time = ?, preview_reply_ids = ? WHERE id = ?")) {
+            ps.setInt(1, count);
+            if (lastId != null) ps.setInt(2, lastId); else ps.setNull(2, Types.INTEGER);
+            ps.setTimestamp(3, lastTime);
+            setIds(ps, 4, previews);
+            ps.setInt(5, rootId);
+            ps.executeUpdate();
+        }
+    }
+
+    public static List<Integer> parseIds(String ids) {
+        List<Integer> list = new ArrayList<>();
+        if (ids == null || ids.isEmpty()) return list;
+        for (String id : ids.split(",")) {
+            list.add(Integer.parseInt(id.trim()));
+        }
+        return list;
+    }
+
+    /**
+     * The preview list after a new direct reply. Ids grow with creation time, so a reply only gets
+     * in while the list has room, or when it was created before one that committed first.
+     */
+    static List<Integer> addPreview(List<Integer> previews, int replyId) {
+        List<Integer> list = new ArrayList<>(previews);
+        if (list.contains(replyId)) return list;
+        list.add(replyId);
+        list.sort(null);
+        return list.size() > PREVIEW_REPLIES ? new ArrayList<>(list.subList(0, PREVIEW_REPLIES)) : list;
+    }
+
+    private static void setIds(PreparedStatement ps, int idx, List<Integer> ids) throws SQLException {
+        if (ids.isEmpty()) {
+            ps.setNull(idx, Types.VARCHAR);
+        } else {
+            ps.setString(idx, ids.stream().map(String::valueOf).collect(Collectors.joining(",")));
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.edu.counter;
+
+import com.edu.comment.ThreadAggregates;
+import com.edu.util.AppConfig;
+import com.edu.util.DBUtil;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background job that recomputes {@code comment_count} and {@code collection_count} from the
+ * source tables and rewrites only the rows that drifted. It walks the resource table in id ranges
+ * so each UPDATE stays short and does not hold locks across the whole catalog.
+ * <p>
+ * The same pass repairs the thread columns on root comments ({@link ThreadAggregates}), walking
+ * the comment table the same way.
+ */
+public class CounterReconciler {
+    private static final String[][] COUNTERS = {
+            {"comment_count", "comment"},
+            {"collection_count", "collection"}
+    };
+
+    private static ScheduledExecutorService scheduler;
+
+    public static synchronized void start() {
+        if (scheduler != null) return;
+        long interval = Math.max(1, AppConfig.getLong("counter.reconcileIntervalMinutes", 30));
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "counter-reconciler");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                int fixed = reconcileAll();
+                if (fixed > 0) {
+                    System.out.println("CounterReconciler: corrected " + fixed + " resource counters and comment threads");
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }, interval, interval, TimeUnit.MINUTES);
+    }
+
+    public static synchronized void stop() {
+        if (scheduler == null) return;
+        scheduler.shutdownNow();
+        scheduler = null;
+    }
+
+    /**
+     * Runs one full pass and returns the number of counter values that were corrected.
+     */
+    public static int reconcileAll() throws SQLException {
+        int batch = Math.max(50, AppConfig.getInt("counter.reconcileBatchSize", 500));
+        int fixed = 0;
+        try (Connection conn = DBUtil.getConnection()) {
+            int maxId;
+            try (PreparedStatement ps = conn.prepareStatement("SELECT COALESCE(MAX(id), 0) FROM resource");
+                 ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                maxId = rs.getInt(1);
+            }
+            for (int from = 1; from <= maxId; from += batch) {
+                int to = from + batch - 1;
+                for (String[] counter : COUNTERS) {
+                    fixed += reconcileRange(conn, counter[0], counter[1], from, to);
+                }
+            }
+
+            int maxCommentId;
+            try (PreparedStatement ps = conn.prepareStatement("SELECT COALESCE(MAX(id), 0) FROM comment");
+                 ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                maxCommentId = rs.getInt(1);
+            }
+            for (int from = 1; from <= maxCommentId; from += batch) {
+                int to = from + batch - 1;
+                fixed += reconcileThreads(conn, from, to);
+                fixed += reconcilePreviews(conn, from, to);
+            }
+        }
+        return fixed;
+    }
+
+    private static int reconcileRange(Connection conn, String column, String table, int from, int to) throws SQLException {
+        String sql = "UPDATE resource r " +
+                "LEFT JOIN (SELECT resource_id, COUNT(*) AS cnt FROM " + table +
+                " WHERE resource_id BETWEEN ? AND ? GROUP BY resource_id) s ON s.resource_id = r.id " +
+                "SET r." + column + " = COALESCE(s.cnt, 0) " +
+                "WHERE r.id BETWEEN ? AND ? AND r." + column + " <> COALESCE(s.cnt, 0)";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, from);
+            ps.setInt(2, to);
+            ps.setInt(3, from);
+            ps.setInt(4, to);
+            return ps.executeUpdate();
+        }
+    }
+
+    private static int reconcileThreads(Connection conn, int from, int to) throws SQLException {
+        String sql = "UPDATE comment r " +
+                "LEFT JOIN (SELECT root_id, COUNT(*) AS cnt, MAX(id) AS last_id FROM comment " +
+                "WHERE root_id BETWEEN ? AND ? AND id <> root_id GROUP BY root_id) s ON s.root_id = r.id " +
+                "LEFT JOIN comment l ON l.id = s.last_id " +
+                "SET r.reply_count = COALESCE(s.cnt, 0), r.last_reply_id = s.last_id, r.last_reply_time = l.create_time " +
+                "WHERE r.id BETWEEN ? AND ? AND r.parent_id IS NULL " +
+                "AND (r.reply_count <> COALESCE(s.cnt, 0) OR NOT (r.last_reply_id <=> s.last_id))";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, from);
+            ps.setInt(2, to);
+            ps.setInt(3, from);
+            ps.setInt(4, to);
+            return ps.executeUpdate();
+        }
+    }
+
+    private static int reconcilePreviews(Connection conn, int from, int to) throws SQLException {
+        String sql = "UPDATE comment r " +
+                "LEFT JOIN (SELECT parent_id, GROUP_CONCAT(id ORDER BY create_time, id SEPARATOR ',') AS ids FROM (" +
+                "SELECT id, parent_id, create_time, " +
+                "ROW_NUMBER() OVER (PARTITION BY parent_id ORDER BY create_time, id) AS rn " +
+                "FROM comment WHERE parent_id BETWEEN ? AND ?) t WHERE t.rn <= ? GROUP BY parent_id) p ON p.parent_id = r.id " +
+                "SET r.preview_reply_ids = p.ids " +
+                "WHERE r.id BETWEEN ? AND ? AND r.parent_id IS NULL AND NOT (r.preview_reply_ids <=> p.ids)";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, from);
+            ps.setInt(2, to);
+            ps.setInt(3, ThreadAggregates.PREVIEW_REPLIES);
+            ps.setInt(4, from);
+            ps.setInt(5, to);
+            return ps.executeUpdate();
+        }
+    }
+}
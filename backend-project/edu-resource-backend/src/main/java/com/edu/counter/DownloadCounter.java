@@ -0,0 +1,190 @@
+package com.edu.counter;
+
+import com.edu.util.AppConfig;
+import com.edu.util.DBUtil;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write-behind accumulator for {@code resource.download_count}.
+ * <p>
+ * Downloads only bump a per-resource {@link LongAdder}; a background thread drains the adders every
+ * {@code download.flushIntervalMillis} and applies the deltas in one batched transaction, so a
+ * popular resource no longer takes a row lock per download.
+ * <p>
+ * Loss bound: a flush that fails puts its deltas back and is retried on the next tick, and
+ * {@link #stop()} flushes on a clean shutdown. Only a crash of the JVM loses counts, and then at most
+ * the increments recorded since the last successful flush, i.e. one flush interval's worth of
+ * downloads (plus whatever was pending while the database was unreachable).
+ */
+public class DownloadCounter {
+
+    interface Flusher {
+        void flush(Map<Integer, Long> deltas) throws SQLException;
+    }
+
+    private static final int STATS_TOP_N = 100;
+    private static final DownloadCounter INSTANCE = new DownloadCounter(DownloadCounter::writeToDatabase);
+
+    private final Flusher flusher;
+    private final ConcurrentHashMap<Integer, LongAdder> pending = new ConcurrentHashMap<>();
+    private final AtomicLong flushedTotal = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+    private volatile long lastFlushAt = 0;
+    private volatile String lastError = null;
+    private ScheduledExecutorService scheduler;
+    private long flushIntervalMillis;
+
+    DownloadCounter(Flusher flusher) {
+        this.flusher = flusher;
+    }
+
+    public static DownloadCounter get() {
+        return INSTANCE;
+    }
+
+    public void increment(int resourceId) {
+        pending.computeIfAbsent(resourceId, k -> new LongAdder()).increment();
+    }
+
+    /**
+     * Downloads recorded for the resource but not yet written to MySQL.
+     */
+    public long pendingFor(int resourceId) {
+        LongAdder adder = pending.get(resourceId);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    /**
+     * Drains every pending delta and hands them to the flusher in one call. On failure the deltas are
+     * added back so nothing is dropped. Returns the number of downloads written.
+     */
+    public synchronized long flush() {
+        // sumThenReset swaps each cell to zero atomically, so increments racing with the drain stay
+        // in the adder and are picked up by the next flush
+        Map<Integer, Long> batch = new TreeMap<>();
+        for (Map.Entry<Integer, LongAdder> e : pending.entrySet()) {
+            long delta = e.getValue().sumThenReset();
+            if (delta != 0) batch.put(e.getKey(), delta);
+        }
+        if (batch.isEmpty()) return 0;
+
+        try {
+            flusher.flush(batch);
+        } catch (Exception e) {
+            for (Map.Entry<Integer, Long> d : batch.entrySet()) {
+                pending.computeIfAbsent(d.getKey(), k -> new LongAdder()).add(d.getValue());
+            }
+            failedFlushes.incrementAndGet();
+            lastError = e.getMessage();
+            e.printStackTrace();
+            return 0;
+        }
+
+        long written = 0;
+        for (long v : batch.values()) written += v;
+        flushedTotal.addAndGet(written);
+        lastFlushAt = System.currentTimeMillis();
+        lastError = null;
+        // Adders are kept after draining: removing one could drop an increment from a thread that
+        // already holds it. The map is bounded by the number of resources.
+        return written;
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) return;
+        flushIntervalMillis = Math.max(200, AppConfig.getLong("download.flushIntervalMillis", 5000));
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "download-counter-flush");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the flush thread and writes whatever is still pending.
+     */
+    public void stop() {
+        ScheduledExecutorService s;
+        synchronized (this) {
+            s = scheduler;
+            scheduler = null;
+        }
+        if (s != null) {
+            s.shutdown();
+            try {
+                s.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+
+    /**
+     * Snapshot for the admin view; lists the resources with the largest pending deltas.
+     */
+    public Map<String, Object> getStats() {
+        List<Map.Entry<Integer, Long>> deltas = new ArrayList<>();
+        long total = 0;
+        for (Map.Entry<Integer, LongAdder> e : pending.entrySet()) {
+            long v = e.getValue().sum();
+            if (v != 0) {
+                deltas.add(Map.entry(e.getKey(), v));
+                total += v;
+            }
+        }
+        deltas.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        List<Map<String, Object>> top = new ArrayList<>();
+        for (Map.Entry<Integer, Long> d : deltas.subList(0, Math.min(STATS_TOP_N, deltas.size()))) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("resourceId", d.getKey());
+            row.put("delta", d.getValue());
+            top.add(row);
+        }
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("pendingResources", deltas.size());
+        stats.put("pendingTotal", total);
+        stats.put("pending", top);
+        stats.put("flushIntervalMillis", flushIntervalMillis);
+        stats.put("lastFlushAt", lastFlushAt);
+        stats.put("flushedTotal", flushedTotal.get());
+        stats.put("failedFlushes", failedFlushes.get());
+        stats.put("lastError", lastError);
+        return stats;
+    }
+
+    private static void writeToDatabase(Map<Integer, Long> deltas) throws SQLException {
+        try (Connection conn = DBUtil.getConnection()) {
+            conn.setAutoCommit(false);
+            // ids are applied in ascending order so concurrent writers lock rows in the same order
+            try (PreparedStatement ps = conn.prepareStatement("UPDATE resource SET download_count = download_count + ? WHERE id = ?")) {
+                for (Map.Entry<Integer, Long> d : deltas.entrySet()) {
+                    ps.setLong(1, d.getValue());
+                    ps.setInt(2, d.getKey());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+}
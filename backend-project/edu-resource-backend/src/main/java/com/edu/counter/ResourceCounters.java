@@ -0,0 +1,73 @@
+package com.edu.counter;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maintains the denormalized counters on {@code resource} so listings never have to count
+ * {@code comment} or {@code collection} rows.
+ * <p>
+ * Writers call these inside the transaction that inserts or deletes the underlying row, so the
+ * counter commits or rolls back together with it. {@link CounterReconciler} periodically
+ * recomputes the counters from the source tables to repair any drift.
+ */
+public class ResourceCounters {
+
+    public static void adjustComments(Connection conn, int resourceId, int delta) throws SQLException {
+        adjust(conn, "comment_count", resourceId, delta);
+    }
+
+    public static void adjustCollections(Connection conn, int resourceId, int delta) throws SQLException {
+        adjust(conn, "collection_count", resourceId, delta);
+    }
+
+    /**
+     * Exact recount for one resource. Used where the number of affected rows is not known up front,
+     * e.g. deleting a comment also removes its replies through the foreign key cascade.
+     */
+    public static int recountComments(Connection conn, int resourceId) throws SQLException {
+        return recount(conn, "comment_count", "comment", resourceId);
+    }
+
+    public static int recountCollections(Connection conn, int resourceId) throws SQLException {
+        return recount(conn, "collection_count", "collection", resourceId);
+    }
+
+    public static int getCollectionCount(Connection conn, int resourceId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT collection_count FROM resource WHERE id = ?")) {
+            ps.setInt(1, resourceId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    private static void adjust(Connection conn, String column, int resourceId, int delta) throws SQLException {
+        if (delta == 0) return;
+        String sql = "UPDATE resource SET " + column + " = GREATEST(" + column + " + ?, 0) WHERE id = ?";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, delta);
+            ps.setInt(2, resourceId);
+            ps.executeUpdate();
+        }
+    }
+
+    private static int recount(Connection conn, String column, String table, int resourceId) throws SQLException {
+        int cnt;
+        try (PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) FROM " + table + " WHERE resource_id = ?")) {
+            ps.setInt(1, resourceId);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                cnt = rs.getInt(1);
+            }
+        }
+        try (PreparedStatement ps = conn.prepareStatement("UPDATE resource SET " + column + " = ? WHERE id = ?")) {
+            ps.setInt(1, cnt);
+            ps.setInt(2, resourceId);
+            ps.executeUpdate();
+        }
+        return cnt;
+    }
+}
@@ -0,0 +1,10 @@
+package com.edu.dto;
+
+/**
+ * One chat message as returned by the history, sync and send endpoints and pushed over
+ * {@code /ws/chat}.
+ */
+public record ChatMessageRow(long id, long conversationId, int senderId, String msgType, String text,
+                             String mediaUrl, String thumbUrl, String mimeType, Long fileSize,
+                             Integer width, Integer height, String status, Long createTime,
+                             UserSummary sender) {}
@@ -0,0 +1,5 @@
+package com.edu.dto;
+
+import java.util.List;
+
+public record ChatSyncUpdate(long conversationId, List<ChatMessageRow> list, boolean hasMore) {}
@@ -0,0 +1,7 @@
+package com.edu.dto;
+
+/**
+ * An image attached to a comment; the URLs and dimensions are only set once it is {@code ready}.
+ */
+public record CommentImageRow(long id, String status, String url, String thumbUrl, String mimeType,
+                              Long fileSize, Integer width, Integer height) {}
@@ -0,0 +1,64 @@
+package com.edu.dto;
+
+import java.util.List;
+
+/**
+ * A comment in the v2 comment API. Root comments carry {@code replyCount}, {@code lastReplyTime}
+ * and {@code previewReplies}; replies carry {@code replyTo}.
+ */
+public class CommentRow {
+    public record ReplyTo(int userId, String nickname, String username) {}
+
+    private final int id;
+    private final int resourceId;
+    private final int userId;
+    private final String content;
+    private final Integer parentId;
+    private final long createTime;
+    private final UserSummary user;
+    private final ReplyTo replyTo;
+    private Integer replyCount;
+    private Long lastReplyTime;
+    private List<CommentRow> previewReplies;
+    private List<CommentImageRow> images;
+
+    public CommentRow(int id, int resourceId, int userId, String content, Integer parentId, long createTime,
+                      UserSummary user, ReplyTo replyTo) {
+        this.id = id;
+        this.resourceId = resourceId;
+        this.userId = userId;
+        this.content = content;
+        this.parentId = parentId;
+        this.createTime = createTime;
+        this.user = user;
+        this.replyTo = replyTo;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public long getCreateTime() {
+        return createTime;
+    }
+
+    public void setReplyCount(Integer replyCount) {
+        this.replyCount = replyCount;
+    }
+
+    public void setLastReplyTime(Long lastReplyTime) {
+        this.lastReplyTime = lastReplyTime;
+    }
+
+    public List<CommentRow> getPreviewReplies() {
+        return previewReplies;
+    }
+
+    public void setPreviewReplies(List<CommentRow> previewReplies) {
+        this.previewReplies = previewReplies;
+    }
+
+    public void setImages(List<CommentImageRow> images) {
+        this.images = images;
+    }
+}
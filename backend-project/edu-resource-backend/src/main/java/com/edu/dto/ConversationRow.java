@@ -0,0 +1,8 @@
+package com.edu.dto;
+
+/**
+ * A conversation in the list ({@code otherUser} set) or a sync high-water mark
+ * ({@code lastMessageId} set).
+ */
+public record ConversationRow(long id, Long lastMessageId, String lastMessagePreview, Long lastMessageTime,
+                              UserSummary otherUser) {}
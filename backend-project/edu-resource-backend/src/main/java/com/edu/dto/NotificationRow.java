@@ -0,0 +1,3 @@
+package com.edu.dto;
+
+public record NotificationRow(int id, String title, String content, String type, boolean isRead, long createTime) {}
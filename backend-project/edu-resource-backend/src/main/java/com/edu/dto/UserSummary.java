@@ -0,0 +1,6 @@
+package com.edu.dto;
+
+/**
+ * The author/sender block embedded in comment, chat and conversation rows.
+ */
+public record UserSummary(int id, String username, String nickname, String avatar) {}
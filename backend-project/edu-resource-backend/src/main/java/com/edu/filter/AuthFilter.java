@@ -0,0 +1,56 @@
+package com.edu.filter;
+
+import com.edu.auth.Principal;
+import com.edu.auth.TokenVerifier;
+import com.edu.model.ApiResponse;
+import com.edu.util.JsonUtil;
+
+import jakarta.servlet.*;
+import jakarta.servlet.annotation.WebFilter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Verifies the {@code Authorization: Bearer} token once per request and exposes the caller as the
+ * {@link #PRINCIPAL} request attribute. It does not reject anything itself: public endpoints simply
+ * see no principal, and servlets that need a user call {@link #requireUserId}.
+ */
+@WebFilter(urlPatterns = "/api/*", asyncSupported = true)
+public class AuthFilter implements Filter {
+    public static final String PRINCIPAL = "com.edu.auth.principal";
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        if (request instanceof HttpServletRequest req) {
+            String header = req.getHeader("Authorization");
+            if (header != null && header.startsWith("Bearer ")) {
+                Principal p = TokenVerifier.get().verify(header.substring(7).trim());
+                if (p != null) {
+                    req.setAttribute(PRINCIPAL, p);
+                }
+            }
+        }
+        chain.doFilter(request, response);
+    }
+
+    /**
+     * The authenticated caller, or {@code null} for anonymous requests.
+     */
+    public static Principal principal(HttpServletRequest req) {
+        return (Principal) req.getAttribute(PRINCIPAL);
+    }
+
+    /**
+     * Returns the caller's user id, or sends the 401 response and returns {@code null}.
+     */
+    public static Integer requireUserId(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        Principal p = principal(req);
+        if (p == null) {
+            JsonUtil.sendJsonResponse(resp, ApiResponse.error(401, "Unauthorized"));
+            return null;
+        }
+        return p.userId();
+    }
+}
@@ -0,0 +1,64 @@
+package com.edu.listener;
+
+import com.edu.chat.ChatBroker;
+import com.edu.counter.CounterReconciler;
+import com.edu.counter.DownloadCounter;
+import com.edu.media.MediaPipeline;
+import com.edu.notify.NotificationHub;
+import com.edu.notify.UnreadCounters;
+import com.edu.recommend.RecommendationService;
+import com.edu.recommend.RelatedResources;
+import com.edu.search.ResourceSearchIndex;
+import com.edu.storage.BlobGarbageCollector;
+import com.edu.util.DBUtil;
+import com.edu.util.SensitiveWordUtil;
+
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import jakarta.servlet.annotation.WebListener;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+@WebListener
+public class AppLifecycleListener implements ServletContextListener {
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        // Build the search index in the background so the first keyword query doesn't pay for it
+        Thread warmup = new Thread(() -> {
+            try (Connection conn = DBUtil.getConnection()) {
+                ResourceSearchIndex.get().load(conn);
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }, "search-index-warmup");
+        warmup.setDaemon(true);
+        warmup.start();
+
+        CounterReconciler.start();
+        DownloadCounter.get().start();
+        BlobGarbageCollector.start();
+        NotificationHub.get().start();
+        UnreadCounters.get().start();
+        ChatBroker.get().start();
+        MediaPipeline.get().start();
+        SensitiveWordUtil.start();
+        RecommendationService.get().start();
+        RelatedResources.get().start();
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        MediaPipeline.get().stop();
+        SensitiveWordUtil.stop();
+        RelatedResources.get().stop();
+        RecommendationService.get().stop();
+        NotificationHub.get().stop();
+        UnreadCounters.get().stop();
+        ChatBroker.get().stop();
+        CounterReconciler.stop();
+        BlobGarbageCollector.stop();
+        // flush buffered download counts while the pool is still open
+        DownloadCounter.get().stop();
+        DBUtil.shutdown();
+    }
+}
@@ -0,0 +1,311 @@
+package com.edu.media;
+
+import com.edu.chat.ChatBroker;
+import com.edu.storage.BlobImages;
+import com.edu.storage.BlobStore;
+import com.edu.storage.Storage;
+import com.edu.util.AppConfig;
+import com.edu.util.DBUtil;
+import com.edu.util.ImageProcessor;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Re-encodes uploaded comment and chat images off the request's transaction.
+ * <p>
+ * The upload request only stages the raw file ({@link #stage}) and commits its row with
+ * {@code status = 'processing'}; after the commit it hands the row to {@link #submit}. A bounded
+ * worker pool then decodes and resizes the image, stores it as a blob, and fills in the row in a short
+ * transaction of its own. Clients see the final URLs by polling the row (comment images) or through a
+ * {@code messageUpdated} push (chat). Uploads are turned away while the queue ({@code media.queueSize})
+ * is full ({@link #accepting}); a job that still overflows it runs on the submitting thread, so jobs
+ * must be submitted after the request has returned its own connection.
+ * <p>
+ * Staged files are named after their row, so rows left in {@code processing} by a restart are picked
+ * up again on {@link #start}; rows whose staged file is gone are marked {@code failed}.
+ */
+public class MediaPipeline {
+    public static final String PROCESSING = "processing";
+    public static final String READY = "ready";
+    public static final String FAILED = "failed";
+
+    public enum Kind {
+        COMMENT_IMAGE("comment_image"),
+        CHAT_IMAGE("chat_message");
+
+        private final String table;
+
+        Kind(String table) {
+            this.table = table;
+        }
+    }
+
+    public record Job(Kind kind, long rowId, File staged) {}
+
+    private static final MediaPipeline INSTANCE = new MediaPipeline();
+
+    private ThreadPoolExecutor pool;
+    // rows being processed right now, as "<kind>:<id>"
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    public static MediaPipeline get() {
+        return INSTANCE;
+    }
+
+    public synchronized void start() {
+        if (pool != null) return;
+        int workers = Math.max(1, AppConfig.getInt("media.workers", 2));
+        int queueSize = Math.max(1, AppConfig.getInt("media.queueSize", 200));
+        // listed before uploads are accepted, so rows submitted from now on are never mistaken for
+        // leftovers of a previous run
+        Map<Kind, List<Long>> leftovers = pendingRows();
+        AtomicInteger seq = new AtomicInteger();
+        pool = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), r -> {
+            Thread t = new Thread(r, "media-worker-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+        pool.execute(() -> recover(leftovers));
+    }
+
+    public synchronized void stop() {
+        if (pool == null) return;
+        // unfinished rows keep their staged files and are resumed on the next start
+        pool.shutdownNow();
+        pool = null;
+    }
+
+    /**
+     * Whether {@code jobs} more uploads can be queued now.
+     */
+    public synchronized boolean accepting(int jobs) {
+        return pool == null || pool.getQueue().remainingCapacity() >= jobs;
+    }
+
+    /**
+     * Creates a local file to write a raw upload to; pass it to {@link #submit} once the row exists.
+     */
+    public File stage() throws IOException {
+        File dir = stagingDir();
+        dir.mkdirs();
+        return File.createTempFile("upload_", ".tmp", dir);
+    }
+
+    /**
+     * Queues committed {@code processing} rows. The staged files are taken over by the pipeline.
+     */
+    public void submit(List<Job> jobs) {
+        for (Job job : jobs) {
+            File named = stagedFile(job.kind(), job.rowId());
+            File upload = job.staged().renameTo(named) ? named : job.staged();
+            ThreadPoolExecutor p;
+            synchronized (this) {
+                p = pool;
+            }
+            if (p == null) {
+                // not started (e.g. during shutdown); the row is resumed on the next start
+                continue;
+            }
+            p.execute(() -> process(job.kind(), job.rowId(), upload));
+        }
+    }
+
+    /**
+     * Deletes staged files of jobs that were never submitted (the upload request failed).
+     */
+    public static void discard(List<Job> jobs) {
+        for (Job job : jobs) {
+            job.staged().delete();
+        }
+    }
+
+    void process(Kind kind, long rowId, File upload) {
+        // recovery at startup can meet a row that was just submitted; only one run may own it
+        String claim = kind.name() + ":" + rowId;
+        if (!inFlight.add(claim)) return;
+        BlobImages.Prepared prepared = null;
+        try {
+            String mime = ImageProcessor.detectImageMimeType(upload);
+            try {
+                prepared = BlobImages.prepare(upload, mime);
+            } catch (IOException | RuntimeException e) {
+                // undecodable or over the pixel limit
+                markFailed(kind, rowId);
+                return;
+            }
+            if (finish(kind, rowId, prepared)) {
+                prepared = null;
+            }
+        } catch (IOException | SQLException | RuntimeException e) {
+            e.printStackTrace();
+            markFailed(kind, rowId);
+        } finally {
+            BlobImages.discard(prepared);
+            upload.delete();
+            inFlight.remove(claim);
+        }
+    }
+
+    /**
+     * Attaches the blob to the row. Returns {@code false} if the row was deleted meanwhile.
+     */
+    private boolean finish(Kind kind, long rowId, BlobImages.Prepared prepared) throws SQLException, IOException {
+        BlobImages.StoredImage stored;
+        long conversationId = 0;
+        try (Connection conn = DBUtil.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                if (kind == Kind.CHAT_IMAGE) {
+                    conversationId = lockChatMessage(conn, rowId);
+                    if (conversationId == 0) {
+                        conn.rollback();
+                        return false;
+                    }
+                } else if (!lockCommentImage(conn, rowId)) {
+                    conn.rollback();
+                    return false;
+                }
+                stored = BlobImages.attach(conn, prepared);
+                ImageProcessor.ProcessedImage image = stored.image();
+                String sql = kind == Kind.CHAT_IMAGE
+                        ? "UPDATE chat_message SET media_file_name = ?, media_file_path = ?, media_mime_type = ?, media_file_size = ?, width = ?, height = ?, thumb_file_name = ?, status = '" + READY + "' WHERE id = ?"
+                        : "UPDATE comment_image SET file_name = ?, file_path = ?, mime_type = ?, file_size = ?, width = ?, height = ?, status = '" + READY + "' WHERE id = ?";
+                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                    int idx = 1;
+                    ps.setString(idx++, stored.fileName());
+                    ps.setString(idx++, BlobStore.ref(stored.hash()));
+                    ps.setString(idx++, image.mimeType());
+                    ps.setLong(idx++, image.fileSize());
+                    ps.setInt(idx++, image.width());
+                    ps.setInt(idx++, image.height());
+                    if (kind == Kind.CHAT_IMAGE) ps.setString(idx++, stored.fileName());
+                    ps.setLong(idx, rowId);
+                    ps.executeUpdate();
+                }
+                conn.commit();
+            } catch (SQLException | IOException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+
+        if (kind == Kind.CHAT_IMAGE) {
+            Map<String, Object> update = new HashMap<>();
+            update.put("id", rowId);
+            update.put("conversationId", conversationId);
+            update.put("status", READY);
+            update.put("mediaUrl", "/api/chat/media/" + stored.fileName());
+            update.put("thumbUrl", "/api/chat/media/thumb/" + stored.fileName());
+            update.put("mimeType", stored.image().mimeType());
+            update.put("fileSize", stored.image().fileSize());
+            update.put("width", stored.image().width());
+            update.put("height", stored.image().height());
+            ChatBroker.get().messageUpdated(conversationId, update);
+        }
+        return true;
+    }
+
+    // row locks make a concurrent delete wait, so a deleted row never ends up holding a blob reference
+    private long lockChatMessage(Connection conn, long rowId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT conversation_id FROM chat_message WHERE id = ? AND status = '" + PROCESSING + "' FOR UPDATE")) {
+            ps.setLong(1, rowId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    private boolean lockCommentImage(Connection conn, long rowId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT 1 FROM comment_image WHERE id = ? AND status = '" + PROCESSING + "' FOR UPDATE")) {
+            ps.setLong(1, rowId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private void markFailed(Kind kind, long rowId) {
+        long conversationId = 0;
+        try (Connection conn = DBUtil.getConnection()) {
+            try (PreparedStatement ps = conn.prepareStatement("UPDATE " + kind.table + " SET status = '" + FAILED + "' WHERE id = ? AND status = '" + PROCESSING + "'")) {
+                ps.setLong(1, rowId);
+                if (ps.executeUpdate() == 0) return;
+            }
+            if (kind == Kind.CHAT_IMAGE) {
+                try (PreparedStatement ps = conn.prepareStatement("SELECT conversation_id FROM chat_message WHERE id = ?")) {
+                    ps.setLong(1, rowId);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (rs.next()) conversationId = rs.getLong(1);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return;
+        }
+        if (conversationId != 0) {
+            Map<String, Object> update = new HashMap<>();
+            update.put("id", rowId);
+            update.put("conversationId", conversationId);
+            update.put("status", FAILED);
+            ChatBroker.get().messageUpdated(conversationId, update);
+        }
+    }
+
+    private static Map<Kind, List<Long>> pendingRows() {
+        Map<Kind, List<Long>> pending = new EnumMap<>(Kind.class);
+        for (Kind kind : Kind.values()) {
+            List<Long> ids = new ArrayList<>();
+            try (Connection conn = DBUtil.getConnection();
+                 PreparedStatement ps = conn.prepareStatement("SELECT id FROM " + kind.table + " WHERE status = '" + PROCESSING + "'");
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getLong(1));
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            pending.put(kind, ids);
+        }
+        return pending;
+    }
+
+    private void recover(Map<Kind, List<Long>> leftovers) {
+        for (Map.Entry<Kind, List<Long>> e : leftovers.entrySet()) {
+            Kind kind = e.getKey();
+            for (Long id : e.getValue()) {
+                File staged = stagedFile(kind, id);
+                if (staged.exists()) {
+                    process(kind, id, staged);
+                } else {
+                    markFailed(kind, id);
+                }
+            }
+        }
+    }
+
+    private static File stagingDir() {
+        return new File(Storage.workDir(), "media");
+    }
+
+    private static File stagedFile(Kind kind, long rowId) {
+        return new File(stagingDir(), kind.name().toLowerCase() + "-" + rowId + ".upload");
+    }
+}
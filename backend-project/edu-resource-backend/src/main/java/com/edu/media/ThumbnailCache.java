@@ -0,0 +1,167 @@
+package com.edu.media;
+
+import com.edu.storage.Storage;
+import com.edu.util.AppConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resized images generated on demand, kept as files under {@code storage.workDir/thumbs}.
+ * <p>
+ * Entries are evicted least-recently-used first once their total size exceeds
+ * {@code image.thumbCacheMB}. Concurrent requests for a missing entry share one render. The index is
+ * rebuilt from the directory on startup, ordered by file modification time.
+ */
+public class ThumbnailCache {
+
+    public interface Renderer {
+        /** Writes the image to {@code output}. */
+        void render(File output) throws IOException;
+    }
+
+    private static final ThumbnailCache INSTANCE = new ThumbnailCache(new File(Storage.workDir(), "thumbs"),
+            Math.max(1, AppConfig.getLong("image.thumbCacheMB", 512)) * 1024 * 1024);
+
+    private final File dir;
+    private final long maxBytes;
+    // file name -> size, in access order; guarded by itself
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(256, 0.75f, true);
+    private final Map<String, CompletableFuture<File>> inflight = new ConcurrentHashMap<>();
+    private long totalBytes;
+
+    ThumbnailCache(File dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        load();
+    }
+
+    public static ThumbnailCache get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the cached file for {@code key}, rendering it first if needed. The key must change
+     * whenever the rendered content would, e.g. by including the source's modification time.
+     * Eviction may delete the file at any time; open it promptly and call again if it is gone.
+     */
+    public File get(String key, Renderer renderer) throws IOException {
+        String name = fileName(key);
+        File file = new File(dir, name);
+        synchronized (index) {
+            if (index.get(name) != null && file.isFile()) return file;
+        }
+
+        CompletableFuture<File> mine = new CompletableFuture<>();
+        CompletableFuture<File> running = inflight.putIfAbsent(name, mine);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof IOException io) throw io;
+                throw e;
+            }
+        }
+
+        try {
+            File rendered = render(name, file, renderer);
+            mine.complete(rendered);
+            return rendered;
+        } catch (IOException | RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inflight.remove(name);
+        }
+    }
+
+    public long totalBytes() {
+        synchronized (index) {
+            return totalBytes;
+        }
+    }
+
+    public int size() {
+        synchronized (index) {
+            return index.size();
+        }
+    }
+
+    private File render(String name, File file, Renderer renderer) throws IOException {
+        // another thread may have finished this entry between the index check and claiming it
+        synchronized (index) {
+            if (index.get(name) != null && file.isFile()) return file;
+        }
+        dir.mkdirs();
+        File tmp = File.createTempFile("thumb_", ".tmp", dir);
+        try {
+            renderer.render(tmp);
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            tmp.delete();
+        }
+        synchronized (index) {
+            Long previous = index.put(name, file.length());
+            if (previous != null) totalBytes -= previous;
+            totalBytes += file.length();
+            evict(name);
+        }
+        return file;
+    }
+
+    // caller holds the index lock
+    private void evict(String keep) {
+        Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            if (eldest.getKey().equals(keep)) continue;
+            // a response already streaming the file keeps its open handle
+            new File(dir, eldest.getKey()).delete();
+            totalBytes -= eldest.getValue();
+            it.remove();
+        }
+    }
+
+    private void load() {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        synchronized (index) {
+            for (File f : files) {
+                if (!f.isFile()) continue;
+                if (f.getName().startsWith("thumb_")) {
+                    // left over from a render interrupted by a restart
+                    f.delete();
+                    continue;
+                }
+                index.put(f.getName(), f.length());
+                totalBytes += f.length();
+            }
+            evict(null);
+        }
+    }
+
+    static String fileName(String key) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] digest = md.digest(key.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest) + ".jpg";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -9,6 +9,7 @@ public class PageResult<T> implements Serializable {
     private Integer page;
     private Integer pageSize;
     private Integer totalPages;
+    private String nextCursor;
 
     public PageResult() {
     }
@@ -18,7 +19,8 @@ public class PageResult<T> implements Serializable {
         this.total = total;
         this.page = page;
         this.pageSize = pageSize;
-        this.totalPages = (int) Math.ceil((double) total / pageSize);
+        // cursor pages after the first leave the total out
+        this.totalPages = total == null ? null : (int) Math.ceil((double) total / pageSize);
     }
 
     public List<T> getList() {
@@ -60,4 +62,12 @@ public class PageResult<T> implements Serializable {
     public void setTotalPages(Integer totalPages) {
         this.totalPages = totalPages;
     }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
 }
@@ -0,0 +1,6 @@
+package com.edu.notify;
+
+/**
+ * A notification row that was inserted, as pushed to the recipient's open streams.
+ */
+public record NotificationEvent(int userId, String title, String content, String type) {}
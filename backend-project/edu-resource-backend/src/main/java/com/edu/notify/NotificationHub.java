@@ -0,0 +1,202 @@
+package com.edu.notify;
+
+import com.edu.util.AppConfig;
+import com.edu.util.JsonUtil;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process publish/subscribe bus behind {@code /api/notification/stream}.
+ * <p>
+ * Each open stream registers a {@link Sink} for its user. Code that creates or reads notifications
+ * publishes the change after committing it ({@link #notificationCreated}, {@link #unreadChanged}),
+ * and the hub pushes it to that user's open streams. An idle stream costs no thread and no query:
+ * the unread count (from {@link UnreadCounters}) is only looked up when something changed for a user
+ * who is listening.
+ * <p>
+ * Frames are written on a single dispatcher thread, so per-user events arrive in publish order.
+ * A heartbeat comment every {@code notification.heartbeatSeconds} keeps proxies from closing idle
+ * streams and finds dead connections.
+ */
+public class NotificationHub {
+
+    /**
+     * One open event stream. {@link #send} must not block; a client that can't keep up is dropped
+     * (by throwing) and reconnects.
+     */
+    public interface Sink {
+        void send(String frame) throws IOException;
+
+        void close();
+    }
+
+    interface UnreadSource {
+        int unread(int userId) throws SQLException;
+    }
+
+    private static final String PING = ": ping\n\n";
+    // tells EventSource how soon to reconnect after a timeout or a dropped stream
+    private static final String RETRY = "retry: 3000\n\n";
+    private static final NotificationHub INSTANCE = new NotificationHub(userId -> UnreadCounters.get().get(userId), null,
+            Math.max(1, AppConfig.getInt("notification.maxStreamsPerUser", 5)));
+
+    private final Map<Integer, List<Sink>> subscribers = new ConcurrentHashMap<>();
+    private final UnreadSource unreadSource;
+    private final int maxStreamsPerUser;
+    private volatile Executor dispatcher;
+    private ScheduledExecutorService scheduler;
+
+    NotificationHub(UnreadSource unreadSource, Executor dispatcher, int maxStreamsPerUser) {
+        this.unreadSource = unreadSource;
+        this.dispatcher = dispatcher;
+        this.maxStreamsPerUser = maxStreamsPerUser;
+    }
+
+    public static NotificationHub get() {
+        return INSTANCE;
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) return;
+        long heartbeat = Math.max(5, AppConfig.getLong("notification.heartbeatSeconds", 20));
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "notification-hub");
+            t.setDaemon(true);
+            return t;
+        });
+        dispatcher = scheduler;
+        scheduler.scheduleWithFixedDelay(this::heartbeat, heartbeat, heartbeat, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler == null) return;
+        scheduler.shutdownNow();
+        scheduler = null;
+        dispatcher = null;
+        for (List<Sink> sinks : subscribers.values()) {
+            for (Sink sink : sinks) {
+                sink.close();
+            }
+        }
+        subscribers.clear();
+    }
+
+    /**
+     * Registers an open stream and sends it the current unread count. Beyond
+     * {@code notification.maxStreamsPerUser} the user's oldest stream is closed.
+     */
+    public void subscribe(int userId, Sink sink) {
+        // added inside compute so a concurrent unsubscribe can't drop the list we are adding to
+        List<Sink> sinks = subscribers.compute(userId, (k, list) -> {
+            if (list == null) list = new CopyOnWriteArrayList<>();
+            list.add(sink);
+            return list;
+        });
+        while (sinks.size() > maxStreamsPerUser) {
+            Sink oldest = sinks.remove(0);
+            oldest.close();
+        }
+        dispatch(() -> {
+            try {
+                write(userId, sink, RETRY + unreadFrame(unreadSource.unread(userId)));
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    public void unsubscribe(int userId, Sink sink) {
+        subscribers.computeIfPresent(userId, (k, sinks) -> {
+            sinks.remove(sink);
+            return sinks.isEmpty() ? null : sinks;
+        });
+    }
+
+    /**
+     * Publishes a notification once the transaction that inserted it has committed.
+     */
+    public void notificationCreated(NotificationEvent event) {
+        if (!subscribers.containsKey(event.userId())) return;
+        Map<String, Object> n = new HashMap<>();
+        n.put("title", event.title());
+        n.put("content", event.content());
+        n.put("type", event.type());
+        String frame = "event: notification\ndata: " + JsonUtil.toJson(n) + "\n\n";
+        dispatch(() -> publishWithCount(event.userId(), frame));
+    }
+
+    /**
+     * Publishes that {@code userId}'s unread count changed, e.g. after notifications were read.
+     */
+    public void unreadChanged(int userId) {
+        if (!subscribers.containsKey(userId)) return;
+        dispatch(() -> publishWithCount(userId, ""));
+    }
+
+    public int subscriberCount() {
+        int n = 0;
+        for (List<Sink> sinks : subscribers.values()) {
+            n += sinks.size();
+        }
+        return n;
+    }
+
+    void heartbeat() {
+        for (Map.Entry<Integer, List<Sink>> e : subscribers.entrySet()) {
+            for (Sink sink : e.getValue()) {
+                write(e.getKey(), sink, PING);
+            }
+        }
+    }
+
+    private void publishWithCount(int userId, String frame) {
+        List<Sink> sinks = subscribers.get(userId);
+        if (sinks == null || sinks.isEmpty()) return;
+        String countFrame;
+        try {
+            countFrame = unreadFrame(unreadSource.unread(userId));
+        } catch (SQLException e) {
+            e.printStackTrace();
+            countFrame = "";
+        }
+        // one write per event, so a frame pair is never split by the slow-client check
+        String all = frame + countFrame;
+        if (all.isEmpty()) return;
+        for (Sink sink : sinks) {
+            write(userId, sink, all);
+        }
+    }
+
+    private void write(int userId, Sink sink, String frame) {
+        try {
+            sink.send(frame);
+        } catch (IOException e) {
+            unsubscribe(userId, sink);
+            sink.close();
+        }
+    }
+
+    private void dispatch(Runnable task) {
+        Executor d = dispatcher;
+        if (d == null) return;
+        try {
+            d.execute(task);
+        } catch (RuntimeException e) {
+            // shutting down
+        }
+    }
+
+    private static String unreadFrame(int unread) {
+        return "event: unreadCount\ndata: " + unread + "\n\n";
+    }
+}
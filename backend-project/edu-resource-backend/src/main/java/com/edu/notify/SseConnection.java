@@ -0,0 +1,87 @@
+package com.edu.notify;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * A server-sent-events stream on an async request. The output stream is put in non-blocking mode, so
+ * pushing to a client whose socket is full fails fast (and the hub drops it) instead of parking the
+ * dispatcher thread.
+ */
+public class SseConnection implements NotificationHub.Sink, AsyncListener, WriteListener {
+    private final AsyncContext ctx;
+    private final ServletOutputStream out;
+    private final Consumer<SseConnection> onClose;
+    private boolean closed;
+
+    public SseConnection(AsyncContext ctx, Consumer<SseConnection> onClose) throws IOException {
+        this.ctx = ctx;
+        this.onClose = onClose;
+        this.out = ctx.getResponse().getOutputStream();
+        ctx.addListener(this);
+        out.setWriteListener(this);
+    }
+
+    @Override
+    public synchronized void send(String frame) throws IOException {
+        if (closed) throw new IOException("Stream closed");
+        if (!out.isReady()) throw new IOException("Client is not keeping up");
+        out.write(frame.getBytes(StandardCharsets.UTF_8));
+        if (out.isReady()) {
+            out.flush();
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+        }
+        try {
+            ctx.complete();
+        } catch (IllegalStateException ignored) {
+            // already completed by the container
+        }
+        onClose.accept(this);
+    }
+
+    @Override
+    public void onWritePossible() {
+        // pending bytes are written by the container; nothing is queued here
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        close();
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+        synchronized (this) {
+            closed = true;
+        }
+        onClose.accept(this);
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+        // the client's EventSource reconnects on its own
+        close();
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+        close();
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+    }
+}
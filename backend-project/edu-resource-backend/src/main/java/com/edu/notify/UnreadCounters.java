@@ -0,0 +1,180 @@
+package com.edu.notify;
+
+import com.edu.util.AppConfig;
+import com.edu.util.DBUtil;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-user unread notification counts kept in memory, so the badge and the notification stream
+ * read a number instead of running {@code COUNT(*)}.
+ * <p>
+ * A user's count is loaded from the table on first use, then moved by the deltas that writers
+ * report after committing ({@link #added}, {@link #read}). Deltas commute, so a mark-all-read racing
+ * with a new notification still ends up right. The one gap is a delta for a row the initial load
+ * already saw; a background pass recounts loaded users every {@code notification.unreadReconcileMinutes}
+ * and forgets users not seen for {@code notification.unreadIdleMinutes}, which bounds both drift and
+ * memory.
+ */
+public class UnreadCounters {
+
+    interface Store {
+        int count(int userId) throws SQLException;
+
+        Map<Integer, Integer> counts(List<Integer> userIds) throws SQLException;
+    }
+
+    private static final int RECONCILE_BATCH = 500;
+    private static final UnreadCounters INSTANCE = new UnreadCounters(new DatabaseStore());
+
+    private static final class Entry {
+        final AtomicInteger count;
+        volatile long lastAccess = System.currentTimeMillis();
+
+        Entry(int count) {
+            this.count = new AtomicInteger(count);
+        }
+    }
+
+    private final Map<Integer, Entry> entries = new ConcurrentHashMap<>();
+    private final Store store;
+    private ScheduledExecutorService scheduler;
+
+    UnreadCounters(Store store) {
+        this.store = store;
+    }
+
+    public static UnreadCounters get() {
+        return INSTANCE;
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) return;
+        long interval = Math.max(1, AppConfig.getLong("notification.unreadReconcileMinutes", 5));
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "unread-counters");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                long idle = Math.max(1, AppConfig.getLong("notification.unreadIdleMinutes", 60)) * 60_000L;
+                int fixed = reconcile(System.currentTimeMillis() - idle);
+                if (fixed > 0) {
+                    System.out.println("UnreadCounters: corrected " + fixed + " unread counts");
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }, interval, interval, TimeUnit.MINUTES);
+    }
+
+    public synchronized void stop() {
+        if (scheduler == null) return;
+        scheduler.shutdownNow();
+        scheduler = null;
+    }
+
+    public int get(int userId) throws SQLException {
+        Entry e = entries.get(userId);
+        if (e == null) {
+            // loaded outside the map so a slow query doesn't block other users' updates
+            Entry fresh = new Entry(store.count(userId));
+            e = entries.putIfAbsent(userId, fresh);
+            if (e == null) e = fresh;
+        }
+        e.lastAccess = System.currentTimeMillis();
+        return Math.max(0, e.count.get());
+    }
+
+    /**
+     * Records {@code n} newly committed unread notifications. Users whose count isn't loaded are
+     * skipped; their next read loads the current value.
+     */
+    public void added(int userId, int n) {
+        Entry e = entries.get(userId);
+        if (e != null) e.count.addAndGet(n);
+    }
+
+    /**
+     * Records {@code n} notifications that were marked read (rows actually changed from unread).
+     */
+    public void read(int userId, int n) {
+        Entry e = entries.get(userId);
+        if (e != null) e.count.addAndGet(-n);
+    }
+
+    /**
+     * Drops entries not accessed since {@code idleBefore} and recounts the rest from the table.
+     * Returns the number of counts that were wrong.
+     */
+    int reconcile(long idleBefore) throws SQLException {
+        entries.entrySet().removeIf(en -> en.getValue().lastAccess < idleBefore);
+        List<Integer> users = new ArrayList<>(entries.keySet());
+        int fixed = 0;
+        for (int from = 0; from < users.size(); from += RECONCILE_BATCH) {
+            List<Integer> batch = users.subList(from, Math.min(users.size(), from + RECONCILE_BATCH));
+            Map<Integer, Integer> actual = store.counts(batch);
+            for (Integer userId : batch) {
+                Entry e = entries.get(userId);
+                if (e == null) continue;
+                int value = actual.getOrDefault(userId, 0);
+                if (e.count.getAndSet(value) != value) fixed++;
+            }
+        }
+        return fixed;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private static final class DatabaseStore implements Store {
+        @Override
+        public int count(int userId) throws SQLException {
+            try (Connection conn = DBUtil.getConnection();
+                 PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) FROM notification WHERE user_id = ? AND is_read = 0")) {
+                ps.setInt(1, userId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                    return rs.getInt(1);
+                }
+            }
+        }
+
+        @Override
+        public Map<Integer, Integer> counts(List<Integer> userIds) throws SQLException {
+            Map<Integer, Integer> counts = new HashMap<>();
+            if (userIds.isEmpty()) return counts;
+            StringBuilder in = new StringBuilder();
+            for (int i = 0; i < userIds.size(); i++) {
+                in.append(i == 0 ? "?" : ",?");
+            }
+            String sql = "SELECT user_id, COUNT(*) FROM notification WHERE is_read = 0 AND user_id IN (" + in + ") GROUP BY user_id";
+            try (Connection conn = DBUtil.getConnection();
+                 PreparedStatement ps = conn.prepareStatement(sql)) {
+                for (int i = 0; i < userIds.size(); i++) {
+                    ps.setInt(i + 1, userIds.get(i));
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        counts.put(rs.getInt(1), rs.getInt(2));
+                    }
+                }
+            }
+            return counts;
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package com.edu.recommend;
+
+import com.edu.util.AppConfig;
+import com.edu.util.DBUtil;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ranks public resources for {@code sortBy=recommend}.
+ * <p>
+ * Each user has an interest profile: weights per category and per uploader, built from the user's
+ * collections, comments and uploads the first time it is needed and then updated as the servlets
+ * report new events (including downloads, which have no table of their own). Candidates come from
+ * an in-memory catalog of public resources with their popularity counters, so a recommendation
+ * request scores everything in memory and only the rows of the requested page are read from MySQL.
+ * <p>
+ * The catalog is rebuilt from the resource table every {@code recommend.refreshMinutes}, which also
+ * corrects counters that drifted (e.g. deleted comments). Profiles are kept for the
+ * {@code recommend.maxProfiles} most recently active users.
+ */
+public class RecommendationService {
+    static final double COLLECT_WEIGHT = 3;
+    static final double COMMENT_WEIGHT = 2;
+    static final double UPLOAD_WEIGHT = 2;
+    static final double DOWNLOAD_WEIGHT = 1;
+    // share of the interest score that goes to the category; the rest goes to the uploader
+    private static final double CATEGORY_SHARE = 0.7;
+    private static final long RELOAD_RETRY_MS = 60_000;
+
+    private static final RecommendationService INSTANCE = new RecommendationService(
+            Math.max(100, AppConfig.getInt("recommend.maxProfiles", 10000)),
+            Math.min(100, Math.max(0, AppConfig.getInt("recommend.popularityPercent", 30))),
+            RecommendationService::loadProfile);
+
+    public record Page(List<Integer> ids, int total) {}
+
+    record Item(int id, String category, String fileType, int uploaderId, int downloads, int collections, int comments) {
+        double popularity() {
+            return Math.log1p(downloads + COLLECT_WEIGHT * collections + COMMENT_WEIGHT * comments);
+        }
+
+        Item withCounts(int downloads, int collections, int comments) {
+            return new Item(id, category, fileType, uploaderId, Math.max(0, downloads), Math.max(0, collections), Math.max(0, comments));
+        }
+    }
+
+    interface ProfileLoader {
+        Profile load(int userId) throws SQLException;
+    }
+
+    /**
+     * Interest weights of one user. Uploads count towards the category only, so a user's own
+     * uploader weight doesn't push their own resources up.
+     */
+    static final class Profile {
+        private final Map<String, Double> categories = new HashMap<>();
+        private final Map<Integer, Double> uploaders = new HashMap<>();
+        private double categoryTotal;
+        private double uploaderTotal;
+
+        synchronized void add(String category, Integer uploaderId, double weight) {
+            if (category != null && !category.isEmpty()) {
+                double w = Math.max(0, categories.getOrDefault(category, 0.0) + weight);
+                categoryTotal += w - categories.getOrDefault(category, 0.0);
+                if (w == 0) categories.remove(category); else categories.put(category, w);
+            }
+            if (uploaderId != null) {
+                double w = Math.max(0, uploaders.getOrDefault(uploaderId, 0.0) + weight);
+                uploaderTotal += w - uploaders.getOrDefault(uploaderId, 0.0);
+                if (w == 0) uploaders.remove(uploaderId); else uploaders.put(uploaderId, w);
+            }
+        }
+
+        /**
+         * Affinity in [0, 1]: the share of the user's activity in the item's category and uploader.
+         */
+        synchronized double affinity(Item item) {
+            double score = 0;
+            if (categoryTotal > 0 && item.category() != null) {
+                score += CATEGORY_SHARE * categories.getOrDefault(item.category(), 0.0) / categoryTotal;
+            }
+            if (uploaderTotal > 0) {
+                score += (1 - CATEGORY_SHARE) * uploaders.getOrDefault(item.uploaderId(), 0.0) / uploaderTotal;
+            }
+            return score;
+        }
+
+        synchronized boolean isEmpty() {
+            return categoryTotal == 0 && uploaderTotal == 0;
+        }
+    }
+
+    private final int maxProfiles;
+    private final double popularityWeight;
+    private final ProfileLoader profileLoader;
+    private volatile Map<Integer, Item> catalog = new ConcurrentHashMap<>();
+    private final LinkedHashMap<Integer, Profile> profiles = new LinkedHashMap<>(256, 0.75f, true);
+    private volatile boolean loaded = false;
+    private volatile long lastLoadFailure = 0;
+    private ScheduledExecutorService scheduler;
+
+    RecommendationService(int maxProfiles, int popularityPercent, ProfileLoader profileLoader) {
+        this.maxProfiles = maxProfiles;
+        this.popularityWeight = popularityPercent / 100.0;
+        this.profileLoader = profileLoader;
+    }
+
+    public static RecommendationService get() {
+        return INSTANCE;
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) return;
+        long interval = Math.max(1, AppConfig.getLong("recommend.refreshMinutes", 30));
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "recommend-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try (Connection conn = DBUtil.getConnection()) {
+                load(conn);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }, 0, interval, TimeUnit.MINUTES);
+    }
+
+    public synchronized void stop() {
+        if (scheduler == null) return;
+        scheduler.shutdownNow();
+        scheduler = null;
+    }
+
+    /**
+     * Ranked page of public resources for {@code userId} ({@code null} for guests, who get the most
+     * popular first), optionally narrowed by category, file type and a set of allowed ids (e.g.
+     * keyword matches). Returns {@code null} when the catalog is not available yet.
+     */
+    public Page recommend(Integer userId, String category, String fileType, Set<Integer> allowed, int offset, int limit) {
+        if (!ensureLoaded()) return null;
+        Profile profile = userId == null ? null : profile(userId);
+        if (profile != null && profile.isEmpty()) profile = null;
+
+        List<Item> candidates = new ArrayList<>();
+        double maxPopularity = 0;
+        for (Item item : catalog.values()) {
+            if (category != null && !category.isEmpty() && !category.equals(item.category())) continue;
+            if (fileType != null && !fileType.isEmpty() && !fileType.equalsIgnoreCase(item.fileType())) continue;
+            if (allowed != null && !allowed.contains(item.id())) continue;
+            candidates.add(item);
+            maxPopularity = Math.max(maxPopularity, item.popularity());
+        }
+
+        int keep = Math.max(0, offset) + Math.max(0, limit);
+        if (keep == 0 || candidates.isEmpty()) return new Page(new ArrayList<>(), candidates.size());
+        // min-heap of the best `keep` candidates, ties going to the newer (higher) id
+        record Scored(int id, double score) {}
+        PriorityQueue<Scored> top = new PriorityQueue<>(keep + 1, (a, b) -> {
+            int c = Double.compare(a.score(), b.score());
+            return c != 0 ? c : Integer.compare(a.id(), b.id());
+        });
+        for (Item item : candidates) {
+            double popularity = maxPopularity > 0 ? item.popularity() / maxPopularity : 0;
+            double score = profile == null
+                    ? popularity
+                    : (1 - popularityWeight) * profile.affinity(item) + popularityWeight * popularity;
+            top.add(new Scored(item.id(), score));
+            if (top.size() > keep) top.poll();
+        }
+
+        List<Integer> ranked = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            ranked.add(top.poll().id());
+        }
+        Collections.reverse(ranked);
+        int from = Math.min(Math.max(0, offset), ranked.size());
+        return new Page(new ArrayList<>(ranked.subList(from, ranked.size())), candidates.size());
+    }
+
+    public void uploaded(int userId, int resourceId, String category, String fileType, boolean isPublic) {
+        resourceSaved(resourceId, category, fileType, userId, isPublic);
+        Profile profile = cachedProfile(userId);
+        if (profile != null) profile.add(category, null, UPLOAD_WEIGHT);
+    }
+
+    public void resourceSaved(int resourceId, String category, String fileType, int uploaderId, boolean isPublic) {
+        if (!isPublic) {
+            catalog.remove(resourceId);
+            return;
+        }
+        catalog.compute(resourceId, (id, old) -> old == null
+                ? new Item(id, category, fileType, uploaderId, 0, 0, 0)
+                : new Item(id, category, fileType, uploaderId, old.downloads(), old.collections(), old.comments()));
+    }
+
+    public void removed(int resourceId) {
+        catalog.remove(resourceId);
+    }
+
+    public void collected(int userId, int resourceId, int delta) {
+        Item item = catalog.computeIfPresent(resourceId,
+                (id, old) -> old.withCounts(old.downloads(), old.collections() + delta, old.comments()));
+        recordInterest(userId, item, COLLECT_WEIGHT * delta);
+    }
+
+    public void commented(int userId, int resourceId) {
+        Item item = catalog.computeIfPresent(resourceId,
+                (id, old) -> old.withCounts(old.downloads(), old.collections(), old.comments() + 1));
+        recordInterest(userId, item, COMMENT_WEIGHT);
+    }
+
+    public void downloaded(Integer userId, int resourceId) {
+        Item item = catalog.computeIfPresent(resourceId,
+                (id, old) -> old.withCounts(old.downloads() + 1, old.collections(), old.comments()));
+        if (userId != null) recordInterest(userId, item, DOWNLOAD_WEIGHT);
+    }
+
+    private void recordInterest(int userId, Item item, double weight) {
+        if (item == null) return;
+        // users without a cached profile get theirs built from the tables when they next ask
+        Profile profile = cachedProfile(userId);
+        if (profile == null) return;
+        profile.add(item.category(), item.uploaderId() == userId ? null : item.uploaderId(), weight);
+    }
+
+    private synchronized Profile cachedProfile(int userId) {
+        return profiles.get(userId);
+    }
+
+    private Profile profile(int userId) {
+        Profile profile = cachedProfile(userId);
+        if (profile != null) return profile;
+        try {
+            profile = profileLoader.load(userId);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return null;
+        }
+        synchronized (this) {
+            Profile raced = profiles.putIfAbsent(userId, profile);
+            if (raced != null) return raced;
+            if (profiles.size() > maxProfiles) {
+                profiles.remove(profiles.keySet().iterator().next());
+            }
+        }
+        return profile;
+    }
+
+    private static Profile loadProfile(int userId) throws SQLException {
+        String sql = "SELECT 'c' AS src, r.category, r.uploader_id, COUNT(*) AS cnt FROM collection c JOIN resource r ON c.resource_id = r.id " +
+                "WHERE c.user_id = ? GROUP BY r.category, r.uploader_id " +
+                "UNION ALL " +
+                "SELECT 'm', r.category, r.uploader_id, COUNT(*) FROM comment cm JOIN resource r ON cm.resource_id = r.id " +
+                "WHERE cm.user_id = ? GROUP BY r.category, r.uploader_id " +
+                "UNION ALL " +
+                "SELECT 'u', r.category, r.uploader_id, COUNT(*) FROM resource r WHERE r.uploader_id = ? GROUP BY r.category, r.uploader_id";
+        Profile profile = new Profile();
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, userId);
+            ps.setInt(2, userId);
+            ps.setInt(3, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String src = rs.getString("src");
+                    double weight = "c".equals(src) ? COLLECT_WEIGHT : "m".equals(src) ? COMMENT_WEIGHT : UPLOAD_WEIGHT;
+                    int uploaderId = rs.getInt("uploader_id");
+                    boolean own = "u".equals(src) || uploaderId == userId;
+                    profile.add(rs.getString("category"), own ? null : uploaderId, weight * rs.getInt("cnt"));
+                }
+            }
+        }
+        return profile;
+    }
+
+    private boolean ensureLoaded() {
+        if (loaded) return true;
+        if (System.currentTimeMillis() - lastLoadFailure < RELOAD_RETRY_MS) return false;
+        synchronized (this) {
+            if (loaded) return true;
+            try (Connection conn = DBUtil.getConnection()) {
+                load(conn);
+                return true;
+            } catch (SQLException e) {
+                e.printStackTrace();
+                lastLoadFailure = System.currentTimeMillis();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the catalog from the resource table. Events that arrive while the scan runs may be
+     * missed until the next refresh.
+     */
+    public void load(Connection conn) throws SQLException {
+        Map<Integer, Item> fresh = new ConcurrentHashMap<>();
+        try (Statement st = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            st.setFetchSize(Integer.MIN_VALUE);
+            try (ResultSet rs = st.executeQuery("SELECT id, category, file_type, uploader_id, download_count, collection_count, comment_count " +
+                    "FROM resource WHERE is_public = 1")) {
+                while (rs.next()) {
+                    int id = rs.getInt("id");
+                    fresh.put(id, new Item(id, rs.getString("category"), rs.getString("file_type"), rs.getInt("uploader_id"),
+                            rs.getInt("download_count"), rs.getInt("collection_count"), rs.getInt("comment_count")));
+                }
+            }
+        }
+        catalog = fresh;
+        loaded = true;
+    }
+
+    /**
+     * Adds a catalog entry without touching the database. Used by tests.
+     */
+    void put(Item item) {
+        catalog.put(item.id(), item);
+        loaded = true;
+    }
+}
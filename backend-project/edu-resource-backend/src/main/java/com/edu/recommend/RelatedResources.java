@@ -0,0 +1,347 @@
+package com.edu.recommend;
+
+import com.edu.util.AppConfig;
+import com.edu.util.DBUtil;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background job behind the "related resources" on the detail page. Two public resources are
+ * related when the same users collected or downloaded both; the score is the cosine of their user
+ * sets ({@code co / sqrt(n_i * n_j)}). The top {@code related.topK} of each resource are stored in
+ * {@code resource_related}, which the detail page reads with a single indexed query.
+ * <p>
+ * Every {@code related.refreshMinutes} only the resources touched since the last run are recomputed:
+ * those collected or downloaded, plus everything the acting users had already collected or
+ * downloaded (their co-occurrence counts changed). Scores of other pairs whose normalisation shifted
+ * are refreshed by a full rebuild every {@code related.fullRebuildHours}, and on the first run after
+ * startup.
+ * <p>
+ * Per-user downloads are buffered here and written to {@code resource_download} in batches.
+ */
+public class RelatedResources {
+    // pairs seen together by fewer users than this are noise
+    static final int MIN_CO_USERS = 2;
+    private static final int LEAF_ITEMS = 64;
+    private static final int WRITE_BATCH = 200;
+
+    private static final RelatedResources INSTANCE = new RelatedResources();
+
+    record Scored(int id, double score) {}
+
+    private final Set<Long> pendingDownloads = ConcurrentHashMap.newKeySet();
+    private final Set<Integer> dirtyUsers = ConcurrentHashMap.newKeySet();
+    private final Set<Integer> dirtyItems = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService scheduler;
+    private ForkJoinPool pool;
+    private long lastFullRebuild = 0;
+
+    RelatedResources() {
+    }
+
+    public static RelatedResources get() {
+        return INSTANCE;
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) return;
+        long interval = Math.max(1, AppConfig.getLong("related.refreshMinutes", 60));
+        pool = new ForkJoinPool(Math.max(1, AppConfig.getInt("related.threads", 2)));
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "related-resources");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushDownloads, 1, 1, TimeUnit.MINUTES);
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }, 1, interval, TimeUnit.MINUTES);
+    }
+
+    public synchronized void stop() {
+        if (scheduler == null) return;
+        scheduler.shutdownNow();
+        scheduler = null;
+        pool.shutdownNow();
+        pool = null;
+        flushDownloads();
+    }
+
+    public void collected(int userId, int resourceId) {
+        dirtyUsers.add(userId);
+        dirtyItems.add(resourceId);
+    }
+
+    public void downloaded(int userId, int resourceId) {
+        pendingDownloads.add(((long) userId << 32) | (resourceId & 0xffffffffL));
+        dirtyUsers.add(userId);
+        dirtyItems.add(resourceId);
+    }
+
+    /**
+     * Recomputes the touched resources, or everything when a full rebuild is due.
+     */
+    void refresh() throws SQLException {
+        flushDownloads();
+        long fullEvery = TimeUnit.HOURS.toMillis(Math.max(1, AppConfig.getLong("related.fullRebuildHours", 24)));
+        boolean full = System.currentTimeMillis() - lastFullRebuild >= fullEvery;
+        if (!full && dirtyUsers.isEmpty() && dirtyItems.isEmpty()) return;
+
+        Set<Integer> users = drain(dirtyUsers);
+        Set<Integer> items = drain(dirtyItems);
+        int topK = Math.max(1, AppConfig.getInt("related.topK", 10));
+        int maxItemsPerUser = Math.max(2, AppConfig.getInt("related.maxItemsPerUser", 500));
+        // whole seconds: computed_at is a DATETIME, and MySQL rounds the fraction on insert, which
+        // could put this run's rows below runStart and have the full-rebuild cleanup delete them
+        Timestamp runStart = new Timestamp(System.currentTimeMillis() / 1000 * 1000);
+        try (Connection conn = DBUtil.getConnection()) {
+            Map<Integer, int[]> itemsByUser = loadInteractions(conn, maxItemsPerUser);
+            Collection<Integer> targets;
+            if (full) {
+                targets = usersByItem(itemsByUser).keySet();
+            } else {
+                Set<Integer> touched = new HashSet<>(items);
+                for (Integer user : users) {
+                    int[] own = itemsByUser.get(user);
+                    if (own != null) for (int item : own) touched.add(item);
+                }
+                targets = touched;
+            }
+            Map<Integer, List<Scored>> lists = compute(itemsByUser, targets, topK, pool());
+            write(conn, targets, lists, runStart);
+            if (full) {
+                // resources nobody interacts with any more
+                try (PreparedStatement ps = conn.prepareStatement("DELETE FROM resource_related WHERE computed_at < ?")) {
+                    ps.setTimestamp(1, runStart);
+                    ps.executeUpdate();
+                }
+                lastFullRebuild = runStart.getTime();
+            }
+        } catch (SQLException | RuntimeException e) {
+            // retry the touched resources next time
+            dirtyUsers.addAll(users);
+            dirtyItems.addAll(items);
+            throw e;
+        }
+    }
+
+    private synchronized ForkJoinPool pool() {
+        return pool != null ? pool : ForkJoinPool.commonPool();
+    }
+
+    /**
+     * Top {@code topK} related resources of each target, best first. Targets with no related
+     * resource are absent from the result.
+     */
+    static Map<Integer, List<Scored>> compute(Map<Integer, int[]> itemsByUser, Collection<Integer> targets,
+                                              int topK, ForkJoinPool pool) {
+        Map<Integer, int[]> usersByItem = usersByItem(itemsByUser);
+        int[] ids = targets.stream().filter(usersByItem::containsKey).mapToInt(Integer::intValue).toArray();
+        return pool.invoke(new TopK(itemsByUser, usersByItem, ids, 0, ids.length, topK));
+    }
+
+    private static final class TopK extends RecursiveTask<Map<Integer, List<Scored>>> {
+        private final Map<Integer, int[]> itemsByUser;
+        private final Map<Integer, int[]> usersByItem;
+        private final int[] ids;
+        private final int from;
+        private final int to;
+        private final int topK;
+
+        TopK(Map<Integer, int[]> itemsByUser, Map<Integer, int[]> usersByItem, int[] ids, int from, int to, int topK) {
+            this.itemsByUser = itemsByUser;
+            this.usersByItem = usersByItem;
+            this.ids = ids;
+            this.from = from;
+            this.to = to;
+            this.topK = topK;
+        }
+
+        @Override
+        protected Map<Integer, List<Scored>> compute() {
+            if (to - from > LEAF_ITEMS) {
+                int mid = (from + to) >>> 1;
+                TopK left = new TopK(itemsByUser, usersByItem, ids, from, mid, topK);
+                left.fork();
+                Map<Integer, List<Scored>> result = new TopK(itemsByUser, usersByItem, ids, mid, to, topK).compute();
+                result.putAll(left.join());
+                return result;
+            }
+            Map<Integer, List<Scored>> result = new HashMap<>();
+            Map<Integer, Integer> co = new HashMap<>();
+            for (int k = from; k < to; k++) {
+                int item = ids[k];
+                int[] users = usersByItem.get(item);
+                co.clear();
+                for (int user : users) {
+                    for (int other : itemsByUser.get(user)) {
+                        if (other != item) co.merge(other, 1, Integer::sum);
+                    }
+                }
+                PriorityQueue<Scored> top = new PriorityQueue<>(topK + 1, (a, b) -> {
+                    int c = Double.compare(a.score(), b.score());
+                    return c != 0 ? c : Integer.compare(b.id(), a.id());
+                });
+                for (Map.Entry<Integer, Integer> e : co.entrySet()) {
+                    if (e.getValue() < MIN_CO_USERS) continue;
+                    double score = e.getValue() / Math.sqrt((double) users.length * usersByItem.get(e.getKey()).length);
+                    top.add(new Scored(e.getKey(), score));
+                    if (top.size() > topK) top.poll();
+                }
+                if (top.isEmpty()) continue;
+                List<Scored> list = new ArrayList<>(top.size());
+                while (!top.isEmpty()) {
+                    list.add(top.poll());
+                }
+                Collections.reverse(list);
+                result.put(item, list);
+            }
+            return result;
+        }
+    }
+
+    private static Map<Integer, int[]> usersByItem(Map<Integer, int[]> itemsByUser) {
+        Map<Integer, List<Integer>> lists = new HashMap<>();
+        for (Map.Entry<Integer, int[]> e : itemsByUser.entrySet()) {
+            for (int item : e.getValue()) {
+                lists.computeIfAbsent(item, k -> new ArrayList<>()).add(e.getKey());
+            }
+        }
+        Map<Integer, int[]> result = new HashMap<>();
+        for (Map.Entry<Integer, List<Integer>> e : lists.entrySet()) {
+            result.put(e.getKey(), e.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+        return result;
+    }
+
+    /**
+     * Public resources each user collected or downloaded. Users with more than
+     * {@code maxItemsPerUser} (crawlers, bulk downloaders) are left out: they relate everything to
+     * everything and dominate the cost.
+     */
+    private static Map<Integer, int[]> loadInteractions(Connection conn, int maxItemsPerUser) throws SQLException {
+        String sql = "SELECT x.user_id, x.resource_id FROM (" +
+                "SELECT user_id, resource_id FROM collection " +
+                "UNION SELECT user_id, resource_id FROM resource_download) x " +
+                "JOIN resource r ON r.id = x.resource_id WHERE r.is_public = 1 ORDER BY x.user_id";
+        Map<Integer, int[]> itemsByUser = new HashMap<>();
+        try (Statement st = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            st.setFetchSize(Integer.MIN_VALUE);
+            try (ResultSet rs = st.executeQuery(sql)) {
+                int current = -1;
+                List<Integer> items = new ArrayList<>();
+                while (rs.next()) {
+                    int user = rs.getInt(1);
+                    if (user != current) {
+                        addUser(itemsByUser, current, items, maxItemsPerUser);
+                        current = user;
+                        items.clear();
+                    }
+                    items.add(rs.getInt(2));
+                }
+                addUser(itemsByUser, current, items, maxItemsPerUser);
+            }
+        }
+        return itemsByUser;
+    }
+
+    private static void addUser(Map<Integer, int[]> itemsByUser, int user, List<Integer> items, int maxItemsPerUser) {
+        // a single item relates nothing
+        if (user < 0 || items.size() < 2 || items.size() > maxItemsPerUser) return;
+        itemsByUser.put(user, items.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    private static void write(Connection conn, Collection<Integer> targets, Map<Integer, List<Scored>> lists,
+                              Timestamp runStart) throws SQLException {
+        List<Integer> all = new ArrayList<>(targets);
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            for (int from = 0; from < all.size(); from += WRITE_BATCH) {
+                List<Integer> batch = all.subList(from, Math.min(all.size(), from + WRITE_BATCH));
+                String in = String.join(",", Collections.nCopies(batch.size(), "?"));
+                try (PreparedStatement ps = conn.prepareStatement("DELETE FROM resource_related WHERE resource_id IN (" + in + ")")) {
+                    for (int i = 0; i < batch.size(); i++) {
+                        ps.setInt(i + 1, batch.get(i));
+                    }
+                    ps.executeUpdate();
+                }
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "INSERT INTO resource_related (resource_id, related_id, score, computed_at) VALUES (?, ?, ?, ?)")) {
+                    for (Integer id : batch) {
+                        List<Scored> list = lists.get(id);
+                        if (list == null) continue;
+                        for (Scored s : list) {
+                            ps.setInt(1, id);
+                            ps.setInt(2, s.id());
+                            ps.setDouble(3, s.score());
+                            ps.setTimestamp(4, runStart);
+                            ps.addBatch();
+                        }
+                    }
+                    ps.executeBatch();
+                }
+                conn.commit();
+            }
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    private void flushDownloads() {
+        if (pendingDownloads.isEmpty()) return;
+        List<Long> batch = new ArrayList<>();
+        for (Long pair : pendingDownloads) {
+            if (pendingDownloads.remove(pair)) batch.add(pair);
+        }
+        // IGNORE: a user or resource deleted since the download was queued only skips its own row
+        String sql = "INSERT IGNORE INTO resource_download (user_id, resource_id, create_time) VALUES (?, ?, NOW()) " +
+                "ON DUPLICATE KEY UPDATE create_time = NOW()";
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (long pair : batch) {
+                ps.setInt(1, (int) (pair >>> 32));
+                ps.setInt(2, (int) pair);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static Set<Integer> drain(Set<Integer> set) {
+        Set<Integer> drained = new HashSet<>();
+        for (Integer v : set) {
+            if (set.remove(v)) drained.add(v);
+        }
+        return drained;
+    }
+}
@@ -0,0 +1,267 @@
+package com.edu.search;
+
+import com.edu.util.DBUtil;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-process inverted index over resource title, description and category.
+ * <p>
+ * The index is built from the {@code resource} table on first use and then kept current by
+ * {@code ResourceServlet} on upload, update and delete. Searches return ranked ids and the total hit
+ * count so the listing only has to load the rows of the requested page.
+ */
+public class ResourceSearchIndex {
+    private static final int TITLE_WEIGHT = 3;
+    private static final int CATEGORY_WEIGHT = 2;
+    private static final int DESCRIPTION_WEIGHT = 1;
+    private static final long RELOAD_RETRY_MS = 60_000;
+
+    private static final ResourceSearchIndex INSTANCE = new ResourceSearchIndex();
+
+    public record Document(int id, String title, String description, String category, String fileType, boolean isPublic) {}
+
+    public record SearchResult(List<Integer> ids, int total) {}
+
+    private record Entry(String category, String fileType, boolean isPublic, Map<String, Integer> terms) {}
+
+    private final Map<Integer, Entry> entries = new HashMap<>();
+    // sorted so a latin query term can find every stored suffix it is a prefix of
+    private final TreeMap<String, Map<Integer, Integer>> postings = new TreeMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private volatile boolean loaded = false;
+    private volatile boolean loading = false;
+    private volatile long lastLoadFailure = 0;
+    // ids changed while the initial load is scanning the table; the scan must not overwrite them
+    private final Set<Integer> touchedDuringLoad = new HashSet<>();
+
+    ResourceSearchIndex() {
+    }
+
+    public static ResourceSearchIndex get() {
+        return INSTANCE;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Ranked page of public resources matching every term of {@code keyword}, optionally narrowed by
+     * category and file type. Returns {@code null} when the index is not available yet so the caller
+     * can fall back to SQL.
+     */
+    public SearchResult search(String keyword, String category, String fileType, int offset, int limit) {
+        List<Integer> all = searchAll(keyword, category, fileType);
+        if (all == null) return null;
+        int from = Math.min(Math.max(0, offset), all.size());
+        int to = Math.min(all.size(), from + Math.max(0, limit));
+        return new SearchResult(new ArrayList<>(all.subList(from, to)), all.size());
+    }
+
+    /**
+     * All matching ids in rank order, or {@code null} when the index is not available.
+     */
+    public List<Integer> searchAll(String keyword, String category, String fileType) {
+        if (!ensureLoaded()) return null;
+        Set<String> terms = SearchTokenizer.queryTerms(keyword);
+        if (terms.isEmpty()) return Collections.emptyList();
+
+        lock.readLock().lock();
+        try {
+            // intersect starting from the rarest term
+            List<Map<Integer, Integer>> lists = new ArrayList<>();
+            for (String t : terms) {
+                Map<Integer, Integer> p = postingsFor(t);
+                if (p.isEmpty()) return Collections.emptyList();
+                lists.add(p);
+            }
+            lists.sort((a, b) -> Integer.compare(a.size(), b.size()));
+
+            Map<Integer, Integer> scores = new HashMap<>();
+            for (Map.Entry<Integer, Integer> e : lists.get(0).entrySet()) {
+                int id = e.getKey();
+                Entry entry = entries.get(id);
+                if (entry == null || !entry.isPublic()) continue;
+                if (category != null && !category.isEmpty() && !category.equals(entry.category())) continue;
+                if (fileType != null && !fileType.isEmpty() && !fileType.equalsIgnoreCase(entry.fileType())) continue;
+                int score = e.getValue();
+                boolean all = true;
+                for (int i = 1; i < lists.size(); i++) {
+                    Integer w = lists.get(i).get(id);
+                    if (w == null) {
+                        all = false;
+                        break;
+                    }
+                    score += w;
+                }
+                if (all) scores.put(id, score);
+            }
+
+            List<Integer> ids = new ArrayList<>(scores.keySet());
+            ids.sort((a, b) -> {
+                int c = Integer.compare(scores.get(b), scores.get(a));
+                return c != 0 ? c : Integer.compare(b, a);
+            });
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Documents containing {@code term} with their weight. CJK terms are looked up exactly; a latin
+     * term matches every indexed suffix starting with it, i.e. every word containing it.
+     */
+    private Map<Integer, Integer> postingsFor(String term) {
+        if (SearchTokenizer.isCjk(term.charAt(0))) {
+            Map<Integer, Integer> p = postings.get(term);
+            return p != null ? p : Collections.emptyMap();
+        }
+        Map<String, Map<Integer, Integer>> range = postings.subMap(term, true, term + Character.MAX_VALUE, false);
+        if (range.size() == 1) return range.values().iterator().next();
+        Map<Integer, Integer> merged = new HashMap<>();
+        for (Map<Integer, Integer> p : range.values()) {
+            for (Map.Entry<Integer, Integer> e : p.entrySet()) {
+                merged.merge(e.getKey(), e.getValue(), Math::max);
+            }
+        }
+        return merged;
+    }
+
+    public void index(Document doc) {
+        put(doc, false);
+    }
+
+    public void remove(int id) {
+        lock.writeLock().lock();
+        try {
+            if (loading) touchedDuringLoad.add(id);
+            removeLocked(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void removeLocked(int id) {
+        Entry old = entries.remove(id);
+        if (old == null) return;
+        for (String t : old.terms().keySet()) {
+            Map<Integer, Integer> p = postings.get(t);
+            if (p == null) continue;
+            p.remove(id);
+            if (p.isEmpty()) postings.remove(t);
+        }
+    }
+
+    private static void addTerms(Map<String, Integer> terms, String text, int weight) {
+        for (String t : SearchTokenizer.indexTerms(text)) {
+            terms.merge(t, weight, Integer::sum);
+        }
+    }
+
+    private boolean ensureLoaded() {
+        if (loaded) return true;
+        if (System.currentTimeMillis() - lastLoadFailure < RELOAD_RETRY_MS) return false;
+        synchronized (this) {
+            if (loaded) return true;
+            try (Connection conn = DBUtil.getConnection()) {
+                load(conn);
+                return true;
+            } catch (SQLException e) {
+                e.printStackTrace();
+                lastLoadFailure = System.currentTimeMillis();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Builds the index from the resource table. Called lazily on the first search, or eagerly at startup.
+     */
+    public synchronized void load(Connection conn) throws SQLException {
+        if (loaded) return;
+        lock.writeLock().lock();
+        try {
+            loading = true;
+            touchedDuringLoad.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        try (Statement st = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            // stream rows instead of buffering the whole catalog in the driver
+            st.setFetchSize(Integer.MIN_VALUE);
+            try (ResultSet rs = st.executeQuery("SELECT id, title, description, category, file_type, is_public FROM resource")) {
+                while (rs.next()) {
+                    Document doc = new Document(rs.getInt("id"), rs.getString("title"), rs.getString("description"),
+                            rs.getString("category"), rs.getString("file_type"), rs.getBoolean("is_public"));
+                    put(doc, true);
+                }
+            }
+            loaded = true;
+        } finally {
+            lock.writeLock().lock();
+            try {
+                loading = false;
+                touchedDuringLoad.clear();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private void put(Document doc, boolean fromLoad) {
+        Map<String, Integer> terms = new HashMap<>();
+        addTerms(terms, doc.title(), TITLE_WEIGHT);
+        addTerms(terms, doc.category(), CATEGORY_WEIGHT);
+        addTerms(terms, doc.description(), DESCRIPTION_WEIGHT);
+        Entry entry = new Entry(doc.category(), doc.fileType(), doc.isPublic(), terms);
+
+        lock.writeLock().lock();
+        try {
+            if (fromLoad) {
+                if (touchedDuringLoad.contains(doc.id())) return;
+            } else if (loading) {
+                touchedDuringLoad.add(doc.id());
+            }
+            removeLocked(doc.id());
+            entries.put(doc.id(), entry);
+            for (Map.Entry<String, Integer> t : terms.entrySet()) {
+                postings.computeIfAbsent(t.getKey(), k -> new HashMap<>()).put(doc.id(), t.getValue());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Marks the index as built without touching the database. Used by tests and by callers that
+     * populate the index themselves.
+     */
+    void markLoaded() {
+        loaded = true;
+    }
+}
@@ -0,0 +1,92 @@
+package com.edu.search;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Splits text into index terms. Runs of CJK characters become overlapping bigrams (a single
+ * character run stays a unigram); runs of letters/digits become lower-cased words.
+ */
+public class SearchTokenizer {
+    private static final int MAX_WORD_LENGTH = 32;
+
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) return tokens;
+
+        int i = 0;
+        int n = text.length();
+        while (i < n) {
+            char c = text.charAt(i);
+            if (isCjk(c)) {
+                int start = i;
+                while (i < n && isCjk(text.charAt(i))) i++;
+                if (i - start == 1) {
+                    tokens.add(String.valueOf(c));
+                } else {
+                    for (int k = start; k < i - 1; k++) {
+                        tokens.add(text.substring(k, k + 2));
+                    }
+                }
+            } else if (Character.isLetterOrDigit(c)) {
+                int start = i;
+                while (i < n && Character.isLetterOrDigit(text.charAt(i)) && !isCjk(text.charAt(i))) i++;
+                String word = text.substring(start, Math.min(i, start + MAX_WORD_LENGTH)).toLowerCase();
+                tokens.add(word);
+            } else {
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Query terms, de-duplicated. Every term must match for a document to be a hit.
+     */
+    public static Set<String> queryTerms(String query) {
+        return new LinkedHashSet<>(tokenize(query));
+    }
+
+    /**
+     * Terms stored for a document field. On top of {@link #tokenize}, CJK characters are also
+     * indexed as unigrams so one-character queries still match, and latin words are indexed with
+     * all their suffixes. {@link ResourceSearchIndex} matches a latin query term against every
+     * stored term it is a prefix of, so "script" and "s" both find "javascript", the way the old
+     * {@code LIKE '%kw%'} search did within a word.
+     */
+    public static List<String> indexTerms(String text) {
+        List<String> terms = tokenize(text);
+        if (text == null) return terms;
+        List<String> extra = new ArrayList<>();
+        for (String t : terms) {
+            if (isCjk(t.charAt(0))) {
+                if (t.length() == 2) extra.add(t.substring(0, 1));
+            } else {
+                for (int start = 1; start < t.length(); start++) {
+                    extra.add(t.substring(start));
+                }
+            }
+        }
+        // the last character of each CJK run is not the first character of any bigram
+        for (int i = 0; i < text.length(); i++) {
+            if (isCjk(text.charAt(i)) && i > 0 && isCjk(text.charAt(i - 1))
+                    && (i + 1 >= text.length() || !isCjk(text.charAt(i + 1)))) {
+                extra.add(String.valueOf(text.charAt(i)));
+            }
+        }
+        terms.addAll(extra);
+        return terms;
+    }
+
+    static boolean isCjk(char c) {
+        Character.UnicodeBlock block = Character.UnicodeBlock.of(c);
+        return block == Character.UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS
+                || block == Character.UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS_EXTENSION_A
+                || block == Character.UnicodeBlock.CJK_COMPATIBILITY_IDEOGRAPHS
+                || block == Character.UnicodeBlock.HIRAGANA
+                || block == Character.UnicodeBlock.KATAKANA
+                || block == Character.UnicodeBlock.HANGUL_SYLLABLES;
+    }
+}
@@ -1,13 +1,17 @@
 package com.edu.servlet;
 
+import com.edu.counter.DownloadCounter;
 import com.edu.model.ApiResponse;
 import com.edu.model.OperationLog;
 import com.edu.model.RoleChangeRequest;
 import com.edu.model.User;
+import com.edu.notify.NotificationEvent;
 import com.edu.util.DBUtil;
 import com.edu.util.JsonUtil;
 import com.edu.util.JwtUtil;
+import com.edu.util.NotificationUtil;
 import com.edu.util.PasswordUtil;
+import com.edu.util.SensitiveWordUtil;
 
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
@@ -20,6 +24,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -60,6 +65,8 @@ public class AdminServlet extends HttpServlet {
             listRoleRequests(req, resp);
         } else if ("/logs".equals(pathInfo)) {
             listLogs(req, resp);
+        } else if ("/download-counter".equals(pathInfo)) {
+            JsonUtil.sendJsonResponse(resp, ApiResponse.success(DownloadCounter.get().getStats()));
         } else {
             JsonUtil.sendJsonResponse(resp, ApiResponse.error("Invalid endpoint"));
         }
@@ -80,6 +87,11 @@ public class AdminServlet extends HttpServlet {
             updateUserRole(req, resp);
         } else if ("/role-requests/audit".equals(pathInfo)) {
             auditRoleRequest(req, resp);
+        } else if ("/download-counter/flush".equals(pathInfo)) {
+            long written = DownloadCounter.get().flush();
+            JsonUtil.sendJsonResponse(resp, ApiResponse.success("Flushed " + written + " downloads", DownloadCounter.get().getStats()));
+        } else if ("/sensitive-words/reload".equals(pathInfo)) {
+            reloadSensitiveWords(resp);
         } else {
             JsonUtil.sendJsonResponse(resp, ApiResponse.error("Invalid endpoint"));
         }
@@ -98,6 +110,18 @@ public class AdminServlet extends HttpServlet {
         resp.setHeader("Access-Control-Allow-Credentials", "true");
     }
 
+    private void reloadSensitiveWords(HttpServletResponse resp) throws IOException {
+        try {
+            int words = SensitiveWordUtil.reload();
+            Map<String, Object> data = new HashMap<>();
+            data.put("words", words);
+            JsonUtil.sendJsonResponse(resp, ApiResponse.success("Reloaded", data));
+        } catch (IOException e) {
+            e.printStackTrace();
+            JsonUtil.sendJsonResponse(resp, ApiResponse.error("Failed to read dictionary, previous words kept: " + e.getMessage()));
+        }
+    }
+
     private boolean checkAdminPermission(HttpServletRequest req, HttpServletResponse resp) throws IOException {
         String token = req.getHeader("Authorization");
         if (token == null || !token.startsWith("Bearer ")) {
@@ -304,6 +328,7 @@ public class AdminServlet extends HttpServlet {
 
         try (Connection conn = DBUtil.getConnection()) {
             conn.setAutoCommit(false);
+            NotificationEvent notification = null;
             try {
                 // Update request status
                 String updateReqSql = "UPDATE role_change_request SET status = ?, audit_time = NOW(), auditor_id = ?, audit_remark = ? WHERE id = ?";
@@ -333,7 +358,7 @@ public class AdminServlet extends HttpServlet {
                                 }
                                 
                                 // Send notification
-                                createNotification(conn, userId, "身份申请通过", "您的身份切换申请已通过，当前身份为：" + targetRole);
+                                notification = createNotification(conn, userId, "身份申请通过", "您的身份切换申请已通过，当前身份为：" + targetRole);
                             }
                         }
                     }
@@ -344,7 +369,7 @@ public class AdminServlet extends HttpServlet {
                         ps.setInt(1, requestId);
                         try (ResultSet rs = ps.executeQuery()) {
                             if (rs.next()) {
-                                createNotification(conn, rs.getInt("user_id"), "身份申请驳回", "您的身份切换申请被驳回。原因：" + remark);
+                                notification = createNotification(conn, rs.getInt("user_id"), "身份申请驳回", "您的身份切换申请被驳回。原因：" + remark);
                             }
                         }
                     }
@@ -352,6 +377,9 @@ public class AdminServlet extends HttpServlet {
 
                 logOperation(conn, adminId, "RoleRequest", "Audit", requestId, "Status: " + status + ", Remark: " + remark);
                 conn.commit();
+                if (notification != null) {
+                    NotificationUtil.published(notification);
+                }
                 JsonUtil.sendJsonResponse(resp, ApiResponse.success("Audit completed", null));
             } catch (SQLException e) {
                 conn.rollback();
@@ -406,7 +434,7 @@ public class AdminServlet extends HttpServlet {
         }
     }
 
-    private void createNotification(Connection conn, Integer userId, String title, String content) throws SQLException {
+    private NotificationEvent createNotification(Connection conn, Integer userId, String title, String content) throws SQLException {
         String sql = "INSERT INTO notification (user_id, title, content, type, create_time) VALUES (?, ?, ?, 'system', NOW())";
         try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setInt(1, userId);
@@ -414,5 +442,6 @@ public class AdminServlet extends HttpServlet {
             ps.setString(3, content);
             ps.executeUpdate();
         }
+        return new NotificationEvent(userId, title, content, "system");
     }
 }
@@ -1,19 +1,22 @@
 package com.edu.servlet;
 
+import com.edu.auth.Principal;
+import com.edu.auth.TokenVerifier;
+import com.edu.filter.AuthFilter;
 import com.edu.model.ApiResponse;
+import com.edu.storage.BlobImages;
+import com.edu.storage.Storage;
+import com.edu.storage.StorageService;
 import com.edu.util.DBUtil;
+import com.edu.util.FileServer;
 import com.edu.util.JsonUtil;
-import com.edu.util.JwtUtil;
 
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -21,14 +24,13 @@ import java.sql.SQLException;
 
 @WebServlet(urlPatterns = {"/api/chat/media/*"})
 public class ChatMediaServlet extends HttpServlet {
-    private static final String UPLOAD_DIR = "C:/Users/macha/Desktop/Graduation-Design-EduResourcePlatform/storage/uploads";
     private static final String CHAT_DIR = "chat";
     private static final String CHAT_THUMB_DIR = "chat_thumbs";
 
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
         setCorsHeaders(resp);
-        Integer userId = getUserIdFromRequest(req, resp);
+        Integer userId = getUserId(req, resp);
         if (userId == null) return;
 
         String pathInfo = req.getPathInfo();
@@ -50,43 +52,45 @@ public class ChatMediaServlet extends HttpServlet {
             return;
         }
 
+        // Check participation before anything about the file is revealed: a 404, or a 304 to a
+        // guessed ETag, would confirm to anyone that the attachment exists
+        String mime;
         try (Connection conn = DBUtil.getConnection()) {
-            String mimeFromDb = getMimeTypeIfAllowed(conn, userId, p, thumb);
-            if (mimeFromDb == null) {
+            mime = getMimeTypeIfAllowed(conn, userId, p, thumb);
+            if (mime == null) {
+                resp.setHeader("Cache-Control", "no-store");
                 JsonUtil.sendJsonResponse(resp, ApiResponse.error(403, "Forbidden"));
                 return;
             }
-            req.setAttribute("mimeFromDb", mimeFromDb);
         } catch (SQLException e) {
             e.printStackTrace();
             JsonUtil.sendJsonResponse(resp, ApiResponse.error("Database error"));
             return;
         }
 
-        File file = new File(UPLOAD_DIR + File.separator + (thumb ? CHAT_THUMB_DIR : CHAT_DIR) + File.separator + p);
-        if (!file.exists()) {
+        String key = BlobImages.resolve(p, thumb);
+        if (key == null) {
+            // images uploaded before the blob store
+            key = (thumb ? CHAT_THUMB_DIR : CHAT_DIR) + "/" + p;
+        }
+        StorageService storage = Storage.get();
+        StorageService.StoredObject object = storage.stat(key);
+        if (object == null) {
             resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
             return;
         }
 
-        String mime = (String) req.getAttribute("mimeFromDb");
-        if (mime == null || mime.isBlank()) {
-            mime = getServletContext().getMimeType(file.getName());
+        // Media is only visible to the two participants; keep it out of shared caches
+        resp.setHeader("Cache-Control", "private, max-age=31536000");
+        if (FileServer.checkNotModified(req, resp, object)) return;
+
+        // thumbnails are JPEGs regardless of the original media type stored on the message
+        if (thumb || mime.isBlank()) {
+            mime = getServletContext().getMimeType(p);
         }
         if (mime == null) mime = "application/octet-stream";
 
-        resp.setHeader("Cache-Control", "public, max-age=31536000");
-        resp.setHeader("Accept-Ranges", "bytes");
-        resp.setContentType(mime);
-        resp.setContentLengthLong(file.length());
-
-        try (FileInputStream fis = new FileInputStream(file); OutputStream os = resp.getOutputStream()) {
-            byte[] buf = new byte[8192];
-            int n;
-            while ((n = fis.read(buf)) >= 0) {
-                os.write(buf, 0, n);
-            }
-        }
+        FileServer.serve(req, resp, storage, object, mime);
     }
 
     @Override
@@ -97,38 +101,34 @@ public class ChatMediaServlet extends HttpServlet {
 
     private String getMimeTypeIfAllowed(Connection conn, int userId, String fileName, boolean thumb) throws SQLException {
         String field = thumb ? "thumb_file_name" : "media_file_name";
+        // deduplicated media share a file name across conversations, so look for one the user is in
         String sql =
-                "SELECT c.user1_id, c.user2_id, m.media_mime_type " +
+                "SELECT m.media_mime_type " +
                         "FROM chat_message m JOIN chat_conversation c ON m.conversation_id = c.id " +
-                        "WHERE m." + field + " = ? LIMIT 1";
+                        "WHERE m." + field + " = ? AND (c.user1_id = ? OR c.user2_id = ?) LIMIT 1";
         try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, fileName);
+            ps.setInt(2, userId);
+            ps.setInt(3, userId);
             try (ResultSet rs = ps.executeQuery()) {
                 if (!rs.next()) return null;
-                int u1 = rs.getInt("user1_id");
-                int u2 = rs.getInt("user2_id");
-                if (!(userId == u1 || userId == u2)) return null;
-                return rs.getString("media_mime_type");
+                String mime = rs.getString("media_mime_type");
+                return mime == null ? "" : mime;
             }
         }
     }
 
-    private Integer getUserIdFromRequest(HttpServletRequest req, HttpServletResponse resp) throws IOException {
-        String token = req.getHeader("Authorization");
-        if (token != null && token.startsWith("Bearer ")) {
-            token = token.substring(7);
-            if (JwtUtil.validateToken(token)) {
-                return JwtUtil.getUserIdFromToken(token);
-            }
+    // <img>/<video> tags can't send headers, so media URLs may carry the token as a parameter
+    private Integer getUserId(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        Principal principal = AuthFilter.principal(req);
+        if (principal == null) {
+            principal = TokenVerifier.get().verify(req.getParameter("token"));
         }
-        String tokenParam = req.getParameter("token");
-        if (tokenParam != null && !tokenParam.isBlank()) {
-            if (JwtUtil.validateToken(tokenParam)) {
-                return JwtUtil.getUserIdFromToken(tokenParam);
-            }
+        if (principal == null) {
+            JsonUtil.sendJsonResponse(resp, ApiResponse.error(401, "Unauthorized"));
+            return null;
         }
-        JsonUtil.sendJsonResponse(resp, ApiResponse.error(401, "Unauthorized"));
-        return null;
+        return principal.userId();
     }
 
     private void setCorsHeaders(HttpServletResponse resp) {
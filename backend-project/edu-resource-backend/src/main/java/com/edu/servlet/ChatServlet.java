@@ -1,11 +1,21 @@
 package com.edu.servlet;
 
+import com.edu.chat.ChatBroker;
+import com.edu.dto.ChatMessageRow;
+import com.edu.dto.ChatSyncUpdate;
+import com.edu.dto.ConversationRow;
+import com.edu.dto.UserSummary;
+import com.edu.filter.AuthFilter;
+import com.edu.media.MediaPipeline;
 import com.edu.model.ApiResponse;
+import com.edu.model.PageResult;
+import com.edu.storage.BlobRefs;
+import com.edu.storage.BlobStore;
+import com.edu.util.CursorUtil;
 import com.edu.util.DBUtil;
 import com.edu.util.HtmlSanitizer;
 import com.edu.util.ImageProcessor;
 import com.edu.util.JsonUtil;
-import com.edu.util.JwtUtil;
 
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.MultipartConfig;
@@ -16,14 +26,18 @@ import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.Part;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -34,9 +48,11 @@ import java.util.Map;
         maxRequestSize = 1024L * 1024 * 60
 )
 public class ChatServlet extends HttpServlet {
-    private static final String UPLOAD_DIR = "C:/Users/macha/Desktop/Graduation-Design-EduResourcePlatform/storage/uploads";
-    private static final String CHAT_DIR = "chat";
-    private static final String CHAT_THUMB_DIR = "chat_thumbs";
+    private static final int MAX_SYNC_CONVERSATIONS = 50;
+    private static final String MESSAGE_COLUMNS =
+            "m.id, m.conversation_id, m.sender_id, m.msg_type, m.content_text, m.media_file_name, m.media_mime_type, m.media_file_size, m.width, m.height, m.thumb_file_name, m.status, m.create_time, " +
+                    "u.username, u.nickname, u.avatar ";
+
 
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
@@ -58,6 +74,10 @@ public class ChatServlet extends HttpServlet {
             getConversationWith(req, resp);
             return;
         }
+        if ("/sync".equals(pathInfo)) {
+            sync(req, resp);
+            return;
+        }
         JsonUtil.sendJsonResponse(resp, ApiResponse.error("Invalid endpoint"));
     }
 
@@ -79,7 +99,7 @@ public class ChatServlet extends HttpServlet {
     }
 
     private void listConversations(HttpServletRequest req, HttpServletResponse resp) throws IOException {
-        Integer userId = getUserIdFromRequest(req, resp);
+        Integer userId = AuthFilter.requireUserId(req, resp);
         if (userId == null) return;
 
         int page = parseInt(req.getParameter("page"), 1);
@@ -107,7 +127,7 @@ public class ChatServlet extends HttpServlet {
                             "WHERE c.user1_id = ? OR c.user2_id = ? " +
                             "ORDER BY COALESCE(c.last_message_time, c.create_time) DESC " +
                             "LIMIT ? OFFSET ?";
-            List<Map<String, Object>> list = new ArrayList<>();
+            List<ConversationRow> list = new ArrayList<>();
             try (PreparedStatement ps = conn.prepareStatement(sql)) {
                 ps.setInt(1, userId);
                 ps.setInt(2, userId);
@@ -116,28 +136,15 @@ public class ChatServlet extends HttpServlet {
                 ps.setInt(5, offset);
                 try (ResultSet rs = ps.executeQuery()) {
                     while (rs.next()) {
-                        Map<String, Object> c = new HashMap<>();
-                        c.put("id", rs.getLong("id"));
-                        c.put("lastMessagePreview", rs.getString("last_message_preview"));
-                        c.put("lastMessageTime", rs.getTimestamp("last_message_time") == null ? null : rs.getTimestamp("last_message_time").getTime());
-                        Map<String, Object> other = new HashMap<>();
-                        other.put("id", rs.getInt("other_id"));
-                        other.put("username", rs.getString("other_username"));
-                        other.put("nickname", rs.getString("other_nickname"));
-                        other.put("avatar", rs.getString("other_avatar"));
-                        c.put("otherUser", other);
-                        list.add(c);
+                        UserSummary other = new UserSummary(rs.getInt("other_id"), rs.getString("other_username"),
+                                rs.getString("other_nickname"), rs.getString("other_avatar"));
+                        list.add(new ConversationRow(rs.getLong("id"), null, rs.getString("last_message_preview"),
+                                millis(rs.getTimestamp("last_message_time")), other));
                     }
                 }
             }
 
-            Map<String, Object> data = new HashMap<>();
-            data.put("list", list);
-            data.put("total", total);
-            data.put("page", page);
-            data.put("pageSize", pageSize);
-            data.put("totalPages", (int) Math.ceil((double) total / pageSize));
-            JsonUtil.sendJsonResponse(resp, ApiResponse.success(data));
+            JsonUtil.sendJsonResponse(resp, ApiResponse.success(new PageResult<>(list, total, page, pageSize)));
         } catch (SQLException e) {
             e.printStackTrace();
             JsonUtil.sendJsonResponse(resp, ApiResponse.error("Database error"));
@@ -145,7 +152,7 @@ public class ChatServlet extends HttpServlet {
     }
 
     private void listMessages(HttpServletRequest req, HttpServletResponse resp) throws IOException {
-        Integer userId = getUserIdFromRequest(req, resp);
+        Integer userId = AuthFilter.requireUserId(req, resp);
         if (userId == null) return;
 
         String convStr = req.getParameter("conversationId");
@@ -166,6 +173,7 @@ public class ChatServlet extends HttpServlet {
         page = Math.max(1, page);
         pageSize = Math.min(100, Math.max(1, pageSize));
         int offset = (page - 1) * pageSize;
+        CursorUtil.Cursor cursor = CursorUtil.decode(req.getParameter("cursor"));
 
         try (Connection conn = DBUtil.getConnection()) {
             if (!isConversationParticipant(conn, conversationId, userId)) {
@@ -173,67 +181,49 @@ public class ChatServlet extends HttpServlet {
                 return;
             }
 
-            int total;
-            try (PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) FROM chat_message WHERE conversation_id = ?")) {
-                ps.setLong(1, conversationId);
-                try (ResultSet rs = ps.executeQuery()) {
-                    rs.next();
-                    total = rs.getInt(1);
+            // only the first page needs the total; cursor pages stay constant-cost
+            Integer total = null;
+            if (cursor == null) {
+                try (PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) FROM chat_message WHERE conversation_id = ?")) {
+                    ps.setLong(1, conversationId);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        rs.next();
+                        total = rs.getInt(1);
+                    }
                 }
             }
 
             String sql =
-                    "SELECT m.id, m.conversation_id, m.sender_id, m.msg_type, m.content_text, m.media_file_name, m.media_mime_type, m.media_file_size, m.width, m.height, m.thumb_file_name, m.create_time, " +
-                            "u.username, u.nickname, u.avatar " +
+                    "SELECT " + MESSAGE_COLUMNS +
                             "FROM chat_message m JOIN user u ON m.sender_id = u.id " +
-                            "WHERE m.conversation_id = ? ORDER BY m.create_time DESC LIMIT ? OFFSET ?";
-            List<Map<String, Object>> list = new ArrayList<>();
+                            "WHERE m.conversation_id = ? " +
+                            (cursor != null ? "AND " + CursorUtil.condition("m.create_time", "m.id", true) + " " : "") +
+                            "ORDER BY m.create_time DESC, m.id DESC " +
+                            (cursor != null ? "LIMIT ?" : "LIMIT ? OFFSET ?");
+            List<ChatMessageRow> list = new ArrayList<>();
             try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setLong(1, conversationId);
-                ps.setInt(2, pageSize);
-                ps.setInt(3, offset);
+                int idx = 1;
+                ps.setLong(idx++, conversationId);
+                if (cursor != null) idx = CursorUtil.bind(ps, idx, cursor);
+                ps.setInt(idx++, pageSize + 1);
+                if (cursor == null) ps.setInt(idx, offset);
                 try (ResultSet rs = ps.executeQuery()) {
                     while (rs.next()) {
-                        Map<String, Object> m = new HashMap<>();
-                        m.put("id", rs.getLong("id"));
-                        m.put("conversationId", rs.getLong("conversation_id"));
-                        m.put("senderId", rs.getInt("sender_id"));
-                        m.put("msgType", rs.getString("msg_type"));
-                        m.put("text", rs.getString("content_text"));
-                        String fileName = rs.getString("media_file_name");
-                        String thumbName = rs.getString("thumb_file_name");
-                        if (fileName != null && !fileName.isBlank()) {
-                            m.put("mediaUrl", "/api/chat/media/" + fileName);
-                        } else {
-                            m.put("mediaUrl", null);
-                        }
-                        if (thumbName != null && !thumbName.isBlank()) {
-                            m.put("thumbUrl", "/api/chat/media/thumb/" + thumbName);
-                        } else {
-                            m.put("thumbUrl", null);
-                        }
-                        m.put("mimeType", rs.getString("media_mime_type"));
-                        m.put("fileSize", rs.getObject("media_file_size") == null ? null : rs.getLong("media_file_size"));
-                        m.put("width", rs.getObject("width") == null ? null : rs.getInt("width"));
-                        m.put("height", rs.getObject("height") == null ? null : rs.getInt("height"));
-                        m.put("createTime", rs.getTimestamp("create_time").getTime());
-                        Map<String, Object> sender = new HashMap<>();
-                        sender.put("id", rs.getInt("sender_id"));
-                        sender.put("username", rs.getString("username"));
-                        sender.put("nickname", rs.getString("nickname"));
-                        sender.put("avatar", rs.getString("avatar"));
-                        m.put("sender", sender);
-                        list.add(m);
+                        list.add(readMessage(rs));
                     }
                 }
             }
 
-            Map<String, Object> data = new HashMap<>();
-            data.put("list", list);
-            data.put("total", total);
-            data.put("page", page);
-            data.put("pageSize", pageSize);
-            data.put("totalPages", (int) Math.ceil((double) total / pageSize));
+            // the extra row only signals that older messages exist
+            String nextCursor = null;
+            if (list.size() > pageSize) {
+                list.remove(list.size() - 1);
+                ChatMessageRow last = list.get(list.size() - 1);
+                nextCursor = CursorUtil.encode(last.createTime(), last.id());
+            }
+
+            PageResult<ChatMessageRow> data = new PageResult<>(list, total, page, pageSize);
+            data.setNextCursor(nextCursor);
             JsonUtil.sendJsonResponse(resp, ApiResponse.success(data));
         } catch (SQLException e) {
             e.printStackTrace();
@@ -242,7 +232,7 @@ public class ChatServlet extends HttpServlet {
     }
 
     private void getConversationWith(HttpServletRequest req, HttpServletResponse resp) throws IOException {
-        Integer userId = getUserIdFromRequest(req, resp);
+        Integer userId = AuthFilter.requireUserId(req, resp);
         if (userId == null) return;
         String otherStr = req.getParameter("userId");
         if (otherStr == null) {
@@ -277,8 +267,137 @@ public class ChatServlet extends HttpServlet {
         }
     }
 
+    /**
+     * Catch-up for reconnecting clients. {@code since=<conversationId>:<lastSeenMessageId>,...} returns
+     * the newer messages of each listed conversation (oldest first, at most {@code limit} each), and
+     * {@code after=<messageId>} returns the high-water marks of every conversation of the user that
+     * has a message newer than that id. Message ids are global, so a client only needs to remember the
+     * largest id it has seen to find out which conversations changed.
+     */
+    private void sync(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        Integer userId = AuthFilter.requireUserId(req, resp);
+        if (userId == null) return;
+
+        Map<Long, Long> since = new LinkedHashMap<>();
+        String sinceParam = req.getParameter("since");
+        if (sinceParam != null && !sinceParam.isBlank()) {
+            for (String pair : sinceParam.split(",")) {
+                int sep = pair.indexOf(':');
+                try {
+                    long conv = Long.parseLong(pair.substring(0, sep < 0 ? pair.length() : sep).trim());
+                    long last = sep < 0 ? 0 : Long.parseLong(pair.substring(sep + 1).trim());
+                    since.put(conv, Math.max(0, last));
+                } catch (NumberFormatException e) {
+                    JsonUtil.sendJsonResponse(resp, ApiResponse.error("Invalid since"));
+                    return;
+                }
+            }
+        }
+        if (since.size() > MAX_SYNC_CONVERSATIONS) {
+            JsonUtil.sendJsonResponse(resp, ApiResponse.error("Too many conversations"));
+            return;
+        }
+        String afterParam = req.getParameter("after");
+        Long after = null;
+        if (afterParam != null && !afterParam.isBlank()) {
+            try {
+                after = Long.parseLong(afterParam.trim());
+            } catch (NumberFormatException e) {
+                JsonUtil.sendJsonResponse(resp, ApiResponse.error("Invalid after"));
+                return;
+            }
+        }
+        if (since.isEmpty() && after == null) {
+            JsonUtil.sendJsonResponse(resp, ApiResponse.error("since or after is required"));
+            return;
+        }
+        int limit = Math.min(200, Math.max(1, parseInt(req.getParameter("limit"), 100)));
+
+        try (Connection conn = DBUtil.getConnection()) {
+            // high-water marks; for listed conversations this doubles as the participant check
+            Map<Long, ConversationRow> marks = new LinkedHashMap<>();
+            String markColumns = "SELECT id, last_message_id, last_message_preview, last_message_time FROM chat_conversation ";
+            if (!since.isEmpty()) {
+                String in = String.join(",", Collections.nCopies(since.size(), "?"));
+                try (PreparedStatement ps = conn.prepareStatement(markColumns + "WHERE id IN (" + in + ") AND (user1_id = ? OR user2_id = ?)")) {
+                    int idx = 1;
+                    for (Long conv : since.keySet()) {
+                        ps.setLong(idx++, conv);
+                    }
+                    ps.setInt(idx++, userId);
+                    ps.setInt(idx, userId);
+                    readMarks(ps, marks);
+                }
+            }
+            if (after != null) {
+                String sql = markColumns + "WHERE user1_id = ? AND last_message_id > ? " +
+                        "UNION ALL " + markColumns + "WHERE user2_id = ? AND last_message_id > ?";
+                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                    ps.setInt(1, userId);
+                    ps.setLong(2, after);
+                    ps.setInt(3, userId);
+                    ps.setLong(4, after);
+                    readMarks(ps, marks);
+                }
+            }
+
+            List<ChatSyncUpdate> updates = new ArrayList<>();
+            String sql = "SELECT " + MESSAGE_COLUMNS +
+                    "FROM chat_message m JOIN user u ON m.sender_id = u.id " +
+                    "WHERE m.conversation_id = ? AND m.id > ? ORDER BY m.id ASC LIMIT ?";
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                for (Map.Entry<Long, Long> e : since.entrySet()) {
+                    ConversationRow mark = marks.get(e.getKey());
+                    // not a participant, or nothing newer than what the client has
+                    if (mark == null) continue;
+                    Long lastId = mark.lastMessageId();
+                    if (lastId != null && lastId <= e.getValue()) continue;
+
+                    ps.setLong(1, e.getKey());
+                    ps.setLong(2, e.getValue());
+                    ps.setInt(3, limit + 1);
+                    List<ChatMessageRow> list = new ArrayList<>();
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            list.add(readMessage(rs));
+                        }
+                    }
+                    boolean hasMore = list.size() > limit;
+                    if (hasMore) list.remove(list.size() - 1);
+                    if (list.isEmpty()) continue;
+                    updates.add(new ChatSyncUpdate(e.getKey(), list, hasMore));
+                }
+            }
+
+            long highWaterMark = after == null ? 0 : after;
+            for (ConversationRow mark : marks.values()) {
+                if (mark.lastMessageId() != null) highWaterMark = Math.max(highWaterMark, mark.lastMessageId());
+            }
+
+            Map<String, Object> data = new HashMap<>();
+            data.put("conversations", new ArrayList<>(marks.values()));
+            data.put("updates", updates);
+            data.put("highWaterMark", highWaterMark);
+            JsonUtil.sendJsonResponse(resp, ApiResponse.success(data));
+        } catch (SQLException e) {
+            e.printStackTrace();
+            JsonUtil.sendJsonResponse(resp, ApiResponse.error("Database error"));
+        }
+    }
+
+    private void readMarks(PreparedStatement ps, Map<Long, ConversationRow> marks) throws SQLException {
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                long lastId = rs.getLong("last_message_id");
+                ConversationRow c = new ConversationRow(rs.getLong("id"), rs.wasNull() ? null : lastId,
+                        rs.getString("last_message_preview"), millis(rs.getTimestamp("last_message_time")), null);
+                marks.put(c.id(), c);
+            }
+        }
+    }
+
     private void sendMessage(HttpServletRequest req, HttpServletResponse resp) throws IOException, ServletException {
-        Integer userId = getUserIdFromRequest(req, resp);
+        Integer userId = AuthFilter.requireUserId(req, resp);
         if (userId == null) return;
 
         Integer toUserId;
@@ -333,6 +452,25 @@ public class ChatServlet extends HttpServlet {
             return;
         }
 
+        // images are re-encoded by the media pipeline after the row commits; only the upload is staged here
+        File stagedImage = null;
+        String stagedMime = null;
+        if ("image".equals(msgType)) {
+            if (!MediaPipeline.get().accepting(1)) {
+                JsonUtil.sendJsonResponse(resp, ApiResponse.error("Server busy, please retry"));
+                return;
+            }
+            stagedImage = MediaPipeline.get().stage();
+            filePart.write(stagedImage.getAbsolutePath());
+            stagedMime = ImageProcessor.detectImageMimeType(stagedImage);
+            if (stagedMime == null || !stagedMime.startsWith("image/")) {
+                stagedImage.delete();
+                JsonUtil.sendJsonResponse(resp, ApiResponse.error("Unsupported image"));
+                return;
+            }
+        }
+
+        List<MediaPipeline.Job> jobs = new ArrayList<>();
         try (Connection conn = DBUtil.getConnection()) {
             conn.setAutoCommit(false);
             try {
@@ -345,42 +483,23 @@ public class ChatServlet extends HttpServlet {
                 long conversationId = getOrCreateConversation(conn, userId, toUserId);
 
                 String storedFileName = null;
-                String thumbFileName = null;
+                String storedHash = null;
                 String mimeType = null;
                 Long fileSize = null;
                 Integer width = null;
                 Integer height = null;
+                String status = MediaPipeline.READY;
 
                 if (filePart != null) {
                     String originalName = filePart.getSubmittedFileName();
                     String ext = getFileExtension(originalName);
                     if (ext.isBlank()) ext = guessExtByContentType(filePart.getContentType());
                     if (ext.isBlank()) ext = "bin";
-                    String baseName = "m_" + conversationId + "_" + System.currentTimeMillis();
 
                     if ("image".equals(msgType)) {
-                        File raw = File.createTempFile("chat_upload_", ".bin");
-                        filePart.write(raw.getAbsolutePath());
-                        String imgMime = ImageProcessor.detectImageMimeType(raw);
-                        if (imgMime == null || !imgMime.startsWith("image/")) {
-                            raw.delete();
-                            conn.rollback();
-                            JsonUtil.sendJsonResponse(resp, ApiResponse.error("Unsupported image"));
-                            return;
-                        }
-
-                        storedFileName = baseName + ".jpg";
-                        File out = new File(UPLOAD_DIR + File.separator + CHAT_DIR + File.separator + storedFileName);
-                        ImageProcessor.ProcessedImage processed = ImageProcessor.processAndSave(raw, imgMime, out, 1080, 1080);
-                        width = processed.width();
-                        height = processed.height();
-                        mimeType = processed.mimeType();
-                        fileSize = processed.fileSize();
-
-                        thumbFileName = baseName + "_t.jpg";
-                        File thumb = new File(UPLOAD_DIR + File.separator + CHAT_THUMB_DIR + File.separator + thumbFileName);
-                        ImageProcessor.processAndSave(out, mimeType, thumb, 360, 360);
-                        raw.delete();
+                        status = MediaPipeline.PROCESSING;
+                        mimeType = stagedMime;
+                        fileSize = stagedImage.length();
                     } else if ("video".equals(msgType) || "audio".equals(msgType)) {
                         if (!isAllowedMedia(msgType, ext, filePart.getContentType())) {
                             conn.rollback();
@@ -388,15 +507,21 @@ public class ChatServlet extends HttpServlet {
                             return;
                         }
 
-                        storedFileName = baseName + "." + ext;
-                        File out = new File(UPLOAD_DIR + File.separator + CHAT_DIR + File.separator + storedFileName);
-                        out.getParentFile().mkdirs();
-                        filePart.write(out.getAbsolutePath());
+                        BlobStore blobs = BlobStore.get();
+                        BlobStore.Staged staged;
+                        try (InputStream in = filePart.getInputStream()) {
+                            staged = blobs.stage(in);
+                        }
+                        BlobRefs.acquire(conn, staged.hash(), staged.size());
+                        blobs.commit(staged);
+                        if (!ext.matches("[a-z0-9]{1,10}")) ext = "bin";
+                        storedFileName = staged.hash() + "." + ext;
+                        storedHash = staged.hash();
                         mimeType = filePart.getContentType();
                         if (mimeType == null || mimeType.isBlank()) {
                             mimeType = guessMimeByExt(ext);
                         }
-                        fileSize = out.length();
+                        fileSize = staged.size();
                     } else {
                         conn.rollback();
                         JsonUtil.sendJsonResponse(resp, ApiResponse.error("Invalid msgType"));
@@ -404,8 +529,8 @@ public class ChatServlet extends HttpServlet {
                     }
                 }
 
-                String insert = "INSERT INTO chat_message (conversation_id, sender_id, msg_type, content_text, media_file_name, media_file_path, media_mime_type, media_file_size, width, height, thumb_file_name, create_time) " +
-                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, NOW())";
+                String insert = "INSERT INTO chat_message (conversation_id, sender_id, msg_type, content_text, media_file_name, media_file_path, media_mime_type, media_file_size, width, height, thumb_file_name, status, create_time) " +
+                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, NOW())";
                 long messageId;
                 try (PreparedStatement ps = conn.prepareStatement(insert, Statement.RETURN_GENERATED_KEYS)) {
                     ps.setLong(1, conversationId);
@@ -413,12 +538,14 @@ public class ChatServlet extends HttpServlet {
                     ps.setString(3, msgType);
                     if (text != null && !text.isBlank()) ps.setString(4, text); else ps.setNull(4, Types.LONGVARCHAR);
                     if (storedFileName != null) ps.setString(5, storedFileName); else ps.setNull(5, Types.VARCHAR);
-                    if (storedFileName != null) ps.setString(6, storedFileName); else ps.setNull(6, Types.VARCHAR);
+                    if (storedHash != null) ps.setString(6, BlobStore.ref(storedHash)); else ps.setNull(6, Types.VARCHAR);
                     if (mimeType != null) ps.setString(7, mimeType); else ps.setNull(7, Types.VARCHAR);
                     if (fileSize != null) ps.setLong(8, fileSize); else ps.setNull(8, Types.BIGINT);
                     if (width != null) ps.setInt(9, width); else ps.setNull(9, Types.INTEGER);
                     if (height != null) ps.setInt(10, height); else ps.setNull(10, Types.INTEGER);
-                    if (thumbFileName != null) ps.setString(11, thumbFileName); else ps.setNull(11, Types.VARCHAR);
+                    // only images have thumbnails, and those are filled in by the media pipeline
+                    ps.setNull(11, Types.VARCHAR);
+                    ps.setString(12, status);
                     ps.executeUpdate();
                     try (ResultSet rs = ps.getGeneratedKeys()) {
                         rs.next();
@@ -427,26 +554,30 @@ public class ChatServlet extends HttpServlet {
                 }
 
                 String preview = buildPreview(msgType, text);
-                try (PreparedStatement ps = conn.prepareStatement("UPDATE chat_conversation SET last_message_preview = ?, last_message_time = NOW() WHERE id = ?")) {
-                    ps.setString(1, preview);
-                    ps.setLong(2, conversationId);
+                try (PreparedStatement ps = conn.prepareStatement("UPDATE chat_conversation SET last_message_id = ?, last_message_preview = ?, last_message_time = NOW() WHERE id = ?")) {
+                    ps.setLong(1, messageId);
+                    ps.setString(2, preview);
+                    ps.setLong(3, conversationId);
                     ps.executeUpdate();
                 }
 
+                // read back so the pushed frame carries the timestamp and sender like history rows do
+                ChatMessageRow data;
+                try (PreparedStatement ps = conn.prepareStatement("SELECT " + MESSAGE_COLUMNS +
+                        "FROM chat_message m JOIN user u ON m.sender_id = u.id WHERE m.id = ?")) {
+                    ps.setLong(1, messageId);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        rs.next();
+                        data = readMessage(rs);
+                    }
+                }
+
                 conn.commit();
+                if (stagedImage != null) {
+                    jobs.add(new MediaPipeline.Job(MediaPipeline.Kind.CHAT_IMAGE, messageId, stagedImage));
+                }
 
-                Map<String, Object> data = new HashMap<>();
-                data.put("id", messageId);
-                data.put("conversationId", conversationId);
-                data.put("senderId", userId);
-                data.put("msgType", msgType);
-                data.put("text", text);
-                if (storedFileName != null) data.put("mediaUrl", "/api/chat/media/" + storedFileName); else data.put("mediaUrl", null);
-                if (thumbFileName != null) data.put("thumbUrl", "/api/chat/media/thumb/" + thumbFileName); else data.put("thumbUrl", null);
-                data.put("mimeType", mimeType);
-                data.put("fileSize", fileSize);
-                data.put("width", width);
-                data.put("height", height);
+                ChatBroker.get().messageCreated(conversationId, userId, toUserId, data);
                 JsonUtil.sendJsonResponse(resp, ApiResponse.success(data));
             } catch (SQLException e) {
                 conn.rollback();
@@ -457,6 +588,44 @@ public class ChatServlet extends HttpServlet {
             e.printStackTrace();
             JsonUtil.sendJsonResponse(resp, ApiResponse.error("Database error"));
         }
+        // submitted only once this request's connection is back in the pool
+        if (!jobs.isEmpty()) {
+            MediaPipeline.get().submit(jobs);
+        } else if (stagedImage != null) {
+            stagedImage.delete();
+        }
+    }
+
+    private ChatMessageRow readMessage(ResultSet rs) throws SQLException {
+        String fileName = rs.getString("media_file_name");
+        String thumbName = rs.getString("thumb_file_name");
+        long fileSize = rs.getLong("media_file_size");
+        boolean noFileSize = rs.wasNull();
+        int width = rs.getInt("width");
+        boolean noWidth = rs.wasNull();
+        int height = rs.getInt("height");
+        boolean noHeight = rs.wasNull();
+        UserSummary sender = new UserSummary(rs.getInt("sender_id"), rs.getString("username"),
+                rs.getString("nickname"), rs.getString("avatar"));
+        return new ChatMessageRow(
+                rs.getLong("id"),
+                rs.getLong("conversation_id"),
+                rs.getInt("sender_id"),
+                rs.getString("msg_type"),
+                rs.getString("content_text"),
+                fileName != null && !fileName.isBlank() ? "/api/chat/media/" + fileName : null,
+                thumbName != null && !thumbName.isBlank() ? "/api/chat/media/thumb/" + thumbName : null,
+                rs.getString("media_mime_type"),
+                noFileSize ? null : fileSize,
+                noWidth ? null : width,
+                noHeight ? null : height,
+                rs.getString("status"),
+                rs.getTimestamp("create_time").getTime(),
+                sender);
+    }
+
+    private static Long millis(Timestamp ts) {
+        return ts == null ? null : ts.getTime();
     }
 
     private long getOrCreateConversation(Connection conn, int a, int b) throws SQLException {
@@ -582,18 +751,6 @@ public class ChatServlet extends HttpServlet {
         }
     }
 
-    private Integer getUserIdFromRequest(HttpServletRequest req, HttpServletResponse resp) throws IOException {
-        String token = req.getHeader("Authorization");
-        if (token != null && token.startsWith("Bearer ")) {
-            token = token.substring(7);
-            if (JwtUtil.validateToken(token)) {
-                return JwtUtil.getUserIdFromToken(token);
-            }
-        }
-        JsonUtil.sendJsonResponse(resp, ApiResponse.error(401, "Unauthorized"));
-        return null;
-    }
-
     private void setCorsHeaders(HttpServletResponse resp) {
         resp.setHeader("Access-Control-Allow-Origin", "http://localhost:8081");
         resp.setHeader("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
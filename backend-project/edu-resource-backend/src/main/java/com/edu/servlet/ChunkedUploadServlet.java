@@ -0,0 +1,345 @@
+package com.edu.servlet;
+
+import com.edu.filter.AuthFilter;
+import com.edu.model.ApiResponse;
+import com.edu.model.Resource;
+import com.edu.recommend.RecommendationService;
+import com.edu.search.ResourceSearchIndex;
+import com.edu.storage.BlobRefs;
+import com.edu.storage.BlobStore;
+import com.edu.storage.Storage;
+import com.edu.upload.ChunkedUploadException;
+import com.edu.upload.ChunkedUploadStore;
+import com.edu.upload.UploadSession;
+import com.edu.util.AppConfig;
+import com.edu.util.DBUtil;
+import com.edu.util.JsonUtil;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Resumable upload for large resources, as an alternative to the multipart {@code POST /api/resources}.
+ * <pre>
+ * POST   /api/resources/uploads                 {fileName, fileSize, sha256?, name, description, category, allowComments, isPublic}
+ * GET    /api/resources/uploads/{id}            status: received offset, to resume after a failure
+ * PUT    /api/resources/uploads/{id}?offset=N   raw chunk body, X-Chunk-Sha256: hex digest of the chunk
+ * POST   /api/resources/uploads/{id}/complete   moves the file into the blob store and creates the resource row
+ * DELETE /api/resources/uploads/{id}            abort
+ * </pre>
+ */
+@WebServlet("/api/resources/uploads/*")
+public class ChunkedUploadServlet extends HttpServlet {
+    private static final long MB = 1024L * 1024;
+
+    private ChunkedUploadStore store;
+    private long maxFileSize;
+    private int maxChunkSize;
+    private int defaultChunkSize;
+    private long sessionTtlMillis;
+    private volatile long lastPurge;
+
+    @Override
+    public void init() throws ServletException {
+        maxFileSize = AppConfig.getLong("upload.maxFileSizeMB", 4096) * MB;
+        maxChunkSize = (int) (AppConfig.getInt("upload.maxChunkSizeMB", 16) * MB);
+        defaultChunkSize = (int) Math.min(AppConfig.getInt("upload.defaultChunkSizeMB", 8) * MB, maxChunkSize);
+        sessionTtlMillis = AppConfig.getLong("upload.sessionTtlHours", 24) * 3600_000L;
+        // sessions live on this node's disk; the finished file is handed to the storage backend
+        store = new ChunkedUploadStore(Storage.workDir(), maxChunkSize);
+        purgeExpired();
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        setCorsHeaders(resp);
+        String pathInfo = req.getPathInfo();
+        if (pathInfo != null && pathInfo.matches("/[0-9a-f]{32}")) {
+            UploadSession session = requireSession(req, resp, pathInfo.substring(1));
+            if (session != null) {
+                JsonUtil.sendJsonResponse(resp, ApiResponse.success(status(session)));
+            }
+        } else {
+            JsonUtil.sendJsonResponse(resp, ApiResponse.error("Invalid endpoint"));
+        }
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        setCorsHeaders(resp);
+        String pathInfo = req.getPathInfo();
+        if (pathInfo == null || "/".equals(pathInfo)) {
+            initUpload(req, resp);
+        } else if (pathInfo.matches("/[0-9a-f]{32}/complete")) {
+            completeUpload(req, resp, pathInfo.substring(1, 33));
+        } else {
+            JsonUtil.sendJsonResponse(resp, ApiResponse.error("Invalid endpoint"));
+        }
+    }
+
+    @Override
+    protected void doPut(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        setCorsHeaders(resp);
+        String pathInfo = req.getPathInfo();
+        if (pathInfo != null && pathInfo.matches("/[0-9a-f]{32}")) {
+            uploadChunk(req, resp, pathInfo.substring(1));
+        } else {
+            JsonUtil.sendJsonResponse(resp, ApiResponse.error("Invalid endpoint"));
+        }
+    }
+
+    @Override
+    protected void doDelete(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        setCorsHeaders(resp);
+        String pathInfo = req.getPathInfo();
+        if (pathInfo != null && pathInfo.matches("/[0-9a-f]{32}")) {
+            UploadSession session = requireSession(req, resp, pathInfo.substring(1));
+            if (session != null) {
+                store.abort(session);
+                JsonUtil.sendJsonResponse(resp, ApiResponse.success("Upload aborted", null));
+            }
+        } else {
+            JsonUtil.sendJsonResponse(resp, ApiResponse.error("Invalid endpoint"));
+        }
+    }
+
+    @Override
+    protected void doOptions(HttpServletRequest req, HttpServletResponse resp) {
+        setCorsHeaders(resp);
+        resp.setStatus(HttpServletResponse.SC_OK);
+    }
+
+    private void setCorsHeaders(HttpServletResponse resp) {
+        resp.setHeader("Access-Control-Allow-Origin", "http://localhost:8081");
+        resp.setHeader("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
+        resp.setHeader("Access-Control-Allow-Headers", "Content-Type, Authorization, X-Chunk-Sha256");
+        resp.setHeader("Access-Control-Allow-Credentials", "true");
+    }
+
+    private void initUpload(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        Integer userId = AuthFilter.requireUserId(req, resp);
+        if (userId == null) return;
+
+        Map<String, Object> body;
+        try {
+            body = JsonUtil.parseJsonMap(req);
+        } catch (Exception e) {
+            body = null;
+        }
+        if (body == null) {
+            JsonUtil.sendJsonResponse(resp, ApiResponse.error("Invalid request body"));
+            return;
+        }
+
+        String originalName = stringValue(body.get("fileName"));
+        if (originalName == null || originalName.isBlank()) {
+            JsonUtil.sendJsonResponse(resp, ApiResponse.error("Invalid file name"));
+            return;
+        }
+        try {
+            originalName = Paths.get(originalName).getFileName().toString().trim();
+        } catch (InvalidPathException e) {
+            JsonUtil.sendJsonResponse(resp, ApiResponse.error("Invalid file name"));
+            return;
+        }
+
+        long fileSize = body.get("fileSize") instanceof Number n ? n.longValue() : -1;
+        if (fileSize <= 0) {
+            JsonUtil.sendJsonResponse(resp, ApiResponse.error("Invalid file size"));
+            return;
+        }
+        if (fileSize > maxFileSize) {
+            JsonUtil.sendJsonResponse(resp, ApiResponse.error(413, "File exceeds " + (maxFileSize / MB) + " MB"));
+            return;
+        }
+        String sha256 = stringValue(body.get("sha256"));
+        if (sha256 != null && !sha256.isBlank() && !sha256.matches("[0-9a-fA-F]{64}")) {
+            JsonUtil.sendJsonResponse(resp, ApiResponse.error("Invalid sha256"));
+            return;
+        }
+
+        UploadSession session = new UploadSession();
+        session.setUserId(userId);
+        session.setOriginalName(originalName);
+        session.setStoredName(System.currentTimeMillis() + "_" + originalName);
+        session.setFileSize(fileSize);
+        session.setChunkSize(defaultChunkSize);
+        session.setSha256(sha256 == null || sha256.isBlank() ? null : sha256.toLowerCase());
+        session.setTitle(stringValue(body.get("name")));
+        session.setDescription(stringValue(body.get("description")));
+        session.setCategory(stringValue(body.get("category")));
+        session.setAllowComments(Boolean.parseBoolean(String.valueOf(body.get("allowComments"))));
+        session.setPublic(Boolean.parseBoolean(String.valueOf(body.get("isPublic"))));
+
+        try {
+            store.create(session);
+        } catch (IOException e) {
+            e.printStackTrace();
+            JsonUtil.sendJsonResponse(resp, ApiResponse.error("Failed to create upload: " + e.getMessage()));
+            return;
+        }
+        if (System.currentTimeMillis() - lastPurge > 3600_000L) {
+            purgeExpired();
+        }
+        JsonUtil.sendJsonResponse(resp, ApiResponse.success(status(session)));
+    }
+
+    private void uploadChunk(HttpServletRequest req, HttpServletResponse resp, String uploadId) throws IOException {
+        UploadSession session = requireSession(req, resp, uploadId);
+        if (session == null) return;
+
+        long offset;
+        try {
+            offset = Long.parseLong(req.getParameter("offset"));
+        } catch (NumberFormatException e) {
+            JsonUtil.sendJsonResponse(resp, ApiResponse.error("Invalid offset"));
+            return;
+        }
+
+        try {
+            store.appendChunk(session, offset, req.getContentLengthLong(), req.getHeader("X-Chunk-Sha256"), req.getInputStream());
+            JsonUtil.sendJsonResponse(resp, ApiResponse.success(status(session)));
+        } catch (ChunkedUploadException e) {
+            JsonUtil.sendJsonResponse(resp, rejected(e.getCode(), e.getMessage(), session));
+        } catch (IOException e) {
+            e.printStackTrace();
+            JsonUtil.sendJsonResponse(resp, rejected(500, "Chunk write failed: " + e.getMessage(), session));
+        }
+    }
+
+    private void completeUpload(HttpServletRequest req, HttpServletResponse resp, String uploadId) throws IOException {
+        UploadSession session = requireSession(req, resp, uploadId);
+        if (session == null) return;
+
+        File file;
+        try {
+            file = store.complete(session);
+        } catch (ChunkedUploadException e) {
+            JsonUtil.sendJsonResponse(resp, rejected(e.getCode(), e.getMessage(), session));
+            return;
+        } catch (IOException e) {
+            e.printStackTrace();
+            JsonUtil.sendJsonResponse(resp, ApiResponse.error("Failed to finalize upload: " + e.getMessage()));
+            return;
+        }
+
+        String fileName = session.getStoredName();
+        String originalName = session.getOriginalName();
+        String fileType = "";
+        int dotIndex = originalName.lastIndexOf(".");
+        if (dotIndex >= 0 && dotIndex < originalName.length() - 1) {
+            fileType = originalName.substring(dotIndex + 1).toLowerCase();
+        }
+
+        BlobStore blobs = BlobStore.get();
+        BlobStore.Staged staged = blobs.adopt(file, session.getSha256());
+        String filePath = BlobStore.ref(staged.hash());
+        String sql = "INSERT INTO resource (title, description, category, file_name, file_path, file_size, file_type, uploader_id, allow_comments, is_public) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        try (Connection conn = DBUtil.getConnection()) {
+            conn.setAutoCommit(false);
+            int id;
+            try (PreparedStatement ps = conn.prepareStatement(sql, PreparedStatement.RETURN_GENERATED_KEYS)) {
+                ps.setString(1, session.getTitle());
+                ps.setString(2, session.getDescription());
+                ps.setString(3, session.getCategory());
+                ps.setString(4, fileName);
+                ps.setString(5, filePath);
+                ps.setLong(6, session.getFileSize());
+                ps.setString(7, fileType);
+                ps.setInt(8, session.getUserId());
+                ps.setBoolean(9, session.isAllowComments());
+                ps.setBoolean(10, session.isPublic());
+                ps.executeUpdate();
+                try (ResultSet rs = ps.getGeneratedKeys()) {
+                    rs.next();
+                    id = rs.getInt(1);
+                }
+                BlobRefs.acquire(conn, staged.hash(), staged.size());
+                blobs.commit(staged);
+                conn.commit();
+            } catch (SQLException | IOException e) {
+                // the part file stays in place until it has been moved, so the client can retry complete
+                conn.rollback();
+                throw e;
+            }
+            store.finish(session);
+
+            ResourceSearchIndex.get().index(new ResourceSearchIndex.Document(
+                    id, session.getTitle(), session.getDescription(), session.getCategory(), fileType, session.isPublic()));
+            RecommendationService.get().uploaded(session.getUserId(), id, session.getCategory(), fileType, session.isPublic());
+
+            Resource resource = new Resource();
+            resource.setId(id);
+            resource.setName(session.getTitle());
+            resource.setDescription(session.getDescription());
+            resource.setCategory(session.getCategory());
+            resource.setFileName(fileName);
+            resource.setFilePath(filePath);
+            resource.setFileSize(session.getFileSize());
+            resource.setFileType(fileType);
+            resource.setUploaderId(session.getUserId());
+            JsonUtil.sendJsonResponse(resp, ApiResponse.success("Resource uploaded successfully", resource));
+        } catch (SQLException e) {
+            e.printStackTrace();
+            JsonUtil.sendJsonResponse(resp, ApiResponse.error("Database error"));
+        } catch (IOException e) {
+            e.printStackTrace();
+            JsonUtil.sendJsonResponse(resp, ApiResponse.error("Failed to store file: " + e.getMessage()));
+        }
+    }
+
+    private UploadSession requireSession(HttpServletRequest req, HttpServletResponse resp, String uploadId) throws IOException {
+        Integer userId = AuthFilter.requireUserId(req, resp);
+        if (userId == null) return null;
+        UploadSession session = store.get(uploadId);
+        if (session == null || session.getUserId() != userId) {
+            JsonUtil.sendJsonResponse(resp, ApiResponse.error(404, "Upload not found"));
+            return null;
+        }
+        return session;
+    }
+
+    private Map<String, Object> status(UploadSession session) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("uploadId", session.getId());
+        data.put("fileName", session.getOriginalName());
+        data.put("fileSize", session.getFileSize());
+        data.put("chunkSize", session.getChunkSize());
+        data.put("received", session.getReceived());
+        return data;
+    }
+
+    // errors on an existing session carry its status so the client knows where to resume
+    private ApiResponse<Map<String, Object>> rejected(int code, String message, UploadSession session) {
+        ApiResponse<Map<String, Object>> response = ApiResponse.error(code, message);
+        response.setData(status(session));
+        return response;
+    }
+
+    private void purgeExpired() {
+        lastPurge = System.currentTimeMillis();
+        try {
+            store.purgeExpired(sessionTtlMillis);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static String stringValue(Object o) {
+        return o == null ? null : String.valueOf(o);
+    }
+}
@@ -1,11 +1,14 @@
 package com.edu.servlet;
 
+import com.edu.counter.ResourceCounters;
+import com.edu.filter.AuthFilter;
 import com.edu.model.ApiResponse;
 import com.edu.model.Resource;
 import com.edu.model.User;
+import com.edu.recommend.RecommendationService;
+import com.edu.recommend.RelatedResources;
 import com.edu.util.DBUtil;
 import com.edu.util.JsonUtil;
-import com.edu.util.JwtUtil;
 
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
@@ -72,7 +75,7 @@ public class CollectionServlet extends HttpServlet {
     }
 
     private void toggleCollection(HttpServletRequest req, HttpServletResponse resp) throws IOException {
-        Integer userId = getUserIdFromRequest(req, resp);
+        Integer userId = AuthFilter.requireUserId(req, resp);
         if (userId == null) return;
 
         ToggleCollectionRequest toggleRequest;
@@ -116,9 +119,10 @@ public class CollectionServlet extends HttpServlet {
                 ps = conn.prepareStatement(deleteSql);
                 ps.setInt(1, userId);
                 ps.setInt(2, resourceId);
-                ps.executeUpdate();
+                int deleted = ps.executeUpdate();
                 ps.close();
                 
+                ResourceCounters.adjustCollections(conn, resourceId, -deleted);
                 newStatus = false;
             } else {
                 // Add collection
@@ -126,32 +130,18 @@ public class CollectionServlet extends HttpServlet {
                 ps = conn.prepareStatement(insertSql);
                 ps.setInt(1, userId);
                 ps.setInt(2, resourceId);
-                ps.executeUpdate();
+                int inserted = ps.executeUpdate();
                 ps.close();
                 
+                ResourceCounters.adjustCollections(conn, resourceId, inserted);
                 newStatus = true;
             }
             
-            // Get new count
-            String countSql = "SELECT COUNT(*) FROM collection WHERE resource_id = ?";
-            ps = conn.prepareStatement(countSql);
-            ps.setInt(1, resourceId);
-            rs = ps.executeQuery();
-            int newCount = 0;
-            if (rs.next()) {
-                newCount = rs.getInt(1);
-            }
-            rs.close();
-            ps.close();
-
-            String updateResourceSql = "UPDATE resource SET collection_count = ? WHERE id = ?";
-            ps = conn.prepareStatement(updateResourceSql);
-            ps.setInt(1, newCount);
-            ps.setInt(2, resourceId);
-            ps.executeUpdate();
-            ps.close();
+            int newCount = ResourceCounters.getCollectionCount(conn, resourceId);
 
             conn.commit();
+            RecommendationService.get().collected(userId, resourceId, newStatus ? 1 : -1);
+            RelatedResources.get().collected(userId, resourceId);
 
             JsonUtil.sendJsonResponse(resp, ApiResponse.success("Success", 
                 new ToggleResponse(newStatus, newCount)));
@@ -170,7 +160,7 @@ public class CollectionServlet extends HttpServlet {
     }
 
     private void listCollections(HttpServletRequest req, HttpServletResponse resp) throws IOException {
-        Integer userId = getUserIdFromRequest(req, resp);
+        Integer userId = AuthFilter.requireUserId(req, resp);
         if (userId == null) return;
         
         System.out.println("listCollections called for userId: " + userId);
@@ -301,7 +291,7 @@ public class CollectionServlet extends HttpServlet {
     }
 
     private void checkStatus(HttpServletRequest req, HttpServletResponse resp) throws IOException {
-        Integer userId = getUserIdFromRequest(req, resp);
+        Integer userId = AuthFilter.requireUserId(req, resp);
         if (userId == null) return;
 
         String resourceIdStr = req.getParameter("resourceId");
@@ -345,18 +335,6 @@ public class CollectionServlet extends HttpServlet {
         }
     }
 
-    private Integer getUserIdFromRequest(HttpServletRequest req, HttpServletResponse resp) throws IOException {
-        String token = req.getHeader("Authorization");
-        if (token != null && token.startsWith("Bearer ")) {
-            token = token.substring(7);
-            if (JwtUtil.validateToken(token)) {
-                return JwtUtil.getUserIdFromToken(token);
-            }
-        }
-        JsonUtil.sendJsonResponse(resp, ApiResponse.error(401, "Unauthorized"));
-        return null;
-    }
-
     private static class ToggleResponse {
         private boolean isCollected;
         private int count;
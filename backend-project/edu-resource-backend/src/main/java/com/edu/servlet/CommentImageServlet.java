@@ -1,6 +1,10 @@
 package com.edu.servlet;
 
 import com.edu.model.ApiResponse;
+import com.edu.storage.BlobImages;
+import com.edu.storage.Storage;
+import com.edu.storage.StorageService;
+import com.edu.util.FileServer;
 import com.edu.util.JsonUtil;
 
 import jakarta.servlet.ServletException;
@@ -8,14 +12,10 @@ import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 
 @WebServlet(urlPatterns = {"/api/comment/image/*"})
 public class CommentImageServlet extends HttpServlet {
-    private static final String UPLOAD_DIR = "C:/Users/macha/Desktop/Graduation-Design-EduResourcePlatform/storage/uploads";
     private static final String COMMENT_DIR = "comments";
     private static final String COMMENT_THUMB_DIR = "comments_thumbs";
 
@@ -39,26 +39,23 @@ public class CommentImageServlet extends HttpServlet {
             return;
         }
 
-        File file = new File(UPLOAD_DIR + File.separator + (thumb ? COMMENT_THUMB_DIR : COMMENT_DIR) + File.separator + p);
-        if (!file.exists()) {
+        String key = BlobImages.resolve(p, thumb);
+        if (key == null) {
+            // images uploaded before the blob store
+            key = (thumb ? COMMENT_THUMB_DIR : COMMENT_DIR) + "/" + p;
+        }
+        StorageService storage = Storage.get();
+        StorageService.StoredObject object = storage.stat(key);
+        if (object == null) {
             resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
             return;
         }
 
-        String mime = getServletContext().getMimeType(file.getName());
+        String mime = getServletContext().getMimeType(p);
         if (mime == null) mime = "image/jpeg";
 
         resp.setHeader("Cache-Control", "public, max-age=31536000");
-        resp.setContentType(mime);
-        resp.setContentLengthLong(file.length());
-
-        try (FileInputStream fis = new FileInputStream(file); OutputStream os = resp.getOutputStream()) {
-            byte[] buf = new byte[8192];
-            int n;
-            while ((n = fis.read(buf)) >= 0) {
-                os.write(buf, 0, n);
-            }
-        }
+        FileServer.serve(req, resp, storage, object, mime);
     }
 }
 
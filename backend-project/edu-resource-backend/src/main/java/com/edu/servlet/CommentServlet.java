@@ -1,7 +1,15 @@
 package com.edu.servlet;
 
+import com.edu.comment.CommentPageCache;
+import com.edu.comment.ReplyLoader;
+import com.edu.comment.ThreadAggregates;
+import com.edu.counter.ResourceCounters;
 import com.edu.model.Comment;
 import com.edu.model.ApiResponse;
+import com.edu.recommend.RecommendationService;
+import com.edu.storage.BlobRefs;
+import com.edu.util.AppConfig;
+import com.edu.util.CursorUtil;
 import com.edu.util.DBUtil;
 import com.edu.util.JsonUtil;
 import com.edu.util.JwtUtil;
@@ -37,6 +45,8 @@ public class CommentServlet extends HttpServlet {
             }
         } else if (pathInfo.matches("/\\d+")) {
             getCommentDetail(req, resp);
+        } else if (pathInfo.matches("/\\d+/replies")) {
+            getReplies(req, resp);
         } else {
             JsonUtil.sendJsonResponse(resp, ApiResponse.error("Invalid endpoint"));
         }
@@ -111,61 +121,68 @@ public class CommentServlet extends HttpServlet {
             int page = (pageStr != null && !pageStr.isEmpty()) ? Integer.parseInt(pageStr) : 1;
             int pageSize = (pageSizeStr != null && !pageSizeStr.isEmpty()) ? Integer.parseInt(pageSizeStr) : 10;
             int offset = (page - 1) * pageSize;
+            int repliesPerComment = Math.max(1, AppConfig.getInt("comment.repliesPerComment", 10));
+
+            try (Connection conn = DBUtil.getConnection()) {
+                String countSql = "SELECT COUNT(*) FROM comment WHERE resource_id = ? AND parent_id IS NULL";
+                String sql = "SELECT c.*, u.username, u.nickname, u.avatar FROM comment c " +
+                             "LEFT JOIN user u ON c.user_id = u.id " +
+                             "WHERE c.resource_id = ? AND c.parent_id IS NULL " +
+                             "ORDER BY c.create_time DESC LIMIT ? OFFSET ?";
+
+                int total;
+                try (PreparedStatement countStmt = conn.prepareStatement(countSql)) {
+                    countStmt.setInt(1, resourceId);
+                    try (ResultSet countRs = countStmt.executeQuery()) {
+                        countRs.next();
+                        total = countRs.getInt(1);
+                    }
+                }
 
-            Connection conn = DBUtil.getConnection();
-            String countSql = "SELECT COUNT(*) FROM comment WHERE resource_id = ? AND parent_id IS NULL";
-            String sql = "SELECT c.*, u.username, u.nickname, u.avatar FROM comment c " +
-                         "LEFT JOIN user u ON c.user_id = u.id " +
-                         "WHERE c.resource_id = ? AND c.parent_id IS NULL " + 
-                         "ORDER BY c.create_time DESC LIMIT ? OFFSET ?";
-
-            PreparedStatement countStmt = conn.prepareStatement(countSql);
-            countStmt.setInt(1, resourceId);
-            ResultSet countRs = countStmt.executeQuery();
-            countRs.next();
-            int total = countRs.getInt(1);
-            countRs.close();
-            countStmt.close();
-
-            PreparedStatement stmt = conn.prepareStatement(sql);
-            stmt.setInt(1, resourceId);
-            stmt.setInt(2, pageSize);
-            stmt.setInt(3, offset);
-            ResultSet rs = stmt.executeQuery();
-
-            List<Map<String, Object>> comments = new ArrayList<>();
-            while (rs.next()) {
-                Map<String, Object> comment = new HashMap<>();
-                int commentId = rs.getInt("id");
-                comment.put("id", commentId);
-                comment.put("resourceId", rs.getInt("resource_id"));
-                comment.put("userId", rs.getInt("user_id"));
-                comment.put("content", rs.getString("content"));
-                comment.put("parentId", rs.getObject("parent_id") != null ? rs.getInt("parent_id") : null);
-                comment.put("createTime", rs.getTimestamp("create_time").getTime());
-                comment.put("username", rs.getString("username"));
-                comment.put("nickname", rs.getString("nickname"));
-                comment.put("avatar", rs.getString("avatar"));
-                
-                // Fetch replies for this comment
-                List<Map<String, Object>> replies = getRepliesForComment(conn, commentId);
-                comment.put("replies", replies);
-                
-                comments.add(comment);
-            }
+                List<Map<String, Object>> comments = new ArrayList<>();
+                List<Integer> commentIds = new ArrayList<>();
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setInt(1, resourceId);
+                    stmt.setInt(2, pageSize);
+                    stmt.setInt(3, offset);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            Map<String, Object> comment = new HashMap<>();
+                            int commentId = rs.getInt("id");
+                            comment.put("id", commentId);
+                            comment.put("resourceId", rs.getInt("resource_id"));
+                            comment.put("userId", rs.getInt("user_id"));
+                            comment.put("content", rs.getString("content"));
+                            comment.put("parentId", rs.getObject("parent_id") != null ? rs.getInt("parent_id") : null);
+                            comment.put("createTime", rs.getTimestamp("create_time").getTime());
+                            comment.put("username", rs.getString("username"));
+                            comment.put("nickname", rs.getString("nickname"));
+                            comment.put("avatar", rs.getString("avatar"));
+                            comments.add(comment);
+                            commentIds.add(commentId);
+                        }
+                    }
+                }
 
-            rs.close();
-            stmt.close();
-            conn.close();
+                // all replies of the page in one query, capped per comment
+                Map<Integer, ReplyLoader.ReplyThread<Map<String, Object>>> threads =
+                        ReplyLoader.load(conn, commentIds, repliesPerComment, this::mapReply);
+                for (Map<String, Object> comment : comments) {
+                    ReplyLoader.ReplyThread<Map<String, Object>> thread = threads.get((Integer) comment.get("id"));
+                    comment.put("replies", thread == null ? new ArrayList<>() : thread.replies());
+                    comment.put("hasMoreReplies", thread != null && thread.hasMore());
+                    comment.put("repliesCursor", thread == null ? null : thread.nextCursor());
+                }
 
-            Map<String, Object> data = new HashMap<>();
-            data.put("comments", comments);
-            data.put("total", total);
-            data.put("page", page);
-            data.put("pageSize", pageSize);
-            data.put("totalPages", (int) Math.ceil((double) total / pageSize));
+                Map<String, Object> data = new HashMap<>();
+                data.put("comments", comments);
+                data.put("total", total);
+                data.put("page", page);
+                data.put("pageSize", pageSize);
+                data.put("totalPages", (int) Math.ceil((double) total / pageSize));
 
-            JsonUtil.sendJsonResponse(resp, ApiResponse.success(data));
+                JsonUtil.sendJsonResponse(resp, ApiResponse.success(data));
+            }
         } catch (NumberFormatException e) {
             JsonUtil.sendJsonResponse(resp, ApiResponse.error("Invalid resource ID format"));
         } catch (Exception e) {
@@ -173,45 +190,55 @@ public class CommentServlet extends HttpServlet {
             JsonUtil.sendJsonResponse(resp, ApiResponse.error("Failed to get comments: " + e.getMessage()));
         }
     }
-    
-    private List<Map<String, Object>> getRepliesForComment(Connection conn, int parentId) throws SQLException {
-        String sql = "SELECT c.*, u.username, u.nickname, u.avatar, ru.nickname as reply_to_nickname, ru.username as reply_to_username " +
-                     "FROM comment c " +
-                     "LEFT JOIN user u ON c.user_id = u.id " +
-                     "LEFT JOIN user ru ON c.reply_to_user_id = ru.id " +
-                     "WHERE c.parent_id = ? ORDER BY c.create_time ASC";
-        
-        PreparedStatement stmt = conn.prepareStatement(sql);
-        stmt.setInt(1, parentId);
-        ResultSet rs = stmt.executeQuery();
-        
-        List<Map<String, Object>> replies = new ArrayList<>();
-        while (rs.next()) {
-            Map<String, Object> reply = new HashMap<>();
-            reply.put("id", rs.getInt("id"));
-            reply.put("resourceId", rs.getInt("resource_id"));
-            reply.put("userId", rs.getInt("user_id"));
-            reply.put("content", rs.getString("content"));
-            reply.put("parentId", rs.getInt("parent_id"));
-            reply.put("createTime", rs.getTimestamp("create_time").getTime());
-            reply.put("username", rs.getString("username"));
-            reply.put("nickname", rs.getString("nickname"));
-            reply.put("avatar", rs.getString("avatar"));
-            
-            // Add reply to user info
-            int replyToUserId = rs.getInt("reply_to_user_id");
-            if (!rs.wasNull()) {
-                reply.put("replyToUserId", replyToUserId);
-                reply.put("replyToNickname", rs.getString("reply_to_nickname"));
-                reply.put("replyToUsername", rs.getString("reply_to_username"));
-            }
-            
-            replies.add(reply);
+
+    /**
+     * Replies of one comment after {@code cursor}, continuing the capped list in the comment page.
+     */
+    private void getReplies(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        String pathInfo = req.getPathInfo();
+        int parentId = Integer.parseInt(pathInfo.substring(1, pathInfo.indexOf("/replies")));
+        String limitStr = req.getParameter("limit");
+        int limit = 20;
+        try {
+            if (limitStr != null && !limitStr.isEmpty()) limit = Integer.parseInt(limitStr);
+        } catch (NumberFormatException ignored) {
         }
-        
-        rs.close();
-        stmt.close();
-        return replies;
+        limit = Math.min(50, Math.max(1, limit));
+        CursorUtil.Cursor cursor = CursorUtil.decode(req.getParameter("cursor"));
+
+        try (Connection conn = DBUtil.getConnection()) {
+            ReplyLoader.ReplyThread<Map<String, Object>> thread = ReplyLoader.page(conn, parentId, cursor, limit, this::mapReply);
+            Map<String, Object> data = new HashMap<>();
+            data.put("replies", thread.replies());
+            data.put("hasMore", thread.hasMore());
+            data.put("nextCursor", thread.nextCursor());
+            JsonUtil.sendJsonResponse(resp, ApiResponse.success(data));
+        } catch (SQLException e) {
+            e.printStackTrace();
+            JsonUtil.sendJsonResponse(resp, ApiResponse.error("Failed to get replies: " + e.getMessage()));
+        }
+    }
+
+    private Map<String, Object> mapReply(ResultSet rs) throws SQLException {
+        Map<String, Object> reply = new HashMap<>();
+        reply.put("id", rs.getInt("id"));
+        reply.put("resourceId", rs.getInt("resource_id"));
+        reply.put("userId", rs.getInt("user_id"));
+        reply.put("content", rs.getString("content"));
+        reply.put("parentId", rs.getInt("parent_id"));
+        reply.put("createTime", rs.getTimestamp("create_time").getTime());
+        reply.put("username", rs.getString("username"));
+        reply.put("nickname", rs.getString("nickname"));
+        reply.put("avatar", rs.getString("avatar"));
+
+        // Add reply to user info
+        int replyToUserId = rs.getInt("reply_to_user_id");
+        if (!rs.wasNull()) {
+            reply.put("replyToUserId", replyToUserId);
+            reply.put("replyToNickname", rs.getString("reply_to_nickname"));
+            reply.put("replyToUsername", rs.getString("reply_to_username"));
+        }
+        return reply;
     }
 
     private void getCommentDetail(HttpServletRequest req, HttpServletResponse resp) throws IOException {
@@ -221,35 +248,31 @@ public class CommentServlet extends HttpServlet {
         try {
             int commentId = Integer.parseInt(commentIdStr);
 
-            Connection conn = DBUtil.getConnection();
             String sql = "SELECT c.*, u.username, u.nickname, u.avatar FROM comment c " +
                          "LEFT JOIN user u ON c.user_id = u.id WHERE c.id = ?";
+            Map<String, Object> comment = null;
+            try (Connection conn = DBUtil.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setInt(1, commentId);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        comment = new HashMap<>();
+                        comment.put("id", rs.getInt("id"));
+                        comment.put("resourceId", rs.getInt("resource_id"));
+                        comment.put("userId", rs.getInt("user_id"));
+                        comment.put("content", rs.getString("content"));
+                        comment.put("parentId", rs.getObject("parent_id") != null ? rs.getInt("parent_id") : null);
+                        comment.put("createTime", rs.getTimestamp("create_time").getTime());
+                        comment.put("username", rs.getString("username"));
+                        comment.put("nickname", rs.getString("nickname"));
+                        comment.put("avatar", rs.getString("avatar"));
+                    }
+                }
+            }
 
-            PreparedStatement stmt = conn.prepareStatement(sql);
-            stmt.setInt(1, commentId);
-            ResultSet rs = stmt.executeQuery();
-
-            if (rs.next()) {
-                Map<String, Object> comment = new HashMap<>();
-                comment.put("id", rs.getInt("id"));
-                comment.put("resourceId", rs.getInt("resource_id"));
-                comment.put("userId", rs.getInt("user_id"));
-                comment.put("content", rs.getString("content"));
-                comment.put("parentId", rs.getObject("parent_id") != null ? rs.getInt("parent_id") : null);
-                comment.put("createTime", rs.getTimestamp("create_time").getTime());
-                comment.put("username", rs.getString("username"));
-                comment.put("nickname", rs.getString("nickname"));
-                comment.put("avatar", rs.getString("avatar"));
-
-                rs.close();
-                stmt.close();
-                conn.close();
-
+            if (comment != null) {
                 JsonUtil.sendJsonResponse(resp, ApiResponse.success(comment));
             } else {
-                rs.close();
-                stmt.close();
-                conn.close();
                 JsonUtil.sendJsonResponse(resp, ApiResponse.error("Comment not found"));
             }
         } catch (NumberFormatException e) {
@@ -349,8 +372,12 @@ public class CommentServlet extends HttpServlet {
                         upRoot.setInt(2, commentId);
                         upRoot.executeUpdate();
                         upRoot.close();
+                    } else {
+                        ThreadAggregates.replyAdded(conn, rootId, comment.getParentId(), commentId);
                     }
-                    syncCommentCount(conn, comment.getResourceId());
+                    ResourceCounters.adjustComments(conn, comment.getResourceId(), 1);
+                    CommentPageCache.get().invalidate(comment.getResourceId());
+                    RecommendationService.get().commented(userId, comment.getResourceId());
                     
                     // Get the created comment with user info
                     String getCommentSql = "SELECT c.*, u.username, u.nickname, u.avatar FROM comment c " +
@@ -434,7 +461,7 @@ public class CommentServlet extends HttpServlet {
             Connection conn = DBUtil.getConnection();
             
             // Check ownership
-            String checkSql = "SELECT user_id FROM comment WHERE id = ?";
+            String checkSql = "SELECT user_id, resource_id FROM comment WHERE id = ?";
             PreparedStatement checkStmt = conn.prepareStatement(checkSql);
             checkStmt.setInt(1, commentId);
             ResultSet rs = checkStmt.executeQuery();
@@ -448,6 +475,7 @@ public class CommentServlet extends HttpServlet {
             }
             
             int ownerId = rs.getInt("user_id");
+            int resourceId = rs.getInt("resource_id");
             rs.close();
             checkStmt.close();
             
@@ -468,6 +496,7 @@ public class CommentServlet extends HttpServlet {
             conn.close();
 
             if (affectedRows > 0) {
+                CommentPageCache.get().invalidate(resourceId);
                 Map<String, Object> data = new HashMap<>();
                 data.put("message", "Comment updated successfully");
 
@@ -505,7 +534,7 @@ public class CommentServlet extends HttpServlet {
             Connection conn = DBUtil.getConnection();
             
             // Check ownership
-            String checkSql = "SELECT user_id, resource_id FROM comment WHERE id = ?";
+            String checkSql = "SELECT user_id, resource_id, root_id FROM comment WHERE id = ?";
             PreparedStatement checkStmt = conn.prepareStatement(checkSql);
             checkStmt.setInt(1, commentId);
             ResultSet rs = checkStmt.executeQuery();
@@ -520,6 +549,7 @@ public class CommentServlet extends HttpServlet {
             
             int ownerId = rs.getInt("user_id");
             int resourceId = rs.getInt("resource_id");
+            Integer rootId = rs.getObject("root_id") != null ? rs.getInt("root_id") : null;
             rs.close();
             checkStmt.close();
             
@@ -529,21 +559,50 @@ public class CommentServlet extends HttpServlet {
                 return;
             }
 
-            String sql = "DELETE FROM comment WHERE id = ?";
+            int affectedRows;
+            try {
+                conn.setAutoCommit(false);
+
+                // images of the comment and its replies (FK cascade) give up their blob references
+                // in the same transaction, as in CommentV2Servlet
+                List<String> imagePaths = new ArrayList<>();
+                String imageSql = "WITH RECURSIVE doomed (id) AS (" +
+                        "SELECT id FROM comment WHERE id = ? " +
+                        "UNION ALL SELECT c.id FROM comment c JOIN doomed d ON c.parent_id = d.id) " +
+                        "SELECT ci.file_path FROM comment_image ci JOIN doomed d ON ci.comment_id = d.id FOR UPDATE";
+                try (PreparedStatement ps = conn.prepareStatement(imageSql)) {
+                    ps.setInt(1, commentId);
+                    try (ResultSet imageRs = ps.executeQuery()) {
+                        while (imageRs.next()) {
+                            imagePaths.add(imageRs.getString(1));
+                        }
+                    }
+                }
 
-            PreparedStatement stmt = conn.prepareStatement(sql);
-            stmt.setInt(1, commentId);
+                try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM comment WHERE id = ?")) {
+                    stmt.setInt(1, commentId);
+                    affectedRows = stmt.executeUpdate();
+                }
 
-            int affectedRows = stmt.executeUpdate();
-            
-            if (affectedRows > 0) {
-                syncCommentCount(conn, resourceId);
+                if (affectedRows > 0) {
+                    for (String path : imagePaths) {
+                        BlobRefs.releasePath(conn, path);
+                    }
+                    ResourceCounters.recountComments(conn, resourceId);
+                    if (rootId != null && rootId != commentId) {
+                        ThreadAggregates.recount(conn, rootId);
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.close();
             }
-            
-            stmt.close();
-            conn.close();
 
             if (affectedRows > 0) {
+                CommentPageCache.get().invalidate(resourceId);
                 Map<String, Object> data = new HashMap<>();
                 data.put("message", "Comment deleted successfully");
 
@@ -575,21 +634,4 @@ public class CommentServlet extends HttpServlet {
             ps.close();
         }
     }
-
-    private void syncCommentCount(Connection conn, int resourceId) throws SQLException {
-        int cnt = 0;
-        PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) FROM comment WHERE resource_id = ?");
-        ps.setInt(1, resourceId);
-        ResultSet rs = ps.executeQuery();
-        if (rs.next()) {
-            cnt = rs.getInt(1);
-        }
-        rs.close();
-        ps.close();
-        PreparedStatement up = conn.prepareStatement("UPDATE resource SET comment_count = ? WHERE id = ?");
-        up.setInt(1, cnt);
-        up.setInt(2, resourceId);
-        up.executeUpdate();
-        up.close();
-    }
 }
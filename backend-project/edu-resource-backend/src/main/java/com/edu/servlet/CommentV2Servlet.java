@@ -1,11 +1,27 @@
 package com.edu.servlet;
 
+import com.edu.comment.CommentPageCache;
+import com.edu.comment.ReplyLoader;
+import com.edu.comment.ThreadAggregates;
+import com.edu.counter.ResourceCounters;
+import com.edu.dto.CommentImageRow;
+import com.edu.dto.CommentRow;
+import com.edu.dto.UserSummary;
+import com.edu.filter.AuthFilter;
 import com.edu.model.ApiResponse;
+import com.edu.model.PageResult;
+import com.edu.media.MediaPipeline;
+import com.edu.notify.NotificationEvent;
+import com.edu.recommend.RecommendationService;
+import com.edu.storage.BlobRefs;
+import com.edu.storage.BlobStore;
+import com.edu.storage.Storage;
+import com.edu.storage.StorageService;
+import com.edu.util.CursorUtil;
 import com.edu.util.DBUtil;
 import com.edu.util.HtmlSanitizer;
 import com.edu.util.ImageProcessor;
 import com.edu.util.JsonUtil;
-import com.edu.util.JwtUtil;
 import com.edu.util.NotificationUtil;
 import com.edu.util.SensitiveWordUtil;
 
@@ -23,6 +39,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -37,7 +54,6 @@ import java.util.stream.Collectors;
         maxRequestSize = 1024 * 1024 * 16
 )
 public class CommentV2Servlet extends HttpServlet {
-    private static final String UPLOAD_DIR = "C:/Users/macha/Desktop/Graduation-Design-EduResourcePlatform/storage/uploads";
     private static final String COMMENT_DIR = "comments";
     private static final String COMMENT_THUMB_DIR = "comments_thumbs";
 
@@ -53,6 +69,10 @@ public class CommentV2Servlet extends HttpServlet {
             listReplies(req, resp);
             return;
         }
+        if (pathInfo.matches("/\\d+/images")) {
+            listImages(req, resp);
+            return;
+        }
         JsonUtil.sendJsonResponse(resp, ApiResponse.error("Invalid endpoint"));
     }
 
@@ -115,6 +135,7 @@ public class CommentV2Servlet extends HttpServlet {
         if (pageSize < 1) pageSize = 20;
         if (pageSize > 50) pageSize = 50;
         int offset = (page - 1) * pageSize;
+        CursorUtil.Cursor cursor = CursorUtil.decode(req.getParameter("cursor"));
 
         int resourceId;
         try {
@@ -124,95 +145,102 @@ public class CommentV2Servlet extends HttpServlet {
             return;
         }
 
+        // the first page is what nearly every visitor loads, and it only changes when a comment does
+        CommentPageCache cache = CommentPageCache.get();
+        boolean firstPage = cursor == null && page == 1;
+        if (firstPage) {
+            String cached = cache.get(resourceId, pageSize);
+            if (cached != null) {
+                JsonUtil.sendRenderedJson(resp, cached);
+                return;
+            }
+        }
+        long version = cache.version(resourceId);
+
         try (Connection conn = DBUtil.getConnection()) {
-            int total;
-            try (PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) FROM comment WHERE resource_id = ? AND parent_id IS NULL")) {
-                ps.setInt(1, resourceId);
-                try (ResultSet rs = ps.executeQuery()) {
-                    rs.next();
-                    total = rs.getInt(1);
+            // only the first page needs the total; cursor pages stay constant-cost
+            Integer total = null;
+            if (cursor == null) {
+                try (PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) FROM comment WHERE resource_id = ? AND parent_id IS NULL")) {
+                    ps.setInt(1, resourceId);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        rs.next();
+                        total = rs.getInt(1);
+                    }
                 }
             }
 
             String sql = "SELECT c.id, c.resource_id, c.user_id, c.content, c.parent_id, c.reply_to_user_id, c.root_id, c.image_count, c.create_time, " +
+                    "c.reply_count, c.last_reply_time, c.preview_reply_ids, " +
                     "u.username, u.nickname, u.avatar " +
                     "FROM comment c LEFT JOIN user u ON c.user_id = u.id " +
                     "WHERE c.resource_id = ? AND c.parent_id IS NULL " +
-                    "ORDER BY c.create_time DESC LIMIT ? OFFSET ?";
-            List<Map<String, Object>> roots = new ArrayList<>();
+                    (cursor != null ? "AND " + CursorUtil.condition("c.create_time", "c.id", true) + " " : "") +
+                    "ORDER BY c.create_time DESC, c.id DESC " +
+                    (cursor != null ? "LIMIT ?" : "LIMIT ? OFFSET ?");
+            List<CommentRow> roots = new ArrayList<>();
             List<Integer> rootIds = new ArrayList<>();
+            // reply counts and preview ids are stored on the root (see ThreadAggregates)
+            Map<Integer, List<Integer>> previewIds = new HashMap<>();
             try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setInt(1, resourceId);
-                ps.setInt(2, pageSize);
-                ps.setInt(3, offset);
+                int idx = 1;
+                ps.setInt(idx++, resourceId);
+                if (cursor != null) idx = CursorUtil.bind(ps, idx, cursor);
+                ps.setInt(idx++, pageSize + 1);
+                if (cursor == null) ps.setInt(idx, offset);
                 try (ResultSet rs = ps.executeQuery()) {
                     while (rs.next()) {
-                        Map<String, Object> c = mapCommentRow(rs);
-                        int id = rs.getInt("id");
-                        rootIds.add(id);
+                        CommentRow c = mapCommentRow(rs, false);
+                        c.setReplyCount(rs.getInt("reply_count"));
+                        Timestamp lastReply = rs.getTimestamp("last_reply_time");
+                        c.setLastReplyTime(lastReply == null ? null : lastReply.getTime());
+                        previewIds.put(c.getId(), ThreadAggregates.parseIds(rs.getString("preview_reply_ids")));
+                        rootIds.add(c.getId());
                         roots.add(c);
                     }
                 }
             }
+            String nextCursor = trimToPage(roots, rootIds, pageSize);
 
-            Map<Integer, Integer> replyCounts = new HashMap<>();
-            if (!rootIds.isEmpty()) {
-                String ids = rootIds.stream().map(String::valueOf).collect(Collectors.joining(","));
-                String countSql = "SELECT root_id, COUNT(*) AS cnt FROM comment WHERE root_id IN (" + ids + ") GROUP BY root_id";
-                try (PreparedStatement ps = conn.prepareStatement(countSql);
-                     ResultSet rs = ps.executeQuery()) {
-                    while (rs.next()) {
-                        int rid = rs.getInt("root_id");
-                        int cnt = rs.getInt("cnt");
-                        replyCounts.put(rid, Math.max(0, cnt - 1));
-                    }
-                }
+            List<Integer> wanted = new ArrayList<>();
+            for (Integer id : rootIds) {
+                wanted.addAll(previewIds.get(id));
             }
-
-            Map<Integer, List<Map<String, Object>>> previewReplies = new HashMap<>();
-            if (!rootIds.isEmpty()) {
-                String ids = rootIds.stream().map(String::valueOf).collect(Collectors.joining(","));
-                String replySql =
-                        "SELECT * FROM (" +
-                                "SELECT c.id, c.resource_id, c.user_id, c.content, c.parent_id, c.reply_to_user_id, c.root_id, c.image_count, c.create_time, " +
-                                "u.username, u.nickname, u.avatar, ru.nickname AS reply_to_nickname, ru.username AS reply_to_username, " +
-                                "ROW_NUMBER() OVER (PARTITION BY c.parent_id ORDER BY c.create_time ASC) AS rn " +
-                                "FROM comment c " +
-                                "LEFT JOIN user u ON c.user_id = u.id " +
-                                "LEFT JOIN user ru ON c.reply_to_user_id = ru.id " +
-                                "WHERE c.parent_id IN (" + ids + ") " +
-                                ") t WHERE t.rn <= 2 ORDER BY t.parent_id ASC, t.create_time ASC";
-                try (PreparedStatement ps = conn.prepareStatement(replySql);
-                     ResultSet rs = ps.executeQuery()) {
-                    while (rs.next()) {
-                        Map<String, Object> r = mapCommentRowWithReplyTo(rs);
-                        int pid = rs.getInt("parent_id");
-                        previewReplies.computeIfAbsent(pid, k -> new ArrayList<>()).add(r);
-                    }
+            Map<Integer, CommentRow> previewRows = ReplyLoader.byIds(conn, wanted, rs -> mapCommentRow(rs, true));
+            Map<Integer, List<CommentRow>> previewReplies = new HashMap<>();
+            for (Integer id : rootIds) {
+                List<CommentRow> previews = new ArrayList<>();
+                for (Integer replyId : previewIds.get(id)) {
+                    CommentRow r = previewRows.get(replyId);
+                    if (r != null) previews.add(r);
                 }
+                previewReplies.put(id, previews);
             }
 
-            Map<Integer, List<Map<String, Object>>> imagesByComment = loadImagesByCommentIds(conn, rootIds, previewReplies);
+            Map<Integer, List<CommentImageRow>> imagesByComment = loadImagesByCommentIds(conn, rootIds, previewReplies);
 
-            for (Map<String, Object> c : roots) {
-                int id = (int) c.get("id");
-                c.put("replyCount", replyCounts.getOrDefault(id, 0));
-                List<Map<String, Object>> previews = previewReplies.getOrDefault(id, new ArrayList<>());
-                for (Map<String, Object> r : previews) {
-                    int rid = (int) r.get("id");
-                    r.put("images", imagesByComment.getOrDefault(rid, new ArrayList<>()));
+            for (CommentRow c : roots) {
+                int id = c.getId();
+                List<CommentRow> previews = previewReplies.getOrDefault(id, new ArrayList<>());
+                for (CommentRow r : previews) {
+                    r.setImages(imagesByComment.getOrDefault(r.getId(), new ArrayList<>()));
                 }
-                c.put("previewReplies", previews);
-                c.put("images", imagesByComment.getOrDefault(id, new ArrayList<>()));
+                c.setPreviewReplies(previews);
+                c.setImages(imagesByComment.getOrDefault(id, new ArrayList<>()));
             }
 
-            Map<String, Object> data = new HashMap<>();
-            data.put("list", roots);
-            data.put("total", total);
-            data.put("page", page);
-            data.put("pageSize", pageSize);
-            data.put("totalPages", (int) Math.ceil((double) total / pageSize));
-            JsonUtil.sendJsonResponse(resp, ApiResponse.success(data));
+            PageResult<CommentRow> data = new PageResult<>(roots, total, page, pageSize);
+            data.setNextCursor(nextCursor);
+            // images still being processed change without a comment write, so such pages aren't kept
+            boolean processing = imagesByComment.values().stream().flatMap(List::stream)
+                    .anyMatch(img -> MediaPipeline.PROCESSING.equals(img.status()));
+            if (firstPage && !processing) {
+                String json = JsonUtil.toJson(ApiResponse.success(data));
+                cache.put(resourceId, pageSize, version, json);
+                JsonUtil.sendRenderedJson(resp, json);
+            } else {
+                JsonUtil.sendJsonResponse(resp, ApiResponse.success(data));
+            }
         } catch (SQLException e) {
             e.printStackTrace();
             JsonUtil.sendJsonResponse(resp, ApiResponse.error("Database error"));
@@ -237,14 +265,18 @@ public class CommentV2Servlet extends HttpServlet {
         if (pageSize < 1) pageSize = 20;
         if (pageSize > 50) pageSize = 50;
         int offset = (page - 1) * pageSize;
+        CursorUtil.Cursor cursor = CursorUtil.decode(req.getParameter("cursor"));
 
         try (Connection conn = DBUtil.getConnection()) {
-            int total;
-            try (PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) FROM comment WHERE parent_id = ?")) {
-                ps.setInt(1, parentId);
-                try (ResultSet rs = ps.executeQuery()) {
-                    rs.next();
-                    total = rs.getInt(1);
+            // only the first page needs the total; cursor pages stay constant-cost
+            Integer total = null;
+            if (cursor == null) {
+                try (PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) FROM comment WHERE parent_id = ?")) {
+                    ps.setInt(1, parentId);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        rs.next();
+                        total = rs.getInt(1);
+                    }
                 }
             }
 
@@ -253,35 +285,35 @@ public class CommentV2Servlet extends HttpServlet {
                     "FROM comment c " +
                     "LEFT JOIN user u ON c.user_id = u.id " +
                     "LEFT JOIN user ru ON c.reply_to_user_id = ru.id " +
-                    "WHERE c.parent_id = ? ORDER BY c.create_time ASC LIMIT ? OFFSET ?";
-            List<Map<String, Object>> list = new ArrayList<>();
+                    "WHERE c.parent_id = ? " +
+                    (cursor != null ? "AND " + CursorUtil.condition("c.create_time", "c.id", false) + " " : "") +
+                    "ORDER BY c.create_time ASC, c.id ASC " +
+                    (cursor != null ? "LIMIT ?" : "LIMIT ? OFFSET ?");
+            List<CommentRow> list = new ArrayList<>();
             List<Integer> ids = new ArrayList<>();
             try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setInt(1, parentId);
-                ps.setInt(2, pageSize);
-                ps.setInt(3, offset);
+                int idx = 1;
+                ps.setInt(idx++, parentId);
+                if (cursor != null) idx = CursorUtil.bind(ps, idx, cursor);
+                ps.setInt(idx++, pageSize + 1);
+                if (cursor == null) ps.setInt(idx, offset);
                 try (ResultSet rs = ps.executeQuery()) {
                     while (rs.next()) {
-                        Map<String, Object> c = mapCommentRowWithReplyTo(rs);
-                        int id = rs.getInt("id");
-                        ids.add(id);
+                        CommentRow c = mapCommentRow(rs, true);
+                        ids.add(c.getId());
                         list.add(c);
                     }
                 }
             }
+            String nextCursor = trimToPage(list, ids, pageSize);
 
-            Map<Integer, List<Map<String, Object>>> images = loadImagesByCommentIds(conn, ids);
-            for (Map<String, Object> c : list) {
-                int id = (int) c.get("id");
-                c.put("images", images.getOrDefault(id, new ArrayList<>()));
+            Map<Integer, List<CommentImageRow>> images = loadImagesByCommentIds(conn, ids);
+            for (CommentRow c : list) {
+                c.setImages(images.getOrDefault(c.getId(), new ArrayList<>()));
             }
 
-            Map<String, Object> data = new HashMap<>();
-            data.put("list", list);
-            data.put("total", total);
-            data.put("page", page);
-            data.put("pageSize", pageSize);
-            data.put("totalPages", (int) Math.ceil((double) total / pageSize));
+            PageResult<CommentRow> data = new PageResult<>(list, total, page, pageSize);
+            data.setNextCursor(nextCursor);
             JsonUtil.sendJsonResponse(resp, ApiResponse.success(data));
         } catch (SQLException e) {
             e.printStackTrace();
@@ -290,7 +322,7 @@ public class CommentV2Servlet extends HttpServlet {
     }
 
     private void createComment(HttpServletRequest req, HttpServletResponse resp) throws IOException, ServletException {
-        Integer userId = getUserIdFromRequest(req, resp);
+        Integer userId = AuthFilter.requireUserId(req, resp);
         if (userId == null) return;
 
         Integer resourceId;
@@ -343,6 +375,27 @@ public class CommentV2Servlet extends HttpServlet {
             return;
         }
 
+        // images are re-encoded by the media pipeline after the comment commits; only uploads are staged here
+        List<File> stagedImages = new ArrayList<>();
+        List<String> stagedMimes = new ArrayList<>();
+        if (!imageParts.isEmpty() && !MediaPipeline.get().accepting(imageParts.size())) {
+            JsonUtil.sendJsonResponse(resp, ApiResponse.error("Server busy, please retry"));
+            return;
+        }
+        for (Part part : imageParts) {
+            File raw = MediaPipeline.get().stage();
+            stagedImages.add(raw);
+            part.write(raw.getAbsolutePath());
+            String mime = ImageProcessor.detectImageMimeType(raw);
+            if (mime == null || !mime.startsWith("image/")) {
+                stagedImages.forEach(File::delete);
+                JsonUtil.sendJsonResponse(resp, ApiResponse.error("Unsupported image"));
+                return;
+            }
+            stagedMimes.add(mime);
+        }
+
+        List<MediaPipeline.Job> jobs = new ArrayList<>();
         try (Connection conn = DBUtil.getConnection()) {
             conn.setAutoCommit(false);
             try {
@@ -386,62 +439,50 @@ public class CommentV2Servlet extends HttpServlet {
                         ps.executeUpdate();
                         rootId = commentId;
                     }
+                } else {
+                    ThreadAggregates.replyAdded(conn, rootId, parentId, commentId);
                 }
 
-                List<Map<String, Object>> savedImages = new ArrayList<>();
-                for (int i = 0; i < imageParts.size(); i++) {
-                    Part part = imageParts.get(i);
-                    String fileName = "c_" + commentId + "_" + System.currentTimeMillis() + "_" + i + ".jpg";
-                    File raw = File.createTempFile("comment_upload_", ".bin");
-                    part.write(raw.getAbsolutePath());
-                    String mime = ImageProcessor.detectImageMimeType(raw);
-                    if (mime == null || (!mime.startsWith("image/"))) {
-                        raw.delete();
-                        conn.rollback();
-                        JsonUtil.sendJsonResponse(resp, ApiResponse.error("Unsupported image"));
-                        return;
-                    }
-
-                    File out = new File(UPLOAD_DIR + File.separator + COMMENT_DIR + File.separator + fileName);
-                    ImageProcessor.ProcessedImage processed = ImageProcessor.processAndSave(raw, mime, out, 1080, 1080);
-
-                    File thumb = new File(UPLOAD_DIR + File.separator + COMMENT_THUMB_DIR + File.separator + fileName);
-                    ImageProcessor.processAndSave(out, processed.mimeType(), thumb, 360, 360);
-
-                    raw.delete();
-
-                    String ins = "INSERT INTO comment_image (comment_id, file_name, file_path, mime_type, file_size, width, height, sort_order, create_time) VALUES (?, ?, ?, ?, ?, ?, ?, ?, NOW())";
-                    try (PreparedStatement ps = conn.prepareStatement(ins)) {
+                List<CommentImageRow> savedImages = new ArrayList<>();
+                List<MediaPipeline.Job> created = new ArrayList<>();
+                for (int i = 0; i < stagedImages.size(); i++) {
+                    File raw = stagedImages.get(i);
+                    String ins = "INSERT INTO comment_image (comment_id, file_name, file_path, mime_type, file_size, sort_order, status, create_time) VALUES (?, '', '', ?, ?, ?, ?, NOW())";
+                    long imageId;
+                    try (PreparedStatement ps = conn.prepareStatement(ins, Statement.RETURN_GENERATED_KEYS)) {
                         ps.setInt(1, commentId);
-                        ps.setString(2, fileName);
-                        ps.setString(3, fileName);
-                        ps.setString(4, processed.mimeType());
-                        ps.setLong(5, processed.fileSize());
-                        ps.setInt(6, processed.width());
-                        ps.setInt(7, processed.height());
-                        ps.setInt(8, i);
+                        ps.setString(2, stagedMimes.get(i));
+                        ps.setLong(3, raw.length());
+                        ps.setInt(4, i);
+                        ps.setString(5, MediaPipeline.PROCESSING);
                         ps.executeUpdate();
+                        try (ResultSet rs = ps.getGeneratedKeys()) {
+                            rs.next();
+                            imageId = rs.getLong(1);
+                        }
                     }
+                    created.add(new MediaPipeline.Job(MediaPipeline.Kind.COMMENT_IMAGE, imageId, raw));
 
-                    Map<String, Object> img = new HashMap<>();
-                    img.put("url", "/api/comment/image/" + fileName);
-                    img.put("thumbUrl", "/api/comment/image/thumb/" + fileName);
-                    img.put("width", processed.width());
-                    img.put("height", processed.height());
-                    savedImages.add(img);
+                    savedImages.add(new CommentImageRow(imageId, MediaPipeline.PROCESSING, null, null, null, null, null, null));
                 }
 
-                syncCommentCount(conn, resourceId);
+                ResourceCounters.adjustComments(conn, resourceId, 1);
 
-                notifyUsersOnCreate(conn, resourceId, userId, parentId, replyToUserId);
+                List<NotificationEvent> notified = notifyUsersOnCreate(conn, resourceId, userId, parentId, replyToUserId);
 
                 conn.commit();
+                CommentPageCache.get().invalidate(resourceId);
+                RecommendationService.get().commented(userId, resourceId);
+                jobs.addAll(created);
+                for (NotificationEvent n : notified) {
+                    NotificationUtil.published(n);
+                }
 
-                Map<String, Object> created = getCommentWithUser(conn, commentId);
-                created.put("images", savedImages);
-                created.put("replyCount", 0);
-                created.put("previewReplies", new ArrayList<>());
-                JsonUtil.sendJsonResponse(resp, ApiResponse.success(created));
+                CommentRow comment = getCommentWithUser(conn, commentId);
+                comment.setImages(savedImages);
+                comment.setReplyCount(0);
+                comment.setPreviewReplies(new ArrayList<>());
+                JsonUtil.sendJsonResponse(resp, ApiResponse.success(comment));
             } catch (SQLException e) {
                 conn.rollback();
                 e.printStackTrace();
@@ -451,10 +492,16 @@ public class CommentV2Servlet extends HttpServlet {
             e.printStackTrace();
             JsonUtil.sendJsonResponse(resp, ApiResponse.error("Database error"));
         }
+        // submitted only once this request's connection is back in the pool
+        if (!jobs.isEmpty()) {
+            MediaPipeline.get().submit(jobs);
+        } else {
+            stagedImages.forEach(File::delete);
+        }
     }
 
     private void updateComment(HttpServletRequest req, HttpServletResponse resp) throws IOException {
-        Integer userId = getUserIdFromRequest(req, resp);
+        Integer userId = AuthFilter.requireUserId(req, resp);
         if (userId == null) return;
 
         String idStr = req.getPathInfo().substring(1);
@@ -488,7 +535,8 @@ public class CommentV2Servlet extends HttpServlet {
 
         try (Connection conn = DBUtil.getConnection()) {
             int ownerId;
-            try (PreparedStatement ps = conn.prepareStatement("SELECT user_id FROM comment WHERE id = ?")) {
+            int resourceId;
+            try (PreparedStatement ps = conn.prepareStatement("SELECT user_id, resource_id FROM comment WHERE id = ?")) {
                 ps.setInt(1, id);
                 try (ResultSet rs = ps.executeQuery()) {
                     if (!rs.next()) {
@@ -496,9 +544,10 @@ public class CommentV2Servlet extends HttpServlet {
                         return;
                     }
                     ownerId = rs.getInt(1);
+                    resourceId = rs.getInt(2);
                 }
             }
-            if (ownerId != userId && !"admin".equals(JwtUtil.getRoleFromToken(getRawToken(req)))) {
+            if (ownerId != userId && !AuthFilter.principal(req).isAdmin()) {
                 JsonUtil.sendJsonResponse(resp, ApiResponse.error(403, "Forbidden"));
                 return;
             }
@@ -507,6 +556,7 @@ public class CommentV2Servlet extends HttpServlet {
                 ps.setInt(2, id);
                 int updated = ps.executeUpdate();
                 if (updated > 0) {
+                    CommentPageCache.get().invalidate(resourceId);
                     JsonUtil.sendJsonResponse(resp, ApiResponse.success("ok", null));
                 } else {
                     JsonUtil.sendJsonResponse(resp, ApiResponse.error("Comment not found"));
@@ -519,7 +569,7 @@ public class CommentV2Servlet extends HttpServlet {
     }
 
     private void deleteComment(HttpServletRequest req, HttpServletResponse resp) throws IOException {
-        Integer userId = getUserIdFromRequest(req, resp);
+        Integer userId = AuthFilter.requireUserId(req, resp);
         if (userId == null) return;
 
         String idStr = req.getPathInfo().substring(1);
@@ -531,14 +581,15 @@ public class CommentV2Servlet extends HttpServlet {
             return;
         }
 
-        String role = JwtUtil.getRoleFromToken(getRawToken(req));
+        String role = AuthFilter.principal(req).role();
 
         try (Connection conn = DBUtil.getConnection()) {
             conn.setAutoCommit(false);
             try {
                 int ownerId;
                 int resourceId;
-                try (PreparedStatement ps = conn.prepareStatement("SELECT user_id, resource_id FROM comment WHERE id = ?")) {
+                Integer rootId;
+                try (PreparedStatement ps = conn.prepareStatement("SELECT user_id, resource_id, root_id FROM comment WHERE id = ?")) {
                     ps.setInt(1, id);
                     try (ResultSet rs = ps.executeQuery()) {
                         if (!rs.next()) {
@@ -548,6 +599,8 @@ public class CommentV2Servlet extends HttpServlet {
                         }
                         ownerId = rs.getInt("user_id");
                         resourceId = rs.getInt("resource_id");
+                        int root = rs.getInt("root_id");
+                        rootId = rs.wasNull() ? null : root;
                     }
                 }
                 if (ownerId != userId && !"admin".equals(role) && !isResourceOwner(conn, resourceId, userId)) {
@@ -556,12 +609,18 @@ public class CommentV2Servlet extends HttpServlet {
                     return;
                 }
 
-                List<String> imageFiles = new ArrayList<>();
-                try (PreparedStatement ps = conn.prepareStatement("SELECT file_name FROM comment_image WHERE comment_id = ?")) {
+                // images of the replies go too (FK cascade), so release those as well; the row locks
+                // keep the media pipeline from attaching a blob to an image that is being deleted
+                List<String[]> images = new ArrayList<>();
+                String imageSql = "WITH RECURSIVE doomed (id) AS (" +
+                        "SELECT id FROM comment WHERE id = ? " +
+                        "UNION ALL SELECT c.id FROM comment c JOIN doomed d ON c.parent_id = d.id) " +
+                        "SELECT ci.file_name, ci.file_path, ci.status FROM comment_image ci JOIN doomed d ON ci.comment_id = d.id FOR UPDATE";
+                try (PreparedStatement ps = conn.prepareStatement(imageSql)) {
                     ps.setInt(1, id);
                     try (ResultSet rs = ps.executeQuery()) {
                         while (rs.next()) {
-                            imageFiles.add(rs.getString(1));
+                            images.add(new String[]{rs.getString(1), rs.getString(2), rs.getString(3)});
                         }
                     }
                 }
@@ -576,12 +635,27 @@ public class CommentV2Servlet extends HttpServlet {
                     }
                 }
 
-                syncCommentCount(conn, resourceId);
+                for (String[] img : images) {
+                    BlobRefs.releasePath(conn, img[1]);
+                }
+                // replies go with the parent through the FK cascade, so recount rather than subtract one
+                ResourceCounters.recountComments(conn, resourceId);
+                if (rootId != null && rootId != id) {
+                    ThreadAggregates.recount(conn, rootId);
+                }
                 conn.commit();
-
-                for (String fn : imageFiles) {
-                    new File(UPLOAD_DIR + File.separator + COMMENT_DIR + File.separator + fn).delete();
-                    new File(UPLOAD_DIR + File.separator + COMMENT_THUMB_DIR + File.separator + fn).delete();
+                CommentPageCache.get().invalidate(resourceId);
+
+                StorageService storage = Storage.get();
+                for (String[] img : images) {
+                    // blobs are collected by reference count; unprocessed images have no file yet
+                    if (BlobStore.hashOf(img[1]) != null || !MediaPipeline.READY.equals(img[2])) continue;
+                    try {
+                        storage.delete(COMMENT_DIR + "/" + img[0]);
+                        storage.delete(COMMENT_THUMB_DIR + "/" + img[0]);
+                    } catch (IOException | IllegalArgumentException e) {
+                        e.printStackTrace();
+                    }
                 }
 
                 JsonUtil.sendJsonResponse(resp, ApiResponse.success("ok", null));
@@ -596,7 +670,19 @@ public class CommentV2Servlet extends HttpServlet {
         }
     }
 
-    private Map<String, Object> getCommentWithUser(Connection conn, int commentId) throws SQLException {
+    /**
+     * Drops the look-ahead row fetched beyond {@code pageSize} and returns the cursor of the last
+     * kept row, or {@code null} when this is the last page.
+     */
+    private String trimToPage(List<CommentRow> rows, List<Integer> ids, int pageSize) {
+        if (rows.size() <= pageSize) return null;
+        rows.remove(rows.size() - 1);
+        ids.remove(ids.size() - 1);
+        CommentRow last = rows.get(rows.size() - 1);
+        return CursorUtil.encode(last.getCreateTime(), last.getId());
+    }
+
+    private CommentRow getCommentWithUser(Connection conn, int commentId) throws SQLException {
         String sql = "SELECT c.id, c.resource_id, c.user_id, c.content, c.parent_id, c.reply_to_user_id, c.root_id, c.image_count, c.create_time, " +
                 "u.username, u.nickname, u.avatar, ru.nickname AS reply_to_nickname, ru.username AS reply_to_username " +
                 "FROM comment c " +
@@ -606,52 +692,48 @@ public class CommentV2Servlet extends HttpServlet {
         try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setInt(1, commentId);
             try (ResultSet rs = ps.executeQuery()) {
-                if (!rs.next()) return new HashMap<>();
-                return mapCommentRowWithReplyTo(rs);
+                // the row was inserted on this connection
+                rs.next();
+                return mapCommentRow(rs, true);
             }
         }
     }
 
-    private Map<String, Object> mapCommentRow(ResultSet rs) throws SQLException {
-        Map<String, Object> comment = new HashMap<>();
-        comment.put("id", rs.getInt("id"));
-        comment.put("resourceId", rs.getInt("resource_id"));
-        comment.put("userId", rs.getInt("user_id"));
-        comment.put("content", rs.getString("content"));
+    private CommentRow mapCommentRow(ResultSet rs, boolean withReplyTo) throws SQLException {
         Object parent = rs.getObject("parent_id");
-        comment.put("parentId", parent == null ? null : rs.getInt("parent_id"));
-        comment.put("createTime", rs.getTimestamp("create_time").getTime());
-        Map<String, Object> user = new HashMap<>();
-        user.put("id", rs.getInt("user_id"));
-        user.put("username", rs.getString("username"));
-        user.put("nickname", rs.getString("nickname"));
-        user.put("avatar", rs.getString("avatar"));
-        comment.put("user", user);
-        return comment;
+        UserSummary user = new UserSummary(rs.getInt("user_id"), rs.getString("username"), rs.getString("nickname"), rs.getString("avatar"));
+        CommentRow.ReplyTo replyTo = null;
+        if (withReplyTo) {
+            int replyToUserId = rs.getInt("reply_to_user_id");
+            if (!rs.wasNull()) {
+                replyTo = new CommentRow.ReplyTo(replyToUserId, rs.getString("reply_to_nickname"), rs.getString("reply_to_username"));
+            }
+        }
+        return new CommentRow(rs.getInt("id"), rs.getInt("resource_id"), rs.getInt("user_id"), rs.getString("content"),
+                parent == null ? null : rs.getInt("parent_id"), rs.getTimestamp("create_time").getTime(), user, replyTo);
     }
 
-    private Map<String, Object> mapCommentRowWithReplyTo(ResultSet rs) throws SQLException {
-        Map<String, Object> comment = mapCommentRow(rs);
-        int replyToUserId = rs.getInt("reply_to_user_id");
-        if (!rs.wasNull()) {
-            Map<String, Object> replyTo = new HashMap<>();
-            replyTo.put("userId", replyToUserId);
-            replyTo.put("nickname", rs.getString("reply_to_nickname"));
-            replyTo.put("username", rs.getString("reply_to_username"));
-            comment.put("replyTo", replyTo);
-        } else {
-            comment.put("replyTo", null);
+    /**
+     * Images of one comment with their processing status, for clients waiting on a fresh upload.
+     */
+    private void listImages(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        int commentId = Integer.parseInt(req.getPathInfo().split("/")[1]);
+        try (Connection conn = DBUtil.getConnection()) {
+            List<CommentImageRow> images = loadImagesByCommentIds(conn, List.of(commentId)).get(commentId);
+            JsonUtil.sendJsonResponse(resp, ApiResponse.success(images == null ? new ArrayList<>() : images));
+        } catch (SQLException e) {
+            e.printStackTrace();
+            JsonUtil.sendJsonResponse(resp, ApiResponse.error("Database error"));
         }
-        return comment;
     }
 
-    private Map<Integer, List<Map<String, Object>>> loadImagesByCommentIds(Connection conn, List<Integer> rootIds, Map<Integer, List<Map<String, Object>>> previewReplies) throws SQLException {
+    private Map<Integer, List<CommentImageRow>> loadImagesByCommentIds(Connection conn, List<Integer> rootIds, Map<Integer, List<CommentRow>> previewReplies) throws SQLException {
         List<Integer> ids = new ArrayList<>();
         ids.addAll(rootIds);
         if (previewReplies != null) {
-            for (List<Map<String, Object>> replies : previewReplies.values()) {
-                for (Map<String, Object> r : replies) {
-                    ids.add((Integer) r.get("id"));
+            for (List<CommentRow> replies : previewReplies.values()) {
+                for (CommentRow r : replies) {
+                    ids.add(r.getId());
                 }
             }
         }
@@ -659,23 +741,26 @@ public class CommentV2Servlet extends HttpServlet {
         return loadImagesByCommentIds(conn, ids);
     }
 
-    private Map<Integer, List<Map<String, Object>>> loadImagesByCommentIds(Connection conn, List<Integer> ids) throws SQLException {
-        Map<Integer, List<Map<String, Object>>> map = new HashMap<>();
+    private Map<Integer, List<CommentImageRow>> loadImagesByCommentIds(Connection conn, List<Integer> ids) throws SQLException {
+        Map<Integer, List<CommentImageRow>> map = new HashMap<>();
         if (ids == null || ids.isEmpty()) return map;
         String in = ids.stream().map(String::valueOf).collect(Collectors.joining(","));
-        String sql = "SELECT comment_id, file_name, mime_type, file_size, width, height, sort_order FROM comment_image WHERE comment_id IN (" + in + ") ORDER BY comment_id ASC, sort_order ASC";
+        String sql = "SELECT id, comment_id, file_name, mime_type, file_size, width, height, sort_order, status FROM comment_image WHERE comment_id IN (" + in + ") ORDER BY comment_id ASC, sort_order ASC";
         try (PreparedStatement ps = conn.prepareStatement(sql);
              ResultSet rs = ps.executeQuery()) {
             while (rs.next()) {
                 int commentId = rs.getInt("comment_id");
                 String fileName = rs.getString("file_name");
-                Map<String, Object> img = new HashMap<>();
-                img.put("url", "/api/comment/image/" + fileName);
-                img.put("thumbUrl", "/api/comment/image/thumb/" + fileName);
-                img.put("mimeType", rs.getString("mime_type"));
-                img.put("fileSize", rs.getLong("file_size"));
-                img.put("width", rs.getObject("width") == null ? null : rs.getInt("width"));
-                img.put("height", rs.getObject("height") == null ? null : rs.getInt("height"));
+                String status = rs.getString("status");
+                boolean ready = MediaPipeline.READY.equals(status);
+                int width = rs.getInt("width");
+                Integer w = rs.wasNull() ? null : width;
+                int height = rs.getInt("height");
+                Integer h = rs.wasNull() ? null : height;
+                CommentImageRow img = new CommentImageRow(rs.getLong("id"), status,
+                        ready ? "/api/comment/image/" + fileName : null,
+                        ready ? "/api/comment/image/thumb/" + fileName : null,
+                        rs.getString("mime_type"), rs.getLong("file_size"), w, h);
                 map.computeIfAbsent(commentId, k -> new ArrayList<>()).add(img);
             }
         }
@@ -716,23 +801,12 @@ public class CommentV2Servlet extends HttpServlet {
         }
     }
 
-    private void syncCommentCount(Connection conn, int resourceId) throws SQLException {
-        int cnt;
-        try (PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) FROM comment WHERE resource_id = ?")) {
-            ps.setInt(1, resourceId);
-            try (ResultSet rs = ps.executeQuery()) {
-                rs.next();
-                cnt = rs.getInt(1);
-            }
-        }
-        try (PreparedStatement ps = conn.prepareStatement("UPDATE resource SET comment_count = ? WHERE id = ?")) {
-            ps.setInt(1, cnt);
-            ps.setInt(2, resourceId);
-            ps.executeUpdate();
-        }
-    }
-
-    private void notifyUsersOnCreate(Connection conn, int resourceId, int actorUserId, Integer parentId, Integer replyToUserId) throws SQLException {
+    /**
+     * Inserts the notifications for a new comment and returns them so they can be pushed once the
+     * transaction commits.
+     */
+    private List<NotificationEvent> notifyUsersOnCreate(Connection conn, int resourceId, int actorUserId, Integer parentId, Integer replyToUserId) throws SQLException {
+        List<NotificationEvent> notified = new ArrayList<>();
         Integer uploaderId = null;
         try (PreparedStatement ps = conn.prepareStatement("SELECT uploader_id, title FROM resource WHERE id = ?")) {
             ps.setInt(1, resourceId);
@@ -744,7 +818,7 @@ public class CommentV2Servlet extends HttpServlet {
         }
 
         if (uploaderId != null && uploaderId != actorUserId && parentId == null) {
-            NotificationUtil.createResourceNotification(conn, uploaderId, "资源收到新评论", "您的资源收到了新评论");
+            notified.add(NotificationUtil.createResourceNotification(conn, uploaderId, "资源收到新评论", "您的资源收到了新评论"));
         }
 
         Integer targetUserId = null;
@@ -760,26 +834,9 @@ public class CommentV2Servlet extends HttpServlet {
         }
 
         if (targetUserId != null && targetUserId != actorUserId) {
-            NotificationUtil.createResourceNotification(conn, targetUserId, "收到新回复", "有人回复了你的评论");
+            notified.add(NotificationUtil.createResourceNotification(conn, targetUserId, "收到新回复", "有人回复了你的评论"));
         }
-    }
-
-    private Integer getUserIdFromRequest(HttpServletRequest req, HttpServletResponse resp) throws IOException {
-        String token = req.getHeader("Authorization");
-        if (token != null && token.startsWith("Bearer ")) {
-            token = token.substring(7);
-            if (JwtUtil.validateToken(token)) {
-                return JwtUtil.getUserIdFromToken(token);
-            }
-        }
-        JsonUtil.sendJsonResponse(resp, ApiResponse.error(401, "Unauthorized"));
-        return null;
-    }
-
-    private String getRawToken(HttpServletRequest req) {
-        String token = req.getHeader("Authorization");
-        if (token == null || !token.startsWith("Bearer ")) return null;
-        return token.substring(7);
+        return notified;
     }
 
     private Integer parseIntParam(String v) {
@@ -1,9 +1,9 @@
 package com.edu.servlet;
 
+import com.edu.filter.AuthFilter;
 import com.edu.model.ApiResponse;
 import com.edu.util.DBUtil;
 import com.edu.util.JsonUtil;
-import com.edu.util.JwtUtil;
 
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
@@ -53,7 +53,7 @@ public class FollowServlet extends HttpServlet {
             JsonUtil.sendJsonResponse(resp, ApiResponse.error("Invalid endpoint"));
             return;
         }
-        Integer userId = getUserIdFromRequest(req, resp);
+        Integer userId = AuthFilter.requireUserId(req, resp);
         if (userId == null) return;
         int targetId = Integer.parseInt(pathInfo.substring(1));
         if (targetId == userId) {
@@ -86,7 +86,7 @@ public class FollowServlet extends HttpServlet {
             JsonUtil.sendJsonResponse(resp, ApiResponse.error("Invalid endpoint"));
             return;
         }
-        Integer userId = getUserIdFromRequest(req, resp);
+        Integer userId = AuthFilter.requireUserId(req, resp);
         if (userId == null) return;
         int targetId = Integer.parseInt(pathInfo.substring(1));
 
@@ -109,7 +109,7 @@ public class FollowServlet extends HttpServlet {
     }
 
     private void listFollowing(HttpServletRequest req, HttpServletResponse resp) throws IOException {
-        Integer userId = getUserIdFromRequest(req, resp);
+        Integer userId = AuthFilter.requireUserId(req, resp);
         if (userId == null) return;
         int page = parseInt(req.getParameter("page"), 1);
         int pageSize = parseInt(req.getParameter("pageSize"), 30);
@@ -163,7 +163,7 @@ public class FollowServlet extends HttpServlet {
     }
 
     private void listFollowers(HttpServletRequest req, HttpServletResponse resp) throws IOException {
-        Integer userId = getUserIdFromRequest(req, resp);
+        Integer userId = AuthFilter.requireUserId(req, resp);
         if (userId == null) return;
         int page = parseInt(req.getParameter("page"), 1);
         int pageSize = parseInt(req.getParameter("pageSize"), 30);
@@ -217,7 +217,7 @@ public class FollowServlet extends HttpServlet {
     }
 
     private void status(HttpServletRequest req, HttpServletResponse resp) throws IOException {
-        Integer userId = getUserIdFromRequest(req, resp);
+        Integer userId = AuthFilter.requireUserId(req, resp);
         if (userId == null) return;
         String targetStr = req.getParameter("userId");
         if (targetStr == null) {
@@ -265,18 +265,6 @@ public class FollowServlet extends HttpServlet {
         }
     }
 
-    private Integer getUserIdFromRequest(HttpServletRequest req, HttpServletResponse resp) throws IOException {
-        String token = req.getHeader("Authorization");
-        if (token != null && token.startsWith("Bearer ")) {
-            token = token.substring(7);
-            if (JwtUtil.validateToken(token)) {
-                return JwtUtil.getUserIdFromToken(token);
-            }
-        }
-        JsonUtil.sendJsonResponse(resp, ApiResponse.error(401, "Unauthorized"));
-        return null;
-    }
-
     private int parseInt(String v, int defaultValue) {
         if (v == null || v.isBlank()) return defaultValue;
         try {
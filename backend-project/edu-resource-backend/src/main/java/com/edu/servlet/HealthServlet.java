@@ -11,13 +11,17 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.sql.Connection;
+import java.util.HashMap;
+import java.util.Map;
 
 @WebServlet(urlPatterns = {"/api/health"})
 public class HealthServlet extends HttpServlet {
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
         try (Connection conn = DBUtil.getConnection()) {
-            JsonUtil.sendJsonResponse(resp, ApiResponse.success("ok", null));
+            Map<String, Object> data = new HashMap<>();
+            data.put("pool", DBUtil.getPoolStats());
+            JsonUtil.sendJsonResponse(resp, ApiResponse.success("ok", data));
         } catch (Exception e) {
             JsonUtil.sendJsonResponse(resp, ApiResponse.error(500, "db_down"));
         }
@@ -1,17 +1,27 @@
 package com.edu.servlet;
 
+import com.edu.auth.Principal;
+import com.edu.auth.TokenVerifier;
+import com.edu.dto.NotificationRow;
+import com.edu.filter.AuthFilter;
 import com.edu.model.ApiResponse;
+import com.edu.model.PageResult;
+import com.edu.notify.NotificationHub;
+import com.edu.notify.SseConnection;
+import com.edu.notify.UnreadCounters;
+import com.edu.util.AppConfig;
+import com.edu.util.CursorUtil;
 import com.edu.util.DBUtil;
 import com.edu.util.JsonUtil;
-import com.edu.util.JwtUtil;
+import com.edu.util.NotificationUtil;
 
+import jakarta.servlet.AsyncContext;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -21,7 +31,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-@WebServlet(urlPatterns = {"/api/notification/*"})
+@WebServlet(urlPatterns = {"/api/notification/*"}, asyncSupported = true)
 public class NotificationServlet extends HttpServlet {
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
@@ -50,6 +60,10 @@ public class NotificationServlet extends HttpServlet {
             markRead(req, resp);
             return;
         }
+        if ("/mark-all-read".equals(pathInfo)) {
+            markAllRead(req, resp);
+            return;
+        }
         JsonUtil.sendJsonResponse(resp, ApiResponse.error("Invalid endpoint"));
     }
 
@@ -60,7 +74,7 @@ public class NotificationServlet extends HttpServlet {
     }
 
     private void listNotifications(HttpServletRequest req, HttpServletResponse resp) throws IOException {
-        Integer userId = getUserIdFromRequest(req, resp);
+        Integer userId = AuthFilter.requireUserId(req, resp);
         if (userId == null) return;
 
         int page = 1;
@@ -76,43 +90,49 @@ public class NotificationServlet extends HttpServlet {
         if (pageSize < 1) pageSize = 20;
         if (pageSize > 100) pageSize = 100;
         int offset = (page - 1) * pageSize;
+        CursorUtil.Cursor cursor = CursorUtil.decode(req.getParameter("cursor"));
 
         try (Connection conn = DBUtil.getConnection()) {
-            int total;
-            try (PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) FROM notification WHERE user_id = ?")) {
-                ps.setInt(1, userId);
-                try (ResultSet rs = ps.executeQuery()) {
-                    rs.next();
-                    total = rs.getInt(1);
+            // only the first page needs the total; cursor pages stay constant-cost
+            Integer total = null;
+            if (cursor == null) {
+                try (PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) FROM notification WHERE user_id = ?")) {
+                    ps.setInt(1, userId);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        rs.next();
+                        total = rs.getInt(1);
+                    }
                 }
             }
 
-            String sql = "SELECT id, title, content, type, is_read, create_time FROM notification WHERE user_id = ? ORDER BY create_time DESC LIMIT ? OFFSET ?";
-            List<Map<String, Object>> list = new ArrayList<>();
+            String sql = "SELECT id, title, content, type, is_read, create_time FROM notification WHERE user_id = ? " +
+                    (cursor != null ? "AND " + CursorUtil.condition("create_time", "id", true) + " " : "") +
+                    "ORDER BY create_time DESC, id DESC " +
+                    (cursor != null ? "LIMIT ?" : "LIMIT ? OFFSET ?");
+            List<NotificationRow> list = new ArrayList<>();
             try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setInt(1, userId);
-                ps.setInt(2, pageSize);
-                ps.setInt(3, offset);
+                int idx = 1;
+                ps.setInt(idx++, userId);
+                if (cursor != null) idx = CursorUtil.bind(ps, idx, cursor);
+                ps.setInt(idx++, pageSize + 1);
+                if (cursor == null) ps.setInt(idx, offset);
                 try (ResultSet rs = ps.executeQuery()) {
                     while (rs.next()) {
-                        Map<String, Object> n = new HashMap<>();
-                        n.put("id", rs.getInt("id"));
-                        n.put("title", rs.getString("title"));
-                        n.put("content", rs.getString("content"));
-                        n.put("type", rs.getString("type"));
-                        n.put("isRead", rs.getBoolean("is_read"));
-                        n.put("createTime", rs.getTimestamp("create_time").getTime());
-                        list.add(n);
+                        list.add(new NotificationRow(rs.getInt("id"), rs.getString("title"), rs.getString("content"),
+                                rs.getString("type"), rs.getBoolean("is_read"), rs.getTimestamp("create_time").getTime()));
                     }
                 }
             }
 
-            Map<String, Object> data = new HashMap<>();
-            data.put("list", list);
-            data.put("total", total);
-            data.put("page", page);
-            data.put("pageSize", pageSize);
-            data.put("totalPages", (int) Math.ceil((double) total / pageSize));
+            String nextCursor = null;
+            if (list.size() > pageSize) {
+                list.remove(list.size() - 1);
+                NotificationRow last = list.get(list.size() - 1);
+                nextCursor = CursorUtil.encode(last.createTime(), last.id());
+            }
+
+            PageResult<NotificationRow> data = new PageResult<>(list, total, page, pageSize);
+            data.setNextCursor(nextCursor);
             JsonUtil.sendJsonResponse(resp, ApiResponse.success(data));
         } catch (SQLException e) {
             e.printStackTrace();
@@ -121,15 +141,10 @@ public class NotificationServlet extends HttpServlet {
     }
 
     private void unreadCount(HttpServletRequest req, HttpServletResponse resp) throws IOException {
-        Integer userId = getUserIdFromRequest(req, resp);
+        Integer userId = AuthFilter.requireUserId(req, resp);
         if (userId == null) return;
-        try (Connection conn = DBUtil.getConnection();
-             PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) FROM notification WHERE user_id = ? AND is_read = 0")) {
-            ps.setInt(1, userId);
-            try (ResultSet rs = ps.executeQuery()) {
-                rs.next();
-                JsonUtil.sendJsonResponse(resp, ApiResponse.success(rs.getInt(1)));
-            }
+        try {
+            JsonUtil.sendJsonResponse(resp, ApiResponse.success(UnreadCounters.get().get(userId)));
         } catch (SQLException e) {
             e.printStackTrace();
             JsonUtil.sendJsonResponse(resp, ApiResponse.error("Database error"));
@@ -137,7 +152,7 @@ public class NotificationServlet extends HttpServlet {
     }
 
     private void markRead(HttpServletRequest req, HttpServletResponse resp) throws IOException {
-        Integer userId = getUserIdFromRequest(req, resp);
+        Integer userId = AuthFilter.requireUserId(req, resp);
         if (userId == null) return;
 
         Map<String, Object> body;
@@ -155,12 +170,14 @@ public class NotificationServlet extends HttpServlet {
         }
         int id = ((Number) idObj).intValue();
 
+        // only an unread -> read change moves the counter, so a repeated click doesn't count twice
         try (Connection conn = DBUtil.getConnection();
-             PreparedStatement ps = conn.prepareStatement("UPDATE notification SET is_read = 1 WHERE id = ? AND user_id = ?")) {
+             PreparedStatement ps = conn.prepareStatement("UPDATE notification SET is_read = 1 WHERE id = ? AND user_id = ? AND is_read = 0")) {
             ps.setInt(1, id);
             ps.setInt(2, userId);
             int updated = ps.executeUpdate();
-            if (updated > 0) {
+            if (updated > 0 || notificationExists(conn, id, userId)) {
+                NotificationUtil.markedRead(userId, updated);
                 JsonUtil.sendJsonResponse(resp, ApiResponse.success("ok", null));
             } else {
                 JsonUtil.sendJsonResponse(resp, ApiResponse.error("Notification not found"));
@@ -171,63 +188,56 @@ public class NotificationServlet extends HttpServlet {
         }
     }
 
-    private void stream(HttpServletRequest req, HttpServletResponse resp) throws IOException {
-        Integer userId = getUserIdFromRequest(req, resp);
+    private void markAllRead(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        Integer userId = AuthFilter.requireUserId(req, resp);
         if (userId == null) return;
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement("UPDATE notification SET is_read = 1 WHERE user_id = ? AND is_read = 0")) {
+            ps.setInt(1, userId);
+            int updated = ps.executeUpdate();
+            // the counter moves by exactly the rows this statement flipped, so notifications
+            // inserted meanwhile stay counted
+            NotificationUtil.markedRead(userId, updated);
+            Map<String, Object> data = new HashMap<>();
+            data.put("updated", updated);
+            JsonUtil.sendJsonResponse(resp, ApiResponse.success(data));
+        } catch (SQLException e) {
+            e.printStackTrace();
+            JsonUtil.sendJsonResponse(resp, ApiResponse.error("Database error"));
+        }
+    }
 
-        resp.setContentType("text/event-stream;charset=UTF-8");
-        resp.setCharacterEncoding("UTF-8");
-        resp.setHeader("Cache-Control", "no-cache");
-        resp.setHeader("Connection", "keep-alive");
-        resp.flushBuffer();
-
-        long start = System.currentTimeMillis();
-        long timeoutMs = 25000;
-        try (PrintWriter writer = resp.getWriter()) {
-            int lastUnread = -1;
-            while (System.currentTimeMillis() - start < timeoutMs) {
-                int unread = 0;
-                try (Connection conn = DBUtil.getConnection();
-                     PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) FROM notification WHERE user_id = ? AND is_read = 0")) {
-                    ps.setInt(1, userId);
-                    try (ResultSet rs = ps.executeQuery()) {
-                        rs.next();
-                        unread = rs.getInt(1);
-                    }
-                } catch (SQLException e) {
-                    unread = lastUnread;
-                }
-
-                if (unread != lastUnread) {
-                    writer.write("event: unreadCount\n");
-                    writer.write("data: " + unread + "\n\n");
-                    writer.flush();
-                    lastUnread = unread;
-                } else {
-                    writer.write("event: ping\n");
-                    writer.write("data: 1\n\n");
-                    writer.flush();
-                }
-
-                try {
-                    Thread.sleep(2500);
-                } catch (InterruptedException ignored) {
-                    break;
-                }
+    private boolean notificationExists(Connection conn, int id, int userId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT 1 FROM notification WHERE id = ? AND user_id = ?")) {
+            ps.setInt(1, id);
+            ps.setInt(2, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
             }
         }
     }
 
-    private Integer getUserIdFromRequest(HttpServletRequest req, HttpServletResponse resp) throws IOException {
-        String token = req.getHeader("Authorization");
-        if (token != null && token.startsWith("Bearer ")) {
-            token = token.substring(7);
-            if (JwtUtil.validateToken(token)) {
-                return JwtUtil.getUserIdFromToken(token);
-            }
+    private void stream(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        Principal principal = AuthFilter.principal(req);
+        if (principal == null) {
+            // EventSource can't set headers, so the token may come as a parameter
+            principal = TokenVerifier.get().verify(req.getParameter("token"));
         }
-        JsonUtil.sendJsonResponse(resp, ApiResponse.error(401, "Unauthorized"));
-        return null;
+        if (principal == null) {
+            JsonUtil.sendJsonResponse(resp, ApiResponse.error(401, "Unauthorized"));
+            return;
+        }
+        int userId = principal.userId();
+
+        resp.setContentType("text/event-stream;charset=UTF-8");
+        resp.setHeader("Cache-Control", "no-cache");
+        resp.setHeader("X-Accel-Buffering", "no");
+
+        // the request thread goes back to the pool; the hub writes to the stream when something changes
+        AsyncContext ctx = req.startAsync();
+        ctx.setTimeout(Math.max(1, AppConfig.getLong("notification.streamTimeoutMinutes", 30)) * 60_000L);
+        NotificationHub hub = NotificationHub.get();
+        hub.subscribe(userId, new SseConnection(ctx, c -> hub.unsubscribe(userId, c)));
     }
 
     private void setCorsHeaders(HttpServletResponse resp) {
@@ -1,10 +1,23 @@
 package com.edu.servlet;
 
+import com.edu.auth.Principal;
+import com.edu.counter.DownloadCounter;
+import com.edu.counter.ResourceCounters;
+import com.edu.filter.AuthFilter;
 import com.edu.model.ApiResponse;
 import com.edu.model.PageResult;
 import com.edu.model.Resource;
 import com.edu.model.User;
+import com.edu.recommend.RecommendationService;
+import com.edu.recommend.RelatedResources;
+import com.edu.search.ResourceSearchIndex;
+import com.edu.storage.BlobRefs;
+import com.edu.storage.BlobStore;
+import com.edu.storage.Storage;
+import com.edu.storage.StorageService;
+import com.edu.util.CursorUtil;
 import com.edu.util.DBUtil;
+import com.edu.util.FileServer;
 import com.edu.util.JsonUtil;
 import com.edu.util.JwtUtil;
 
@@ -16,10 +29,8 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.Part;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.io.InputStream;
 import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -31,8 +42,12 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.stream.Collectors;
 
 @WebServlet("/api/resources/*")
 @MultipartConfig(
@@ -41,13 +56,29 @@ import java.util.HashMap;
     maxRequestSize = 1024 * 1024 * 500   // 500 MB
 )
 public class ResourceServlet extends HttpServlet {
-    private static final String UPLOAD_DIR = "C:/Users/macha/Desktop/Graduation-Design-EduResourcePlatform/storage/uploads";
     
     // Simple in-memory cache for stats
     private static Map<String, Object> statsCache = null;
     private static long lastCacheTime = 0;
     private static final long CACHE_DURATION = 60000; // 1 minute
 
+    // Explicitly sorted keyword listings with more index hits than this filter with LIKE instead of an IN list
+    private static final int MAX_SEARCH_ID_FILTER = 5000;
+
+    private static final int RELATED_LIMIT = 5;
+
+    // Resolved download targets, so repeat downloads and 304 revalidations skip the resource lookup.
+    // Entries are dropped when a resource is updated or deleted.
+    private record StoredFile(String key, String title, String fileType) {}
+    private static final int MAX_DOWNLOAD_FILE_CACHE = 2000;
+    private static final Map<Integer, StoredFile> downloadFiles = Collections.synchronizedMap(
+            new LinkedHashMap<Integer, StoredFile>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, StoredFile> eldest) {
+                    return size() > MAX_DOWNLOAD_FILE_CACHE;
+                }
+            });
+
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
         setCorsHeaders(resp);
@@ -134,26 +165,28 @@ public class ResourceServlet extends HttpServlet {
     private void getAvatar(HttpServletRequest req, HttpServletResponse resp) throws IOException {
         String pathInfo = req.getPathInfo();
         String fileName = pathInfo.substring("/avatar/".length());
+        if (fileName.isEmpty() || fileName.contains("..") || fileName.contains("/") || fileName.contains("\\")) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
         
-        File file = new File(UPLOAD_DIR + File.separator + fileName);
-        if (file.exists()) {
-            String mimeType = getServletContext().getMimeType(file.getAbsolutePath());
+        StorageService storage = Storage.get();
+        StorageService.StoredObject object = storage.stat(Storage.shardedKey(Storage.AVATARS, fileName));
+        if (object == null) {
+            // avatars uploaded before sharding sit at the top of the storage root
+            object = storage.stat(fileName);
+        }
+        if (object != null) {
+            String mimeType = getServletContext().getMimeType(fileName);
             if (mimeType == null) {
                 if (fileName.endsWith(".jpg") || fileName.endsWith(".jpeg")) mimeType = "image/jpeg";
                 else if (fileName.endsWith(".png")) mimeType = "image/png";
                 else if (fileName.endsWith(".gif")) mimeType = "image/gif";
                 else mimeType = "application/octet-stream";
             }
-            resp.setContentType(mimeType);
-            
-            try (FileInputStream fis = new FileInputStream(file);
-                 OutputStream os = resp.getOutputStream()) {
-                byte[] buffer = new byte[8192];
-                int bytesRead;
-                while ((bytesRead = fis.read(buffer)) != -1) {
-                    os.write(buffer, 0, bytesRead);
-                }
-            }
+            // avatar file names are unique per upload, so the content behind a URL never changes
+            resp.setHeader("Cache-Control", "public, max-age=31536000, immutable");
+            FileServer.serve(req, resp, storage, object, mimeType);
         } else {
             resp.sendError(HttpServletResponse.SC_NOT_FOUND);
         }
@@ -166,6 +199,7 @@ public class ResourceServlet extends HttpServlet {
         String sortBy = req.getParameter("sortBy");
         int page = Integer.parseInt(req.getParameter("page") != null ? req.getParameter("page") : "1");
         int pageSize = Integer.parseInt(req.getParameter("pageSize") != null ? req.getParameter("pageSize") : "10");
+        CursorUtil.Cursor cursor = CursorUtil.decode(req.getParameter("cursor"));
         
         int offset = (page - 1) * pageSize;
         
@@ -178,16 +212,38 @@ public class ResourceServlet extends HttpServlet {
             
             StringBuilder countSql = new StringBuilder("SELECT COUNT(*) FROM resource r WHERE r.is_public = 1");
             StringBuilder querySql = new StringBuilder(
-                "SELECT r.*, u.username, u.nickname, " +
-                "(SELECT COUNT(*) FROM comment WHERE resource_id = r.id) as comment_count " +
+                "SELECT r.*, u.username, u.nickname " +
                 "FROM resource r LEFT JOIN user u ON r.uploader_id = u.id WHERE r.is_public = 1");
             List<String> conditions = new ArrayList<>();
             List<Object> params = new ArrayList<>();
+            List<Integer> matched = null;
             
             if (keyword != null && !keyword.isEmpty()) {
-                conditions.add("(r.title LIKE ? OR r.description LIKE ?)");
-                params.add("%" + keyword + "%");
-                params.add("%" + keyword + "%");
+                ResourceSearchIndex index = ResourceSearchIndex.get();
+                if (sortBy == null || sortBy.isEmpty() || "relevance".equals(sortBy)) {
+                    // Ranked by the search index; only the rows of this page are read from MySQL
+                    ResourceSearchIndex.SearchResult hits = index.search(keyword, category, fileType, offset, pageSize);
+                    if (hits != null) {
+                        List<Resource> resources = loadResourcesByIds(conn, hits.ids());
+                        JsonUtil.sendJsonResponse(resp, ApiResponse.success(new PageResult<>(resources, hits.total(), page, pageSize)));
+                        return;
+                    }
+                }
+                matched = index.searchAll(keyword, category, fileType);
+                if (matched != null && matched.isEmpty()) {
+                    JsonUtil.sendJsonResponse(resp, ApiResponse.success(new PageResult<>(new ArrayList<Resource>(), 0, page, pageSize)));
+                    return;
+                }
+                if (matched != null && matched.size() <= MAX_SEARCH_ID_FILTER) {
+                    // Explicit sort order: let MySQL order the matched ids instead of scanning with LIKE
+                    conditions.add("r.id IN (" + matched.stream().map(String::valueOf).collect(Collectors.joining(",")) + ")");
+                } else {
+                    // Index not loaded, or too many matches for an IN list: MySQL filters and counts the
+                    // full match set itself ("recommend" still ranks all of `matched` in memory)
+                    conditions.add("(r.title LIKE ? OR r.description LIKE ?)");
+                    params.add("%" + keyword + "%");
+                    params.add("%" + keyword + "%");
+                }
             }
             if (category != null && !category.isEmpty()) {
                 conditions.add("r.category = ?");
@@ -203,13 +259,17 @@ public class ResourceServlet extends HttpServlet {
                 querySql.append(" AND ").append(condition);
             }
             
-            String orderBy = "ORDER BY r.created_at DESC";
+            String orderBy = "ORDER BY r.created_at DESC, r.id DESC";
+            // Only the newest-first listing has a (created_at, id) order that a cursor can resume from
+            boolean keyset = true;
             if ("popular".equals(sortBy)) {
                 orderBy = "ORDER BY r.collection_count DESC";
+                keyset = false;
             } else if ("downloads".equals(sortBy)) {
                 orderBy = "ORDER BY r.download_count DESC";
+                keyset = false;
             } else if ("recommend".equals(sortBy)) {
-                // Recommendation logic
+                keyset = false;
                 String token = req.getHeader("Authorization");
                 Integer userId = null;
                 if (token != null && token.startsWith("Bearer ")) {
@@ -218,62 +278,42 @@ public class ResourceServlet extends HttpServlet {
                         userId = JwtUtil.getUserIdFromToken(token);
                     }
                 }
-                
-                if (userId != null) {
-                    // Fetch user interests (top 3 categories)
-                    String interestSql = "SELECT category, COUNT(*) as cnt FROM (" +
-                        "SELECT r.category FROM collection c JOIN resource r ON c.resource_id = r.id WHERE c.user_id = ? " +
-                        "UNION ALL " +
-                        "SELECT r.category FROM comment cm JOIN resource r ON cm.resource_id = r.id WHERE cm.user_id = ? " +
-                        "UNION ALL " +
-                        "SELECT r.category FROM resource r WHERE r.uploader_id = ? " +
-                        ") as interests GROUP BY category ORDER BY cnt DESC LIMIT 3";
-                    
-                    List<String> topCategories = new ArrayList<>();
-                    try (PreparedStatement ips = conn.prepareStatement(interestSql)) {
-                        ips.setInt(1, userId);
-                        ips.setInt(2, userId);
-                        ips.setInt(3, userId);
-                        try (ResultSet irs = ips.executeQuery()) {
-                            while (irs.next()) {
-                                topCategories.add(irs.getString("category"));
-                            }
-                        }
-                    }
-                    
-                    if (!topCategories.isEmpty()) {
-                        StringBuilder caseSql = new StringBuilder("CASE ");
-                        for (String cat : topCategories) {
-                            caseSql.append("WHEN r.category = '").append(cat).append("' THEN 0 ");
-                        }
-                        caseSql.append("ELSE 1 END");
-                        orderBy = "ORDER BY " + caseSql.toString() + ", r.download_count DESC";
-                    } else {
-                        // Fallback to popular if no interests found
-                        orderBy = "ORDER BY r.download_count DESC";
-                    }
-                } else {
-                    // Fallback to popular for guest
-                    orderBy = "ORDER BY r.download_count DESC";
+                // Scored in memory from the user's interest profile; only the rows of this page are read
+                boolean searchable = keyword == null || keyword.isEmpty() || matched != null;
+                RecommendationService.Page ranked = !searchable ? null : RecommendationService.get().recommend(
+                        userId, category, fileType, matched == null ? null : new HashSet<>(matched), offset, pageSize);
+                if (ranked != null) {
+                    List<Resource> resources = loadResourcesByIds(conn, ranked.ids());
+                    JsonUtil.sendJsonResponse(resp, ApiResponse.success(new PageResult<>(resources, ranked.total(), page, pageSize)));
+                    return;
                 }
+                // Recommendations unavailable: most downloaded first
+                orderBy = "ORDER BY r.download_count DESC";
             }
             
-            querySql.append(" ").append(orderBy).append(" LIMIT ? OFFSET ?");
-            
-            // Execute count query
-            ps = conn.prepareStatement(countSql.toString());
-            int paramIndex = 1;
-            for (Object param : params) {
-                ps.setObject(paramIndex++, param);
+            boolean useCursor = keyset && cursor != null;
+            if (useCursor) {
+                querySql.append(" AND ").append(CursorUtil.condition("r.created_at", "r.id", true));
             }
-            rs = ps.executeQuery();
+            querySql.append(" ").append(orderBy).append(useCursor ? " LIMIT ?" : " LIMIT ? OFFSET ?");
             
-            int total = 0;
-            if (rs.next()) {
-                total = rs.getInt(1);
+            // Execute count query; only the first page needs the total, cursor pages stay constant-cost
+            Integer total = null;
+            int paramIndex = 1;
+            if (!useCursor) {
+                ps = conn.prepareStatement(countSql.toString());
+                for (Object param : params) {
+                    ps.setObject(paramIndex++, param);
+                }
+                rs = ps.executeQuery();
+                
+                total = 0;
+                if (rs.next()) {
+                    total = rs.getInt(1);
+                }
+                rs.close();
+                ps.close();
             }
-            rs.close();
-            ps.close();
             
             // Execute data query
             ps = conn.prepareStatement(querySql.toString());
@@ -281,37 +321,30 @@ public class ResourceServlet extends HttpServlet {
             for (Object param : params) {
                 ps.setObject(paramIndex++, param);
             }
-            ps.setInt(paramIndex++, pageSize);
-            ps.setInt(paramIndex++, offset);
+            if (useCursor) {
+                paramIndex = CursorUtil.bind(ps, paramIndex, cursor);
+            }
+            // one extra row tells whether there is a next page
+            ps.setInt(paramIndex++, keyset ? pageSize + 1 : pageSize);
+            if (!useCursor) {
+                ps.setInt(paramIndex++, offset);
+            }
             rs = ps.executeQuery();
             
             List<Resource> resources = new ArrayList<>();
             while (rs.next()) {
-                Resource resource = new Resource();
-                resource.setId(rs.getInt("id"));
-                resource.setName(rs.getString("title"));
-                resource.setDescription(rs.getString("description"));
-                resource.setCategory(rs.getString("category"));
-                resource.setFileName(rs.getString("file_name"));
-                resource.setFilePath(rs.getString("file_path"));
-                resource.setFileSize(rs.getLong("file_size"));
-                resource.setFileType(rs.getString("file_type"));
-                resource.setUploaderId(rs.getInt("uploader_id"));
-                resource.setDownloadCount(rs.getInt("download_count"));
-                resource.setCollectionCount(rs.getInt("collection_count"));
-                resource.setCommentCount(rs.getInt("comment_count"));
-                resource.setCreatedAt(rs.getTimestamp("created_at"));
-                
-                User uploader = new User();
-                uploader.setId(rs.getInt("uploader_id"));
-                uploader.setUsername(rs.getString("username"));
-                uploader.setNickname(rs.getString("nickname"));
-                resource.setUploader(uploader);
-                
-                resources.add(resource);
+                resources.add(mapListRow(rs));
+            }
+            
+            String nextCursor = null;
+            if (keyset && resources.size() > pageSize) {
+                resources.remove(resources.size() - 1);
+                Resource last = resources.get(resources.size() - 1);
+                nextCursor = CursorUtil.encode(last.getCreatedAt(), last.getId());
             }
             
             PageResult<Resource> result = new PageResult<>(resources, total, page, pageSize);
+            result.setNextCursor(nextCursor);
             JsonUtil.sendJsonResponse(resp, ApiResponse.success(result));
         } catch (SQLException e) {
             e.printStackTrace();
@@ -321,6 +354,60 @@ public class ResourceServlet extends HttpServlet {
         }
     }
 
+    private void rollbackQuietly(Connection conn) {
+        if (conn == null) return;
+        try {
+            conn.rollback();
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    private Resource mapListRow(ResultSet rs) throws SQLException {
+        Resource resource = new Resource();
+        resource.setId(rs.getInt("id"));
+        resource.setName(rs.getString("title"));
+        resource.setDescription(rs.getString("description"));
+        resource.setCategory(rs.getString("category"));
+        resource.setFileName(rs.getString("file_name"));
+        resource.setFilePath(rs.getString("file_path"));
+        resource.setFileSize(rs.getLong("file_size"));
+        resource.setFileType(rs.getString("file_type"));
+        resource.setUploaderId(rs.getInt("uploader_id"));
+        resource.setDownloadCount(rs.getInt("download_count"));
+        resource.setCollectionCount(rs.getInt("collection_count"));
+        resource.setCommentCount(rs.getInt("comment_count"));
+        resource.setCreatedAt(rs.getTimestamp("created_at"));
+
+        User uploader = new User();
+        uploader.setId(rs.getInt("uploader_id"));
+        uploader.setUsername(rs.getString("username"));
+        uploader.setNickname(rs.getString("nickname"));
+        resource.setUploader(uploader);
+        return resource;
+    }
+
+    private List<Resource> loadResourcesByIds(Connection conn, List<Integer> ids) throws SQLException {
+        if (ids.isEmpty()) return new ArrayList<>();
+        String in = ids.stream().map(String::valueOf).collect(Collectors.joining(","));
+        String sql = "SELECT r.*, u.username, u.nickname " +
+                "FROM resource r LEFT JOIN user u ON r.uploader_id = u.id WHERE r.id IN (" + in + ")";
+        Map<Integer, Resource> byId = new HashMap<>();
+        try (PreparedStatement ps = conn.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                Resource resource = mapListRow(rs);
+                byId.put(resource.getId(), resource);
+            }
+        }
+        List<Resource> ordered = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            Resource resource = byId.get(id);
+            if (resource != null) ordered.add(resource);
+        }
+        return ordered;
+    }
+
     private void getResourceDetail(HttpServletRequest req, HttpServletResponse resp) throws IOException {
         String resourceId = req.getPathInfo().substring(1);
         
@@ -330,7 +417,7 @@ public class ResourceServlet extends HttpServlet {
         
         try {
             conn = DBUtil.getConnection();
-            String sql = "SELECT r.*, u.username, u.nickname, u.avatar, (SELECT COUNT(*) FROM comment WHERE resource_id = r.id) as comment_count FROM resource r LEFT JOIN user u ON r.uploader_id = u.id WHERE r.id = ?";
+            String sql = "SELECT r.*, u.username, u.nickname, u.avatar FROM resource r LEFT JOIN user u ON r.uploader_id = u.id WHERE r.id = ?";
             ps = conn.prepareStatement(sql);
             ps.setInt(1, Integer.parseInt(resourceId));
             rs = ps.executeQuery();
@@ -346,7 +433,7 @@ public class ResourceServlet extends HttpServlet {
                 resource.setFileSize(rs.getLong("file_size"));
                 resource.setFileType(rs.getString("file_type"));
                 resource.setUploaderId(rs.getInt("uploader_id"));
-                resource.setDownloadCount(rs.getInt("download_count"));
+                resource.setDownloadCount(rs.getInt("download_count") + (int) DownloadCounter.get().pendingFor(resource.getId()));
                 resource.setCollectionCount(rs.getInt("collection_count"));
                 resource.setCommentCount(rs.getInt("comment_count"));
                 resource.setAllowComments(rs.getBoolean("allow_comments"));
@@ -385,12 +472,6 @@ public class ResourceServlet extends HttpServlet {
             }
         }
         
-        String uploadPath = UPLOAD_DIR;
-        File uploadDir = new File(uploadPath);
-        if (!uploadDir.exists()) {
-            uploadDir.mkdirs();
-        }
-        
         try {
             Part filePart = req.getPart("file");
             if (filePart == null || filePart.getSize() == 0) {
@@ -411,31 +492,35 @@ public class ResourceServlet extends HttpServlet {
             }
             submittedFileName = Paths.get(submittedFileName).getFileName().toString().trim();
             String fileName = System.currentTimeMillis() + "_" + submittedFileName;
-            // Use UPLOAD_DIR constant which is an absolute path
-            String filePath = UPLOAD_DIR + File.separator + fileName;
             
-            filePart.write(filePath);
+            // hashed while it is copied out of the request, so identical files are stored once
+            BlobStore blobs = BlobStore.get();
+            BlobStore.Staged staged;
+            try (InputStream in = filePart.getInputStream()) {
+                staged = blobs.stage(in);
+            }
+            String filePath = BlobStore.ref(staged.hash());
             
             String fileType = "";
             int dotIndex = submittedFileName.lastIndexOf(".");
             if (dotIndex >= 0 && dotIndex < submittedFileName.length() - 1) {
                 fileType = submittedFileName.substring(dotIndex + 1).toLowerCase();
             }
-            long fileSize = filePart.getSize();
+            long fileSize = staged.size();
             
             Connection conn = null;
             PreparedStatement ps = null;
             
             try {
                 conn = DBUtil.getConnection();
+                conn.setAutoCommit(false);
                 String sql = "INSERT INTO resource (title, description, category, file_name, file_path, file_size, file_type, uploader_id, allow_comments, is_public) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
                 ps = conn.prepareStatement(sql, PreparedStatement.RETURN_GENERATED_KEYS);
                 ps.setString(1, name);
                 ps.setString(2, description);
                 ps.setString(3, category);
                 ps.setString(4, fileName);
-                // Store only filename in database for portability, or relative path
-                ps.setString(5, fileName);
+                ps.setString(5, filePath);
                 ps.setLong(6, fileSize);
                 ps.setString(7, fileType);
                 ps.setInt(8, userId);
@@ -447,13 +532,22 @@ public class ResourceServlet extends HttpServlet {
                 if (result > 0) {
                     ResultSet rs = ps.getGeneratedKeys();
                     if (rs.next()) {
+                        int id = rs.getInt(1);
+                        BlobRefs.acquire(conn, staged.hash(), fileSize);
+                        blobs.commit(staged);
+                        conn.commit();
+                        
+                        ResourceSearchIndex.get().index(new ResourceSearchIndex.Document(
+                                id, name, description, category, fileType, isPublic));
+                        RecommendationService.get().uploaded(userId, id, category, fileType, isPublic);
+
                         Resource resource = new Resource();
-                        resource.setId(rs.getInt(1));
+                        resource.setId(id);
                         resource.setName(name);
                         resource.setDescription(description);
                         resource.setCategory(category);
                         resource.setFileName(fileName);
-                        resource.setFilePath(fileName);
+                        resource.setFilePath(filePath);
                         resource.setFileSize(fileSize);
                         resource.setFileType(fileType);
                         resource.setUploaderId(userId);
@@ -469,13 +563,26 @@ public class ResourceServlet extends HttpServlet {
                         resource.setUploader(uploader);
                         
                         JsonUtil.sendJsonResponse(resp, ApiResponse.success("Resource uploaded successfully", resource));
+                    } else {
+                        rollbackQuietly(conn);
+                        blobs.discard(staged);
+                        JsonUtil.sendJsonResponse(resp, ApiResponse.error("Database error"));
                     }
                 } else {
+                    rollbackQuietly(conn);
+                    blobs.discard(staged);
                     JsonUtil.sendJsonResponse(resp, ApiResponse.error("Failed to upload resource"));
                 }
             } catch (SQLException e) {
                 e.printStackTrace();
+                rollbackQuietly(conn);
+                blobs.discard(staged);
                 JsonUtil.sendJsonResponse(resp, ApiResponse.error("Database error"));
+            } catch (IOException e) {
+                e.printStackTrace();
+                rollbackQuietly(conn);
+                blobs.discard(staged);
+                JsonUtil.sendJsonResponse(resp, ApiResponse.error("File upload error: " + e.getMessage()));
             } finally {
                 DBUtil.close(conn, ps);
             }
@@ -523,6 +630,8 @@ public class ResourceServlet extends HttpServlet {
             }
             
             Integer uploaderId = rs.getInt("uploader_id");
+            String fileType = rs.getString("file_type");
+            boolean isPublic = rs.getBoolean("is_public");
             
             if (!userId.equals(uploaderId) && !"admin".equals(role)) {
                 JsonUtil.sendJsonResponse(resp, ApiResponse.error(403, "You can only edit your own resources"));
@@ -561,6 +670,10 @@ public class ResourceServlet extends HttpServlet {
             int result = ps.executeUpdate();
             
             if (result > 0) {
+                ResourceSearchIndex.get().index(new ResourceSearchIndex.Document(
+                        Integer.parseInt(resourceId), name, description, category, fileType, isPublic));
+                RecommendationService.get().resourceSaved(Integer.parseInt(resourceId), category, fileType, uploaderId, isPublic);
+                downloadFiles.remove(Integer.parseInt(resourceId));
                 JsonUtil.sendJsonResponse(resp, ApiResponse.success("Resource updated successfully", null));
             } else {
                 JsonUtil.sendJsonResponse(resp, ApiResponse.error("Failed to update resource"));
@@ -619,15 +732,15 @@ public class ResourceServlet extends HttpServlet {
                 return;
             }
             
-            File file = null;
-            if (storedFilePath != null && !storedFilePath.trim().isEmpty()) {
-                file = resolveStoredFile(storedFilePath);
-            }
-            if ((file == null || !file.exists()) && storedFileName != null && !storedFileName.trim().isEmpty()
-                    && (storedFilePath == null || !storedFileName.equals(storedFilePath))) {
-                file = resolveStoredFile(storedFileName);
+            // blobs may be shared with other resources; they are released here and collected by the
+            // blob GC once unreferenced. Only legacy per-upload files are deleted directly.
+            String legacyKey = null;
+            if (BlobStore.hashOf(storedFilePath) == null) {
+                legacyKey = findStoredKey(storedFilePath == null ? null : storedFilePath.trim(),
+                        storedFileName == null ? null : storedFileName.trim());
             }
             
+            conn.setAutoCommit(false);
             String deleteSql = "DELETE FROM resource WHERE id = ?";
             ps = conn.prepareStatement(deleteSql);
             ps.setInt(1, Integer.parseInt(resourceId));
@@ -635,14 +748,25 @@ public class ResourceServlet extends HttpServlet {
             int result = ps.executeUpdate();
             
             if (result > 0) {
-                if (file != null && file.exists()) {
-                    file.delete();
+                BlobRefs.releasePath(conn, storedFilePath);
+                conn.commit();
+                ResourceSearchIndex.get().remove(Integer.parseInt(resourceId));
+                RecommendationService.get().removed(Integer.parseInt(resourceId));
+                downloadFiles.remove(Integer.parseInt(resourceId));
+                if (legacyKey != null) {
+                    try {
+                        Storage.get().delete(legacyKey);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
                 }
                 JsonUtil.sendJsonResponse(resp, ApiResponse.success("Resource deleted successfully", null));
             } else {
+                conn.rollback();
                 JsonUtil.sendJsonResponse(resp, ApiResponse.error("Failed to delete resource"));
             }
         } catch (SQLException e) {
+            rollbackQuietly(conn);
             e.printStackTrace();
             JsonUtil.sendJsonResponse(resp, ApiResponse.error("Database error"));
         } finally {
@@ -651,180 +775,159 @@ public class ResourceServlet extends HttpServlet {
     }
 
     private void downloadResource(HttpServletRequest req, HttpServletResponse resp) throws IOException {
-        String resourceId = req.getPathInfo().split("/")[1];
+        int resourceId;
+        try {
+            resourceId = Integer.parseInt(req.getPathInfo().split("/")[1]);
+        } catch (NumberFormatException e) {
+            JsonUtil.sendJsonResponse(resp, ApiResponse.error("Invalid resource ID"));
+            return;
+        }
         boolean inline = "true".equals(req.getParameter("inline"));
         
+        StorageService storage = Storage.get();
+        StoredFile stored = downloadFiles.get(resourceId);
+        StorageService.StoredObject object = stored == null ? null : storage.stat(stored.key());
+        if (object == null) {
+            downloadFiles.remove(resourceId);
+            stored = lookupStoredFile(resp, resourceId);
+            if (stored == null) return;
+            object = storage.stat(stored.key());
+            if (object == null) {
+                JsonUtil.sendJsonResponse(resp, ApiResponse.error("File not found"));
+                return;
+            }
+            downloadFiles.put(resourceId, stored);
+        }
+        String title = stored.title();
+        String fileType = stored.fileType();
+        
+        // Clients revalidate on every use; unchanged files are answered with 304 and no body
+        resp.setHeader("Cache-Control", "no-cache");
+        if (FileServer.checkNotModified(req, resp, object)) return;
+        
+        // Only increment download count if not previewing (inline); DownloadCounter batches the writes
+        if (!inline) {
+            DownloadCounter.get().increment(resourceId);
+            Principal principal = AuthFilter.principal(req);
+            RecommendationService.get().downloaded(principal == null ? null : principal.userId(), resourceId);
+            if (principal != null) RelatedResources.get().downloaded(principal.userId(), resourceId);
+        }
+        
+        String mimeType = getServletContext().getMimeType(stored.key());
+        if (mimeType == null && fileType != null && !fileType.isBlank()) {
+            // blob files have no extension; go by the resource's file type
+            mimeType = getServletContext().getMimeType("file." + fileType.toLowerCase());
+        }
+        if (mimeType == null) {
+            String type = fileType == null ? "" : fileType.toLowerCase();
+            if ("mp4".equals(type)) mimeType = "video/mp4";
+            else if ("webm".equals(type)) mimeType = "video/webm";
+            else if ("ogg".equals(type) || "ogv".equals(type)) mimeType = "video/ogg";
+            else if ("mp3".equals(type)) mimeType = "audio/mpeg";
+            else if ("wav".equals(type)) mimeType = "audio/wav";
+            else if ("pdf".equals(type)) mimeType = "application/pdf";
+            else if ("jpg".equals(type) || "jpeg".equals(type)) mimeType = "image/jpeg";
+            else if ("png".equals(type)) mimeType = "image/png";
+            else if ("gif".equals(type)) mimeType = "image/gif";
+            else mimeType = "application/octet-stream";
+        }
+        
+        String disposition = inline ? "inline" : "attachment";
+        resp.setHeader("Content-Disposition", disposition + "; filename=\"" + title + "." + fileType + "\"");
+        
+        // Range requests (video seeking, resumed downloads) are handled by FileServer
+        FileServer.serve(req, resp, storage, object, mimeType);
+    }
+
+    /**
+     * Resolves the file behind a resource, or sends the error response and returns {@code null}.
+     */
+    private StoredFile lookupStoredFile(HttpServletResponse resp, int resourceId) throws IOException {
         Connection conn = null;
         PreparedStatement ps = null;
         ResultSet rs = null;
         
+        String key;
+        String title;
+        String fileType;
         try {
             conn = DBUtil.getConnection();
             String sql = "SELECT * FROM resource WHERE id = ?";
             ps = conn.prepareStatement(sql);
-            ps.setInt(1, Integer.parseInt(resourceId));
+            ps.setInt(1, resourceId);
             rs = ps.executeQuery();
             
-            if (rs.next()) {
-                String storedFilePath = rs.getString("file_path");
-                String storedFileName = rs.getString("file_name");
-                String title = rs.getString("title");
-                String fileType = rs.getString("file_type");
-                
-                // Only increment download count if not previewing (inline)
-                if (!inline) {
-                    String updateSql = "UPDATE resource SET download_count = download_count + 1 WHERE id = ?";
-                    PreparedStatement updatePs = conn.prepareStatement(updateSql);
-                    updatePs.setInt(1, Integer.parseInt(resourceId));
-                    updatePs.executeUpdate();
-                }
-                
-                String normalizedFilePath = storedFilePath == null ? null : storedFilePath.trim();
-                String normalizedFileName = storedFileName == null ? null : storedFileName.trim();
-
-                File file = null;
-                if (normalizedFilePath != null && !normalizedFilePath.isEmpty()) {
-                    file = resolveStoredFile(normalizedFilePath);
-                }
-                if ((file == null || !file.exists()) && normalizedFileName != null && !normalizedFileName.isEmpty()
-                        && (normalizedFilePath == null || !normalizedFileName.equals(normalizedFilePath))) {
-                    file = resolveStoredFile(normalizedFileName);
-                }
-                
-                if (file.exists()) {
-                    // Set Accept-Ranges header
-                    resp.setHeader("Accept-Ranges", "bytes");
-                    
-                    String mimeType = getServletContext().getMimeType(file.getName());
-                    if (mimeType == null) {
-                        String type = fileType == null ? "" : fileType.toLowerCase();
-                        if ("mp4".equals(type)) mimeType = "video/mp4";
-                        else if ("webm".equals(type)) mimeType = "video/webm";
-                        else if ("ogg".equals(type) || "ogv".equals(type)) mimeType = "video/ogg";
-                        else if ("mp3".equals(type)) mimeType = "audio/mpeg";
-                        else if ("wav".equals(type)) mimeType = "audio/wav";
-                        else if ("pdf".equals(type)) mimeType = "application/pdf";
-                        else if ("jpg".equals(type) || "jpeg".equals(type)) mimeType = "image/jpeg";
-                        else if ("png".equals(type)) mimeType = "image/png";
-                        else if ("gif".equals(type)) mimeType = "image/gif";
-                        else mimeType = "application/octet-stream";
-                    }
-                    
-                    resp.setContentType(mimeType);
-                    String disposition = inline ? "inline" : "attachment";
-                    resp.setHeader("Content-Disposition", disposition + "; filename=\"" + title + "." + fileType + "\"");
-                    
-                    // Support Range requests for video seeking
-                    long length = file.length();
-                    long start = 0;
-                    long end = length - 1;
-                    
-                    String range = req.getHeader("Range");
-                    boolean hasRange = false;
-                    if (range != null && range.startsWith("bytes=")) {
-                        String spec = range.substring("bytes=".length()).trim();
-                        int dash = spec.indexOf('-');
-                        if (dash >= 0) {
-                            String startStr = spec.substring(0, dash).trim();
-                            String endStr = spec.substring(dash + 1).trim();
-                            try {
-                                if (startStr.isEmpty()) {
-                                    if (!endStr.isEmpty()) {
-                                        long suffix = Long.parseLong(endStr);
-                                        suffix = Math.max(0, suffix);
-                                        start = Math.max(0, length - suffix);
-                                    }
-                                } else {
-                                    start = Long.parseLong(startStr);
-                                }
-
-                                if (!endStr.isEmpty()) {
-                                    end = Long.parseLong(endStr);
-                                }
-
-                                if (end >= length) {
-                                    end = length - 1;
-                                }
-
-                                if (start < 0 || start >= length || start > end) {
-                                    resp.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
-                                    resp.setHeader("Content-Range", "bytes */" + length);
-                                    return;
-                                }
-
-                                hasRange = true;
-                            } catch (NumberFormatException ignored) {
-                            }
-                        }
-                    }
-
-                    if (hasRange) {
-                        resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
-                        resp.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
-                        resp.setContentLengthLong(end - start + 1);
-                    } else {
-                        resp.setContentLengthLong(length);
-                    }
-                    
-                    try (FileInputStream fis = new FileInputStream(file);
-                         OutputStream os = resp.getOutputStream()) {
-                        
-                        if (hasRange) {
-                            fis.skip(start);
-                            byte[] buffer = new byte[8192];
-                            long bytesToRead = end - start + 1;
-                            int bytesRead;
-                            while (bytesToRead > 0 && (bytesRead = fis.read(buffer, 0, (int) Math.min(buffer.length, bytesToRead))) != -1) {
-                                os.write(buffer, 0, bytesRead);
-                                bytesToRead -= bytesRead;
-                            }
-                        } else {
-                            byte[] buffer = new byte[8192];
-                            int bytesRead;
-                            while ((bytesRead = fis.read(buffer)) != -1) {
-                                os.write(buffer, 0, bytesRead);
-                            }
-                        }
-                    }
-                } else {
-                    JsonUtil.sendJsonResponse(resp, ApiResponse.error("File not found"));
-                }
-            } else {
+            if (!rs.next()) {
                 JsonUtil.sendJsonResponse(resp, ApiResponse.error("Resource not found"));
+                return null;
             }
+            String storedFilePath = rs.getString("file_path");
+            String storedFileName = rs.getString("file_name");
+            title = rs.getString("title");
+            fileType = rs.getString("file_type");
+            
+            String normalizedFilePath = storedFilePath == null ? null : storedFilePath.trim();
+            String normalizedFileName = storedFileName == null ? null : storedFileName.trim();
+            key = findStoredKey(normalizedFilePath, normalizedFileName);
         } catch (SQLException e) {
             e.printStackTrace();
             JsonUtil.sendJsonResponse(resp, ApiResponse.error("Database error"));
+            return null;
         } finally {
+            // release the connection before streaming; large videos can take minutes to send
             DBUtil.close(conn, ps, rs);
         }
+        
+        if (key == null) {
+            JsonUtil.sendJsonResponse(resp, ApiResponse.error("File not found"));
+            return null;
+        }
+        return new StoredFile(key, title, fileType);
     }
 
-    private File resolveStoredFile(String storedPath) {
+    /**
+     * Returns the storage key of the first of file_path / file_name that names an existing object.
+     */
+    private String findStoredKey(String storedPath, String storedName) throws IOException {
+        StorageService storage = Storage.get();
+        String key = resolveStoredKey(storedPath);
+        if (key != null && storage.stat(key) != null) {
+            return key;
+        }
+        if (storedName != null && !storedName.equals(storedPath)) {
+            key = resolveStoredKey(storedName);
+            if (key != null && storage.stat(key) != null) {
+                return key;
+            }
+        }
+        return null;
+    }
+
+    private String resolveStoredKey(String storedPath) {
         String p = storedPath == null ? "" : storedPath.trim();
         if (p.isEmpty()) {
-            return new File(UPLOAD_DIR);
+            return null;
         }
 
+        String hash = BlobStore.hashOf(p);
+        if (hash != null) {
+            return BlobStore.get().key(hash);
+        }
+
+        // legacy rows hold "uploads/<name>", an absolute path, or the bare name of a file at the
+        // top of the storage root
         if (p.startsWith("uploads/")) {
             p = p.substring("uploads/".length());
         } else if (p.startsWith("uploads\\")) {
             p = p.substring("uploads\\".length());
         }
-
-        if (p.contains(":") || p.startsWith("/")) {
-            File absolute = new File(p);
-            if (absolute.exists()) {
-                return absolute;
-            }
-            p = absolute.getName();
+        if (p.contains(":") || p.startsWith("/") || p.contains("\\")) {
+            p = p.substring(Math.max(p.lastIndexOf('/'), p.lastIndexOf('\\')) + 1);
         }
-
-        File file = new File(UPLOAD_DIR + File.separator + p);
-        if (!file.exists()) {
-            file = new File(getServletContext().getRealPath("") + File.separator + "uploads" + File.separator + p);
+        if (p.isEmpty() || p.contains("..") || p.contains("/") || p.contains("\\")) {
+            return null;
         }
-        return file;
+        return p;
     }
 
     private void collectResource(HttpServletRequest req, HttpServletResponse resp) throws IOException {
@@ -880,6 +983,10 @@ public class ResourceServlet extends HttpServlet {
                 return;
             }
             
+            rs.close();
+            ps.close();
+            
+            conn.setAutoCommit(false);
             String insertSql = "INSERT INTO collection (user_id, resource_id) VALUES (?, ?)";
             ps = conn.prepareStatement(insertSql);
             ps.setInt(1, userId);
@@ -888,16 +995,18 @@ public class ResourceServlet extends HttpServlet {
             int result = ps.executeUpdate();
             
             if (result > 0) {
-                String updateSql = "UPDATE resource SET collection_count = collection_count + 1 WHERE id = ?";
-                ps = conn.prepareStatement(updateSql);
-                ps.setInt(1, resourceId);
-                ps.executeUpdate();
+                ResourceCounters.adjustCollections(conn, resourceId, result);
+                conn.commit();
+                RecommendationService.get().collected(userId, resourceId, result);
+                RelatedResources.get().collected(userId, resourceId);
                 
                 JsonUtil.sendJsonResponse(resp, ApiResponse.success("Resource collected successfully", null));
             } else {
+                conn.rollback();
                 JsonUtil.sendJsonResponse(resp, ApiResponse.error("Failed to collect resource"));
             }
         } catch (SQLException e) {
+            rollbackQuietly(conn);
             e.printStackTrace();
             JsonUtil.sendJsonResponse(resp, ApiResponse.error("Database error occurred"));
         } finally {
@@ -945,6 +1054,7 @@ public class ResourceServlet extends HttpServlet {
         
         try {
             conn = DBUtil.getConnection();
+            conn.setAutoCommit(false);
             String deleteSql = "DELETE FROM collection WHERE user_id = ? AND resource_id = ?";
             ps = conn.prepareStatement(deleteSql);
             ps.setInt(1, userId);
@@ -953,16 +1063,18 @@ public class ResourceServlet extends HttpServlet {
             int result = ps.executeUpdate();
             
             if (result > 0) {
-                String updateSql = "UPDATE resource SET collection_count = collection_count - 1 WHERE id = ?";
-                ps = conn.prepareStatement(updateSql);
-                ps.setInt(1, resourceId);
-                ps.executeUpdate();
+                ResourceCounters.adjustCollections(conn, resourceId, -result);
+                conn.commit();
+                RecommendationService.get().collected(userId, resourceId, -result);
+                RelatedResources.get().collected(userId, resourceId);
                 
                 JsonUtil.sendJsonResponse(resp, ApiResponse.success("Resource uncollected successfully", null));
             } else {
+                conn.rollback();
                 JsonUtil.sendJsonResponse(resp, ApiResponse.error("Failed to uncollect resource"));
             }
         } catch (SQLException e) {
+            rollbackQuietly(conn);
             e.printStackTrace();
             JsonUtil.sendJsonResponse(resp, ApiResponse.error("Database error occurred"));
         } finally {
@@ -1073,8 +1185,7 @@ public class ResourceServlet extends HttpServlet {
             rs.close();
             ps.close();
             
-            String querySql = "SELECT r.*, " +
-                              "(SELECT COUNT(*) FROM comment WHERE resource_id = r.id) as comment_count " +
+            String querySql = "SELECT r.* " +
                               "FROM resource r WHERE uploader_id = ? ORDER BY created_at DESC LIMIT ? OFFSET ?";
             ps = conn.prepareStatement(querySql);
             ps.setInt(1, userId);
@@ -1147,7 +1258,7 @@ public class ResourceServlet extends HttpServlet {
                 total = rs.getInt(1);
             }
             
-            String querySql = "SELECT r.*, u.username, u.nickname, (SELECT COUNT(*) FROM comment WHERE resource_id = r.id) as comment_count FROM collection c " +
+            String querySql = "SELECT r.*, u.username, u.nickname FROM collection c " +
                     "JOIN resource r ON c.resource_id = r.id " +
                     "LEFT JOIN user u ON r.uploader_id = u.id " +
                     "WHERE c.user_id = ? ORDER BY c.created_at DESC LIMIT ? OFFSET ?";
@@ -1310,69 +1421,99 @@ public class ResourceServlet extends HttpServlet {
     }
 
     private void getRelatedResources(HttpServletRequest req, HttpServletResponse resp) throws IOException {
-        String resourceId = req.getPathInfo().split("/")[1];
-        
-        Connection conn = null;
-        PreparedStatement ps = null;
-        ResultSet rs = null;
-        
+        int resourceId;
         try {
-            conn = DBUtil.getConnection();
-            
-            String categorySql = "SELECT category FROM resource WHERE id = ?";
-            ps = conn.prepareStatement(categorySql);
-            ps.setInt(1, Integer.parseInt(resourceId));
-            rs = ps.executeQuery();
-            
+            resourceId = Integer.parseInt(req.getPathInfo().split("/")[1]);
+        } catch (NumberFormatException e) {
+            JsonUtil.sendJsonResponse(resp, ApiResponse.error("Invalid resource ID"));
+            return;
+        }
+
+        try (Connection conn = DBUtil.getConnection()) {
             String category = null;
-            if (rs.next()) {
-                category = rs.getString("category");
+            try (PreparedStatement ps = conn.prepareStatement("SELECT category FROM resource WHERE id = ?")) {
+                ps.setInt(1, resourceId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        category = rs.getString("category");
+                    }
+                }
             }
-            
+
             if (category == null) {
                 JsonUtil.sendJsonResponse(resp, ApiResponse.error("Resource not found"));
                 return;
             }
-            
-            String querySql = "SELECT r.*, u.username, u.nickname, (SELECT COUNT(*) FROM comment WHERE resource_id = r.id) as comment_count FROM resource r " +
-                    "LEFT JOIN user u ON r.uploader_id = u.id " +
-                    "WHERE r.category = ? AND r.id != ? AND r.is_public = 1 " +
-                    "ORDER BY r.download_count DESC LIMIT 5";
-            ps = conn.prepareStatement(querySql);
-            ps.setString(1, category);
-            ps.setInt(2, Integer.parseInt(resourceId));
-            rs = ps.executeQuery();
-            
+
+            // precomputed by RelatedResources from co-collection and co-download
             List<Resource> resources = new ArrayList<>();
-            while (rs.next()) {
-                Resource resource = new Resource();
-                resource.setId(rs.getInt("id"));
-                resource.setName(rs.getString("title"));
-                resource.setDescription(rs.getString("description"));
-                resource.setCategory(rs.getString("category"));
-                resource.setFileName(rs.getString("file_name"));
-                resource.setFileSize(rs.getLong("file_size"));
-                resource.setFileType(rs.getString("file_type"));
-                resource.setDownloadCount(rs.getInt("download_count"));
-                resource.setCollectionCount(rs.getInt("collection_count"));
-                resource.setCommentCount(rs.getInt("comment_count"));
-                resource.setCreatedAt(rs.getTimestamp("created_at"));
-                
-                User uploader = new User();
-                uploader.setId(rs.getInt("uploader_id"));
-                uploader.setUsername(rs.getString("username"));
-                uploader.setNickname(rs.getString("nickname"));
-                resource.setUploader(uploader);
-                
-                resources.add(resource);
+            String relatedSql = "SELECT r.*, u.username, u.nickname FROM resource_related rr " +
+                    "JOIN resource r ON r.id = rr.related_id " +
+                    "LEFT JOIN user u ON r.uploader_id = u.id " +
+                    "WHERE rr.resource_id = ? AND r.is_public = 1 " +
+                    "ORDER BY rr.score DESC LIMIT " + RELATED_LIMIT;
+            try (PreparedStatement ps = conn.prepareStatement(relatedSql)) {
+                ps.setInt(1, resourceId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        resources.add(mapRelated(rs));
+                    }
+                }
             }
-            
+
+            // cold resources (or too few related ones): fill with popular ones from the same category
+            if (resources.size() < RELATED_LIMIT) {
+                Set<Integer> shown = new HashSet<>();
+                shown.add(resourceId);
+                for (Resource r : resources) {
+                    shown.add(r.getId());
+                }
+                String in = String.join(",", Collections.nCopies(shown.size(), "?"));
+                String fallbackSql = "SELECT r.*, u.username, u.nickname FROM resource r " +
+                        "LEFT JOIN user u ON r.uploader_id = u.id " +
+                        "WHERE r.category = ? AND r.id NOT IN (" + in + ") AND r.is_public = 1 " +
+                        "ORDER BY r.download_count DESC LIMIT ?";
+                try (PreparedStatement ps = conn.prepareStatement(fallbackSql)) {
+                    int idx = 1;
+                    ps.setString(idx++, category);
+                    for (Integer id : shown) {
+                        ps.setInt(idx++, id);
+                    }
+                    ps.setInt(idx, RELATED_LIMIT - resources.size());
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            resources.add(mapRelated(rs));
+                        }
+                    }
+                }
+            }
+
             JsonUtil.sendJsonResponse(resp, ApiResponse.success(resources));
         } catch (SQLException e) {
             e.printStackTrace();
             JsonUtil.sendJsonResponse(resp, ApiResponse.error("Database error"));
-        } finally {
-            DBUtil.close(conn, ps, rs);
         }
     }
+
+    private Resource mapRelated(ResultSet rs) throws SQLException {
+        Resource resource = new Resource();
+        resource.setId(rs.getInt("id"));
+        resource.setName(rs.getString("title"));
+        resource.setDescription(rs.getString("description"));
+        resource.setCategory(rs.getString("category"));
+        resource.setFileName(rs.getString("file_name"));
+        resource.setFileSize(rs.getLong("file_size"));
+        resource.setFileType(rs.getString("file_type"));
+        resource.setDownloadCount(rs.getInt("download_count"));
+        resource.setCollectionCount(rs.getInt("collection_count"));
+        resource.setCommentCount(rs.getInt("comment_count"));
+        resource.setCreatedAt(rs.getTimestamp("created_at"));
+
+        User uploader = new User();
+        uploader.setId(rs.getInt("uploader_id"));
+        uploader.setUsername(rs.getString("username"));
+        uploader.setNickname(rs.getString("nickname"));
+        resource.setUploader(uploader);
+        return resource;
+    }
 }
@@ -0,0 +1,135 @@
+package com.edu.servlet;
+
+import com.edu.media.ThumbnailCache;
+import com.edu.storage.BlobImages;
+import com.edu.storage.Storage;
+import com.edu.storage.StorageService;
+import com.edu.util.AppConfig;
+import com.edu.util.FileServer;
+import com.edu.util.ImageProcessor;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Public images scaled to fit a whitelisted box, e.g. {@code /api/thumb/48x48/avatar/<name>} for
+ * {@code /api/resources/avatar/<name>} or {@code /api/thumb/200x200/comment/<name>} for
+ * {@code /api/comment/image/<name>}. Sizes come from {@code image.thumbSizes}; results are cached by
+ * {@link ThumbnailCache}.
+ */
+@WebServlet(urlPatterns = {"/api/thumb/*"})
+public class ThumbServlet extends HttpServlet {
+    private static final Pattern PATH = Pattern.compile("^/(\\d{1,4})x(\\d{1,4})/(avatar|comment)/([^/\\\\]+)$");
+    private static final String COMMENT_DIR = "comments";
+
+    private Set<String> sizes;
+
+    @Override
+    public void init() throws ServletException {
+        sizes = new HashSet<>();
+        for (String s : AppConfig.getString("image.thumbSizes", "48x48,96x96,200x200,360x360").split(",")) {
+            if (!s.isBlank()) sizes.add(s.trim());
+        }
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        String pathInfo = req.getPathInfo();
+        Matcher m = pathInfo == null ? null : PATH.matcher(pathInfo);
+        if (m == null || !m.matches() || m.group(4).contains("..")) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        int width = Integer.parseInt(m.group(1));
+        int height = Integer.parseInt(m.group(2));
+        if (!sizes.contains(width + "x" + height)) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        String kind = m.group(3);
+        String fileName = m.group(4);
+
+        StorageService storage = Storage.get();
+        StorageService.StoredObject object;
+        if ("avatar".equals(kind)) {
+            object = storage.stat(Storage.shardedKey(Storage.AVATARS, fileName));
+            if (object == null) {
+                object = storage.stat(fileName);
+            }
+        } else {
+            String key = BlobImages.resolve(fileName, false);
+            object = storage.stat(key != null ? key : COMMENT_DIR + "/" + fileName);
+        }
+        if (object == null) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        StorageService.StoredObject source = object;
+        String cacheKey = source.key() + "@" + source.lastModified() + "/" + width + "x" + height;
+        FileChannel channel = null;
+        // eviction can delete the file between get() and opening it; the next get() renders it again
+        for (int attempt = 0; attempt < 2 && channel == null; attempt++) {
+            File thumb;
+            try {
+                thumb = ThumbnailCache.get().get(cacheKey, out -> render(storage, source, width, height, out));
+            } catch (IOException e) {
+                // not a decodable image, or over image.maxPixels
+                resp.sendError(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE);
+                return;
+            }
+            try {
+                channel = FileChannel.open(thumb.toPath(), StandardOpenOption.READ);
+            } catch (NoSuchFileException e) {
+                // evicted since get(); retry
+            }
+        }
+
+        if (channel == null) {
+            // still evicted under heavy cache pressure: serve the original rather than fail
+            String mimeType = getServletContext().getMimeType(fileName);
+            resp.setHeader("Cache-Control", "no-cache");
+            FileServer.serve(req, resp, storage, source, mimeType != null ? mimeType : "image/jpeg");
+            return;
+        }
+
+        // source names are unique per upload (avatars) or content hashes (blobs); the thumbnail is
+        // versioned by its source, so re-rendered copies keep the same validators
+        resp.setHeader("Cache-Control", "public, max-age=31536000, immutable");
+        FileServer.serve(req, resp, channel, source.lastModified(), "image/jpeg");
+    }
+
+    private static void render(StorageService storage, StorageService.StoredObject source, int width, int height, File out) throws IOException {
+        File local = storage.localFile(source.key());
+        if (local != null && local.isFile()) {
+            ImageProcessor.process(local, List.of(new ImageProcessor.Variant(width, height, out)));
+            return;
+        }
+        // remote backend: fetch the original to a local file for ImageIO
+        File copy = File.createTempFile("source_", ".tmp", Storage.workDir());
+        try {
+            try (InputStream in = storage.open(source.key(), 0, -1)) {
+                Files.copy(in, copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            ImageProcessor.process(copy, List.of(new ImageProcessor.Variant(width, height, out)));
+        } finally {
+            copy.delete();
+        }
+    }
+}
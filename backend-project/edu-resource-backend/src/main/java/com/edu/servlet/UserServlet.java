@@ -6,6 +6,7 @@ import com.edu.dto.RegisterRequest;
 import com.edu.dto.UpdateProfileRequest;
 import com.edu.model.ApiResponse;
 import com.edu.model.User;
+import com.edu.storage.Storage;
 import com.edu.util.DBUtil;
 import com.edu.util.JsonUtil;
 import com.edu.util.JwtUtil;
@@ -35,7 +36,6 @@ import java.util.Map;
 )
 public class UserServlet extends HttpServlet {
 
-    private static final String UPLOAD_DIR = "C:/Users/macha/Desktop/Graduation-Design-EduResourcePlatform/storage/uploads";
 
     @Override
     protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
@@ -560,20 +560,20 @@ public class UserServlet extends HttpServlet {
                 String fileExtension = "";
                 if (submittedFileName != null && submittedFileName.contains(".")) {
                     fileExtension = submittedFileName.substring(submittedFileName.lastIndexOf(".") + 1).toLowerCase();
-                } else {
+                }
+                if (!fileExtension.matches("[a-z0-9]{1,10}")) {
                     fileExtension = "jpg"; // Default
                 }
                 
                 String newFileName = userId + "_" + System.currentTimeMillis() + "." + fileExtension;
 
-                String uploadDir = UPLOAD_DIR;
-                File dir = new File(uploadDir);
-                if (!dir.exists()) {
-                    dir.mkdirs();
+                File tmp = File.createTempFile("avatar_", "." + fileExtension, Storage.workDir());
+                try {
+                    filePart.write(tmp.getAbsolutePath());
+                    Storage.get().put(Storage.shardedKey(Storage.AVATARS, newFileName), tmp);
+                } finally {
+                    tmp.delete();
                 }
-
-                String filePath = uploadDir + File.separator + newFileName;
-                filePart.write(filePath);
                 
                 // Use a special API endpoint for avatar retrieval instead of direct static file access
                 avatarUrl = "/api/resources/avatar/" + newFileName;
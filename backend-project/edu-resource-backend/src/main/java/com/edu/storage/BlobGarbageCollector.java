@@ -0,0 +1,208 @@
+package com.edu.storage;
+
+import com.edu.util.AppConfig;
+import com.edu.util.DBUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background job that deletes blobs nobody references any more.
+ * <p>
+ * A blob is collected once its {@code ref_count} has been zero for the grace period. The row is
+ * locked while the file is removed, so an upload of the same content either waits and re-creates the
+ * blob or bumps the count first and keeps it. Before deleting, the referencing tables are checked
+ * directly; a blob that is still in use gets its count repaired instead.
+ * <p>
+ * The orphan sweep removes files that never got a row, e.g. when the transaction that referenced a
+ * freshly committed blob rolled back, and temp files left by interrupted uploads.
+ */
+public class BlobGarbageCollector {
+    private static final String[][] REFERENCES = {
+            {"resource", "file_path"},
+            {"comment_image", "file_path"},
+            {"chat_message", "media_file_path"}
+    };
+
+    private static ScheduledExecutorService scheduler;
+
+    public static synchronized void start() {
+        if (scheduler != null) return;
+        long interval = Math.max(1, AppConfig.getLong("blob.gcIntervalMinutes", 60));
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "blob-gc");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                int collected = collect(BlobStore.get());
+                int swept = AppConfig.getBoolean("blob.orphanSweep", true) ? sweepOrphans(BlobStore.get()) : 0;
+                if (collected > 0 || swept > 0) {
+                    System.out.println("BlobGarbageCollector: collected " + collected + " blobs, swept " + swept + " orphan files");
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }, interval, interval, TimeUnit.MINUTES);
+    }
+
+    public static synchronized void stop() {
+        if (scheduler == null) return;
+        scheduler.shutdownNow();
+        scheduler = null;
+    }
+
+    /**
+     * Deletes blobs whose reference count has been zero for longer than the grace period.
+     * Returns the number of blobs removed.
+     */
+    public static int collect(BlobStore store) throws SQLException {
+        long graceMinutes = Math.max(1, AppConfig.getLong("blob.gcGraceMinutes", 60));
+        int batch = Math.max(10, AppConfig.getInt("blob.gcBatchSize", 500));
+        int collected = 0;
+        try (Connection conn = DBUtil.getConnection()) {
+            List<String> candidates = new ArrayList<>();
+            String sql = "SELECT hash FROM file_blob WHERE ref_count = 0 AND released_at < NOW() - INTERVAL ? MINUTE LIMIT ?";
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setLong(1, graceMinutes);
+                ps.setInt(2, batch);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        candidates.add(rs.getString(1));
+                    }
+                }
+            }
+
+            conn.setAutoCommit(false);
+            try {
+                for (String hash : candidates) {
+                    if (collectOne(conn, store, hash)) collected++;
+                    conn.commit();
+                }
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        return collected;
+    }
+
+    private static boolean collectOne(Connection conn, BlobStore store, String hash) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT ref_count FROM file_blob WHERE hash = ? FOR UPDATE")) {
+            ps.setString(1, hash);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next() || rs.getInt(1) != 0) return false;
+            }
+        }
+
+        int actual = countReferences(conn, hash);
+        if (actual > 0) {
+            try (PreparedStatement ps = conn.prepareStatement("UPDATE file_blob SET ref_count = ?, released_at = NULL WHERE hash = ?")) {
+                ps.setInt(1, actual);
+                ps.setString(2, hash);
+                ps.executeUpdate();
+            }
+            return false;
+        }
+
+        try {
+            store.delete(hash);
+        } catch (IOException e) {
+            // keep the row so the next run retries
+            e.printStackTrace();
+            return false;
+        }
+        try (PreparedStatement ps = conn.prepareStatement("DELETE FROM file_blob WHERE hash = ?")) {
+            ps.setString(1, hash);
+            ps.executeUpdate();
+        }
+        return true;
+    }
+
+    private static int countReferences(Connection conn, String hash) throws SQLException {
+        int total = 0;
+        for (String[] ref : REFERENCES) {
+            try (PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) FROM " + ref[0] + " WHERE " + ref[1] + " = ?")) {
+                ps.setString(1, BlobStore.ref(hash));
+                try (ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                    total += rs.getInt(1);
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Deletes blob files older than the grace period that have no {@code file_blob} row, and stale
+     * temp files. Returns the number of files removed.
+     */
+    public static int sweepOrphans(BlobStore store) throws SQLException, IOException {
+        long cutoff = System.currentTimeMillis() - Math.max(1, AppConfig.getLong("blob.gcGraceMinutes", 60)) * 60_000L;
+        int batch = Math.max(10, AppConfig.getInt("blob.gcBatchSize", 500));
+        int swept = 0;
+
+        File[] temps = store.getTmpDir().listFiles();
+        if (temps != null) {
+            for (File f : temps) {
+                if (f.lastModified() < cutoff && f.delete()) swept++;
+            }
+        }
+
+        // derived files ("<hash>.<variant>") go together with their blob
+        List<String> candidates = new ArrayList<>();
+        store.getStorage().list(BlobStore.KEY_PREFIX, o -> {
+            String name = o.key().substring(o.key().lastIndexOf('/') + 1);
+            if (name.length() == 64 && BlobStore.hashOfName(name) != null && o.lastModified() < cutoff) {
+                candidates.add(name);
+            }
+        });
+        try (Connection conn = DBUtil.getConnection()) {
+            for (int from = 0; from < candidates.size(); from += batch) {
+                swept += sweepBatch(conn, store, candidates.subList(from, Math.min(candidates.size(), from + batch)));
+            }
+        }
+        return swept;
+    }
+
+    private static int sweepBatch(Connection conn, BlobStore store, List<String> hashes) throws SQLException, IOException {
+        Set<String> known = new HashSet<>();
+        StringBuilder in = new StringBuilder();
+        for (int i = 0; i < hashes.size(); i++) {
+            in.append(i == 0 ? "?" : ",?");
+        }
+        try (PreparedStatement ps = conn.prepareStatement("SELECT hash FROM file_blob WHERE hash IN (" + in + ")")) {
+            for (int i = 0; i < hashes.size(); i++) {
+                ps.setString(i + 1, hashes.get(i));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    known.add(rs.getString(1));
+                }
+            }
+        }
+
+        int swept = 0;
+        for (String hash : hashes) {
+            if (!known.contains(hash)) {
+                store.delete(hash);
+                swept++;
+            }
+        }
+        return swept;
+    }
+}
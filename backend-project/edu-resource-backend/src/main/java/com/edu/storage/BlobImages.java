@@ -0,0 +1,88 @@
+package com.edu.storage;
+
+import com.edu.util.ImageProcessor;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Stores an uploaded image (comment images, chat images) as a blob: the re-encoded image is the blob
+ * and its thumbnail is a derived file next to it. Re-encoding is deterministic, so the same picture
+ * posted twice ends up as one blob.
+ */
+public class BlobImages {
+    public static final int MAX_SIZE = 1080;
+    public static final int THUMB_SIZE = 360;
+    public static final String THUMB_VARIANT = "t" + THUMB_SIZE + ".jpg";
+
+    public record StoredImage(String hash, ImageProcessor.ProcessedImage image) {
+        // name used in URLs and in the file_name columns
+        public String fileName() {
+            return hash + ".jpg";
+        }
+    }
+
+    /**
+     * An image that has been re-encoded and staged, with its thumbnail, but not yet referenced.
+     * Producing it touches no database, so it can run before (or instead of inside) a transaction.
+     */
+    public record Prepared(BlobStore.Staged staged, ImageProcessor.ProcessedImage image, File thumb) {
+        public String fileName() {
+            return staged.hash() + ".jpg";
+        }
+    }
+
+    /**
+     * Decodes {@code raw} once into the full-size image (staged as a blob) and its thumbnail. The
+     * caller passes the result to {@link #attach} or {@link #discard}.
+     */
+    public static Prepared prepare(File raw, String mimeType) throws IOException {
+        BlobStore blobs = BlobStore.get();
+        File out = blobs.newTempFile(".jpg");
+        File thumb = blobs.newTempFile("." + THUMB_VARIANT);
+        try {
+            List<ImageProcessor.ProcessedImage> processed = ImageProcessor.process(raw, List.of(
+                    new ImageProcessor.Variant(MAX_SIZE, MAX_SIZE, out),
+                    new ImageProcessor.Variant(THUMB_SIZE, THUMB_SIZE, thumb)));
+            return new Prepared(blobs.stage(out), processed.get(0), thumb);
+        } catch (IOException | RuntimeException e) {
+            out.delete();
+            thumb.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * Takes a reference on a prepared image in {@code conn}'s transaction and stores it and its
+     * thumbnail.
+     */
+    public static StoredImage attach(Connection conn, Prepared prepared) throws IOException, SQLException {
+        BlobStore blobs = BlobStore.get();
+        BlobStore.Staged staged = prepared.staged();
+        BlobRefs.acquire(conn, staged.hash(), staged.size());
+        blobs.commit(staged);
+        blobs.putDerived(staged.hash(), THUMB_VARIANT, prepared.thumb());
+        return new StoredImage(staged.hash(), prepared.image());
+    }
+
+    public static void discard(Prepared prepared) {
+        if (prepared != null) {
+            BlobStore.get().discard(prepared.staged());
+            prepared.thumb().delete();
+        }
+    }
+
+    /**
+     * Resolves a public image name ({@code <hash>.jpg}) to the storage key of the image or its
+     * thumbnail, or {@code null} if the name is not a blob name.
+     */
+    public static String resolve(String fileName, boolean thumb) {
+        String hash = BlobStore.hashOfName(fileName);
+        if (hash == null) return null;
+        BlobStore blobs = BlobStore.get();
+        return thumb ? blobs.derivedKey(hash, THUMB_VARIANT) : blobs.key(hash);
+    }
+}
@@ -0,0 +1,47 @@
+package com.edu.storage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Reference counts for {@link BlobStore} blobs, kept in {@code file_blob}.
+ * <p>
+ * Writers call these inside the transaction that inserts or deletes the referencing row
+ * ({@code resource.file_path}, {@code comment_image.file_path}, {@code chat_message.media_file_path}),
+ * so the count commits or rolls back together with it. A blob whose count drops to zero is not
+ * deleted here; {@link BlobGarbageCollector} removes it after a grace period.
+ */
+public class BlobRefs {
+
+    public static void acquire(Connection conn, String hash, long size) throws SQLException {
+        String sql = "INSERT INTO file_blob (hash, size, ref_count, created_at) VALUES (?, ?, 1, NOW()) " +
+                "ON DUPLICATE KEY UPDATE ref_count = ref_count + 1, released_at = NULL";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, hash);
+            ps.setLong(2, size);
+            ps.executeUpdate();
+        }
+    }
+
+    public static void release(Connection conn, String hash) throws SQLException {
+        // MySQL applies SET assignments left to right, so released_at must see the old ref_count
+        String sql = "UPDATE file_blob SET released_at = CASE WHEN ref_count <= 1 THEN NOW() ELSE released_at END, " +
+                "ref_count = GREATEST(ref_count - 1, 0) WHERE hash = ?";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, hash);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Releases the blob behind a stored {@code sha256:<hash>} path; legacy paths are ignored.
+     * Returns {@code true} if the path referred to a blob.
+     */
+    public static boolean releasePath(Connection conn, String storedPath) throws SQLException {
+        String hash = BlobStore.hashOf(storedPath);
+        if (hash == null) return false;
+        release(conn, hash);
+        return true;
+    }
+}
@@ -0,0 +1,247 @@
+package com.edu.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Content-addressed file store. Each distinct file is kept once under {@code blobs/ab/cd/<sha256>} in
+ * the configured {@link StorageService}, so the same lecture PDF uploaded by many teachers takes the
+ * space of one copy.
+ * <p>
+ * Writing is split in two so the database reference and the file appear together: {@link #stage}
+ * streams the upload into a local temp file while hashing it, the caller records the reference with
+ * {@link BlobRefs#acquire} inside its transaction, then {@link #commit} puts the file into storage
+ * (or drops it when the blob already exists). Rows refer to a blob as {@code sha256:<hash>}.
+ * <p>
+ * Derived files (thumbnails) are stored next to their blob as {@code <hash>.<variant>} and are
+ * removed with it by {@link BlobGarbageCollector}.
+ */
+public class BlobStore {
+    public static final String REF_PREFIX = "sha256:";
+    public static final String KEY_PREFIX = "blobs/";
+    private static final Pattern HASH = Pattern.compile("[0-9a-f]{64}");
+    // public file names for blobs are "<hash>.<ext>"
+    private static final Pattern BLOB_NAME = Pattern.compile("([0-9a-f]{64})(\\.[A-Za-z0-9]{1,10})?");
+
+    private static volatile BlobStore instance;
+
+    private final StorageService storage;
+    private final File tmpDir;
+
+    public record Staged(File file, String hash, long size) {}
+
+    public interface DerivedWriter {
+        void write(File source, File out) throws IOException;
+    }
+
+    public BlobStore(StorageService storage, File tmpDir) {
+        this.storage = storage;
+        this.tmpDir = tmpDir;
+    }
+
+    public static BlobStore get() {
+        BlobStore s = instance;
+        if (s == null) {
+            synchronized (BlobStore.class) {
+                s = instance;
+                if (s == null) {
+                    s = new BlobStore(Storage.get(), new File(Storage.workDir(), "blobs"));
+                    instance = s;
+                }
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Copies {@code in} to a temp file, computing its SHA-256 on the way.
+     */
+    public Staged stage(InputStream in) throws IOException {
+        tmpDir.mkdirs();
+        File tmp = File.createTempFile("blob_", ".tmp", tmpDir);
+        MessageDigest digest = sha256();
+        long size = 0;
+        try (OutputStream out = Files.newOutputStream(tmp.toPath())) {
+            byte[] buf = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                digest.update(buf, 0, n);
+                out.write(buf, 0, n);
+                size += n;
+            }
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+        return new Staged(tmp, HexFormat.of().formatHex(digest.digest()), size);
+    }
+
+    /**
+     * A local temp file for output that will be passed to {@link #stage(File)}.
+     */
+    public File newTempFile(String suffix) throws IOException {
+        tmpDir.mkdirs();
+        return File.createTempFile("blob_", suffix, tmpDir);
+    }
+
+    /**
+     * Stages a file that was produced locally (e.g. a re-encoded image). The file is moved, not copied.
+     */
+    public Staged stage(File file) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            byte[] buf = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                digest.update(buf, 0, n);
+            }
+        }
+        return new Staged(file, HexFormat.of().formatHex(digest.digest()), file.length());
+    }
+
+    /**
+     * Stages a file whose hash is already known, such as a completed chunked upload.
+     */
+    public Staged adopt(File file, String hash) {
+        return new Staged(file, hash.toLowerCase(), file.length());
+    }
+
+    /**
+     * Puts a staged file into storage, or discards it when an identical blob is already stored.
+     * Call after {@link BlobRefs#acquire} so a concurrent garbage collection can't remove the blob
+     * between the two. Returns the blob's key.
+     */
+    public String commit(Staged staged) throws IOException {
+        String key = key(staged.hash());
+        if (storage.stat(key) != null) {
+            staged.file().delete();
+            return key;
+        }
+        // an identical blob committed concurrently may be replaced; the content is the same
+        storage.put(key, staged.file());
+        return key;
+    }
+
+    public void discard(Staged staged) {
+        if (staged != null) {
+            staged.file().delete();
+        }
+    }
+
+    public StorageService getStorage() {
+        return storage;
+    }
+
+    public String key(String hash) {
+        return dir(hash) + hash;
+    }
+
+    /**
+     * Key of a file derived from the blob, e.g. {@code derivedKey(hash, "t360.jpg")} for a thumbnail.
+     */
+    public String derivedKey(String hash, String variant) {
+        return dir(hash) + hash + "." + variant;
+    }
+
+    /**
+     * Returns the derived file's key, generating it from the blob first if it doesn't exist yet.
+     */
+    public String derive(String hash, String variant, DerivedWriter writer) throws IOException {
+        String target = derivedKey(hash, variant);
+        if (storage.stat(target) != null) return target;
+        File source = storage.localFile(key(hash));
+        File download = null;
+        if (source == null) {
+            download = newTempFile(".src");
+            try (InputStream in = storage.open(key(hash), 0, -1)) {
+                Files.copy(in, download.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            source = download;
+        }
+        File tmp = newTempFile("." + variant);
+        try {
+            writer.write(source, tmp);
+            storage.put(target, tmp);
+        } finally {
+            tmp.delete();
+            if (download != null) download.delete();
+        }
+        return target;
+    }
+
+    /**
+     * Stores a derived file that was produced alongside the blob. {@code file} is consumed; an
+     * existing derived file is kept.
+     */
+    public String putDerived(String hash, String variant, File file) throws IOException {
+        String target = derivedKey(hash, variant);
+        if (storage.stat(target) != null) {
+            file.delete();
+            return target;
+        }
+        storage.put(target, file);
+        return target;
+    }
+
+    /**
+     * Deletes the blob and everything derived from it.
+     */
+    public void delete(String hash) throws IOException {
+        List<String> keys = new ArrayList<>();
+        storage.list(key(hash), o -> keys.add(o.key()));
+        for (String k : keys) {
+            storage.delete(k);
+        }
+    }
+
+    File getTmpDir() {
+        return tmpDir;
+    }
+
+    private static String dir(String hash) {
+        if (!HASH.matcher(hash).matches()) {
+            throw new IllegalArgumentException("Invalid blob hash");
+        }
+        return KEY_PREFIX + hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/";
+    }
+
+    public static String ref(String hash) {
+        return REF_PREFIX + hash;
+    }
+
+    /**
+     * Returns the hash in a {@code sha256:<hash>} reference, or {@code null} for legacy paths.
+     */
+    public static String hashOf(String storedPath) {
+        if (storedPath == null || !storedPath.startsWith(REF_PREFIX)) return null;
+        String hash = storedPath.substring(REF_PREFIX.length()).trim();
+        return HASH.matcher(hash).matches() ? hash : null;
+    }
+
+    /**
+     * Returns the hash in a public blob file name ({@code <hash>.<ext>}), or {@code null}.
+     */
+    public static String hashOfName(String fileName) {
+        if (fileName == null) return null;
+        var m = BLOB_NAME.matcher(fileName);
+        return m.matches() ? m.group(1) : null;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
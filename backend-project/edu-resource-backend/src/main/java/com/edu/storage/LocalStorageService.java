@@ -0,0 +1,114 @@
+package com.edu.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Stores objects as files under a root directory; the key is the relative path.
+ */
+public class LocalStorageService implements StorageService {
+    private final File root;
+
+    public LocalStorageService(File root) {
+        this.root = root;
+    }
+
+    public File getRoot() {
+        return root;
+    }
+
+    @Override
+    public void put(String key, File source) throws IOException {
+        File target = resolve(key);
+        target.getParentFile().mkdirs();
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @Override
+    public StoredObject stat(String key) {
+        File f = resolve(key);
+        if (!f.isFile()) return null;
+        return new StoredObject(key, f.length(), f.lastModified());
+    }
+
+    @Override
+    public InputStream open(String key, long offset, long length) throws IOException {
+        FileChannel ch = FileChannel.open(resolve(key).toPath(), StandardOpenOption.READ);
+        ch.position(offset);
+        InputStream in = Channels.newInputStream(ch);
+        if (length < 0) return in;
+        return new InputStream() {
+            private long remaining = length;
+
+            @Override
+            public int read() throws IOException {
+                if (remaining <= 0) return -1;
+                int b = in.read();
+                if (b >= 0) remaining--;
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buf, int off, int len) throws IOException {
+                if (remaining <= 0) return -1;
+                int n = in.read(buf, off, (int) Math.min(len, remaining));
+                if (n > 0) remaining -= n;
+                return n;
+            }
+
+            @Override
+            public void close() throws IOException {
+                in.close();
+            }
+        };
+    }
+
+    @Override
+    public File localFile(String key) {
+        return resolve(key);
+    }
+
+    @Override
+    public boolean delete(String key) {
+        return resolve(key).delete();
+    }
+
+    @Override
+    public void list(String prefix, Consumer<StoredObject> consumer) throws IOException {
+        // walk from the deepest directory the prefix names, then filter on the full prefix
+        int slash = prefix.lastIndexOf('/');
+        File start = slash < 0 ? root : resolve(prefix.substring(0, slash));
+        if (!start.isDirectory()) return;
+        Path rootPath = root.toPath();
+        try (Stream<Path> paths = Files.walk(start.toPath())) {
+            paths.filter(Files::isRegularFile).forEach(p -> {
+                String key = rootPath.relativize(p).toString().replace(File.separatorChar, '/');
+                if (key.startsWith(prefix)) {
+                    File f = p.toFile();
+                    consumer.accept(new StoredObject(key, f.length(), f.lastModified()));
+                }
+            });
+        }
+    }
+
+    private File resolve(String key) {
+        if (key.contains("..") || key.startsWith("/") || key.contains("\\")) {
+            throw new IllegalArgumentException("Invalid storage key: " + key);
+        }
+        return new File(root, key.replace('/', File.separatorChar));
+    }
+}
@@ -0,0 +1,260 @@
+package com.edu.storage;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Stores objects in an S3-compatible bucket (AWS S3, MinIO, Ceph RGW, ...) through the REST API,
+ * signing every request with AWS Signature Version 4. Uses path-style URLs
+ * ({@code endpoint/bucket/key}) unless {@code storage.s3.pathStyle=false}.
+ * <p>
+ * Payloads are sent as {@code UNSIGNED-PAYLOAD}; use an https endpoint outside a trusted network.
+ */
+public class S3StorageService implements StorageService {
+    private static final String EMPTY_SHA256 = "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
+    private static final String UNSIGNED_PAYLOAD = "UNSIGNED-PAYLOAD";
+    private static final DateTimeFormatter AMZ_DATE = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'").withZone(ZoneOffset.UTC);
+
+    private final URI endpoint;
+    private final String bucket;
+    private final String region;
+    private final String accessKey;
+    private final String secretKey;
+    private final boolean pathStyle;
+    private final HttpClient http;
+
+    public S3StorageService(String endpoint, String bucket, String region, String accessKey, String secretKey, boolean pathStyle) {
+        this.endpoint = URI.create(endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1) : endpoint);
+        this.bucket = bucket;
+        this.region = region;
+        this.accessKey = accessKey;
+        this.secretKey = secretKey;
+        this.pathStyle = pathStyle;
+        this.http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+    }
+
+    @Override
+    public void put(String key, File source) throws IOException {
+        HttpRequest.Builder b = request("PUT", key, Map.of(), UNSIGNED_PAYLOAD)
+                .PUT(HttpRequest.BodyPublishers.ofFile(source.toPath()));
+        HttpResponse<String> resp = send(b.build(), HttpResponse.BodyHandlers.ofString());
+        if (resp.statusCode() / 100 != 2) {
+            throw new IOException("S3 PUT " + key + " failed: " + resp.statusCode() + " " + resp.body());
+        }
+        source.delete();
+    }
+
+    @Override
+    public StoredObject stat(String key) throws IOException {
+        HttpRequest.Builder b = request("HEAD", key, Map.of(), EMPTY_SHA256)
+                .method("HEAD", HttpRequest.BodyPublishers.noBody());
+        HttpResponse<Void> resp = send(b.build(), HttpResponse.BodyHandlers.discarding());
+        if (resp.statusCode() == 404) return null;
+        if (resp.statusCode() / 100 != 2) {
+            throw new IOException("S3 HEAD " + key + " failed: " + resp.statusCode());
+        }
+        long size = resp.headers().firstValueAsLong("Content-Length").orElse(0);
+        long lastModified = resp.headers().firstValue("Last-Modified")
+                .map(v -> ZonedDateTime.parse(v, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli())
+                .orElse(0L);
+        return new StoredObject(key, size, lastModified);
+    }
+
+    @Override
+    public InputStream open(String key, long offset, long length) throws IOException {
+        HttpRequest.Builder b = request("GET", key, Map.of(), EMPTY_SHA256).GET();
+        if (offset > 0 || length >= 0) {
+            b.header("Range", "bytes=" + offset + "-" + (length >= 0 ? String.valueOf(offset + length - 1) : ""));
+        }
+        HttpResponse<InputStream> resp = send(b.build(), HttpResponse.BodyHandlers.ofInputStream());
+        if (resp.statusCode() / 100 != 2) {
+            resp.body().close();
+            if (resp.statusCode() == 404) throw new FileNotFoundException(key);
+            throw new IOException("S3 GET " + key + " failed: " + resp.statusCode());
+        }
+        return resp.body();
+    }
+
+    @Override
+    public File localFile(String key) {
+        return null;
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        HttpRequest.Builder b = request("DELETE", key, Map.of(), EMPTY_SHA256).DELETE();
+        HttpResponse<Void> resp = send(b.build(), HttpResponse.BodyHandlers.discarding());
+        if (resp.statusCode() == 404) return false;
+        if (resp.statusCode() / 100 != 2) {
+            throw new IOException("S3 DELETE " + key + " failed: " + resp.statusCode());
+        }
+        return true;
+    }
+
+    @Override
+    public void list(String prefix, Consumer<StoredObject> consumer) throws IOException {
+        String token = null;
+        do {
+            Map<String, String> query = new TreeMap<>();
+            query.put("list-type", "2");
+            query.put("prefix", prefix);
+            if (token != null) query.put("continuation-token", token);
+            HttpResponse<InputStream> resp = send(request("GET", "", query, EMPTY_SHA256).GET().build(),
+                    HttpResponse.BodyHandlers.ofInputStream());
+            try (InputStream in = resp.body()) {
+                if (resp.statusCode() / 100 != 2) {
+                    throw new IOException("S3 list " + prefix + " failed: " + resp.statusCode());
+                }
+                Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(in);
+                NodeList contents = doc.getElementsByTagName("Contents");
+                for (int i = 0; i < contents.getLength(); i++) {
+                    Element c = (Element) contents.item(i);
+                    consumer.accept(new StoredObject(text(c, "Key"), Long.parseLong(text(c, "Size")),
+                            Instant.parse(text(c, "LastModified")).toEpochMilli()));
+                }
+                token = "true".equals(text(doc.getDocumentElement(), "IsTruncated"))
+                        ? text(doc.getDocumentElement(), "NextContinuationToken") : null;
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException("Invalid S3 list response", e);
+            }
+        } while (token != null);
+    }
+
+    private HttpRequest.Builder request(String method, String key, Map<String, String> query, String payloadHash) {
+        String path = (pathStyle ? "/" + bucket : "") + "/" + key;
+        String host = pathStyle ? endpoint.getHost() : bucket + "." + endpoint.getHost();
+        if (endpoint.getPort() != -1) host += ":" + endpoint.getPort();
+
+        String canonicalUri = encodePath(endpoint.getRawPath() + path);
+        String canonicalQuery = canonicalQuery(query);
+        String amzDate = AMZ_DATE.format(Instant.now());
+
+        SortedMap<String, String> headers = new TreeMap<>();
+        headers.put("host", host);
+        headers.put("x-amz-content-sha256", payloadHash);
+        headers.put("x-amz-date", amzDate);
+
+        URI uri = URI.create(endpoint.getScheme() + "://" + host + canonicalUri
+                + (canonicalQuery.isEmpty() ? "" : "?" + canonicalQuery));
+        return HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofMinutes(10))
+                .header("x-amz-content-sha256", payloadHash)
+                .header("x-amz-date", amzDate)
+                .header("Authorization", authorization(method, canonicalUri, canonicalQuery, headers, payloadHash, amzDate));
+    }
+
+    /**
+     * Builds the SigV4 {@code Authorization} header. {@code headers} are the signed headers with
+     * lower-case names; {@code host} must be among them.
+     */
+    String authorization(String method, String canonicalUri, String canonicalQuery,
+                         SortedMap<String, String> headers, String payloadHash, String amzDate) {
+        StringBuilder canonicalHeaders = new StringBuilder();
+        for (Map.Entry<String, String> h : headers.entrySet()) {
+            canonicalHeaders.append(h.getKey()).append(':').append(h.getValue().trim()).append('\n');
+        }
+        String signedHeaders = String.join(";", headers.keySet());
+        String canonicalRequest = method + "\n" + canonicalUri + "\n" + canonicalQuery + "\n"
+                + canonicalHeaders + "\n" + signedHeaders + "\n" + payloadHash;
+
+        String date = amzDate.substring(0, 8);
+        String scope = date + "/" + region + "/s3/aws4_request";
+        String stringToSign = "AWS4-HMAC-SHA256\n" + amzDate + "\n" + scope + "\n" + sha256Hex(canonicalRequest);
+
+        byte[] key = hmac(("AWS4" + secretKey).getBytes(StandardCharsets.UTF_8), date);
+        key = hmac(key, region);
+        key = hmac(key, "s3");
+        key = hmac(key, "aws4_request");
+        String signature = HexFormat.of().formatHex(hmac(key, stringToSign));
+        return "AWS4-HMAC-SHA256 Credential=" + accessKey + "/" + scope
+                + ", SignedHeaders=" + signedHeaders + ", Signature=" + signature;
+    }
+
+    private <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) throws IOException {
+        try {
+            return http.send(request, handler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+    }
+
+    private static String canonicalQuery(Map<String, String> query) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> e : new TreeMap<>(query).entrySet()) {
+            if (sb.length() > 0) sb.append('&');
+            sb.append(encode(e.getKey(), true)).append('=').append(encode(e.getValue(), true));
+        }
+        return sb.toString();
+    }
+
+    private static String encodePath(String path) {
+        return encode(path, false);
+    }
+
+    // RFC 3986 encoding as SigV4 expects: everything but unreserved characters (and '/' in paths)
+    static String encode(String s, boolean encodeSlash) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xFF);
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '_' || c == '.' || c == '~' || (c == '/' && !encodeSlash)) {
+                sb.append(c);
+            } else {
+                sb.append('%').append(String.format("%02X", b & 0xFF));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String text(Element parent, String tag) {
+        NodeList nodes = parent.getElementsByTagName(tag);
+        return nodes.getLength() == 0 ? null : nodes.item(0).getTextContent();
+    }
+
+    private static String sha256Hex(String s) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(s.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] hmac(byte[] key, String data) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
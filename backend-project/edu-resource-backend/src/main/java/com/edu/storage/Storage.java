@@ -0,0 +1,98 @@
+package com.edu.storage;
+
+import com.edu.util.AppConfig;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * The configured {@link StorageService} and the key layout shared by the servlets.
+ * <p>
+ * {@code storage.backend=local} (default) keeps files under {@code storage.local.root};
+ * {@code storage.backend=s3} uses the bucket given by the {@code storage.s3.*} settings. Uploads are
+ * staged in {@link #workDir()} before being handed to the backend.
+ */
+public class Storage {
+    public static final String AVATARS = "avatars";
+    private static final String LEGACY_ROOT = "C:/Users/macha/Desktop/Graduation-Design-EduResourcePlatform/storage/uploads";
+
+    private static volatile StorageService instance;
+    private static volatile File workDir;
+
+    public static StorageService get() {
+        StorageService s = instance;
+        if (s == null) {
+            synchronized (Storage.class) {
+                s = instance;
+                if (s == null) {
+                    s = create();
+                    instance = s;
+                }
+            }
+        }
+        return s;
+    }
+
+    private static StorageService create() {
+        String backend = AppConfig.getString("storage.backend", "local");
+        if ("s3".equalsIgnoreCase(backend)) {
+            return new S3StorageService(
+                    AppConfig.getString("storage.s3.endpoint", "https://s3.amazonaws.com"),
+                    AppConfig.getString("storage.s3.bucket", "edu-resources"),
+                    AppConfig.getString("storage.s3.region", "us-east-1"),
+                    AppConfig.getString("storage.s3.accessKey", ""),
+                    AppConfig.getString("storage.s3.secretKey", ""),
+                    AppConfig.getBoolean("storage.s3.pathStyle", true));
+        }
+        return new LocalStorageService(new File(AppConfig.getString("storage.local.root", LEGACY_ROOT)));
+    }
+
+    /**
+     * Local scratch directory for staging uploads and generating thumbnails. With the local backend
+     * it defaults to a directory under the storage root so staged files can be moved into place.
+     */
+    public static File workDir() {
+        File w = workDir;
+        if (w == null) {
+            synchronized (Storage.class) {
+                w = workDir;
+                if (w == null) {
+                    String configured = AppConfig.getString("storage.workDir", "");
+                    if (!configured.isBlank()) {
+                        w = new File(configured);
+                    } else if (get() instanceof LocalStorageService local) {
+                        w = new File(local.getRoot(), ".work");
+                    } else {
+                        w = new File(System.getProperty("java.io.tmpdir"), "edu-storage");
+                    }
+                    w.mkdirs();
+                    workDir = w;
+                }
+            }
+        }
+        return w;
+    }
+
+    /**
+     * Key for a file in {@code namespace}, spread over two levels of subdirectories derived from the
+     * name ({@code avatars/3f/a0/12_1700000000000.png}) so no directory grows unbounded.
+     */
+    public static String shardedKey(String namespace, String name) {
+        if (name.isEmpty() || name.contains("/") || name.contains("\\") || name.contains("..")) {
+            throw new IllegalArgumentException("Invalid file name: " + name);
+        }
+        String h = md5Hex(name);
+        return namespace + "/" + h.substring(0, 2) + "/" + h.substring(2, 4) + "/" + name;
+    }
+
+    private static String md5Hex(String s) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(s.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
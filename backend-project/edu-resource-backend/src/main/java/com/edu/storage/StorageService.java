@@ -0,0 +1,48 @@
+package com.edu.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
+
+/**
+ * Where uploaded files live. Keys are relative paths separated by {@code /}, e.g.
+ * {@code blobs/ab/cd/<hash>} or {@code avatars/3f/a0/12_1700000000000.png}; see {@link Storage} for
+ * how keys are built.
+ * <p>
+ * Implementations: {@link LocalStorageService} (a directory tree) and {@link S3StorageService}
+ * (any S3-compatible object store), selected with {@code storage.backend}.
+ */
+public interface StorageService {
+
+    record StoredObject(String key, long size, long lastModified) {}
+
+    /**
+     * Stores {@code source} under {@code key}, replacing any existing object. The source file is
+     * consumed: moved into place when possible, otherwise deleted after the upload.
+     */
+    void put(String key, File source) throws IOException;
+
+    /**
+     * Returns the object's size and modification time, or {@code null} if it does not exist.
+     */
+    StoredObject stat(String key) throws IOException;
+
+    /**
+     * Opens {@code length} bytes starting at {@code offset}; {@code length < 0} reads to the end.
+     */
+    InputStream open(String key, long offset, long length) throws IOException;
+
+    /**
+     * The object as a local file, for backends that have one (enables sendfile and in-place image
+     * processing), otherwise {@code null}. The file may not exist.
+     */
+    File localFile(String key);
+
+    boolean delete(String key) throws IOException;
+
+    /**
+     * Calls {@code consumer} for every object whose key starts with {@code prefix}.
+     */
+    void list(String prefix, Consumer<StoredObject> consumer) throws IOException;
+}
@@ -0,0 +1,17 @@
+package com.edu.upload;
+
+/**
+ * A chunked upload request that cannot be applied. {@code code} is the API error code sent back.
+ */
+public class ChunkedUploadException extends Exception {
+    private final int code;
+
+    public ChunkedUploadException(int code, String message) {
+        super(message);
+        this.code = code;
+    }
+
+    public int getCode() {
+        return code;
+    }
+}
@@ -0,0 +1,256 @@
+package com.edu.upload;
+
+import com.edu.util.JsonUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Disk side of the chunked upload protocol.
+ * <p>
+ * Chunks are written straight into {@code .chunked/<id>.part} in the storage directory at the offset
+ * the session has reached, so nothing is spooled to a temp dir and copied again. Each chunk is hashed
+ * while it streams in; a short or corrupt chunk is truncated away and the session stays at its
+ * previous offset. Session state lives in {@code .chunked/<id>.json} and is only advanced after the
+ * chunk is forced to disk, so a resumed upload never skips bytes that were not persisted.
+ * <p>
+ * A running SHA-256 of the whole file is kept alongside, so completing an upload doesn't re-read it.
+ * After a restart the running hash is gone and {@link #complete} falls back to hashing the file.
+ */
+public class ChunkedUploadStore {
+    private static final String SESSION_DIR = ".chunked";
+    private static final String PART_SUFFIX = ".part";
+
+    private final File sessionDir;
+    private final int maxChunkSize;
+    private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+
+    public ChunkedUploadStore(File storageDir, int maxChunkSize) {
+        this.sessionDir = new File(storageDir, SESSION_DIR);
+        this.maxChunkSize = maxChunkSize;
+    }
+
+    public UploadSession create(UploadSession session) throws IOException {
+        sessionDir.mkdirs();
+        String id = UUID.randomUUID().toString().replace("-", "");
+        long now = System.currentTimeMillis();
+        session.setId(id);
+        session.setReceived(0);
+        session.setCreatedAt(now);
+        session.setUpdatedAt(now);
+        session.setDigest(sha256());
+        Files.newOutputStream(partFile(session).toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING).close();
+        save(session);
+        sessions.put(id, session);
+        return session;
+    }
+
+    /**
+     * Returns the session, reading it back from disk after a restart, or {@code null} if unknown.
+     */
+    public UploadSession get(String id) throws IOException {
+        if (id == null || !id.matches("[0-9a-f]{32}")) return null;
+        UploadSession session = sessions.get(id);
+        if (session != null) return session;
+        File f = sessionFile(id);
+        if (!f.exists()) return null;
+        session = JsonUtil.fromJson(Files.readString(f.toPath(), StandardCharsets.UTF_8), UploadSession.class);
+        UploadSession prev = sessions.putIfAbsent(id, session);
+        return prev != null ? prev : session;
+    }
+
+    /**
+     * Appends one chunk at {@code offset}, which must equal the bytes received so far. The chunk is
+     * accepted only if exactly {@code length} bytes arrive and their SHA-256 equals {@code sha256Hex}.
+     * Returns the new received offset.
+     */
+    public long appendChunk(UploadSession session, long offset, long length, String sha256Hex, InputStream body)
+            throws IOException, ChunkedUploadException {
+        if (sha256Hex == null || !sha256Hex.matches("[0-9a-fA-F]{64}")) {
+            throw new ChunkedUploadException(400, "Chunk checksum (SHA-256 hex) is required");
+        }
+        if (length <= 0 || length > maxChunkSize) {
+            throw new ChunkedUploadException(413, "Chunk length must be between 1 and " + maxChunkSize + " bytes");
+        }
+        synchronized (session) {
+            if (offset != session.getReceived()) {
+                throw new ChunkedUploadException(409, "Offset mismatch");
+            }
+            if (offset + length > session.getFileSize()) {
+                throw new ChunkedUploadException(400, "Chunk exceeds declared file size");
+            }
+
+            MessageDigest digest = sha256();
+            MessageDigest whole = cloneDigest(session.getDigest());
+            long written = 0;
+            File part = partFile(session);
+            try (FileChannel ch = FileChannel.open(part.toPath(), StandardOpenOption.WRITE)) {
+                try {
+                    ReadableByteChannel in = Channels.newChannel(body);
+                    ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+                    long position = offset;
+                    while (written < length) {
+                        buf.clear();
+                        buf.limit((int) Math.min(buf.capacity(), length - written));
+                        int n = in.read(buf);
+                        if (n < 0) break;
+                        buf.flip();
+                        digest.update(buf.array(), 0, buf.limit());
+                        if (whole != null) whole.update(buf.array(), 0, buf.limit());
+                        while (buf.hasRemaining()) {
+                            position += ch.write(buf, position);
+                        }
+                        written += n;
+                    }
+                    if (written != length) {
+                        throw new ChunkedUploadException(400, "Incomplete chunk: expected " + length + " bytes, got " + written);
+                    }
+                    if (!HexFormat.of().formatHex(digest.digest()).equalsIgnoreCase(sha256Hex)) {
+                        throw new ChunkedUploadException(422, "Chunk checksum mismatch");
+                    }
+                    ch.force(false);
+                } catch (ChunkedUploadException | IOException e) {
+                    // drop whatever part of the chunk made it to disk
+                    ch.truncate(offset);
+                    throw e;
+                }
+            }
+
+            session.setReceived(offset + length);
+            session.setDigest(whole);
+            session.setUpdatedAt(System.currentTimeMillis());
+            save(session);
+            return session.getReceived();
+        }
+    }
+
+    /**
+     * Verifies the upload is complete (and matches the whole-file hash if one was declared) and
+     * returns the finished partial file. The file's SHA-256 is left in {@link UploadSession#getSha256()}.
+     * Call {@link #finish} once the file has been moved into storage.
+     */
+    public File complete(UploadSession session) throws IOException, ChunkedUploadException {
+        synchronized (session) {
+            if (session.getReceived() != session.getFileSize()) {
+                throw new ChunkedUploadException(409, "Upload incomplete");
+            }
+            File part = partFile(session);
+            MessageDigest whole = cloneDigest(session.getDigest());
+            String actual = whole != null ? HexFormat.of().formatHex(whole.digest()) : hashFile(part);
+            if (session.getSha256() != null && !session.getSha256().isBlank()
+                    && !session.getSha256().equalsIgnoreCase(actual)) {
+                throw new ChunkedUploadException(422, "File checksum mismatch");
+            }
+            session.setSha256(actual);
+            return part;
+        }
+    }
+
+    public void finish(UploadSession session) {
+        synchronized (session) {
+            forget(session);
+        }
+    }
+
+    public void abort(UploadSession session) {
+        synchronized (session) {
+            partFile(session).delete();
+            forget(session);
+        }
+    }
+
+    /**
+     * Deletes sessions (and their partial files) that have not received data for {@code maxIdleMillis}.
+     */
+    public int purgeExpired(long maxIdleMillis) {
+        File[] files = sessionDir.listFiles((dir, name) -> name.endsWith(".json"));
+        if (files == null) return 0;
+        long cutoff = System.currentTimeMillis() - maxIdleMillis;
+        int purged = 0;
+        for (File f : files) {
+            String id = f.getName().substring(0, f.getName().length() - ".json".length());
+            try {
+                UploadSession session = get(id);
+                if (session != null && session.getUpdatedAt() < cutoff) {
+                    abort(session);
+                    purged++;
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        return purged;
+    }
+
+    public File partFile(UploadSession session) {
+        // named by the session id: stored names of concurrent uploads of the same file can collide
+        return new File(sessionDir, session.getId() + PART_SUFFIX);
+    }
+
+    private void forget(UploadSession session) {
+        sessions.remove(session.getId());
+        sessionFile(session.getId()).delete();
+    }
+
+    private File sessionFile(String id) {
+        return new File(sessionDir, id + ".json");
+    }
+
+    private void save(UploadSession session) throws IOException {
+        Path target = sessionFile(session.getId()).toPath();
+        Path tmp = new File(sessionDir, session.getId() + ".json.tmp").toPath();
+        Files.writeString(tmp, JsonUtil.toJson(session), StandardCharsets.UTF_8);
+        try {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static String hashFile(File file) throws IOException {
+        MessageDigest digest = sha256();
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocate(256 * 1024);
+            while (ch.read(buf) > 0) {
+                buf.flip();
+                digest.update(buf);
+                buf.clear();
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest cloneDigest(MessageDigest digest) {
+        if (digest == null) return null;
+        try {
+            return (MessageDigest) digest.clone();
+        } catch (CloneNotSupportedException e) {
+            return null;
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.edu.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Application settings from {@code app.properties} on the classpath. A JVM system property with the
+ * same key overrides the file, so deployments can tune values without rebuilding the war.
+ */
+public class AppConfig {
+    private static final Properties props = new Properties();
+
+    static {
+        try (InputStream is = AppConfig.class.getClassLoader().getResourceAsStream("app.properties")) {
+            if (is != null) {
+                props.load(is);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static String getString(String key, String defaultValue) {
+        String v = System.getProperty(key);
+        if (v == null) v = props.getProperty(key);
+        if (v == null || v.isBlank()) return defaultValue;
+        return v.trim();
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        String v = getString(key, null);
+        if (v == null) return defaultValue;
+        try {
+            return Integer.parseInt(v);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    public static long getLong(String key, long defaultValue) {
+        String v = getString(key, null);
+        if (v == null) return defaultValue;
+        try {
+            return Long.parseLong(v);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String v = getString(key, null);
+        if (v == null) return defaultValue;
+        return Boolean.parseBoolean(v);
+    }
+}
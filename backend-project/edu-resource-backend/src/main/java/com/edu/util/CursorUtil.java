@@ -0,0 +1,70 @@
+package com.edu.util;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * Opaque keyset cursors for list endpoints. A cursor is the (create_time, id) of the last row of
+ * a page; the next page is read with a range condition on those two columns instead of OFFSET, so
+ * its cost does not grow with the page number.
+ */
+public class CursorUtil {
+
+    public record Cursor(long time, long id) {
+        public Timestamp timestamp() {
+            return new Timestamp(time);
+        }
+    }
+
+    public static String encode(Date time, long id) {
+        if (time == null) return null;
+        return encode(time.getTime(), id);
+    }
+
+    public static String encode(long timeMillis, long id) {
+        String raw = timeMillis + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns {@code null} for a missing or malformed cursor.
+     */
+    public static Cursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) return null;
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.UTF_8);
+            int sep = raw.indexOf(':');
+            if (sep <= 0) return null;
+            long time = Long.parseLong(raw.substring(0, sep));
+            long id = Long.parseLong(raw.substring(sep + 1));
+            if (time < 0 || id < 0) return null;
+            return new Cursor(time, id);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Range condition selecting rows after the cursor in {@code ORDER BY timeCol, idCol} order
+     * (both DESC or both ASC). Bind it with {@link #bind}.
+     */
+    public static String condition(String timeCol, String idCol, boolean descending) {
+        String op = descending ? "<" : ">";
+        return "(" + timeCol + " " + op + " ? OR (" + timeCol + " = ? AND " + idCol + " " + op + " ?))";
+    }
+
+    /**
+     * Binds the three parameters of {@link #condition} starting at {@code index}; returns the next index.
+     */
+    public static int bind(PreparedStatement ps, int index, Cursor cursor) throws SQLException {
+        Timestamp ts = cursor.timestamp();
+        ps.setTimestamp(index++, ts);
+        ps.setTimestamp(index++, ts);
+        ps.setLong(index++, cursor.id());
+        return index;
+    }
+}
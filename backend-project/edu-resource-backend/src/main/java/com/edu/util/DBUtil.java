@@ -1,39 +1,89 @@
 package com.edu.util;
 
+import com.alibaba.druid.pool.DruidDataSource;
+
 import java.io.IOException;
 import java.io.InputStream;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Properties;
 
+/**
+ * Connection access for the whole backend. Connections come from a Druid pool configured by
+ * {@code database.properties}; {@link Connection#close()} returns them to the pool.
+ */
 public class DBUtil {
-    private static String url;
-    private static String username;
-    private static String password;
-    private static String driver;
+    private static final DruidDataSource dataSource = new DruidDataSource();
 
     static {
-        try {
-            Properties props = new Properties();
-            InputStream is = DBUtil.class.getClassLoader().getResourceAsStream("database.properties");
+        Properties props = new Properties();
+        try (InputStream is = DBUtil.class.getClassLoader().getResourceAsStream("database.properties")) {
             if (is != null) {
                 props.load(is);
-                driver = props.getProperty("jdbc.driver");
-                url = props.getProperty("jdbc.url");
-                username = props.getProperty("jdbc.username");
-                password = props.getProperty("jdbc.password");
-                Class.forName(driver);
             }
-        } catch (IOException | ClassNotFoundException e) {
+        } catch (IOException e) {
             e.printStackTrace();
         }
+
+        dataSource.setDriverClassName(props.getProperty("jdbc.driver", "com.mysql.cj.jdbc.Driver"));
+        dataSource.setUrl(props.getProperty("jdbc.url"));
+        dataSource.setUsername(props.getProperty("jdbc.username"));
+        dataSource.setPassword(props.getProperty("jdbc.password"));
+
+        dataSource.setInitialSize(intProp(props, "pool.initialSize", 2));
+        dataSource.setMinIdle(intProp(props, "pool.minIdle", 2));
+        dataSource.setMaxActive(intProp(props, "pool.maxActive", 30));
+        dataSource.setMaxWait(intProp(props, "pool.maxWaitMillis", 3000));
+
+        // Validation: cheap check on borrow so a connection dropped by MySQL's wait_timeout is never handed out
+        dataSource.setValidationQuery(props.getProperty("pool.validationQuery", "SELECT 1"));
+        dataSource.setValidationQueryTimeout(intProp(props, "pool.validationQueryTimeoutSeconds", 2));
+        dataSource.setTestOnBorrow(boolProp(props, "pool.testOnBorrow", true));
+        dataSource.setTestWhileIdle(boolProp(props, "pool.testWhileIdle", true));
+        dataSource.setTestOnReturn(false);
+        dataSource.setTimeBetweenEvictionRunsMillis(intProp(props, "pool.evictionIntervalMillis", 60000));
+        dataSource.setMinEvictableIdleTimeMillis(intProp(props, "pool.minEvictableIdleMillis", 300000));
+
+        // Leak detection: connections held longer than the timeout are reclaimed and the borrowing stack is logged
+        dataSource.setRemoveAbandoned(boolProp(props, "pool.removeAbandoned", true));
+        dataSource.setRemoveAbandonedTimeout(intProp(props, "pool.removeAbandonedTimeoutSeconds", 180));
+        dataSource.setLogAbandoned(boolProp(props, "pool.logAbandoned", true));
+
+        dataSource.setPoolPreparedStatements(true);
+        dataSource.setMaxPoolPreparedStatementPerConnectionSize(intProp(props, "pool.maxPreparedStatementsPerConnection", 50));
     }
 
     public static Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(url, username, password);
+        return dataSource.getConnection();
+    }
+
+    /**
+     * Snapshot of pool state for the health endpoint.
+     */
+    public static Map<String, Object> getPoolStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("active", dataSource.getActiveCount());
+        stats.put("idle", dataSource.getPoolingCount());
+        stats.put("maxActive", dataSource.getMaxActive());
+        stats.put("activePeak", dataSource.getActivePeak());
+        stats.put("waitingThreads", dataSource.getWaitThreadCount());
+        long waitCount = dataSource.getNotEmptyWaitCount();
+        long waitMillis = dataSource.getNotEmptyWaitMillis();
+        stats.put("waitCount", waitCount);
+        stats.put("waitMillisTotal", waitMillis);
+        stats.put("waitMillisAvg", waitCount == 0 ? 0 : waitMillis / waitCount);
+        stats.put("borrowCount", dataSource.getConnectCount());
+        stats.put("physicalOpenCount", dataSource.getCreateCount());
+        stats.put("abandonedCount", dataSource.getRemoveAbandonedCount());
+        return stats;
+    }
+
+    public static void shutdown() {
+        dataSource.close();
     }
 
     public static void close(Connection conn, PreparedStatement ps, ResultSet rs) {
@@ -55,4 +105,20 @@ public class DBUtil {
     public static void close(Connection conn, PreparedStatement ps) {
         close(conn, ps, null);
     }
+
+    private static int intProp(Properties props, String key, int defaultValue) {
+        String v = props.getProperty(key);
+        if (v == null || v.isBlank()) return defaultValue;
+        try {
+            return Integer.parseInt(v.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static boolean boolProp(Properties props, String key, boolean defaultValue) {
+        String v = props.getProperty(key);
+        if (v == null || v.isBlank()) return defaultValue;
+        return Boolean.parseBoolean(v.trim());
+    }
 }
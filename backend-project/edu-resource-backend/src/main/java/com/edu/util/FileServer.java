@@ -0,0 +1,358 @@
+package com.edu.util;
+
+import com.edu.storage.StorageService;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Serves a stored file with HTTP range support, shared by every endpoint that streams stored
+ * files (resource downloads, avatars, comment images, chat media).
+ * <p>
+ * Full and single-range responses are handed to the container's sendfile when the connector
+ * offers it (Tomcat NIO/NIO2/APR), so the bytes go from the page cache to the socket without passing
+ * through the JVM. Otherwise, and for multi-range requests, the body is written with
+ * {@link FileChannel#transferTo}. Objects in a remote {@link StorageService} are streamed with one
+ * ranged read per requested range. Callers set Content-Disposition and caching headers themselves.
+ * <p>
+ * Every response carries a strong ETag built from the file's size and modification time plus a
+ * Last-Modified date. {@code If-None-Match}/{@code If-Modified-Since} are answered with 304, and a
+ * {@code Range} guarded by an {@code If-Range} that no longer matches is served as a full 200.
+ */
+public class FileServer {
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    // Below this size sendfile setup costs more than copying
+    private static final long SENDFILE_MIN_BYTES = 48 * 1024;
+    // More ranges than this is not a media player seeking; serve the whole file instead
+    private static final int MAX_RANGES = 16;
+
+    public record ByteRange(long start, long end) {
+        public long length() {
+            return end - start + 1;
+        }
+    }
+
+    public static void serve(HttpServletRequest req, HttpServletResponse resp, File file, String contentType) throws IOException {
+        serve(req, resp, file.length(), file.lastModified(), contentType, file, null, null, null);
+    }
+
+    /**
+     * Serves a file the caller has already opened, for files that may be deleted once the caller
+     * lets go of them (evictable caches): the open handle keeps the content readable, which
+     * sendfile, opening the path after the servlet returns, would not. The channel is closed.
+     */
+    public static void serve(HttpServletRequest req, HttpServletResponse resp, FileChannel channel, long lastModified,
+                             String contentType) throws IOException {
+        try (channel) {
+            serve(req, resp, channel.size(), lastModified, contentType, null, null, null, channel);
+        }
+    }
+
+    /**
+     * Serves an object from storage. Objects the backend keeps on local disk go through the file
+     * path (and sendfile); others are streamed from the backend with ranged reads.
+     */
+    public static void serve(HttpServletRequest req, HttpServletResponse resp, StorageService storage,
+                             StorageService.StoredObject object, String contentType) throws IOException {
+        File local = storage.localFile(object.key());
+        serve(req, resp, object.size(), object.lastModified(), contentType, local, local == null ? storage : null, object.key(), null);
+    }
+
+    private static void serve(HttpServletRequest req, HttpServletResponse resp, long length, long lastModified,
+                              String contentType, File file, StorageService storage, String key,
+                              FileChannel channel) throws IOException {
+        String etag = etag(length, lastModified);
+        resp.setHeader("Accept-Ranges", "bytes");
+        resp.setHeader("ETag", etag);
+        resp.setDateHeader("Last-Modified", lastModified);
+
+        String ifMatch = req.getHeader("If-Match");
+        if (ifMatch != null && !etagListMatches(ifMatch, etag, false)) {
+            resp.setStatus(HttpServletResponse.SC_PRECONDITION_FAILED);
+            return;
+        }
+        if (notModified(req.getHeader("If-None-Match"), dateHeader(req, "If-Modified-Since"), etag, lastModified)) {
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        String rangeHeader = req.getHeader("Range");
+        String ifRange = req.getHeader("If-Range");
+        if (rangeHeader != null && ifRange != null
+                && !ifRangeMatches(ifRange, dateHeader(req, "If-Range"), etag, lastModified)) {
+            // the client's partial copy is stale: send the whole current file
+            rangeHeader = null;
+        }
+
+        List<ByteRange> ranges = parseRanges(rangeHeader, length);
+        if (ranges != null && ranges.isEmpty()) {
+            resp.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            resp.setHeader("Content-Range", "bytes */" + length);
+            return;
+        }
+        boolean head = "HEAD".equalsIgnoreCase(req.getMethod());
+
+        if (ranges == null || ranges.size() == 1) {
+            ByteRange range = ranges == null ? new ByteRange(0, length - 1) : ranges.get(0);
+            resp.setContentType(contentType);
+            if (ranges != null) {
+                resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                resp.setHeader("Content-Range", "bytes " + range.start() + "-" + range.end() + "/" + length);
+            }
+            resp.setContentLengthLong(length == 0 ? 0 : range.length());
+            if (head || length == 0) return;
+
+            if (storage != null) {
+                OutputStream os = resp.getOutputStream();
+                try (InputStream in = storage.open(key, range.start(), range.length())) {
+                    in.transferTo(os);
+                }
+                os.flush();
+                return;
+            }
+            if (channel == null && range.length() >= SENDFILE_MIN_BYTES && Boolean.TRUE.equals(req.getAttribute(SENDFILE_SUPPORTED))) {
+                req.setAttribute(SENDFILE_FILENAME, file.getCanonicalPath());
+                req.setAttribute(SENDFILE_START, range.start());
+                req.setAttribute(SENDFILE_END, range.end() + 1);
+                return;
+            }
+            try (FileChannel ch = channel != null ? channel : FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                OutputStream os = resp.getOutputStream();
+                transfer(ch, range.start(), range.length(), Channels.newChannel(os));
+                os.flush();
+            }
+            return;
+        }
+
+        String boundary = UUID.randomUUID().toString().replace("-", "");
+        resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        resp.setContentType("multipart/byteranges; boundary=" + boundary);
+        resp.setContentLengthLong(multipartLength(ranges, contentType, boundary, length));
+        if (head) return;
+        OutputStream os = resp.getOutputStream();
+        if (storage != null) {
+            writeMultipart(storage, key, ranges, contentType, boundary, length, os);
+        } else {
+            try (FileChannel ch = channel != null ? channel : FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                writeMultipart(ch, ranges, contentType, boundary, length, os);
+            }
+        }
+        os.flush();
+    }
+
+    /**
+     * Answers a conditional GET with 304 if the client's cached copy of {@code file} is current.
+     * Lets callers skip database lookups (permission checks, path resolution) for revalidations of
+     * files whose location they already know. Returns {@code true} if the response was sent.
+     */
+    public static boolean checkNotModified(HttpServletRequest req, HttpServletResponse resp, File file) {
+        return checkNotModified(req, resp, file.length(), file.lastModified());
+    }
+
+    /**
+     * Same as {@link #checkNotModified(HttpServletRequest, HttpServletResponse, File)} for a stored
+     * object; {@code null} (not found) never matches.
+     */
+    public static boolean checkNotModified(HttpServletRequest req, HttpServletResponse resp, StorageService.StoredObject object) {
+        return object != null && checkNotModified(req, resp, object.size(), object.lastModified());
+    }
+
+    private static boolean checkNotModified(HttpServletRequest req, HttpServletResponse resp, long length, long lastModified) {
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        long ifModifiedSince = dateHeader(req, "If-Modified-Since");
+        if (ifNoneMatch == null && ifModifiedSince < 0) return false;
+        if (lastModified == 0) return false;
+        String etag = etag(length, lastModified);
+        if (!notModified(ifNoneMatch, ifModifiedSince, etag, lastModified)) return false;
+        resp.setHeader("ETag", etag);
+        resp.setDateHeader("Last-Modified", lastModified);
+        resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        return true;
+    }
+
+    static String etag(long length, long lastModified) {
+        return "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+    }
+
+    /**
+     * If-None-Match takes precedence over If-Modified-Since (RFC 7232 section 6).
+     */
+    static boolean notModified(String ifNoneMatch, long ifModifiedSince, String etag, long lastModified) {
+        if (ifNoneMatch != null) {
+            return etagListMatches(ifNoneMatch, etag, true);
+        }
+        // HTTP dates have one-second resolution
+        return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    /**
+     * If-Range needs a strong validator: an exact ETag, or the exact Last-Modified date.
+     */
+    static boolean ifRangeMatches(String ifRange, long ifRangeDate, String etag, long lastModified) {
+        String v = ifRange.trim();
+        if (v.startsWith("W/")) return false;
+        if (v.startsWith("\"")) return v.equals(etag);
+        return ifRangeDate >= 0 && ifRangeDate / 1000 == lastModified / 1000;
+    }
+
+    private static boolean etagListMatches(String header, String etag, boolean weak) {
+        String h = header.trim();
+        if ("*".equals(h)) return true;
+        for (String raw : h.split(",")) {
+            String tag = raw.trim();
+            if (tag.startsWith("W/")) {
+                if (!weak) continue;
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag)) return true;
+        }
+        return false;
+    }
+
+    private static long dateHeader(HttpServletRequest req, String name) {
+        try {
+            return req.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Parses a {@code Range} header. Returns {@code null} when the whole file should be sent (no
+     * header, another unit, a syntax error or too many ranges) and an empty list when none of the
+     * ranges can be satisfied (416). Overlapping or adjacent ranges are merged.
+     */
+    static List<ByteRange> parseRanges(String header, long length) {
+        if (header == null) return null;
+        header = header.trim();
+        if (!header.regionMatches(true, 0, "bytes=", 0, 6)) return null;
+
+        String[] specs = header.substring(6).split(",");
+        if (specs.length > MAX_RANGES) return null;
+
+        List<ByteRange> ranges = new ArrayList<>();
+        for (String raw : specs) {
+            String spec = raw.trim();
+            int dash = spec.indexOf('-');
+            if (dash < 0) return null;
+            String startStr = spec.substring(0, dash).trim();
+            String endStr = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            try {
+                if (startStr.isEmpty()) {
+                    if (endStr.isEmpty()) return null;
+                    long suffix = Long.parseLong(endStr);
+                    if (suffix < 0) return null;
+                    if (suffix == 0 || length == 0) continue;
+                    start = Math.max(0, length - suffix);
+                    end = length - 1;
+                } else {
+                    start = Long.parseLong(startStr);
+                    end = endStr.isEmpty() ? length - 1 : Long.parseLong(endStr);
+                    if (start < 0 || end < start) return null;
+                    if (start >= length) continue;
+                    end = Math.min(end, length - 1);
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            ranges.add(new ByteRange(start, end));
+        }
+        return coalesce(ranges);
+    }
+
+    private static List<ByteRange> coalesce(List<ByteRange> ranges) {
+        if (ranges.size() < 2) return ranges;
+        List<ByteRange> sorted = new ArrayList<>(ranges);
+        sorted.sort((a, b) -> Long.compare(a.start(), b.start()));
+        boolean overlaps = false;
+        for (int i = 1; i < sorted.size(); i++) {
+            if (sorted.get(i).start() <= sorted.get(i - 1).end() + 1) {
+                overlaps = true;
+                break;
+            }
+        }
+        // keep the requested order unless ranges have to be merged
+        if (!overlaps) return ranges;
+        List<ByteRange> merged = new ArrayList<>();
+        ByteRange cur = sorted.get(0);
+        for (int i = 1; i < sorted.size(); i++) {
+            ByteRange next = sorted.get(i);
+            if (next.start() <= cur.end() + 1) {
+                cur = new ByteRange(cur.start(), Math.max(cur.end(), next.end()));
+            } else {
+                merged.add(cur);
+                cur = next;
+            }
+        }
+        merged.add(cur);
+        return merged;
+    }
+
+    static long multipartLength(List<ByteRange> ranges, String contentType, String boundary, long length) {
+        long total = 0;
+        for (ByteRange r : ranges) {
+            total += partHeader(r, contentType, boundary, length).length + r.length();
+        }
+        return total + closing(boundary).length;
+    }
+
+    static void writeMultipart(FileChannel ch, List<ByteRange> ranges, String contentType, String boundary,
+                               long length, OutputStream os) throws IOException {
+        WritableByteChannel out = Channels.newChannel(os);
+        for (ByteRange r : ranges) {
+            os.write(partHeader(r, contentType, boundary, length));
+            transfer(ch, r.start(), r.length(), out);
+        }
+        os.write(closing(boundary));
+    }
+
+    private static void writeMultipart(StorageService storage, String key, List<ByteRange> ranges, String contentType,
+                                       String boundary, long length, OutputStream os) throws IOException {
+        for (ByteRange r : ranges) {
+            os.write(partHeader(r, contentType, boundary, length));
+            try (InputStream in = storage.open(key, r.start(), r.length())) {
+                in.transferTo(os);
+            }
+        }
+        os.write(closing(boundary));
+    }
+
+    private static byte[] partHeader(ByteRange r, String contentType, String boundary, long length) {
+        String h = "\r\n--" + boundary + "\r\n" +
+                "Content-Type: " + contentType + "\r\n" +
+                "Content-Range: bytes " + r.start() + "-" + r.end() + "/" + length + "\r\n\r\n";
+        return h.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] closing(String boundary) {
+        return ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static void transfer(FileChannel ch, long position, long count, WritableByteChannel out) throws IOException {
+        long done = 0;
+        while (done < count) {
+            long n = ch.transferTo(position + done, count - done, out);
+            // file shrank underneath us; stop rather than spin
+            if (n <= 0) break;
+            done += n;
+        }
+    }
+}
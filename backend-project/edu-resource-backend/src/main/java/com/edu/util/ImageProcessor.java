@@ -2,8 +2,11 @@ package com.edu.util;
 
 import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
 import javax.imageio.ImageWriteParam;
 import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
 import javax.imageio.stream.ImageOutputStream;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
@@ -12,41 +15,114 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 
+/**
+ * Re-encodes uploaded images to JPEG. {@link #process} decodes the source once and writes any number
+ * of size variants from it; large sources are subsampled while decoding, and sources with more than
+ * {@code image.maxPixels} pixels are rejected before any pixel data is read.
+ */
 public class ImageProcessor {
     public record ProcessedImage(int width, int height, String mimeType, long fileSize) {}
 
+    /**
+     * One requested output: the image scaled to fit in {@code maxWidth} x {@code maxHeight} (never
+     * enlarged), written as JPEG to {@code output}.
+     */
+    public record Variant(int maxWidth, int maxHeight, File output) {}
+
+    private static final long DEFAULT_MAX_PIXELS = 40_000_000L;
+    private static final float QUALITY = 0.82f;
+
     public static ProcessedImage processAndSave(File inputFile, String inputMimeType, File outputFile, int maxWidth, int maxHeight) throws IOException {
-        BufferedImage original = ImageIO.read(inputFile);
-        if (original == null) {
-            throw new IOException("Unsupported image");
+        return process(inputFile, List.of(new Variant(maxWidth, maxHeight, outputFile))).get(0);
+    }
+
+    /**
+     * Decodes {@code inputFile} once and writes every variant. Results are in the order of
+     * {@code variants}.
+     */
+    public static List<ProcessedImage> process(File inputFile, List<Variant> variants) throws IOException {
+        return process(inputFile, variants, AppConfig.getLong("image.maxPixels", DEFAULT_MAX_PIXELS));
+    }
+
+    static List<ProcessedImage> process(File inputFile, List<Variant> variants, long maxPixels) throws IOException {
+        if (variants.isEmpty()) return new ArrayList<>();
+        int needW = 0;
+        int needH = 0;
+        for (Variant v : variants) {
+            needW = Math.max(needW, v.maxWidth());
+            needH = Math.max(needH, v.maxHeight());
         }
 
-        int ow = original.getWidth();
-        int oh = original.getHeight();
+        BufferedImage decoded;
+        int ow;
+        int oh;
+        try (ImageInputStream iis = ImageIO.createImageInputStream(inputFile)) {
+            Iterator<ImageReader> readers = iis == null ? null : ImageIO.getImageReaders(iis);
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Unsupported image");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true, true);
+                // the header alone gives the size, so a decompression bomb is refused before decoding
+                ow = reader.getWidth(0);
+                oh = reader.getHeight(0);
+                if (ow <= 0 || oh <= 0 || (long) ow * oh > maxPixels) {
+                    throw new IOException("Image too large");
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                // skip source pixels while decoding, keeping at least twice the largest target size
+                int step = Math.max(1, Math.min(ow / (needW * 2), oh / (needH * 2)));
+                if (step > 1) {
+                    param.setSourceSubsampling(step, step, 0, 0);
+                }
+                decoded = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
 
-        double scale = Math.min((double) maxWidth / ow, (double) maxHeight / oh);
-        scale = Math.min(scale, 1.0);
-        int tw = Math.max(1, (int) Math.round(ow * scale));
-        int th = Math.max(1, (int) Math.round(oh * scale));
+        // largest box first, each variant scaled from the previous one rather than from the full decode
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < variants.size(); i++) {
+            order.add(i);
+        }
+        order.sort((x, y) -> Long.compare(
+                (long) variants.get(y).maxWidth() * variants.get(y).maxHeight(),
+                (long) variants.get(x).maxWidth() * variants.get(x).maxHeight()));
 
-        BufferedImage target = new BufferedImage(tw, th, BufferedImage.TYPE_INT_RGB);
-        Graphics2D g = target.createGraphics();
-        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        g.drawImage(original, 0, 0, tw, th, null);
-        g.dispose();
+        ProcessedImage[] results = new ProcessedImage[variants.size()];
+        BufferedImage source = decoded;
+        for (int i : order) {
+            Variant v = variants.get(i);
+            // fit against the original dimensions so subsampling doesn't change the output size
+            double scale = Math.min((double) v.maxWidth() / ow, (double) v.maxHeight() / oh);
+            scale = Math.min(scale, 1.0);
+            int tw = Math.max(1, (int) Math.round(ow * scale));
+            int th = Math.max(1, (int) Math.round(oh * scale));
 
-        outputFile.getParentFile().mkdirs();
+            if (source.getWidth() < tw || source.getHeight() < th) source = decoded;
 
-        String format = "jpg";
-        String mime = "image/jpeg";
-        writeJpeg(target, outputFile, 0.82f);
+            BufferedImage target = new BufferedImage(tw, th, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = target.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.drawImage(source, 0, 0, tw, th, null);
+            g.dispose();
 
-        long size = Files.size(outputFile.toPath());
-        return new ProcessedImage(tw, th, mime, size);
+            File out = v.output();
+            if (out.getParentFile() != null) out.getParentFile().mkdirs();
+            writeJpeg(target, out, QUALITY);
+            results[i] = new ProcessedImage(tw, th, "image/jpeg", Files.size(out.toPath()));
+            source = target;
+        }
+        return new ArrayList<>(Arrays.asList(results));
     }
 
     public static String detectImageMimeType(File file) throws IOException {
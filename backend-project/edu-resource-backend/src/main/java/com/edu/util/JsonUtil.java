@@ -14,6 +14,7 @@ import java.nio.charset.StandardCharsets;
 public class JsonUtil {
     private static final Gson gson = new GsonBuilder()
             .setDateFormat("yyyy-MM-dd HH:mm:ss")
+            .registerTypeAdapterFactory(new ModelAdapters())
             .create();
 
     public static String toJson(Object obj) {
@@ -47,8 +48,20 @@ public class JsonUtil {
     public static void sendJsonResponse(HttpServletResponse response, Object obj) throws IOException {
         response.setContentType("application/json;charset=UTF-8");
         response.setCharacterEncoding("UTF-8");
+        // write straight into the response buffer instead of building the whole body as a String first
         PrintWriter writer = response.getWriter();
-        writer.write(toJson(obj));
+        gson.toJson(obj, writer);
+        writer.flush();
+    }
+
+    /**
+     * Sends a body already rendered with {@link #toJson}.
+     */
+    public static void sendRenderedJson(HttpServletResponse response, String json) throws IOException {
+        response.setContentType("application/json;charset=UTF-8");
+        response.setCharacterEncoding("UTF-8");
+        PrintWriter writer = response.getWriter();
+        writer.write(json);
         writer.flush();
     }
 }
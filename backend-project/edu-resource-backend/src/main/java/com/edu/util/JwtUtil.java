@@ -1,5 +1,7 @@
 package com.edu.util;
 
+import com.edu.auth.Principal;
+import com.edu.auth.TokenVerifier;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
@@ -41,52 +43,29 @@ public class JwtUtil {
         }
     }
 
+    // The claim getters below go through the same cache as validateToken: handlers call them right
+    // after AuthFilter (or validateToken) has verified the token, so they don't re-check the signature.
+
     public static Integer getUserIdFromToken(String token) {
-        Claims claims = parseToken(token);
-        if (claims != null) {
-            return Integer.parseInt(claims.getSubject());
-        }
-        return null;
+        Principal p = TokenVerifier.get().verify(token);
+        return p != null ? p.userId() : null;
     }
 
     public static String getUsernameFromToken(String token) {
-        Claims claims = parseToken(token);
-        if (claims != null) {
-            return claims.get("username", String.class);
-        }
-        return null;
+        Principal p = TokenVerifier.get().verify(token);
+        return p != null ? p.username() : null;
     }
 
     public static String getRoleFromToken(String token) {
-        Claims claims = parseToken(token);
-        if (claims != null) {
-            return claims.get("role", String.class);
-        }
-        return null;
+        Principal p = TokenVerifier.get().verify(token);
+        return p != null ? p.role() : null;
     }
 
+    /**
+     * True for a correctly signed, unexpired token. Goes through {@link TokenVerifier}'s cache, so
+     * repeated checks of the same token don't re-verify the signature.
+     */
     public static boolean validateToken(String token) {
-        if (token == null || token.isEmpty()) {
-            System.out.println("Token is null or empty");
-            return false;
-        }
-        try {
-            System.out.println("Validating token: " + token);
-            Claims claims = parseToken(token);
-            if (claims == null) {
-                System.out.println("Failed to parse token");
-                return false;
-            }
-            System.out.println("Token parsed successfully, subject: " + claims.getSubject());
-            boolean isExpired = claims.getExpiration().before(new Date());
-            System.out.println("Token expiration: " + claims.getExpiration());
-            System.out.println("Current time: " + new Date());
-            System.out.println("Token is expired: " + isExpired);
-            return !isExpired;
-        } catch (Exception e) {
-            System.out.println("Token validation exception: " + e.getMessage());
-            e.printStackTrace();
-            return false;
-        }
+        return TokenVerifier.get().verify(token) != null;
     }
 }
@@ -0,0 +1,197 @@
+package com.edu.util;
+
+import com.edu.model.ApiResponse;
+import com.edu.model.Comment;
+import com.edu.model.Notification;
+import com.edu.model.PageResult;
+import com.edu.model.Resource;
+import com.edu.model.User;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Hand-written writers for the models on every response, so serializing them doesn't go through
+ * reflection. Field names and order match what reflective Gson produced; nulls are dropped by the
+ * writer as before. Reading (request bodies) still uses the reflective adapter.
+ * <p>
+ * {@code User.password} is never written.
+ */
+class ModelAdapters implements TypeAdapterFactory {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Class<? super T> raw = type.getRawType();
+        Writer<?> writer;
+        if (raw == ApiResponse.class) writer = apiResponse(gson);
+        else if (raw == PageResult.class) writer = pageResult(gson);
+        else if (raw == User.class) writer = user(gson);
+        else if (raw == Resource.class) writer = resource(gson);
+        else if (raw == Comment.class) writer = comment(gson);
+        else if (raw == Notification.class) writer = notification(gson);
+        else return null;
+
+        TypeAdapter<T> reader = gson.getDelegateAdapter(this, type);
+        Writer<T> w = (Writer<T>) writer;
+        return new TypeAdapter<T>() {
+            @Override
+            public void write(JsonWriter out, T value) throws IOException {
+                if (value == null) {
+                    out.nullValue();
+                    return;
+                }
+                out.beginObject();
+                w.fields(out, value);
+                out.endObject();
+            }
+
+            @Override
+            public T read(JsonReader in) throws IOException {
+                return reader.read(in);
+            }
+        };
+    }
+
+    private interface Writer<T> {
+        void fields(JsonWriter out, T value) throws IOException;
+    }
+
+    private static Writer<ApiResponse<?>> apiResponse(Gson gson) {
+        TypeAdapter<Object> any = gson.getAdapter(Object.class);
+        return (out, r) -> {
+            out.name("success").value(r.getSuccess());
+            out.name("message").value(r.getMessage());
+            out.name("data");
+            any.write(out, r.getData());
+            out.name("code").value(r.getCode());
+        };
+    }
+
+    private static Writer<PageResult<?>> pageResult(Gson gson) {
+        TypeAdapter<Object> any = gson.getAdapter(Object.class);
+        return (out, p) -> {
+            List<?> list = p.getList();
+            out.name("list");
+            if (list == null) {
+                out.nullValue();
+            } else {
+                out.beginArray();
+                for (Object item : list) {
+                    any.write(out, item);
+                }
+                out.endArray();
+            }
+            out.name("total").value(p.getTotal());
+            out.name("page").value(p.getPage());
+            out.name("pageSize").value(p.getPageSize());
+            out.name("totalPages").value(p.getTotalPages());
+            out.name("nextCursor").value(p.getNextCursor());
+        };
+    }
+
+    private static Writer<User> user(Gson gson) {
+        TypeAdapter<Date> date = gson.getAdapter(Date.class);
+        return (out, u) -> {
+            out.name("id").value(u.getId());
+            out.name("username").value(u.getUsername());
+            out.name("nickname").value(u.getNickname());
+            out.name("phone").value(u.getPhone());
+            out.name("role").value(u.getRole());
+            out.name("avatar").value(u.getAvatar());
+            out.name("status").value(u.getStatus());
+            out.name("createdAt");
+            date.write(out, u.getCreatedAt());
+            out.name("updatedAt");
+            date.write(out, u.getUpdatedAt());
+        };
+    }
+
+    private static Writer<Resource> resource(Gson gson) {
+        TypeAdapter<Date> date = gson.getAdapter(Date.class);
+        TypeAdapter<User> user = gson.getAdapter(User.class);
+        return (out, r) -> {
+            out.name("id").value(r.getId());
+            out.name("name").value(r.getName());
+            out.name("description").value(r.getDescription());
+            out.name("category").value(r.getCategory());
+            out.name("fileName").value(r.getFileName());
+            out.name("filePath").value(r.getFilePath());
+            out.name("fileSize").value(r.getFileSize());
+            out.name("fileType").value(r.getFileType());
+            out.name("uploaderId").value(r.getUploaderId());
+            out.name("uploader");
+            user.write(out, r.getUploader());
+            out.name("downloadCount").value(r.getDownloadCount());
+            out.name("viewCount").value(r.getViewCount());
+            out.name("collectionCount").value(r.getCollectionCount());
+            out.name("commentCount").value(r.getCommentCount());
+            out.name("allowComments").value(r.getAllowComments());
+            out.name("isPublic").value(r.getIsPublic());
+            out.name("createdAt");
+            date.write(out, r.getCreatedAt());
+            out.name("updatedAt");
+            date.write(out, r.getUpdatedAt());
+        };
+    }
+
+    private static Writer<Comment> comment(Gson gson) {
+        TypeAdapter<Date> date = gson.getAdapter(Date.class);
+        TypeAdapter<User> user = gson.getAdapter(User.class);
+        return new Writer<>() {
+            @Override
+            public void fields(JsonWriter out, Comment c) throws IOException {
+                out.name("id").value(c.getId());
+                out.name("resourceId").value(c.getResourceId());
+                out.name("userId").value(c.getUserId());
+                out.name("user");
+                user.write(out, c.getUser());
+                out.name("content").value(c.getContent());
+                out.name("parentId").value(c.getParentId());
+                out.name("replyToUserId").value(c.getReplyToUserId());
+                out.name("replyToNickname").value(c.getReplyToNickname());
+                out.name("replies");
+                if (c.getReplies() == null) {
+                    out.nullValue();
+                } else {
+                    out.beginArray();
+                    for (Comment reply : c.getReplies()) {
+                        if (reply == null) {
+                            out.nullValue();
+                            continue;
+                        }
+                        out.beginObject();
+                        fields(out, reply);
+                        out.endObject();
+                    }
+                    out.endArray();
+                }
+                out.name("createdAt");
+                date.write(out, c.getCreatedAt());
+                out.name("updatedAt");
+                date.write(out, c.getUpdatedAt());
+            }
+        };
+    }
+
+    private static Writer<Notification> notification(Gson gson) {
+        TypeAdapter<Date> date = gson.getAdapter(Date.class);
+        return (out, n) -> {
+            out.name("id").value(n.getId());
+            out.name("userId").value(n.getUserId());
+            out.name("title").value(n.getTitle());
+            out.name("content").value(n.getContent());
+            out.name("type").value(n.getType());
+            out.name("isRead").value(n.getIsRead());
+            out.name("createTime");
+            date.write(out, n.getCreateTime());
+        };
+    }
+}
@@ -1,11 +1,19 @@
 package com.edu.util;
 
+import com.edu.notify.NotificationEvent;
+import com.edu.notify.NotificationHub;
+import com.edu.notify.UnreadCounters;
+
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 
 public class NotificationUtil {
-    public static void createResourceNotification(Connection conn, int userId, String title, String content) throws SQLException {
+    /**
+     * Inserts the notification. Pass the returned event to {@link #published} after the caller's
+     * transaction commits.
+     */
+    public static NotificationEvent createResourceNotification(Connection conn, int userId, String title, String content) throws SQLException {
         String sql = "INSERT INTO notification (user_id, title, content, type, create_time) VALUES (?, ?, ?, 'resource', NOW())";
         try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setInt(1, userId);
@@ -13,6 +21,23 @@ public class NotificationUtil {
             ps.setString(3, content);
             ps.executeUpdate();
         }
+        return new NotificationEvent(userId, title, content, "resource");
+    }
+
+    /**
+     * Counts a committed notification as unread and pushes it to the user's open streams.
+     */
+    public static void published(NotificationEvent event) {
+        UnreadCounters.get().added(event.userId(), 1);
+        NotificationHub.get().notificationCreated(event);
     }
-}
 
+    /**
+     * Records that {@code count} of the user's unread notifications were marked read.
+     */
+    public static void markedRead(int userId, int count) {
+        if (count <= 0) return;
+        UnreadCounters.get().read(userId, count);
+        NotificationHub.get().unreadChanged(userId);
+    }
+}
@@ -0,0 +1,172 @@
+package com.edu.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Aho-Corasick automaton over a fixed word list. {@link #mask} and {@link #contains} scan the text
+ * once regardless of how many words there are, and allocate nothing unless a word is found.
+ * <p>
+ * Instances are immutable; {@link SensitiveWordUtil} swaps in a new one when the dictionary changes.
+ */
+public final class SensitiveWordMatcher {
+    // child transitions of state s are keys/next[first[s] .. first[s + 1]), sorted by key
+    private final int[] first;
+    private final char[] keys;
+    private final int[] next;
+    private final int[] fail;
+    // length of the longest word ending in each state, following fail links; 0 if none
+    private final int[] out;
+    // transitions out of the root for every char (0 when there is none), so most steps skip the search
+    private final int[] root;
+    private final int words;
+
+    private SensitiveWordMatcher(int[] first, char[] keys, int[] next, int[] fail, int[] out, int words) {
+        this.first = first;
+        this.keys = keys;
+        this.next = next;
+        this.fail = fail;
+        this.out = out;
+        this.words = words;
+        this.root = new int[Character.MAX_VALUE + 1];
+        for (int k = first[0]; k < first[1]; k++) {
+            root[keys[k]] = next[k];
+        }
+    }
+
+    public static SensitiveWordMatcher compile(Collection<String> dictionary) {
+        // build a plain trie first, then lay it out breadth-first in flat arrays
+        List<TreeMap<Character, Integer>> children = new ArrayList<>();
+        List<Integer> lengths = new ArrayList<>();
+        children.add(new TreeMap<>());
+        lengths.add(0);
+        int count = 0;
+        for (String word : dictionary) {
+            if (word == null || word.isEmpty()) continue;
+            int s = 0;
+            for (int i = 0; i < word.length(); i++) {
+                Integer t = children.get(s).get(word.charAt(i));
+                if (t == null) {
+                    t = children.size();
+                    children.add(new TreeMap<>());
+                    lengths.add(0);
+                    children.get(s).put(word.charAt(i), t);
+                }
+                s = t;
+            }
+            if (lengths.get(s) == 0) count++;
+            lengths.set(s, word.length());
+        }
+
+        int n = children.size();
+        int[] order = new int[n];
+        int[] renumber = new int[n];
+        int head = 0;
+        int tail = 1;
+        while (head < tail) {
+            int s = order[head];
+            renumber[s] = head++;
+            for (int t : children.get(s).values()) {
+                order[tail++] = t;
+            }
+        }
+
+        int edges = n - 1;
+        int[] first = new int[n + 1];
+        char[] keys = new char[edges];
+        int[] next = new int[edges];
+        int[] out = new int[n];
+        int e = 0;
+        for (int i = 0; i < n; i++) {
+            int s = order[i];
+            first[i] = e;
+            out[i] = lengths.get(s);
+            for (var entry : children.get(s).entrySet()) {
+                keys[e] = entry.getKey();
+                next[e] = renumber[entry.getValue()];
+                e++;
+            }
+        }
+        first[n] = e;
+
+        int[] fail = new int[n];
+        SensitiveWordMatcher m = new SensitiveWordMatcher(first, keys, next, fail, out, count);
+        // states are numbered breadth-first, so a state's fail target is always computed before it
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(0);
+        while (!queue.isEmpty()) {
+            int s = queue.poll();
+            for (int k = first[s]; k < first[s + 1]; k++) {
+                int t = next[k];
+                if (s != 0) {
+                    int f = fail[s];
+                    int g;
+                    while ((g = m.child(f, keys[k])) < 0 && f != 0) {
+                        f = fail[f];
+                    }
+                    fail[t] = Math.max(g, 0);
+                    out[t] = Math.max(out[t], out[fail[t]]);
+                }
+                queue.add(t);
+            }
+        }
+        return m;
+    }
+
+    public int size() {
+        return words;
+    }
+
+    public boolean contains(String text) {
+        if (text == null) return false;
+        int s = 0;
+        for (int i = 0, len = text.length(); i < len; i++) {
+            s = step(s, text.charAt(i));
+            if (out[s] > 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Replaces every character covered by a dictionary word with {@code *}. Returns {@code text}
+     * itself when nothing matches.
+     */
+    public String mask(String text) {
+        if (text == null) return null;
+        char[] masked = null;
+        int maskedTo = 0;
+        int s = 0;
+        for (int i = 0, len = text.length(); i < len; i++) {
+            s = step(s, text.charAt(i));
+            int l = out[s];
+            if (l == 0) continue;
+            if (masked == null) masked = text.toCharArray();
+            // shorter words ending here are suffixes of the longest, so one range covers them all
+            int from = Math.max(i + 1 - l, maskedTo);
+            Arrays.fill(masked, from, i + 1, '*');
+            maskedTo = i + 1;
+        }
+        return masked == null ? text : new String(masked);
+    }
+
+    private int step(int s, char c) {
+        while (s != 0) {
+            int t = child(s, c);
+            if (t >= 0) return t;
+            s = fail[s];
+        }
+        return root[c];
+    }
+
+    private int child(int s, char c) {
+        int from = first[s];
+        int to = first[s + 1];
+        if (from == to) return -1;
+        int k = Arrays.binarySearch(keys, from, to, c);
+        return k >= 0 ? next[k] : -1;
+    }
+}
@@ -1,41 +1,130 @@
 package com.edu.util;
 
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Set;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Masks sensitive words in user text. The dictionary is read from {@code sensitive.wordsFile} (one
+ * word per line, {@code #} starts a comment), or the bundled {@code sensitive-words.txt} when unset.
+ * <p>
+ * The compiled {@link SensitiveWordMatcher} is replaced atomically by {@link #reload}, which the
+ * background job started by {@link #start} calls whenever the file's modification time changes and
+ * admins can trigger through {@code POST /api/admin/sensitive-words/reload}.
+ */
 public class SensitiveWordUtil {
-    private static final Set<String> SENSITIVE_WORDS = new HashSet<>(Arrays.asList(
-        "暴力", "色情", "赌博", "笨蛋", "傻瓜", "垃圾", "死", "杀"
-    ));
+    private static final String BUNDLED = "/sensitive-words.txt";
+
+    private static volatile SensitiveWordMatcher matcher = SensitiveWordMatcher.compile(List.of());
+    private static long loadedModified;
+    private static ScheduledExecutorService scheduler;
+
+    static {
+        try {
+            reload();
+        } catch (IOException e) {
+            e.printStackTrace();
+            // an unreadable configured file must not leave comments unfiltered
+            try (InputStream in = SensitiveWordUtil.class.getResourceAsStream(BUNDLED)) {
+                if (in != null) matcher = SensitiveWordMatcher.compile(parse(in));
+            } catch (IOException ignored) {
+                // keep the empty dictionary
+            }
+        }
+    }
 
     public static String filter(String text) {
         if (text == null || text.isEmpty()) {
             return text;
         }
-        
-        String result = text;
-        for (String word : SENSITIVE_WORDS) {
-            if (result.contains(word)) {
-                String replacement = "";
-                for (int i = 0; i < word.length(); i++) {
-                    replacement += "*";
-                }
-                result = result.replace(word, replacement);
-            }
-        }
-        return result;
+        return matcher.mask(text);
     }
-    
+
     public static boolean containsSensitive(String text) {
         if (text == null || text.isEmpty()) {
             return false;
         }
-        for (String word : SENSITIVE_WORDS) {
-            if (text.contains(word)) {
-                return true;
+        return matcher.contains(text);
+    }
+
+    /**
+     * Reads the dictionary again and swaps it in. On failure the current dictionary stays in use.
+     * Returns the number of words loaded.
+     */
+    public static synchronized int reload() throws IOException {
+        File file = configuredFile();
+        long modified = file != null ? file.lastModified() : 0;
+        List<String> words;
+        try (InputStream in = file != null ? new FileInputStream(file) : SensitiveWordUtil.class.getResourceAsStream(BUNDLED)) {
+            if (in == null) throw new IOException("Missing " + BUNDLED);
+            words = parse(in);
+        }
+        SensitiveWordMatcher compiled = SensitiveWordMatcher.compile(words);
+        matcher = compiled;
+        loadedModified = modified;
+        return compiled.size();
+    }
+
+    public static int size() {
+        return matcher.size();
+    }
+
+    public static synchronized void start() {
+        if (scheduler != null || configuredFile() == null) return;
+        long interval = Math.max(1, AppConfig.getLong("sensitive.reloadSeconds", 30));
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "sensitive-words-reload");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                File file = configuredFile();
+                long modified;
+                synchronized (SensitiveWordUtil.class) {
+                    modified = loadedModified;
+                }
+                if (file != null && file.isFile() && file.lastModified() != modified) {
+                    int n = reload();
+                    System.out.println("SensitiveWordUtil: loaded " + n + " words from " + file);
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    public static synchronized void stop() {
+        if (scheduler == null) return;
+        scheduler.shutdownNow();
+        scheduler = null;
+    }
+
+    static List<String> parse(InputStream in) throws IOException {
+        List<String> words = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int hash = line.indexOf('#');
+                if (hash >= 0) line = line.substring(0, hash);
+                line = line.strip();
+                if (!line.isEmpty()) words.add(line);
             }
         }
-        return false;
+        return words;
+    }
+
+    private static File configuredFile() {
+        String path = AppConfig.getString("sensitive.wordsFile", "");
+        return path.isBlank() ? null : new File(path);
     }
 }
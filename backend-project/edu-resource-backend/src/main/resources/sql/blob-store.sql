@@ -0,0 +1,17 @@
+-- Content-addressed blob store: one row per distinct file, counting the rows that point at it as
+-- 'sha256:<hash>' (resource.file_path, comment_image.file_path, chat_message.media_file_path).
+-- Rows with ref_count = 0 are removed, together with the file, by the blob garbage collector.
+
+CREATE TABLE IF NOT EXISTS file_blob (
+    hash CHAR(64) NOT NULL PRIMARY KEY,
+    size BIGINT NOT NULL,
+    ref_count INT NOT NULL DEFAULT 0,
+    created_at DATETIME NOT NULL,
+    released_at DATETIME NULL,
+    KEY idx_file_blob_gc (ref_count, released_at)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- Lets the collector confirm a blob is unreferenced before deleting it
+ALTER TABLE resource ADD INDEX idx_resource_file_path (file_path);
+ALTER TABLE comment_image ADD INDEX idx_comment_image_file_path (file_path);
+ALTER TABLE chat_message ADD INDEX idx_chat_message_media_path (media_file_path);
@@ -0,0 +1,10 @@
+-- Incremental chat sync (/api/chat/sync).
+-- chat_conversation.last_message_id is the conversation's high-water mark; sync reads messages with
+-- "WHERE conversation_id = ? AND id > ? ORDER BY id" and conversations with "last_message_id > ?".
+
+ALTER TABLE chat_conversation ADD COLUMN last_message_id BIGINT NULL AFTER user2_id;
+UPDATE chat_conversation c SET last_message_id = (SELECT MAX(m.id) FROM chat_message m WHERE m.conversation_id = c.id);
+
+ALTER TABLE chat_message ADD INDEX idx_chat_message_conv_id (conversation_id, id);
+ALTER TABLE chat_conversation ADD INDEX idx_chat_conversation_user1_last (user1_id, last_message_id);
+ALTER TABLE chat_conversation ADD INDEX idx_chat_conversation_user2_last (user2_id, last_message_id);
@@ -0,0 +1,29 @@
+-- Per-thread aggregates stored on root comments (see ThreadAggregates), so the comment list
+-- no longer counts replies or runs a window query over them on every page view.
+-- Maintained in the transactions that add or delete replies and repaired by CounterReconciler.
+
+ALTER TABLE comment
+    ADD COLUMN reply_count INT NOT NULL DEFAULT 0,
+    ADD COLUMN last_reply_id INT NULL,
+    ADD COLUMN last_reply_time DATETIME NULL,
+    ADD COLUMN preview_reply_ids VARCHAR(64) NULL;
+
+-- recounts after a delete and the reconciler read threads by root
+ALTER TABLE comment ADD INDEX idx_comment_root (root_id, id);
+
+-- backfill existing threads
+UPDATE comment r
+    JOIN (SELECT root_id, COUNT(*) AS cnt, MAX(id) AS last_id FROM comment
+          WHERE id <> root_id GROUP BY root_id) s ON s.root_id = r.id
+    JOIN comment l ON l.id = s.last_id
+SET r.reply_count = s.cnt, r.last_reply_id = s.last_id, r.last_reply_time = l.create_time
+WHERE r.parent_id IS NULL;
+
+UPDATE comment r
+    JOIN (SELECT parent_id, GROUP_CONCAT(id ORDER BY create_time, id SEPARATOR ',') AS ids FROM (
+              SELECT id, parent_id, create_time,
+                     ROW_NUMBER() OVER (PARTITION BY parent_id ORDER BY create_time, id) AS rn
+              FROM comment WHERE parent_id IS NOT NULL) t
+          WHERE t.rn <= 2 GROUP BY parent_id) p ON p.parent_id = r.id
+SET r.preview_reply_ids = p.ids
+WHERE r.parent_id IS NULL;
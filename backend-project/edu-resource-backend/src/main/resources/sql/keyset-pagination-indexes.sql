@@ -0,0 +1,9 @@
+-- Composite indexes backing cursor (keyset) pagination on (create_time, id).
+-- Each list reads "WHERE <filter> AND (t < ? OR (t = ? AND id < ?)) ORDER BY t DESC, id DESC LIMIT ?"
+-- (CursorUtil.condition; ascending with > for replies), which these indexes answer with a range scan.
+
+ALTER TABLE resource ADD INDEX idx_resource_public_created (is_public, created_at, id);
+ALTER TABLE comment ADD INDEX idx_comment_root_list (resource_id, parent_id, create_time, id);
+ALTER TABLE comment ADD INDEX idx_comment_parent_time (parent_id, create_time, id);
+ALTER TABLE chat_message ADD INDEX idx_chat_message_conv_time (conversation_id, create_time, id);
+ALTER TABLE notification ADD INDEX idx_notification_user_time (user_id, create_time, id);
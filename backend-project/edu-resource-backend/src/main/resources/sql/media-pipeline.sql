@@ -0,0 +1,9 @@
+-- Asynchronous image processing for comment and chat uploads.
+-- Rows are inserted as 'processing' and switched to 'ready' (or 'failed') by the media pipeline;
+-- existing rows are already processed. The status indexes back the restart recovery scan.
+
+ALTER TABLE comment_image ADD COLUMN status VARCHAR(16) NOT NULL DEFAULT 'ready';
+ALTER TABLE chat_message ADD COLUMN status VARCHAR(16) NOT NULL DEFAULT 'ready';
+
+ALTER TABLE comment_image ADD INDEX idx_comment_image_status (status);
+ALTER TABLE chat_message ADD INDEX idx_chat_message_status (status);
@@ -0,0 +1,4 @@
+-- Backs the unread-count load and the periodic reconcile
+-- ("WHERE user_id [= ? | IN (...)] AND is_read = 0") and mark-all-read's update.
+
+ALTER TABLE notification ADD INDEX idx_notification_user_unread (user_id, is_read);
@@ -0,0 +1,23 @@
+-- Related resources (see RelatedResources): per-user downloads, which the download counter alone
+-- cannot provide, and the precomputed top related resources of each resource read by the detail page.
+
+CREATE TABLE IF NOT EXISTS resource_download (
+    user_id INT NOT NULL,
+    resource_id INT NOT NULL,
+    create_time DATETIME NOT NULL,
+    PRIMARY KEY (user_id, resource_id),
+    KEY idx_resource_download_resource (resource_id),
+    CONSTRAINT fk_resource_download_user FOREIGN KEY (user_id) REFERENCES user(id) ON DELETE CASCADE,
+    CONSTRAINT fk_resource_download_resource FOREIGN KEY (resource_id) REFERENCES resource(id) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+CREATE TABLE IF NOT EXISTS resource_related (
+    resource_id INT NOT NULL,
+    related_id INT NOT NULL,
+    score DOUBLE NOT NULL,
+    computed_at DATETIME NOT NULL,
+    PRIMARY KEY (resource_id, related_id),
+    KEY idx_resource_related_computed (computed_at),
+    CONSTRAINT fk_resource_related_resource FOREIGN KEY (resource_id) REFERENCES resource(id) ON DELETE CASCADE,
+    CONSTRAINT fk_resource_related_related FOREIGN KEY (related_id) REFERENCES resource(id) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
@@ -0,0 +1,67 @@
+package com.edu.auth;
+
+import com.edu.util.JwtUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TokenVerifierTest {
+
+    @Test
+    public void verifiesOnceAndCachesThePrincipal() {
+        TokenVerifier verifier = new TokenVerifier(16, System::currentTimeMillis);
+        String token = JwtUtil.generateToken(42, "alice", "teacher");
+
+        Principal p = verifier.verify(token);
+        Assert.assertEquals(42, p.userId());
+        Assert.assertEquals("alice", p.username());
+        Assert.assertEquals("teacher", p.role());
+        Assert.assertFalse(p.isAdmin());
+        Assert.assertSame(p, verifier.verify(token));
+        Assert.assertEquals(1, verifier.size());
+    }
+
+    @Test
+    public void jwtClaimGettersReadTheCachedPrincipal() {
+        String token = JwtUtil.generateToken(7, "bob", "admin");
+        Principal p = TokenVerifier.get().verify(token);
+        Assert.assertEquals(Integer.valueOf(7), JwtUtil.getUserIdFromToken(token));
+        Assert.assertEquals("bob", JwtUtil.getUsernameFromToken(token));
+        Assert.assertEquals("admin", JwtUtil.getRoleFromToken(token));
+        Assert.assertSame(p, TokenVerifier.get().verify(token));
+        Assert.assertNull(JwtUtil.getUserIdFromToken("not.a.jwt"));
+    }
+
+    @Test
+    public void rejectsBadTokensWithoutCachingThem() {
+        TokenVerifier verifier = new TokenVerifier(16, System::currentTimeMillis);
+        String token = JwtUtil.generateToken(42, "alice", "teacher");
+        Assert.assertNull(verifier.verify(null));
+        Assert.assertNull(verifier.verify("not.a.jwt"));
+        Assert.assertNull(verifier.verify(token.substring(0, token.length() - 2) + "xx"));
+        Assert.assertEquals(0, verifier.size());
+    }
+
+    @Test
+    public void cachedEntriesExpireWithTheToken() {
+        AtomicLong now = new AtomicLong(System.currentTimeMillis());
+        TokenVerifier verifier = new TokenVerifier(16, now::get);
+        String token = JwtUtil.generateToken(42, "alice", "teacher");
+        Principal p = verifier.verify(token);
+        Assert.assertNotNull(p);
+
+        now.set(p.expiresAt());
+        Assert.assertNull(verifier.verify(token));
+        Assert.assertEquals(0, verifier.size());
+    }
+
+    @Test
+    public void evictsBeyondTheBound() {
+        TokenVerifier verifier = new TokenVerifier(2, System::currentTimeMillis);
+        for (int i = 1; i <= 5; i++) {
+            Assert.assertNotNull(verifier.verify(JwtUtil.generateToken(i, "u" + i, "student")));
+        }
+        Assert.assertEquals(2, verifier.size());
+    }
+}
@@ -0,0 +1,129 @@
+package com.edu.chat;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+public class ChatBrokerTest {
+
+    private static class RecordingSink implements ChatBroker.Sink {
+        final List<String> frames = new ArrayList<>();
+        boolean closed;
+
+        @Override
+        public void send(String frame) {
+            frames.add(frame);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private static class FakeDirectory implements ChatBroker.Directory {
+        @Override
+        public int[] participants(long conversationId) {
+            return conversationId == 10 ? new int[]{1, 2} : null;
+        }
+
+        @Override
+        public Set<Integer> partners(int userId) {
+            return userId == 1 ? Set.of(2) : userId == 2 ? Set.of(1) : Set.of();
+        }
+    }
+
+    @Test
+    public void deliversMessagesTypingAndPresence() {
+        ChatBroker broker = new ChatBroker(new FakeDirectory(), Runnable::run, 16);
+        RecordingSink alice = new RecordingSink();
+        RecordingSink bob = new RecordingSink();
+        RecordingSink carol = new RecordingSink();
+
+        broker.register(1, alice);
+        Assert.assertTrue(alice.frames.get(0).contains("\"presenceSnapshot\""));
+        broker.register(2, bob);
+        broker.register(3, carol);
+        Assert.assertTrue(last(alice).contains("\"presence\"") && last(alice).contains("\"online\":true"));
+        Assert.assertTrue(bob.frames.get(0).contains("\"online\":[1]"));
+
+        Map<String, Object> message = new HashMap<>();
+        message.put("id", 99L);
+        message.put("text", "你好");
+        broker.messageCreated(10, 1, 2, message);
+        Assert.assertTrue(last(alice).contains("你好"));
+        Assert.assertTrue(last(bob).contains("\"type\":\"message\""));
+
+        Map<String, Object> update = new HashMap<>();
+        update.put("id", 99L);
+        update.put("status", "ready");
+        broker.messageUpdated(10, update);
+        Assert.assertTrue(last(bob).contains("\"type\":\"messageUpdated\""));
+        Assert.assertEquals(1, carol.frames.size());
+
+        broker.typing(2, 10);
+        Assert.assertTrue(last(alice).contains("\"typing\""));
+        // not a participant: nothing forwarded
+        int before = alice.frames.size();
+        broker.typing(3, 10);
+        Assert.assertEquals(before, alice.frames.size());
+        Assert.assertEquals(1, carol.frames.size());
+
+        broker.unregister(2, bob);
+        Assert.assertTrue(last(alice).contains("\"online\":false"));
+        Assert.assertFalse(broker.isOnline(2));
+    }
+
+    @Test
+    public void disconnectsSocketWhoseQueueOverflows() {
+        List<Runnable> pending = new ArrayList<>();
+        Executor parked = pending::add;
+        ChatBroker broker = new ChatBroker(new FakeDirectory(), parked, 4);
+        RecordingSink slow = new RecordingSink();
+        broker.register(3, slow);
+
+        Map<String, Object> message = new HashMap<>();
+        for (int i = 0; i < 4; i++) {
+            broker.messageCreated(20, 3, 4, message);
+        }
+        Assert.assertTrue(slow.closed);
+        Assert.assertEquals(0, broker.sessionCount());
+        // only one drain is ever scheduled per socket
+        Assert.assertEquals(1, pending.size());
+    }
+
+    @Test
+    public void dropsSocketThatFailsToWrite() {
+        ChatBroker broker = new ChatBroker(new FakeDirectory(), Runnable::run, 16);
+        ChatBroker.Sink failing = new ChatBroker.Sink() {
+            boolean first = true;
+
+            @Override
+            public void send(String frame) throws IOException {
+                if (first) {
+                    first = false;
+                    return;
+                }
+                throw new IOException("reset");
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        broker.register(1, failing);
+        broker.messageCreated(10, 2, 1, new HashMap<>());
+        Assert.assertFalse(broker.isOnline(1));
+    }
+
+    private static String last(RecordingSink sink) {
+        return sink.frames.get(sink.frames.size() - 1);
+    }
+}
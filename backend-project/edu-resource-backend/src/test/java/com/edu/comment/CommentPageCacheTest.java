@@ -0,0 +1,48 @@
+package com.edu.comment;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CommentPageCacheTest {
+
+    @Test
+    public void invalidateDropsPagesOfThatResource() {
+        CommentPageCache cache = new CommentPageCache(1024 * 1024, 60_000);
+        cache.put(1, 20, cache.version(1), "{\"a\":1}");
+        cache.put(2, 20, cache.version(2), "{\"b\":2}");
+        Assert.assertEquals("{\"a\":1}", cache.get(1, 20));
+        Assert.assertNull(cache.get(1, 10));
+
+        cache.invalidate(1);
+        Assert.assertNull(cache.get(1, 20));
+        Assert.assertEquals("{\"b\":2}", cache.get(2, 20));
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void pageReadBeforeAWriteIsNotCached() {
+        CommentPageCache cache = new CommentPageCache(1024 * 1024, 60_000);
+        long version = cache.version(1);
+        // a comment is posted while the page is being queried
+        cache.invalidate(1);
+        cache.put(1, 20, version, "{\"stale\":true}");
+        Assert.assertNull(cache.get(1, 20));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void leastRecentlyUsedPagesAreEvictedOverBudget() {
+        String page = "x".repeat(1000);
+        // room for two pages
+        CommentPageCache cache = new CommentPageCache(5000, 60_000);
+        cache.put(1, 20, cache.version(1), page);
+        cache.put(2, 20, cache.version(2), page);
+        cache.get(1, 20);
+        cache.put(3, 20, cache.version(3), page);
+
+        Assert.assertNotNull(cache.get(1, 20));
+        Assert.assertNull(cache.get(2, 20));
+        Assert.assertNotNull(cache.get(3, 20));
+        Assert.assertTrue(cache.bytes() <= 5000);
+    }
+}
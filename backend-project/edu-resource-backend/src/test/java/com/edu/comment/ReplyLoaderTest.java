@@ -0,0 +1,48 @@
+package com.edu.comment;
+
+import com.edu.util.CursorUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+public class ReplyLoaderTest {
+
+    @Test
+    public void capsRepliesPerParent() {
+        ReplyLoader.Grouper<String> grouper = new ReplyLoader.Grouper<>(2);
+        // rows as the query returns them: cap + 1 per parent at most, ordered by parent then time
+        grouper.add(1, 1000L, 11, "a");
+        grouper.add(1, 2000L, 12, "b");
+        grouper.add(1, 3000L, 13, "c");
+        grouper.add(2, 1500L, 21, "d");
+
+        Map<Integer, ReplyLoader.ReplyThread<String>> result = grouper.result();
+        Assert.assertEquals(List.of("a", "b"), result.get(1).replies());
+        Assert.assertEquals(List.of("d"), result.get(2).replies());
+        Assert.assertNull(result.get(3));
+    }
+
+    @Test
+    public void cursorContinuesAfterLastReturnedReply() {
+        ReplyLoader.Grouper<String> grouper = new ReplyLoader.Grouper<>(2);
+        grouper.add(1, 1000L, 11, "a");
+        grouper.add(1, 2000L, 12, "b");
+        Assert.assertTrue(grouper.full(1));
+        grouper.add(1, 3000L, 13, null);
+        grouper.add(2, 1500L, 21, "d");
+        grouper.add(2, 1600L, 22, "e");
+
+        Map<Integer, ReplyLoader.ReplyThread<String>> result = grouper.result();
+        ReplyLoader.ReplyThread<String> first = result.get(1);
+        Assert.assertTrue(first.hasMore());
+        CursorUtil.Cursor cursor = CursorUtil.decode(first.nextCursor());
+        Assert.assertEquals(2000L, cursor.time());
+        Assert.assertEquals(12L, cursor.id());
+
+        // exactly cap replies: nothing more to load
+        Assert.assertFalse(result.get(2).hasMore());
+        Assert.assertNull(result.get(2).nextCursor());
+    }
+}
@@ -0,0 +1,28 @@
+package com.edu.comment;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public class ThreadAggregatesTest {
+
+    @Test
+    public void previewsKeepTheFirstDirectReplies() {
+        List<Integer> previews = ThreadAggregates.addPreview(List.of(), 10);
+        previews = ThreadAggregates.addPreview(previews, 12);
+        Assert.assertEquals(List.of(10, 12), previews);
+        // later replies don't displace the first ones
+        Assert.assertEquals(List.of(10, 12), ThreadAggregates.addPreview(previews, 15));
+        // an earlier reply that committed late takes its place
+        Assert.assertEquals(List.of(10, 11), ThreadAggregates.addPreview(previews, 11));
+        Assert.assertEquals(List.of(10, 12), ThreadAggregates.addPreview(previews, 12));
+    }
+
+    @Test
+    public void parsesStoredIds() {
+        Assert.assertEquals(List.of(), ThreadAggregates.parseIds(null));
+        Assert.assertEquals(List.of(), ThreadAggregates.parseIds(""));
+        Assert.assertEquals(List.of(3, 41), ThreadAggregates.parseIds("3,41"));
+    }
+}
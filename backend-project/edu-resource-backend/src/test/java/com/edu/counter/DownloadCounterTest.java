@@ -0,0 +1,92 @@
+package com.edu.counter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class DownloadCounterTest {
+
+    @Test
+    public void flushesAccumulatedDeltasInOneBatch() {
+        Map<Integer, Long> written = new HashMap<>();
+        DownloadCounter counter = new DownloadCounter(deltas -> deltas.forEach((k, v) -> written.merge(k, v, Long::sum)));
+        for (int i = 0; i < 5; i++) counter.increment(1);
+        counter.increment(2);
+
+        Assert.assertEquals(5, counter.pendingFor(1));
+        Assert.assertEquals(6, counter.flush());
+        Assert.assertEquals(Long.valueOf(5), written.get(1));
+        Assert.assertEquals(Long.valueOf(1), written.get(2));
+        Assert.assertEquals(0, counter.pendingFor(1));
+        Assert.assertEquals(0, counter.flush());
+    }
+
+    @Test
+    public void failedFlushKeepsDeltasForRetry() {
+        AtomicBoolean fail = new AtomicBoolean(true);
+        Map<Integer, Long> written = new HashMap<>();
+        DownloadCounter counter = new DownloadCounter(deltas -> {
+            if (fail.get()) throw new SQLException("db down");
+            deltas.forEach((k, v) -> written.merge(k, v, Long::sum));
+        });
+        counter.increment(7);
+        counter.increment(7);
+
+        Assert.assertEquals(0, counter.flush());
+        Assert.assertEquals(2, counter.pendingFor(7));
+        Assert.assertEquals(1L, counter.getStats().get("failedFlushes"));
+
+        counter.increment(7);
+        fail.set(false);
+        Assert.assertEquals(3, counter.flush());
+        Assert.assertEquals(Long.valueOf(3), written.get(7));
+    }
+
+    @Test
+    public void noIncrementIsLostWhileFlushingConcurrently() throws Exception {
+        Map<Integer, Long> written = new HashMap<>();
+        DownloadCounter counter = new DownloadCounter(deltas -> {
+            synchronized (written) {
+                deltas.forEach((k, v) -> written.merge(k, v, Long::sum));
+            }
+        });
+
+        int threads = 8;
+        int perThread = 20_000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            pool.execute(() -> {
+                for (int i = 0; i < perThread; i++) counter.increment(i % 3);
+                done.countDown();
+            });
+        }
+        while (done.getCount() > 0) {
+            counter.flush();
+        }
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        counter.flush();
+
+        long total = 0;
+        for (long v : written.values()) total += v;
+        Assert.assertEquals((long) threads * perThread, total);
+    }
+
+    @Test
+    public void stopFlushesPendingCounts() {
+        Map<Integer, Long> written = new HashMap<>();
+        DownloadCounter counter = new DownloadCounter(deltas -> written.putAll(deltas));
+        counter.increment(3);
+        counter.stop();
+        Assert.assertEquals(Long.valueOf(1), written.get(3));
+    }
+}
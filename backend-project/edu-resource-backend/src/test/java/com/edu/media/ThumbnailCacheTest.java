@@ -0,0 +1,82 @@
+package com.edu.media;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ThumbnailCacheTest {
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("thumbs").toFile();
+        dir.deleteOnExit();
+    }
+
+    @Test
+    public void concurrentMissesRenderOnce() throws Exception {
+        ThumbnailCache cache = new ThumbnailCache(dir, 1 << 20);
+        AtomicInteger renders = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<File>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(pool.submit(() -> cache.get("avatars/a.png@1/48x48", out -> {
+                    renders.incrementAndGet();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    Files.write(out.toPath(), new byte[100]);
+                })));
+            }
+            Thread.sleep(100);
+            release.countDown();
+            File first = results.get(0).get(5, TimeUnit.SECONDS);
+            for (Future<File> f : results) {
+                Assert.assertEquals(first, f.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        Assert.assertEquals(1, renders.get());
+        Assert.assertEquals(100, cache.totalBytes());
+
+        cache.get("avatars/a.png@1/48x48", out -> renders.incrementAndGet());
+        Assert.assertEquals(1, renders.get());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedByBytes() throws Exception {
+        ThumbnailCache cache = new ThumbnailCache(dir, 250);
+        File a = cache.get("a", out -> Files.write(out.toPath(), new byte[100]));
+        File b = cache.get("b", out -> Files.write(out.toPath(), new byte[100]));
+        // touch a so b is the eldest
+        cache.get("a", out -> Assert.fail("cached"));
+        File c = cache.get("c", out -> Files.write(out.toPath(), new byte[100]));
+
+        Assert.assertTrue(a.exists());
+        Assert.assertFalse(b.exists());
+        Assert.assertTrue(c.exists());
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(200, cache.totalBytes());
+
+        // the index is rebuilt from the directory
+        ThumbnailCache reloaded = new ThumbnailCache(dir, 250);
+        Assert.assertEquals(2, reloaded.size());
+        Assert.assertEquals(200, reloaded.totalBytes());
+    }
+}
@@ -0,0 +1,79 @@
+package com.edu.notify;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class NotificationHubTest {
+
+    private static class RecordingSink implements NotificationHub.Sink {
+        final List<String> frames = new ArrayList<>();
+        boolean closed;
+        boolean broken;
+
+        @Override
+        public void send(String frame) throws IOException {
+            if (broken) throw new IOException("gone");
+            frames.add(frame);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    @Test
+    public void pushesToSubscribersOnlyAndQueriesOnlyForThem() {
+        AtomicInteger queries = new AtomicInteger();
+        NotificationHub hub = new NotificationHub(userId -> {
+            queries.incrementAndGet();
+            return 3;
+        }, Runnable::run, 5);
+
+        // nobody listening: no query, nothing sent
+        hub.notificationCreated(new NotificationEvent(7, "t", "c", "resource"));
+        hub.unreadChanged(7);
+        Assert.assertEquals(0, queries.get());
+
+        RecordingSink sink = new RecordingSink();
+        hub.subscribe(7, sink);
+        Assert.assertEquals(1, sink.frames.size());
+        Assert.assertTrue(sink.frames.get(0).contains("event: unreadCount\ndata: 3\n\n"));
+
+        hub.notificationCreated(new NotificationEvent(7, "新回复", "有人回复了你的评论", "resource"));
+        String frame = sink.frames.get(1);
+        Assert.assertTrue(frame.startsWith("event: notification\ndata: {"));
+        Assert.assertTrue(frame.contains("新回复"));
+        Assert.assertTrue(frame.endsWith("event: unreadCount\ndata: 3\n\n"));
+
+        hub.unreadChanged(8);
+        Assert.assertEquals(2, queries.get());
+    }
+
+    @Test
+    public void dropsBrokenStreamsAndCapsStreamsPerUser() {
+        NotificationHub hub = new NotificationHub(userId -> 0, Runnable::run, 2);
+        RecordingSink first = new RecordingSink();
+        RecordingSink second = new RecordingSink();
+        RecordingSink third = new RecordingSink();
+        hub.subscribe(1, first);
+        hub.subscribe(1, second);
+        hub.subscribe(1, third);
+        Assert.assertTrue(first.closed);
+        Assert.assertEquals(2, hub.subscriberCount());
+
+        second.broken = true;
+        hub.heartbeat();
+        Assert.assertTrue(second.closed);
+        Assert.assertEquals(1, hub.subscriberCount());
+        Assert.assertEquals(": ping\n\n", third.frames.get(third.frames.size() - 1));
+
+        hub.unsubscribe(1, third);
+        Assert.assertEquals(0, hub.subscriberCount());
+    }
+}
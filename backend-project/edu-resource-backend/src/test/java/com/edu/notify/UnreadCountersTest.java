@@ -0,0 +1,77 @@
+package com.edu.notify;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class UnreadCountersTest {
+
+    private static class FakeStore implements UnreadCounters.Store {
+        final Map<Integer, Integer> table = new HashMap<>();
+        final AtomicInteger loads = new AtomicInteger();
+
+        @Override
+        public int count(int userId) {
+            loads.incrementAndGet();
+            return table.getOrDefault(userId, 0);
+        }
+
+        @Override
+        public Map<Integer, Integer> counts(List<Integer> userIds) {
+            Map<Integer, Integer> result = new HashMap<>();
+            for (Integer id : userIds) {
+                if (table.containsKey(id)) result.put(id, table.get(id));
+            }
+            return result;
+        }
+    }
+
+    @Test
+    public void loadsOnceThenAppliesDeltas() throws Exception {
+        FakeStore store = new FakeStore();
+        store.table.put(1, 4);
+        UnreadCounters counters = new UnreadCounters(store);
+
+        // deltas for users nobody has asked about are dropped
+        counters.added(2, 3);
+        Assert.assertEquals(0, counters.size());
+
+        Assert.assertEquals(4, counters.get(1));
+        counters.added(1, 2);
+        counters.read(1, 1);
+        Assert.assertEquals(5, counters.get(1));
+        Assert.assertEquals(1, store.loads.get());
+
+        // mark-all-read flips 5 rows while one more arrives: order doesn't matter
+        counters.read(1, 5);
+        counters.added(1, 1);
+        Assert.assertEquals(1, counters.get(1));
+
+        counters.read(1, 3);
+        Assert.assertEquals(0, counters.get(1));
+    }
+
+    @Test
+    public void reconcileCorrectsDriftAndEvictsIdleUsers() throws Exception {
+        FakeStore store = new FakeStore();
+        store.table.put(1, 2);
+        store.table.put(2, 7);
+        UnreadCounters counters = new UnreadCounters(store);
+        counters.get(1);
+        counters.get(2);
+
+        store.table.put(1, 3);
+        store.table.remove(2);
+        Assert.assertEquals(2, counters.reconcile(0));
+        Assert.assertEquals(3, counters.get(1));
+        Assert.assertEquals(0, counters.get(2));
+        Assert.assertEquals(0, counters.reconcile(0));
+
+        Assert.assertEquals(0, counters.reconcile(Long.MAX_VALUE));
+        Assert.assertEquals(0, counters.size());
+    }
+}
@@ -0,0 +1,59 @@
+package com.edu.recommend;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Set;
+
+public class RecommendationServiceTest {
+
+    private static RecommendationService catalog(RecommendationService.ProfileLoader loader) {
+        RecommendationService service = new RecommendationService(100, 30, loader);
+        // 1 and 2: popular programming resources; 3: unpopular math; 4: unpopular math by uploader 9
+        service.put(new RecommendationService.Item(1, "编程入门", "pdf", 7, 500, 40, 10));
+        service.put(new RecommendationService.Item(2, "编程入门", "mp4", 7, 300, 20, 5));
+        service.put(new RecommendationService.Item(3, "数学", "pdf", 8, 2, 0, 0));
+        service.put(new RecommendationService.Item(4, "数学", "pdf", 9, 1, 0, 0));
+        return service;
+    }
+
+    @Test
+    public void guestsGetPopularFirst() {
+        RecommendationService service = catalog(userId -> new RecommendationService.Profile());
+        RecommendationService.Page page = service.recommend(null, null, null, null, 0, 10);
+        Assert.assertEquals(List.of(1, 2, 3, 4), page.ids());
+        Assert.assertEquals(4, page.total());
+    }
+
+    @Test
+    public void interestsOutrankPopularity() {
+        RecommendationService service = catalog(userId -> {
+            RecommendationService.Profile profile = new RecommendationService.Profile();
+            profile.add("数学", 9, RecommendationService.COLLECT_WEIGHT * 3);
+            return profile;
+        });
+        RecommendationService.Page page = service.recommend(42, null, null, null, 0, 2);
+        // the uploader the user follows comes before the other math resource
+        Assert.assertEquals(List.of(4, 3), page.ids());
+        Assert.assertEquals(4, page.total());
+
+        Assert.assertEquals(List.of(1, 2), service.recommend(42, null, null, null, 2, 2).ids());
+    }
+
+    @Test
+    public void eventsUpdateCachedProfileAndFilters() {
+        RecommendationService service = catalog(userId -> new RecommendationService.Profile());
+        Assert.assertEquals(List.of(1, 2, 3, 4), service.recommend(42, null, null, null, 0, 10).ids());
+
+        service.collected(42, 3, 1);
+        service.downloaded(42, 3);
+        Assert.assertEquals(3, (int) service.recommend(42, null, null, null, 0, 1).ids().get(0));
+
+        Assert.assertEquals(List.of(3, 4, 1), service.recommend(42, null, "pdf", null, 0, 10).ids());
+        Assert.assertEquals(List.of(2), service.recommend(42, null, null, Set.of(2, 99), 0, 10).ids());
+
+        service.removed(3);
+        Assert.assertEquals(List.of(4, 1, 2), service.recommend(42, null, null, null, 0, 10).ids());
+    }
+}
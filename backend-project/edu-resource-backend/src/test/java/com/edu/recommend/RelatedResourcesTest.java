@@ -0,0 +1,65 @@
+package com.edu.recommend;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+public class RelatedResourcesTest {
+
+    @Test
+    public void scoresAreCosineOfUserSets() {
+        Map<Integer, int[]> itemsByUser = new HashMap<>();
+        itemsByUser.put(1, new int[]{10, 20, 30});
+        itemsByUser.put(2, new int[]{10, 20});
+        itemsByUser.put(3, new int[]{10, 30});
+        itemsByUser.put(4, new int[]{20, 40});
+
+        Map<Integer, List<RelatedResources.Scored>> lists =
+                RelatedResources.compute(itemsByUser, List.of(10, 20, 30, 40), 10, ForkJoinPool.commonPool());
+
+        // 10 has users {1,2,3}; 20 has {1,2,4}; 30 has {1,3}
+        List<RelatedResources.Scored> related = lists.get(10);
+        Assert.assertEquals(2, related.size());
+        Assert.assertEquals(30, related.get(0).id());
+        Assert.assertEquals(2 / Math.sqrt(3 * 2), related.get(0).score(), 1e-9);
+        Assert.assertEquals(20, related.get(1).id());
+        Assert.assertEquals(2 / Math.sqrt(3 * 3), related.get(1).score(), 1e-9);
+
+        // 40 shares a single user with 20: below the minimum
+        Assert.assertFalse(lists.containsKey(40));
+        Assert.assertEquals(List.of(10), lists.get(20).stream().map(RelatedResources.Scored::id).toList());
+    }
+
+    @Test
+    public void onlyTargetsAreComputedAndListsAreCapped() {
+        // 200 items, every user interacted with a sliding window of them; enough to split the work
+        Map<Integer, int[]> itemsByUser = new HashMap<>();
+        for (int user = 0; user < 400; user++) {
+            int first = user % 200;
+            itemsByUser.put(user, IntStream.range(0, 8).map(i -> (first + i) % 200).toArray());
+        }
+        List<Integer> targets = IntStream.range(0, 200).boxed().toList();
+
+        Map<Integer, List<RelatedResources.Scored>> lists =
+                RelatedResources.compute(itemsByUser, targets, 3, new ForkJoinPool(4));
+        Assert.assertEquals(200, lists.size());
+        for (List<RelatedResources.Scored> list : lists.values()) {
+            Assert.assertEquals(3, list.size());
+            Assert.assertTrue(list.get(0).score() >= list.get(1).score());
+            Assert.assertTrue(list.get(1).score() >= list.get(2).score());
+        }
+        // nearest neighbours share the most windows
+        List<Integer> nearest = lists.get(100).stream().map(RelatedResources.Scored::id).sorted().toList();
+        Assert.assertTrue(nearest.stream().allMatch(id -> Math.abs(id - 100) <= 2));
+
+        Map<Integer, List<RelatedResources.Scored>> one =
+                RelatedResources.compute(itemsByUser, List.of(5, 9999), 3, ForkJoinPool.commonPool());
+        Assert.assertEquals(1, one.size());
+        Assert.assertEquals(lists.get(5), one.get(5));
+    }
+}
@@ -0,0 +1,62 @@
+package com.edu.search;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class ResourceSearchIndexTest {
+    private ResourceSearchIndex index;
+
+    @Before
+    public void setUp() {
+        index = new ResourceSearchIndex();
+        index.markLoaded();
+        index.index(new ResourceSearchIndex.Document(1, "数据结构与算法讲义", "链表和树的基础", "数据结构与算法", "pdf", true));
+        index.index(new ResourceSearchIndex.Document(2, "数据库原理", "SQL 与索引", "数据库", "pdf", true));
+        index.index(new ResourceSearchIndex.Document(3, "JavaScript 入门", "前端开发基础", "前端开发", "mp4", true));
+        index.index(new ResourceSearchIndex.Document(4, "私有数据笔记", "数据", "数据库", "pdf", false));
+    }
+
+    @Test
+    public void tokenizesCjkAsBigrams() {
+        Assert.assertEquals(Arrays.asList("数据", "据库", "sql"), SearchTokenizer.tokenize("数据库 SQL"));
+        Assert.assertEquals(Arrays.asList("树"), SearchTokenizer.tokenize("树"));
+    }
+
+    @Test
+    public void matchesAllTermsAndRanksTitleHitsFirst() {
+        List<Integer> ids = index.searchAll("数据", null, null);
+        Assert.assertEquals(Arrays.asList(2, 1), ids);
+
+        Assert.assertEquals(Arrays.asList(2), index.searchAll("数据库", null, null));
+        Assert.assertEquals(Arrays.asList(1), index.searchAll("树", null, null));
+        Assert.assertEquals(Arrays.asList(3), index.searchAll("java", null, null));
+        Assert.assertEquals(Arrays.asList(3), index.searchAll("script", null, null));
+        Assert.assertEquals(Arrays.asList(2), index.searchAll("q", null, null));
+        Assert.assertTrue(index.searchAll("物理", null, null).isEmpty());
+    }
+
+    @Test
+    public void filtersByCategoryAndFileTypeAndPaginates() {
+        Assert.assertEquals(Arrays.asList(1), index.searchAll("数据", "数据结构与算法", null));
+        Assert.assertTrue(index.searchAll("入门", null, "pdf").isEmpty());
+
+        ResourceSearchIndex.SearchResult page = index.search("数据", null, null, 1, 1);
+        Assert.assertEquals(2, page.total());
+        Assert.assertEquals(Arrays.asList(1), page.ids());
+    }
+
+    @Test
+    public void reindexAndRemoveUpdatePostings() {
+        index.index(new ResourceSearchIndex.Document(3, "物理实验", "力学", "物理", "mp4", true));
+        Assert.assertTrue(index.searchAll("java", null, null).isEmpty());
+        Assert.assertEquals(Arrays.asList(3), index.searchAll("物理", null, null));
+
+        index.remove(3);
+        Assert.assertTrue(index.searchAll("物理", null, null).isEmpty());
+        Assert.assertEquals(3, index.size());
+    }
+}
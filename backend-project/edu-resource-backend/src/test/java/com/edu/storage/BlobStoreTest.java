@@ -0,0 +1,67 @@
+package com.edu.storage;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+public class BlobStoreTest {
+    private static final String HASH = "0123456789abcdef".repeat(4);
+
+    private File root;
+    private BlobStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        root = Files.createTempDirectory("blobs").toFile();
+        root.deleteOnExit();
+        store = new BlobStore(new LocalStorageService(root), new File(root, ".work"));
+    }
+
+    @Test
+    public void identicalContentIsStoredOnce() throws Exception {
+        byte[] data = "lecture notes".getBytes(StandardCharsets.UTF_8);
+        BlobStore.Staged first = store.stage(new ByteArrayInputStream(data));
+        BlobStore.Staged second = store.stage(new ByteArrayInputStream(data));
+        Assert.assertEquals(first.hash(), second.hash());
+        Assert.assertEquals(data.length, first.size());
+
+        String a = store.commit(first);
+        String b = store.commit(second);
+        Assert.assertEquals(a, b);
+        Assert.assertEquals("blobs/" + first.hash().substring(0, 2) + "/" + first.hash().substring(2, 4) + "/" + first.hash(), a);
+        Assert.assertArrayEquals(data, Files.readAllBytes(new File(root, a).toPath()));
+        Assert.assertFalse(second.file().exists());
+    }
+
+    @Test
+    public void derivedFilesAreDeletedWithTheBlob() throws Exception {
+        BlobStore.Staged staged = store.stage(new ByteArrayInputStream("image".getBytes(StandardCharsets.UTF_8)));
+        File blob = new File(root, store.commit(staged));
+        String thumbKey = store.derive(staged.hash(), "t360.jpg", (source, out) ->
+                Files.copy(source.toPath(), out.toPath(), StandardCopyOption.REPLACE_EXISTING));
+        File thumb = new File(root, thumbKey);
+        Assert.assertTrue(thumb.exists());
+        // generated once, then reused
+        Assert.assertEquals(thumbKey, store.derive(staged.hash(), "t360.jpg", (source, out) -> Assert.fail("regenerated")));
+
+        store.delete(staged.hash());
+        Assert.assertFalse(blob.exists());
+        Assert.assertFalse(thumb.exists());
+    }
+
+    @Test
+    public void parsesReferencesAndNames() {
+        Assert.assertEquals(HASH, BlobStore.hashOf("sha256:" + HASH));
+        Assert.assertNull(BlobStore.hashOf("1700000000000_notes.pdf"));
+        Assert.assertNull(BlobStore.hashOf("sha256:../../etc/passwd"));
+        Assert.assertEquals(HASH, BlobStore.hashOfName(HASH + ".jpg"));
+        Assert.assertEquals(HASH, BlobStore.hashOfName(HASH));
+        Assert.assertNull(BlobStore.hashOfName("c_12_1700000000000_0.jpg"));
+    }
+}
@@ -0,0 +1,55 @@
+package com.edu.storage;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+public class LocalStorageServiceTest {
+    private File root;
+    private LocalStorageService storage;
+
+    @Before
+    public void setUp() throws Exception {
+        root = Files.createTempDirectory("storage").toFile();
+        root.deleteOnExit();
+        storage = new LocalStorageService(root);
+    }
+
+    @Test
+    public void putMovesTheFileUnderItsKey() throws Exception {
+        File src = File.createTempFile("upload", ".tmp", root);
+        Files.writeString(src.toPath(), "0123456789");
+        String key = Storage.shardedKey(Storage.AVATARS, "12_1700000000000.png");
+        storage.put(key, src);
+
+        Assert.assertFalse(src.exists());
+        Assert.assertEquals(new File(root, key), storage.localFile(key));
+        Assert.assertEquals(10, storage.stat(key).size());
+        try (InputStream in = storage.open(key, 3, 4)) {
+            Assert.assertEquals("3456", new String(in.readAllBytes(), StandardCharsets.US_ASCII));
+        }
+
+        List<String> keys = new ArrayList<>();
+        storage.list(Storage.AVATARS + "/", o -> keys.add(o.key()));
+        Assert.assertEquals(List.of(key), keys);
+
+        Assert.assertTrue(storage.delete(key));
+        Assert.assertNull(storage.stat(key));
+    }
+
+    @Test
+    public void shardsKeysAndRejectsTraversal() {
+        String key = Storage.shardedKey(Storage.AVATARS, "12_1700000000000.png");
+        Assert.assertTrue(key.matches("avatars/[0-9a-f]{2}/[0-9a-f]{2}/12_1700000000000\\.png"));
+        Assert.assertEquals(key, Storage.shardedKey(Storage.AVATARS, "12_1700000000000.png"));
+        Assert.assertThrows(IllegalArgumentException.class, () -> Storage.shardedKey(Storage.AVATARS, "../x"));
+        Assert.assertThrows(IllegalArgumentException.class, () -> storage.localFile("../etc/passwd"));
+    }
+}
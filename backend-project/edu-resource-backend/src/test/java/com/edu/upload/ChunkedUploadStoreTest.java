@@ -0,0 +1,141 @@
+package com.edu.upload;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+public class ChunkedUploadStoreTest {
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("chunked").toFile();
+        dir.deleteOnExit();
+    }
+
+    @Test
+    public void appendsChunksAndCompletes() throws Exception {
+        byte[] data = "hello chunked world".getBytes(StandardCharsets.UTF_8);
+        ChunkedUploadStore store = new ChunkedUploadStore(dir, 1024);
+        UploadSession session = newSession(data.length, sha256(data));
+
+        byte[] first = Arrays.copyOfRange(data, 0, 6);
+        byte[] second = Arrays.copyOfRange(data, 6, data.length);
+        Assert.assertEquals(6, store.appendChunk(session, 0, first.length, sha256(first), new ByteArrayInputStream(first)));
+        Assert.assertEquals(data.length, store.appendChunk(session, 6, second.length, sha256(second), new ByteArrayInputStream(second)));
+
+        File done = store.complete(session);
+        Assert.assertArrayEquals(data, Files.readAllBytes(done.toPath()));
+        Assert.assertEquals(sha256(data), session.getSha256());
+        store.finish(session);
+        Assert.assertNull(store.get(session.getId()));
+    }
+
+    @Test
+    public void corruptChunkIsRolledBack() throws Exception {
+        byte[] data = "0123456789".getBytes(StandardCharsets.UTF_8);
+        ChunkedUploadStore store = new ChunkedUploadStore(dir, 1024);
+        UploadSession session = newSession(data.length, null);
+        byte[] first = Arrays.copyOfRange(data, 0, 4);
+        store.appendChunk(session, 0, 4, sha256(first), new ByteArrayInputStream(first));
+
+        byte[] rest = Arrays.copyOfRange(data, 4, 10);
+        try {
+            store.appendChunk(session, 4, rest.length, sha256(first), new ByteArrayInputStream(rest));
+            Assert.fail("checksum mismatch accepted");
+        } catch (ChunkedUploadException e) {
+            Assert.assertEquals(422, e.getCode());
+        }
+        try {
+            // body shorter than the declared length
+            store.appendChunk(session, 4, rest.length, sha256(rest), new ByteArrayInputStream(rest, 0, 3));
+            Assert.fail("short chunk accepted");
+        } catch (ChunkedUploadException e) {
+            Assert.assertEquals(400, e.getCode());
+        }
+        Assert.assertEquals(4, session.getReceived());
+        Assert.assertEquals(4, store.partFile(session).length());
+
+        try {
+            store.appendChunk(session, 0, first.length, sha256(first), new ByteArrayInputStream(first));
+            Assert.fail("stale offset accepted");
+        } catch (ChunkedUploadException e) {
+            Assert.assertEquals(409, e.getCode());
+        }
+
+        // rejected chunks must not leak into the running whole-file hash
+        store.appendChunk(session, 4, rest.length, sha256(rest), new ByteArrayInputStream(rest));
+        store.complete(session);
+        Assert.assertEquals(sha256(data), session.getSha256());
+    }
+
+    @Test
+    public void resumesFromPersistedState() throws Exception {
+        byte[] data = "resume me please".getBytes(StandardCharsets.UTF_8);
+        ChunkedUploadStore store = new ChunkedUploadStore(dir, 1024);
+        UploadSession session = newSession(data.length, sha256(data));
+        byte[] first = Arrays.copyOfRange(data, 0, 7);
+        store.appendChunk(session, 0, first.length, sha256(first), new ByteArrayInputStream(first));
+
+        // a fresh store reads the session back from disk, as after a restart
+        ChunkedUploadStore restarted = new ChunkedUploadStore(dir, 1024);
+        UploadSession resumed = restarted.get(session.getId());
+        Assert.assertNotNull(resumed);
+        Assert.assertEquals(7, resumed.getReceived());
+
+        byte[] rest = Arrays.copyOfRange(data, 7, data.length);
+        restarted.appendChunk(resumed, 7, rest.length, sha256(rest), new ByteArrayInputStream(rest));
+        // the running hash did not survive the restart, so completion hashes the file instead
+        Assert.assertNull(resumed.getDigest());
+        Assert.assertArrayEquals(data, Files.readAllBytes(restarted.complete(resumed).toPath()));
+        Assert.assertEquals(sha256(data), resumed.getSha256());
+    }
+
+    @Test
+    public void completeRejectsWholeFileMismatch() throws Exception {
+        byte[] data = "abc".getBytes(StandardCharsets.UTF_8);
+        ChunkedUploadStore store = new ChunkedUploadStore(dir, 1024);
+        UploadSession session = newSession(data.length, sha256("abd".getBytes(StandardCharsets.UTF_8)));
+        store.appendChunk(session, 0, data.length, sha256(data), new ByteArrayInputStream(data));
+        try {
+            store.complete(session);
+            Assert.fail("file checksum mismatch accepted");
+        } catch (ChunkedUploadException e) {
+            Assert.assertEquals(422, e.getCode());
+        }
+    }
+
+    @Test
+    public void sessionsWithTheSameStoredNameDoNotShareAPartFile() throws Exception {
+        ChunkedUploadStore store = new ChunkedUploadStore(dir, 1024);
+        UploadSession first = newSession(4, null);
+        store.appendChunk(first, 0, 2, sha256("ab".getBytes(StandardCharsets.UTF_8)),
+                new ByteArrayInputStream("ab".getBytes(StandardCharsets.UTF_8)));
+
+        UploadSession second = newSession(4, null);
+        Assert.assertNotEquals(store.partFile(first), store.partFile(second));
+        Assert.assertEquals(2, store.partFile(first).length());
+    }
+
+    private UploadSession newSession(long size, String sha256) throws Exception {
+        UploadSession session = new UploadSession();
+        session.setUserId(1);
+        session.setOriginalName("video.mp4");
+        session.setStoredName("1_video.mp4");
+        session.setFileSize(size);
+        session.setSha256(sha256);
+        return new ChunkedUploadStore(dir, 1024).create(session);
+    }
+
+    private static String sha256(byte[] data) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+    }
+}
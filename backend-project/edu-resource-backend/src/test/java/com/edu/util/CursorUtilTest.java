@@ -0,0 +1,36 @@
+package com.edu.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.sql.Timestamp;
+
+public class CursorUtilTest {
+
+    @Test
+    public void roundTrips() {
+        Timestamp ts = Timestamp.valueOf("2024-05-01 12:30:45");
+        String cursor = CursorUtil.encode(ts, 42);
+        CursorUtil.Cursor decoded = CursorUtil.decode(cursor);
+        Assert.assertNotNull(decoded);
+        Assert.assertEquals(ts, decoded.timestamp());
+        Assert.assertEquals(42, decoded.id());
+    }
+
+    @Test
+    public void rejectsMalformedCursors() {
+        Assert.assertNull(CursorUtil.decode(null));
+        Assert.assertNull(CursorUtil.decode(""));
+        Assert.assertNull(CursorUtil.decode("not a cursor!"));
+        Assert.assertNull(CursorUtil.decode("MTIz"));
+        Assert.assertNull(CursorUtil.encode(null, 1));
+    }
+
+    @Test
+    public void buildsRangeCondition() {
+        Assert.assertEquals("(c.create_time < ? OR (c.create_time = ? AND c.id < ?))",
+                CursorUtil.condition("c.create_time", "c.id", true));
+        Assert.assertEquals("(c.create_time > ? OR (c.create_time = ? AND c.id > ?))",
+                CursorUtil.condition("c.create_time", "c.id", false));
+    }
+}
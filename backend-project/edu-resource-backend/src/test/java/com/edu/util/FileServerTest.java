@@ -0,0 +1,86 @@
+package com.edu.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+public class FileServerTest {
+
+    @Test
+    public void parsesSingleAndSuffixRanges() {
+        Assert.assertEquals(List.of(new FileServer.ByteRange(0, 99)), FileServer.parseRanges("bytes=0-99", 1000));
+        Assert.assertEquals(List.of(new FileServer.ByteRange(500, 999)), FileServer.parseRanges("bytes=500-", 1000));
+        Assert.assertEquals(List.of(new FileServer.ByteRange(900, 999)), FileServer.parseRanges("bytes=-100", 1000));
+        Assert.assertEquals(List.of(new FileServer.ByteRange(990, 999)), FileServer.parseRanges("bytes=990-5000", 1000));
+    }
+
+    @Test
+    public void ignoresMalformedHeadersAndRejectsUnsatisfiable() {
+        Assert.assertNull(FileServer.parseRanges(null, 1000));
+        Assert.assertNull(FileServer.parseRanges("items=0-1", 1000));
+        Assert.assertNull(FileServer.parseRanges("bytes=abc", 1000));
+        Assert.assertNull(FileServer.parseRanges("bytes=5-1", 1000));
+        Assert.assertTrue(FileServer.parseRanges("bytes=1000-1100", 1000).isEmpty());
+        Assert.assertTrue(FileServer.parseRanges("bytes=-0", 1000).isEmpty());
+    }
+
+    @Test
+    public void keepsDisjointRangesAndMergesOverlapping() {
+        Assert.assertEquals(Arrays.asList(new FileServer.ByteRange(500, 599), new FileServer.ByteRange(0, 9)),
+                FileServer.parseRanges("bytes=500-599, 0-9", 1000));
+        Assert.assertEquals(List.of(new FileServer.ByteRange(0, 149)),
+                FileServer.parseRanges("bytes=0-99,50-149", 1000));
+    }
+
+    @Test
+    public void writesMultipartBody() throws Exception {
+        File f = File.createTempFile("fileserver", ".txt");
+        f.deleteOnExit();
+        Files.write(f.toPath(), "0123456789abcdefghij".getBytes(StandardCharsets.US_ASCII));
+        List<FileServer.ByteRange> ranges = FileServer.parseRanges("bytes=0-3,10-12", 20);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            FileServer.writeMultipart(ch, ranges, "text/plain", "XYZ", 20, out);
+        }
+        String body = out.toString(StandardCharsets.US_ASCII);
+        String expected = "\r\n--XYZ\r\nContent-Type: text/plain\r\nContent-Range: bytes 0-3/20\r\n\r\n0123" +
+                "\r\n--XYZ\r\nContent-Type: text/plain\r\nContent-Range: bytes 10-12/20\r\n\r\nabc" +
+                "\r\n--XYZ--\r\n";
+        Assert.assertEquals(expected, body);
+        Assert.assertEquals(out.size(), FileServer.multipartLength(ranges, "text/plain", "XYZ", 20));
+    }
+
+    @Test
+    public void evaluatesConditionalHeaders() {
+        long mtime = 1_700_000_000_123L;
+        String etag = FileServer.etag(2048, mtime);
+        Assert.assertTrue(FileServer.notModified(etag, -1, etag, mtime));
+        Assert.assertTrue(FileServer.notModified("\"other\", W/" + etag, -1, etag, mtime));
+        Assert.assertTrue(FileServer.notModified("*", -1, etag, mtime));
+        Assert.assertFalse(FileServer.notModified("\"other\"", mtime, etag, mtime));
+        // If-Modified-Since compares at second resolution and is ignored when If-None-Match is present
+        Assert.assertTrue(FileServer.notModified(null, 1_700_000_000_000L, etag, mtime));
+        Assert.assertFalse(FileServer.notModified(null, 1_699_999_999_000L, etag, mtime));
+        Assert.assertFalse(FileServer.notModified(null, -1, etag, mtime));
+    }
+
+    @Test
+    public void ifRangeRequiresStrongMatch() {
+        long mtime = 1_700_000_000_123L;
+        String etag = FileServer.etag(2048, mtime);
+        Assert.assertTrue(FileServer.ifRangeMatches(etag, -1, etag, mtime));
+        Assert.assertFalse(FileServer.ifRangeMatches("W/" + etag, -1, etag, mtime));
+        Assert.assertFalse(FileServer.ifRangeMatches(FileServer.etag(2049, mtime), -1, etag, mtime));
+        Assert.assertTrue(FileServer.ifRangeMatches("Tue, 14 Nov 2023 22:13:20 GMT", 1_700_000_000_000L, etag, mtime));
+        Assert.assertFalse(FileServer.ifRangeMatches("Tue, 14 Nov 2023 22:13:19 GMT", 1_699_999_999_000L, etag, mtime));
+    }
+}
@@ -6,6 +6,8 @@ import org.junit.Test;
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
+import java.util.List;
 
 public class ImageProcessorTest {
     @Test
@@ -26,5 +28,46 @@ public class ImageProcessorTest {
         Assert.assertTrue(result.width() <= 1080);
         Assert.assertTrue(result.height() <= 1080);
     }
-}
 
+    @Test
+    public void processWritesEveryVariantFromOneDecode() throws Exception {
+        File in = File.createTempFile("img_in_", ".png");
+        File full = File.createTempFile("img_full_", ".jpg");
+        File thumb = File.createTempFile("img_thumb_", ".jpg");
+        in.deleteOnExit();
+        full.deleteOnExit();
+        thumb.deleteOnExit();
+
+        // large enough that the decoder subsamples (5000 / (1080 * 2) = 2)
+        ImageIO.write(new BufferedImage(5000, 2500, BufferedImage.TYPE_INT_RGB), "png", in);
+
+        // requested smallest first; results still come back in request order
+        List<ImageProcessor.ProcessedImage> results = ImageProcessor.process(in, List.of(
+                new ImageProcessor.Variant(360, 360, thumb),
+                new ImageProcessor.Variant(1080, 1080, full)));
+
+        Assert.assertEquals(360, results.get(0).width());
+        Assert.assertEquals(180, results.get(0).height());
+        Assert.assertEquals(1080, results.get(1).width());
+        Assert.assertEquals(540, results.get(1).height());
+        Assert.assertEquals(1080, ImageIO.read(full).getWidth());
+        Assert.assertEquals(360, ImageIO.read(thumb).getWidth());
+    }
+
+    @Test
+    public void rejectsImagesOverThePixelLimitBeforeDecoding() throws Exception {
+        File in = File.createTempFile("img_in_", ".png");
+        File out = File.createTempFile("img_out_", ".jpg");
+        in.deleteOnExit();
+        out.deleteOnExit();
+        ImageIO.write(new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB), "png", in);
+
+        try {
+            ImageProcessor.process(in, List.of(new ImageProcessor.Variant(100, 100, out)), 100_000);
+            Assert.fail("expected the pixel limit to apply");
+        } catch (IOException e) {
+            Assert.assertEquals("Image too large", e.getMessage());
+        }
+        Assert.assertEquals(1, ImageProcessor.process(in, List.of(new ImageProcessor.Variant(100, 100, out)), 120_000).size());
+    }
+}
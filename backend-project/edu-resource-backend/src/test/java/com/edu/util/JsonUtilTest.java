@@ -0,0 +1,71 @@
+package com.edu.util;
+
+import com.edu.model.ApiResponse;
+import com.edu.model.Comment;
+import com.edu.model.Notification;
+import com.edu.model.PageResult;
+import com.edu.model.Resource;
+import com.edu.model.User;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParser;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.List;
+
+public class JsonUtilTest {
+    private static final Gson REFLECTIVE = new GsonBuilder().setDateFormat("yyyy-MM-dd HH:mm:ss").create();
+
+    @Test
+    public void modelAdaptersMatchReflectiveOutput() {
+        User uploader = new User();
+        uploader.setId(7);
+        uploader.setUsername("teacher");
+        uploader.setNickname("老师");
+        uploader.setAvatar("/api/resources/avatar/7.png");
+
+        Resource resource = new Resource();
+        resource.setId(1);
+        resource.setName("Lecture 1");
+        resource.setFileSize(1024L);
+        resource.setUploader(uploader);
+        resource.setIsPublic(true);
+        resource.setCreatedAt(new Timestamp(1_700_000_000_000L));
+
+        Comment reply = new Comment();
+        reply.setId(3);
+        reply.setContent("thanks");
+        Comment comment = new Comment();
+        comment.setId(2);
+        comment.setUser(uploader);
+        comment.setReplies(List.of(reply));
+        comment.setCreatedAt(new Date(1_700_000_000_000L));
+
+        Notification notification = new Notification(7, "title", "content", "system");
+
+        PageResult<Object> page = new PageResult<>(List.of(resource, comment, notification), 3, 1, 20);
+        page.setNextCursor("abc");
+        ApiResponse<PageResult<Object>> response = ApiResponse.success(page);
+
+        Assert.assertEquals(JsonParser.parseString(REFLECTIVE.toJson(response)), JsonParser.parseString(JsonUtil.toJson(response)));
+    }
+
+    @Test
+    public void userPasswordIsNeverWritten() {
+        User user = new User("alice", "$2a$10$hash", "123", "student");
+        String json = JsonUtil.toJson(ApiResponse.success(user));
+        Assert.assertFalse(json.contains("password"));
+        Assert.assertTrue(json.contains("\"username\":\"alice\""));
+    }
+
+    @Test
+    public void requestBodiesStillParse() {
+        Comment comment = JsonUtil.fromJson("{\"resourceId\":5,\"content\":\"hi\",\"parentId\":2}", Comment.class);
+        Assert.assertEquals(Integer.valueOf(5), comment.getResourceId());
+        Assert.assertEquals("hi", comment.getContent());
+        Assert.assertEquals(Integer.valueOf(2), comment.getParentId());
+    }
+}
@@ -0,0 +1,96 @@
+package com.edu.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the Aho-Corasick matcher with the previous contains/replace loop on generated dictionaries.
+ * Not a unit test; run with
+ * {@code mvn -B test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java
+ * "-Dexec.args=-cp %classpath org.openjdk.jmh.Main SensitiveWordBenchmark"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SensitiveWordBenchmark {
+
+    @Param({"100", "10000"})
+    public int words;
+
+    @Param({"200", "2000"})
+    public int textLength;
+
+    private Set<String> dictionary;
+    private SensitiveWordMatcher matcher;
+    private String text;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        dictionary = new HashSet<>();
+        while (dictionary.size() < words) {
+            dictionary.add(randomHan(random, 2 + random.nextInt(3)));
+        }
+        matcher = SensitiveWordMatcher.compile(dictionary);
+
+        // mostly clean text with a few dictionary words mixed in, like a typical comment
+        List<String> sample = new ArrayList<>(dictionary);
+        StringBuilder sb = new StringBuilder(textLength + 8);
+        while (sb.length() < textLength) {
+            if (random.nextInt(50) == 0) {
+                sb.append(sample.get(random.nextInt(sample.size())));
+            } else {
+                sb.append(randomHan(random, 1));
+            }
+        }
+        text = sb.toString();
+    }
+
+    @Benchmark
+    public String automaton() {
+        return matcher.mask(text);
+    }
+
+    @Benchmark
+    public String containsReplace() {
+        String result = text;
+        for (String word : dictionary) {
+            if (result.contains(word)) {
+                String replacement = "";
+                for (int i = 0; i < word.length(); i++) {
+                    replacement += "*";
+                }
+                result = result.replace(word, replacement);
+            }
+        }
+        return result;
+    }
+
+    private static String randomHan(Random random, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            // a narrow slice of CJK code points, so words share prefixes as real ones do
+            chars[i] = (char) (0x4E00 + random.nextInt(3000));
+        }
+        return new String(chars);
+    }
+}
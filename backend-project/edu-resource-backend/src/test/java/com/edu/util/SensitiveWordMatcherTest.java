@@ -0,0 +1,35 @@
+package com.edu.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public class SensitiveWordMatcherTest {
+
+    @Test
+    public void masksOverlappingWordsThroughFailLinks() {
+        SensitiveWordMatcher m = SensitiveWordMatcher.compile(List.of("he", "she", "his", "hers"));
+        Assert.assertEquals(4, m.size());
+        Assert.assertEquals("u*****", m.mask("ushers"));
+        Assert.assertEquals("t** ***", m.mask("the his"));
+        Assert.assertTrue(m.contains("ahishers"));
+        Assert.assertFalse(m.contains("hi ha"));
+    }
+
+    @Test
+    public void returnsSameStringWhenClean() {
+        SensitiveWordMatcher m = SensitiveWordMatcher.compile(List.of("赌博", "垃圾"));
+        String clean = "这是一个教育网站";
+        Assert.assertSame(clean, m.mask(clean));
+        Assert.assertEquals("不要**，也别乱扔**", m.mask("不要赌博，也别乱扔垃圾"));
+    }
+
+    @Test
+    public void emptyDictionaryMatchesNothing() {
+        SensitiveWordMatcher m = SensitiveWordMatcher.compile(List.of("", "  ".strip()));
+        Assert.assertEquals(0, m.size());
+        Assert.assertEquals("anything", m.mask("anything"));
+        Assert.assertFalse(m.contains("anything"));
+    }
+}
@@ -11,6 +11,10 @@ export const chatApi = {
   listMessages(conversationId, params) {
     return request.get('/chat/messages', { params: { conversationId, ...params } })
   },
+  // since: "<conversationId>:<lastSeenMessageId>,..."; returns the newer messages of each
+  sync(params) {
+    return request.get('/chat/sync', { params })
+  },
   sendText(toUserId, text) {
     return request.post('/chat/send', { toUserId, msgType: 'text', text })
   },
@@ -7,6 +7,9 @@ export const commentApiV2 = {
   listReplies(parentId, params) {
     return request.get(`/comment/v2/${parentId}/replies`, { params })
   },
+  listImages(commentId) {
+    return request.get(`/comment/v2/${commentId}/images`)
+  },
   createComment(formData) {
     return request.post('/comment/v2', formData, {
       timeout: 120000
@@ -14,6 +14,10 @@ export const commentApi = {
     return request.get(`/comment/${id}`)
   },
 
+  getReplies(id, params) {
+    return request.get(`/comment/${id}/replies`, { params })
+  },
+
   createComment(data) {
     return request.post('/comment', data)
   },
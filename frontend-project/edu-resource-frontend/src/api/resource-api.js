@@ -1,5 +1,16 @@
 import request from '@/utils/request'
 
+// Files at least this large go through the resumable chunked upload
+export const CHUNKED_UPLOAD_THRESHOLD = 8 * 1024 * 1024
+const CHUNK_RETRIES = 3
+
+const sha256Hex = async (blob) => {
+  const digest = await crypto.subtle.digest('SHA-256', await blob.arrayBuffer())
+  return Array.from(new Uint8Array(digest)).map(b => b.toString(16).padStart(2, '0')).join('')
+}
+
+const resumeKey = (file) => `chunkedUpload:${file.name}:${file.size}:${file.lastModified}`
+
 export const resourceApi = {
   getResources(params) {
     return request.get('/resources', { params })
@@ -21,6 +32,48 @@ export const resourceApi = {
     })
   },
 
+  // Uploads in chunks and resumes from the server's offset after a failure or page reload.
+  // meta: { name, category, description, allowComments, isPublic }
+  async chunkedUpload(file, meta, onProgress) {
+    const key = resumeKey(file)
+    let session = null
+    const savedId = localStorage.getItem(key)
+    if (savedId) {
+      const res = await request.get(`/resources/uploads/${savedId}`).catch(() => null)
+      if (res && res.success) session = res.data
+    }
+    if (!session) {
+      const res = await request.post('/resources/uploads', { fileName: file.name, fileSize: file.size, ...meta })
+      if (!res.success) return res
+      session = res.data
+      localStorage.setItem(key, session.uploadId)
+    }
+
+    let offset = session.received
+    let failures = 0
+    while (offset < file.size) {
+      const chunk = file.slice(offset, Math.min(offset + session.chunkSize, file.size))
+      const res = await request.put(`/resources/uploads/${session.uploadId}`, chunk, {
+        params: { offset },
+        timeout: 120000,
+        headers: { 'Content-Type': 'application/octet-stream', 'X-Chunk-Sha256': await sha256Hex(chunk) }
+      }).catch(() => null)
+      if (res && res.success) {
+        offset = res.data.received
+        failures = 0
+      } else {
+        if (++failures > CHUNK_RETRIES) return res || { success: false, message: 'Chunk upload failed' }
+        // continue from wherever the server says it is
+        if (res && res.data) offset = res.data.received
+      }
+      if (onProgress) onProgress(Math.round((offset * 100) / file.size))
+    }
+
+    const res = await request.post(`/resources/uploads/${session.uploadId}/complete`, null, { timeout: 120000 })
+    if (res.success) localStorage.removeItem(key)
+    return res
+  },
+
   updateResource(id, data) {
     return request.put(`/resources/${id}`, data)
   },
@@ -0,0 +1,52 @@
+import store from '@/store'
+
+const MAX_RETRY_DELAY = 30000
+
+// /ws/chat client. Reconnects with backoff after the socket drops; onOpen runs after every
+// (re)connect so the caller can resync whatever was pushed while it was away.
+export function connectChatSocket({ onFrame, onOpen }) {
+  let ws = null
+  let closed = false
+  let retry = 0
+  let timer = null
+
+  const connect = () => {
+    const token = store.state.token
+    if (closed || !token) return
+    const proto = window.location.protocol === 'https:' ? 'wss' : 'ws'
+    ws = new WebSocket(`${proto}://${window.location.host}/ws/chat?token=${encodeURIComponent(token)}`)
+    ws.onopen = () => {
+      retry = 0
+      if (onOpen) onOpen()
+    }
+    ws.onmessage = (ev) => {
+      let frame
+      try {
+        frame = JSON.parse(ev.data)
+      } catch (e) {
+        return
+      }
+      if (frame && onFrame) onFrame(frame)
+    }
+    ws.onclose = () => {
+      ws = null
+      if (closed) return
+      const delay = Math.min(MAX_RETRY_DELAY, 1000 * 2 ** retry)
+      retry += 1
+      timer = setTimeout(connect, delay)
+    }
+  }
+
+  connect()
+
+  return {
+    send(frame) {
+      if (ws && ws.readyState === WebSocket.OPEN) ws.send(JSON.stringify(frame))
+    },
+    close() {
+      closed = true
+      clearTimeout(timer)
+      if (ws) ws.close()
+    }
+  }
+}
@@ -0,0 +1,9 @@
+const AVATAR_PREFIX = '/api/resources/avatar/'
+
+// Sizes the server allows (image.thumbSizes); pick about twice the displayed size for HiDPI screens
+export function avatarThumb(url, size = 96) {
+  if (!url) return url
+  const i = url.indexOf(AVATAR_PREFIX)
+  if (i < 0) return url
+  return url.slice(0, i) + `/api/thumb/${size}x${size}/avatar/` + url.slice(i + AVATAR_PREFIX.length)
+}
@@ -22,6 +22,11 @@ export default defineConfig({
       '/uploads': {
         target: 'http://localhost:8080/edu-resource-backend',
         changeOrigin: true
+      },
+      '/ws': {
+        target: 'http://localhost:8080/edu-resource-backend',
+        changeOrigin: true,
+        ws: true
       }
     }
   }